@@ -0,0 +1,257 @@
+package di.lacosa;
+
+import di.lacosa.messaggi.Messaggio;
+import di.lacosa.messaggi.ModelloMessaggio;
+
+import java.util.Arrays;
+
+/**
+ * Classe che raccoglie il testo prodotto dagli osservatori durante un comando.
+ * <p>
+ * Il testo viene scritto direttamente in un array di caratteri riutilizzabile,
+ * che cresce solo quando necessario e non viene mai ridotto, suddiviso in segmenti
+ * (uno per ciascuna risposta di un osservatore). Al termine del comando i segmenti vengono
+ * composti in un'unica stringa da inviare all'interfaccia, senza stringhe o liste intermedie.
+ * <p>
+ * Un'istanza appartiene a una sola partita e non è thread-safe.
+ *
+ * @author fabioMarchitelli
+ * @see Observer#update(DescrizioneGioco, di.lacosa.parser.ParserOutput, BufferOutput)
+ */
+public class BufferOutput implements Appendable {
+
+    private static final int CAPACITA_INIZIALE = 1024;
+    private static final int SEGMENTI_INIZIALI = 8;
+
+    private char[] caratteri = new char[CAPACITA_INIZIALE];
+    private int lunghezza;
+
+    private char[] composizione = new char[CAPACITA_INIZIALE];
+
+    /** Inizio e fine di ogni segmento, in coppie consecutive */
+    private int[] segmenti = new int[SEGMENTI_INIZIALI * 2];
+    private int numeroSegmenti;
+    private int inizioSegmentoAperto = -1;
+
+    /**
+     * Svuota il buffer, mantenendo la memoria già allocata.
+     */
+    public void svuota() {
+        lunghezza = 0;
+        numeroSegmenti = 0;
+        inizioSegmentoAperto = -1;
+    }
+
+    /**
+     * Apre un nuovo segmento: il testo scritto fino alla chiusura ne farà parte.
+     *
+     * @throws IllegalStateException se un segmento è già aperto
+     */
+    public void apriSegmento() {
+        if (inizioSegmentoAperto != -1) {
+            throw new IllegalStateException("Un segmento è già aperto.");
+        }
+        inizioSegmentoAperto = lunghezza;
+    }
+
+    /**
+     * Chiude il segmento aperto. I segmenti vuoti vengono scartati.
+     *
+     * @throws IllegalStateException se nessun segmento è aperto
+     */
+    public void chiudiSegmento() {
+        if (inizioSegmentoAperto == -1) {
+            throw new IllegalStateException("Nessun segmento aperto.");
+        }
+        if (lunghezza > inizioSegmentoAperto) {
+            if (numeroSegmenti * 2 == segmenti.length) {
+                segmenti = Arrays.copyOf(segmenti, segmenti.length * 2);
+            }
+            segmenti[numeroSegmenti * 2] = inizioSegmentoAperto;
+            segmenti[numeroSegmenti * 2 + 1] = lunghezza;
+            numeroSegmenti++;
+        }
+        inizioSegmentoAperto = -1;
+    }
+
+    @Override
+    public BufferOutput append(CharSequence testo) {
+        if (testo == null) {
+            return append("null");
+        }
+        return append(testo, 0, testo.length());
+    }
+
+    @Override
+    public BufferOutput append(CharSequence testo, int inizio, int fine) {
+        if (testo == null) {
+            return append("null");
+        }
+        assicuraCapacita(lunghezza + fine - inizio);
+        if (testo instanceof String) {
+            ((String) testo).getChars(inizio, fine, caratteri, lunghezza);
+            lunghezza += fine - inizio;
+        } else {
+            for (int i = inizio; i < fine; i++) {
+                caratteri[lunghezza++] = testo.charAt(i);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public BufferOutput append(char c) {
+        assicuraCapacita(lunghezza + 1);
+        caratteri[lunghezza++] = c;
+        return this;
+    }
+
+    /**
+     * Scrive un intero in forma decimale, senza creare stringhe intermedie.
+     *
+     * @param valore Il valore da scrivere
+     * @return Questo buffer
+     */
+    public BufferOutput append(long valore) {
+        if (valore == Long.MIN_VALUE) {
+            return append(Long.toString(valore));
+        }
+        if (valore < 0) {
+            append('-');
+            valore = -valore;
+        }
+        int cifre = 1;
+        for (long resto = valore / 10; resto > 0; resto /= 10) {
+            cifre++;
+        }
+        assicuraCapacita(lunghezza + cifre);
+        for (int i = lunghezza + cifre - 1; i >= lunghezza; i--) {
+            caratteri[i] = (char) ('0' + valore % 10);
+            valore /= 10;
+        }
+        lunghezza += cifre;
+        return this;
+    }
+
+    /**
+     * Scrive un messaggio del catalogo senza argomenti.
+     *
+     * @param messaggio Il messaggio da scrivere
+     * @return Questo buffer
+     */
+    public BufferOutput scrivi(Messaggio messaggio) {
+        return scrivi(messaggio, null, null);
+    }
+
+    /**
+     * Scrive un messaggio del catalogo con un argomento.
+     *
+     * @param messaggio Il messaggio da scrivere
+     * @param primo Il valore del segnaposto {0}
+     * @return Questo buffer
+     */
+    public BufferOutput scrivi(Messaggio messaggio, CharSequence primo) {
+        return scrivi(messaggio, primo, null);
+    }
+
+    /**
+     * Scrive un messaggio del catalogo con due argomenti, copiando direttamente nel buffer
+     * le parti letterali del modello e gli argomenti.
+     *
+     * @param messaggio Il messaggio da scrivere
+     * @param primo Il valore del segnaposto {0}
+     * @param secondo Il valore del segnaposto {1}
+     * @return Questo buffer
+     */
+    public BufferOutput scrivi(Messaggio messaggio, CharSequence primo, CharSequence secondo) {
+        ModelloMessaggio modello = messaggio.getModello();
+        int segnaposto = modello.getNumeroSegnaposto();
+        for (int i = 0; i < segnaposto; i++) {
+            append(modello.getParte(i));
+            append(modello.getSegnaposto(i) == 0 ? primo : secondo);
+        }
+        return append(modello.getParte(segnaposto));
+    }
+
+    /**
+     * Scrive un messaggio del catalogo con un argomento numerico, senza convertirlo in stringa.
+     *
+     * @param messaggio Il messaggio da scrivere
+     * @param primo Il valore del segnaposto {0}
+     * @return Questo buffer
+     */
+    public BufferOutput scrivi(Messaggio messaggio, long primo) {
+        ModelloMessaggio modello = messaggio.getModello();
+        int segnaposto = modello.getNumeroSegnaposto();
+        for (int i = 0; i < segnaposto; i++) {
+            append(modello.getParte(i));
+            append(primo);
+        }
+        return append(modello.getParte(segnaposto));
+    }
+
+    /**
+     * Verifica se il buffer non contiene alcun segmento.
+     *
+     * @return true se nessun osservatore ha scritto del testo
+     */
+    public boolean isVuoto() {
+        return numeroSegmenti == 0;
+    }
+
+    public int getNumeroSegmenti() {
+        return numeroSegmenti;
+    }
+
+    /**
+     * Restituisce il numero di caratteri riservati dal buffer, tra testo e area di composizione.
+     *
+     * @return La capacità complessiva del buffer
+     */
+    public int getCapacita() {
+        return caratteri.length + composizione.length;
+    }
+
+    /**
+     * Compone tutti i segmenti in un'unica stringa, racchiudendo ciascuno tra i testi indicati.
+     * L'unico oggetto creato è la stringa restituita.
+     *
+     * @param prima Testo da anteporre a ogni segmento
+     * @param dopo Testo da posporre a ogni segmento
+     * @return Il testo completo del comando
+     */
+    public String componi(String prima, String dopo) {
+        int totale = lunghezza + numeroSegmenti * (prima.length() + dopo.length());
+        if (composizione.length < totale) {
+            composizione = new char[Math.max(totale, composizione.length * 2)];
+        }
+        int posizione = 0;
+        for (int s = 0; s < numeroSegmenti; s++) {
+            int inizio = segmenti[s * 2];
+            int fine = segmenti[s * 2 + 1];
+            prima.getChars(0, prima.length(), composizione, posizione);
+            posizione += prima.length();
+            System.arraycopy(caratteri, inizio, composizione, posizione, fine - inizio);
+            posizione += fine - inizio;
+            dopo.getChars(0, dopo.length(), composizione, posizione);
+            posizione += dopo.length();
+        }
+        return new String(composizione, 0, posizione);
+    }
+
+    /**
+     * Restituisce tutto il testo scritto nel buffer, indipendentemente dai segmenti.
+     *
+     * @return Il testo contenuto nel buffer
+     */
+    @Override
+    public String toString() {
+        return new String(caratteri, 0, lunghezza);
+    }
+
+    private void assicuraCapacita(int richiesta) {
+        if (richiesta > caratteri.length) {
+            caratteri = Arrays.copyOf(caratteri, Math.max(richiesta, caratteri.length * 2));
+        }
+    }
+}
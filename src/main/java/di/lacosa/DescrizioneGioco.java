@@ -1,15 +1,28 @@
 package di.lacosa;
 
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.eventi.RegistroEventi;
+import di.lacosa.eventi.RiduttoreEventi;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import di.lacosa.implementazione.CreaturaThread;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import di.lacosa.implementazione.MinacciaCreatura;
 
 
 /**
@@ -38,8 +51,16 @@ public abstract class DescrizioneGioco implements Serializable {
     private boolean secondaAzioneGaslyAttivata = false;
     private boolean terzaAzioneGaslyAttivata = false;
     private boolean terrenoScavatoInSerra = false;
-    private transient CreaturaThread creaturaThreadInstance;
-    private transient Thread creaturaThread;
+    private transient MinacciaCreatura minacciaCreatura;
+    private transient Executor esecutoreEventi;
+    private transient Orologio orologio;
+    private transient GestoreVisibilita gestoreVisibilita;
+    private transient RegistroEventi registroEventi;
+    private transient Supplier<byte[]> fornitoreIstantanea;
+    private transient Function<byte[], ? extends DescrizioneGioco> lettoreIstantanea;
+    private transient StatoModifiche modifiche;
+    private transient EsecutoreEffetti esecutoreEffetti;
+    private transient RispostaInAttesa rispostaInAttesa;
 
 
     /**
@@ -95,6 +116,28 @@ public abstract class DescrizioneGioco implements Serializable {
         return personaggiInStanza;
     }
 
+    /**
+     * Sposta un personaggio in un'altra stanza, aggiornando gli insiemi visibili
+     * della stanza lasciata e di quella raggiunta.
+     *
+     * @param idPersonaggio L'ID del personaggio da spostare
+     * @param idStanza L'ID della stanza di destinazione
+     */
+    public void spostaPersonaggio(int idPersonaggio, int idStanza) {
+        for (Personaggio personaggio : personaggi) {
+            if (personaggio.getId() == idPersonaggio) {
+                if (personaggio.getId_stanza() != idStanza) {
+                    getGestoreVisibilita().invalidaStanza(personaggio.getId_stanza());
+                    getGestoreVisibilita().invalidaStanza(idStanza);
+                    getModifiche().segnaStanza(personaggio.getId_stanza());
+                    getModifiche().segnaStanza(idStanza);
+                    personaggio.setId_stanza(idStanza);
+                }
+                return;
+            }
+        }
+    }
+
     /**
      * Restituisce una stanza per ID.
      *
@@ -123,7 +166,15 @@ public abstract class DescrizioneGioco implements Serializable {
         for (Oggetto oggetto : oggetti) {
             if (oggetto.getId() == id_oggetto) { //Controlla se l'id dell'oggetto è lo stesso di quello dato in input.
                 if (oggetto.getId_stanza() != id_inventario) { //controlla che non sia già nell'inventario
+                    getGestoreVisibilita().invalidaStanza(oggetto.getId_stanza());
+                    getModifiche().segnaStanza(oggetto.getId_stanza());
+                    getModifiche().segnaOggetto(id_oggetto);
+                    getModifiche().segnaInventario();
                     oggetto.setId_stanza(id_inventario);
+                    if (oggetto.getLuceEmessa() > 0) {
+                        // Ora illumina la stanza corrente tramite l'inventario
+                        getGestoreVisibilita().luceCambiata(oggetto);
+                    }
                     oggettoTrovato = true;
                 } else {
                     System.out.println("Oggetto già nell'inventario: " + id_oggetto);
@@ -162,7 +213,65 @@ public abstract class DescrizioneGioco implements Serializable {
      * @param stanzaCorrente La nuova stanza corrente
      */
     public void setStanzaCorrente(Stanza stanzaCorrente) {
+        if (stanzaCorrente != null && !stanzaCorrente.equals(this.stanzaCorrente)) {
+            getModifiche().segnaStanzaCorrente();
+        }
+        Stanza precedente = this.stanzaCorrente;
         this.stanzaCorrente = stanzaCorrente;
+        getGestoreVisibilita().giocatoreSpostato(precedente, stanzaCorrente);
+    }
+
+    /**
+     * Restituisce il tracciamento delle modifiche allo stato della partita,
+     * creandolo se necessario (ad esempio dopo il caricamento di una partita, essendo transiente).
+     *
+     * @return Lo stato delle modifiche di questa partita
+     */
+    public StatoModifiche getModifiche() {
+        if (modifiche == null) {
+            modifiche = new StatoModifiche();
+        }
+        return modifiche;
+    }
+
+    /**
+     * Restituisce il gestore della visibilità, creandolo se necessario
+     * (ad esempio dopo il caricamento di una partita, essendo transiente).
+     *
+     * @return Il gestore della visibilità di questa partita
+     */
+    public GestoreVisibilita getGestoreVisibilita() {
+        if (gestoreVisibilita == null) {
+            gestoreVisibilita = new GestoreVisibilita(this);
+        }
+        return gestoreVisibilita;
+    }
+
+    /**
+     * Restituisce gli oggetti che il giocatore è in grado di percepire nella stanza corrente.
+     *
+     * @return Set immutabile degli oggetti visibili
+     */
+    public Set<Oggetto> getOggettiVisibili() {
+        return getGestoreVisibilita().getInsiemeVisibile(stanzaCorrente).getOggetti();
+    }
+
+    /**
+     * Restituisce i personaggi che il giocatore è in grado di percepire nella stanza corrente.
+     *
+     * @return Set immutabile dei personaggi visibili
+     */
+    public Set<Personaggio> getPersonaggiVisibili() {
+        return getGestoreVisibilita().getInsiemeVisibile(stanzaCorrente).getPersonaggi();
+    }
+
+    /**
+     * Verifica se la stanza corrente è illuminata, dalla propria luce o da una sorgente attiva.
+     *
+     * @return true se nella stanza corrente c'è abbastanza luce per vedere
+     */
+    public boolean isStanzaCorrenteIlluminata() {
+        return getGestoreVisibilita().getInsiemeVisibile(stanzaCorrente).isIlluminata();
     }
 
     /**
@@ -199,7 +308,23 @@ public abstract class DescrizioneGioco implements Serializable {
     }
 
     /**
-     * Cerca un oggetto per ID.
+     * Cerca un personaggio per ID.
+     *
+     * @param idPersonaggio L'ID del personaggio da cercare
+     * @return Il personaggio trovato o null
+     */
+    public Personaggio getPersonaggioPerId(int idPersonaggio) {
+        for (Personaggio personaggio : personaggi) {
+            if (personaggio.getId() == idPersonaggio) {
+                return personaggio;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cerca un oggetto per ID, tra gli oggetti delle stanze e poi nell'inventario,
+     * che contiene anche gli oggetti posseduti fin dall'inizio della partita.
      *
      * @param idOggetto L'ID dell'oggetto da cercare
      * @return L'oggetto trovato o null
@@ -210,6 +335,11 @@ public abstract class DescrizioneGioco implements Serializable {
                 return oggetto;
             }
         }
+        for (Oggetto oggetto : inventario) {
+            if (oggetto.getId() == idOggetto) {
+                return oggetto;
+            }
+        }
         return null;
     }
 
@@ -231,6 +361,21 @@ public abstract class DescrizioneGioco implements Serializable {
         return risposte;
     }
 
+    /**
+     * Cerca un'opzione di dialogo per ID.
+     *
+     * @param idDialogo L'ID del dialogo da cercare
+     * @return Il dialogo trovato o null
+     */
+    public DialogoGiocatore getDialogoPerId(int idDialogo) {
+        for (DialogoGiocatore dialogo : dialoghi) {
+            if (dialogo.getId() == idDialogo) {
+                return dialogo;
+            }
+        }
+        return null;
+    }
+
     /**
      * Restituisce i dialoghi specifici per un personaggio.
      *
@@ -282,6 +427,105 @@ public abstract class DescrizioneGioco implements Serializable {
 }
 
 
+    /**
+     * Applica un evento allo stato della partita e lo aggiunge al registro degli eventi.
+     * È il modo previsto per modificare il mondo di gioco durante la partita.
+     *
+     * @param evento L'evento da applicare
+     */
+    public void applicaEvento(EventoDiGioco evento) {
+        RiduttoreEventi.applica(this, evento);
+        getRegistroEventi().aggiungi(evento);
+    }
+
+    /**
+     * Restituisce il registro degli eventi applicati in questa sessione di gioco,
+     * creandolo se necessario (ad esempio dopo il caricamento di una partita, essendo transiente).
+     *
+     * @return Il registro degli eventi
+     */
+    public RegistroEventi getRegistroEventi() {
+        if (registroEventi == null) {
+            if (fornitoreIstantanea != null) {
+                registroEventi = new RegistroEventi(RegistroEventi.CAPACITA_PREDEFINITA, fornitoreIstantanea, lettoreIstantanea);
+            } else {
+                registroEventi = new RegistroEventi(RegistroEventi.CAPACITA_PREDEFINITA,
+                        this::serializzaStato, DescrizioneGioco::leggiStato);
+            }
+        }
+        return registroEventi;
+    }
+
+    /**
+     * Imposta il formato delle istantanee del registro degli eventi, al posto della serializzazione
+     * dell'intera partita. Va impostato prima che venga applicato il primo evento.
+     *
+     * @param fornitore Produce l'istantanea della partita
+     * @param lettore Ricostruisce una partita dall'istantanea
+     */
+    public void setFormatoIstantanea(Supplier<byte[]> fornitore, Function<byte[], ? extends DescrizioneGioco> lettore) {
+        this.fornitoreIstantanea = fornitore;
+        this.lettoreIstantanea = lettore;
+        this.registroEventi = null;
+    }
+
+    /**
+     * Serializza lo stato corrente della partita, usato come istantanea predefinita dal registro degli eventi.
+     *
+     * @return I byte della partita serializzata
+     * @throws UncheckedIOException Se la partita non può essere serializzata
+     */
+    private byte[] serializzaStato() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(this);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile serializzare la partita per l'istantanea", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Legge una partita scritta da {@link #serializzaStato()}, con lo stesso filtro dei salvataggi.
+     *
+     * @param stato I byte della partita serializzata
+     * @return La partita letta, i cui campi transienti vanno ripristinati dal chiamante
+     * @throws IllegalStateException Se l'istantanea non è leggibile
+     */
+    private static DescrizioneGioco leggiStato(byte[] stato) {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(stato))) {
+            ois.setObjectInputFilter(GestoreSalvataggi.FILTRO_PARTITA);
+            return (DescrizioneGioco) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Istantanea del registro non leggibile.", e);
+        }
+    }
+
+    /**
+     * Affida un effetto collaterale (salvataggio, finestra, log) al canale indicato,
+     * senza attenderne il completamento. Lo stato della partita va modificato prima, in modo sincrono.
+     *
+     * @param canale Il canale su cui eseguire l'effetto
+     * @param effetto L'effetto da eseguire
+     */
+    public void eseguiEffetto(EsecutoreEffetti.Canale canale, Runnable effetto) {
+        getEsecutoreEffetti().esegui(canale, effetto);
+    }
+
+    /**
+     * Restituisce l'esecutore degli effetti collaterali di questa sessione di gioco,
+     * creandolo se necessario (ad esempio dopo il caricamento di una partita, essendo transiente).
+     *
+     * @return L'esecutore degli effetti
+     */
+    public EsecutoreEffetti getEsecutoreEffetti() {
+        if (esecutoreEffetti == null) {
+            esecutoreEffetti = new EsecutoreEffetti();
+        }
+        return esecutoreEffetti;
+    }
+
+
     // Metodi getter e setter per gli stati di gioco
 
     public boolean isCreaturaCanideAttivata() {
@@ -293,30 +537,128 @@ public abstract class DescrizioneGioco implements Serializable {
     }
 
     public void setCreaturaCanideAttivata(boolean creaturaCanideAttivata) {
+        segnaFlag(FlagDiGioco.CREATURA_CANIDE_ATTIVATA, this.creaturaCanideAttivata, creaturaCanideAttivata);
         this.creaturaCanideAttivata = creaturaCanideAttivata;
     }
 
     public void setCreaturaCanideSconfitta(boolean creaturaCanideSconfitta) {
+        segnaFlag(FlagDiGioco.CREATURA_CANIDE_SCONFITTA, this.creaturaCanideSconfitta, creaturaCanideSconfitta);
         this.creaturaCanideSconfitta = creaturaCanideSconfitta;
     }
 
-    public void setCreaturaThread(CreaturaThread creaturaThreadInstance, Thread thread) {
-        this.creaturaThreadInstance = creaturaThreadInstance;
-        this.creaturaThread = thread;
+    /**
+     * Avvia l'avvicinamento della creatura, che avvisa il giocatore a intervalli regolari.
+     *
+     * @param interfaccia Il frontend su cui mostrare gli avvertimenti
+     */
+    public void avviaCreatura(FrontendGioco interfaccia) {
+        sospendiCreatura();
+        minacciaCreatura = new MinacciaCreatura(this, interfaccia);
+        minacciaCreatura.avvia();
+    }
+
+    /**
+     * Segnala la sconfitta della creatura, interrompendo gli avvertimenti.
+     */
+    public void sconfiggiCreatura() {
+        MinacciaCreatura minaccia = minacciaCreatura;
+        if (minaccia != null) {
+            minacciaCreatura = null;
+            minaccia.sconfiggiCreatura();
+        }
     }
 
-    public void stopCreaturaThread() {
-        if (creaturaThreadInstance != null) {
-            creaturaThreadInstance.sconfiggiCreatura();
-            creaturaThread.interrupt();
+    /**
+     * Ferma gli avvertimenti della creatura senza sconfiggerla, ad esempio prima di ibernare
+     * o chiudere la partita: l'incontro resta attivo e riprende con {@link #avviaCreatura(FrontendGioco)}.
+     */
+    public void sospendiCreatura() {
+        MinacciaCreatura minaccia = minacciaCreatura;
+        if (minaccia != null) {
+            minacciaCreatura = null;
+            minaccia.sospendi();
         }
     }
 
+    /**
+     * Pianifica un evento a tempo della partita sull'{@link #getOrologio() orologio} della partita.
+     * Alla scadenza l'evento viene consegnato all'{@link #setEsecutoreEventi(Executor) esecutore degli eventi}.
+     *
+     * @param evento L'evento da eseguire
+     * @param ritardoMs Il ritardo in millisecondi
+     * @return L'evento pianificato, con cui può essere annullato
+     */
+    public Orologio.EventoPianificato pianificaEvento(Runnable evento, long ritardoMs) {
+        return getOrologio().pianifica(evento, ritardoMs, TimeUnit.MILLISECONDS, getEsecutoreEventi());
+    }
+
+    /**
+     * Restituisce l'orologio degli eventi a tempo della partita: quello di sistema,
+     * se non ne è stato impostato un altro.
+     *
+     * @return L'orologio della partita
+     */
+    public Orologio getOrologio() {
+        Orologio corrente = orologio;
+        return corrente != null ? corrente : Orologio.diSistema();
+    }
+
+    /**
+     * Imposta l'orologio degli eventi a tempo, ad esempio un {@link OrologioVirtuale}
+     * per riprodurre la partita senza attese reali.
+     *
+     * @param orologio L'orologio, o null per l'orologio di sistema
+     */
+    public void setOrologio(Orologio orologio) {
+        this.orologio = orologio;
+    }
+
+    /**
+     * Restituisce l'esecutore a cui vengono consegnati gli eventi a tempo.
+     * Senza frontend collegato gli eventi vengono eseguiti nel thread della ruota.
+     *
+     * @return L'esecutore degli eventi
+     */
+    public Executor getEsecutoreEventi() {
+        Executor esecutore = esecutoreEventi;
+        return esecutore != null ? esecutore : Runnable::run;
+    }
+
+    /**
+     * Imposta l'esecutore degli eventi a tempo, che deve eseguirli nel ciclo dei comandi
+     * della partita (l'Event Dispatch Thread per l'interfaccia Swing, la sessione per i server).
+     *
+     * @param esecutoreEventi L'esecutore degli eventi
+     */
+    public void setEsecutoreEventi(Executor esecutoreEventi) {
+        this.esecutoreEventi = esecutoreEventi;
+    }
+
+    /**
+     * Restituisce la risposta che la partita sta aspettando dal giocatore.
+     *
+     * @return La risposta in attesa, o null se l'input va interpretato come comando
+     */
+    public RispostaInAttesa getRispostaInAttesa() {
+        return rispostaInAttesa;
+    }
+
+    /**
+     * Registra la risposta che la partita sta aspettando, in modo che l'attesa
+     * possa essere ricreata dopo un ripristino.
+     *
+     * @param rispostaInAttesa La risposta in attesa, o null al termine dell'attesa
+     */
+    public void setRispostaInAttesa(RispostaInAttesa rispostaInAttesa) {
+        this.rispostaInAttesa = rispostaInAttesa;
+    }
+
     public boolean isPrimaAzioneGaslyAttivata() {
         return primaAzioneGaslyAttivata;
     }
 
     public void setPrimaAzioneGaslyAttivata(boolean primaAzioneGaslyAttivata) {
+        segnaFlag(FlagDiGioco.PRIMA_AZIONE_GASLY, this.primaAzioneGaslyAttivata, primaAzioneGaslyAttivata);
         this.primaAzioneGaslyAttivata = primaAzioneGaslyAttivata;
     }
 
@@ -325,6 +667,7 @@ public abstract class DescrizioneGioco implements Serializable {
     }
 
     public void setSecondaAzioneGaslyAttivata(boolean secondaAzioneGaslyAttivata) {
+        segnaFlag(FlagDiGioco.SECONDA_AZIONE_GASLY, this.secondaAzioneGaslyAttivata, secondaAzioneGaslyAttivata);
         this.secondaAzioneGaslyAttivata = secondaAzioneGaslyAttivata;
     }
 
@@ -333,6 +676,7 @@ public abstract class DescrizioneGioco implements Serializable {
     }
 
     public void setTerzaAzioneGaslyAttivata(boolean terzaAzioneGaslyAttivata) {
+        segnaFlag(FlagDiGioco.TERZA_AZIONE_GASLY, this.terzaAzioneGaslyAttivata, terzaAzioneGaslyAttivata);
         this.terzaAzioneGaslyAttivata = terzaAzioneGaslyAttivata;
     }
 
@@ -340,8 +684,73 @@ public abstract class DescrizioneGioco implements Serializable {
         return torciaAccesa;
     }
 
+    /**
+     * Accende o spegne la torcia, mantenendo allineato lo stato delle sorgenti di luce
+     * attivabili presenti nell'inventario.
+     *
+     * @param torciaAccesa true per accendere la torcia, false per spegnerla
+     */
     public void setTorciaAccesa(boolean torciaAccesa) {
+        segnaFlag(FlagDiGioco.TORCIA_ACCESA, this.torciaAccesa, torciaAccesa);
         this.torciaAccesa = torciaAccesa;
+        for (Oggetto oggetto : inventario) {
+            if (oggetto instanceof OggettoAttivabile && oggetto.isSorgenteLuce()) {
+                OggettoAttivabile sorgente = (OggettoAttivabile) oggetto;
+                if (sorgente.isAttivo() != torciaAccesa) {
+                    sorgente.setAttivo(torciaAccesa);
+                    getGestoreVisibilita().luceCambiata(sorgente);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce il valore del flag indicato.
+     *
+     * @param flag Il flag da leggere
+     * @return Il valore del flag
+     */
+    public boolean getFlag(FlagDiGioco flag) {
+        return switch (flag) {
+            case TORCIA_ACCESA -> isTorciaAccesa();
+            case CREATURA_CANIDE_ATTIVATA -> isCreaturaCanideAttivata();
+            case CREATURA_CANIDE_SCONFITTA -> isCreaturaCanideSconfitta();
+            case PRIMA_AZIONE_GASLY -> isPrimaAzioneGaslyAttivata();
+            case SECONDA_AZIONE_GASLY -> isSecondaAzioneGaslyAttivata();
+            case TERZA_AZIONE_GASLY -> isTerzaAzioneGaslyAttivata();
+            case TERRENO_SCAVATO -> isTerrenoScavato();
+        };
+    }
+
+    /**
+     * Imposta il flag indicato tramite il setter corrispondente.
+     *
+     * @param flag Il flag da impostare
+     * @param valore Il nuovo valore del flag
+     */
+    public void setFlag(FlagDiGioco flag, boolean valore) {
+        switch (flag) {
+            case TORCIA_ACCESA -> setTorciaAccesa(valore);
+            case CREATURA_CANIDE_ATTIVATA -> setCreaturaCanideAttivata(valore);
+            case CREATURA_CANIDE_SCONFITTA -> setCreaturaCanideSconfitta(valore);
+            case PRIMA_AZIONE_GASLY -> setPrimaAzioneGaslyAttivata(valore);
+            case SECONDA_AZIONE_GASLY -> setSecondaAzioneGaslyAttivata(valore);
+            case TERZA_AZIONE_GASLY -> setTerzaAzioneGaslyAttivata(valore);
+            case TERRENO_SCAVATO -> setTerrenoScavato(valore);
+        }
+    }
+
+    /**
+     * Segna come modificato il flag indicato, se il suo valore sta effettivamente cambiando.
+     *
+     * @param flag Il flag da segnare
+     * @param valoreAttuale Il valore corrente del flag
+     * @param nuovoValore Il valore che sta per essere impostato
+     */
+    private void segnaFlag(FlagDiGioco flag, boolean valoreAttuale, boolean nuovoValore) {
+        if (valoreAttuale != nuovoValore) {
+            getModifiche().segnaFlag(flag);
+        }
     }
 
     public boolean isTerrenoScavato() {
@@ -349,6 +758,7 @@ public abstract class DescrizioneGioco implements Serializable {
     }
 
     public void setTerrenoScavato(boolean scavato) {
+        segnaFlag(FlagDiGioco.TERRENO_SCAVATO, this.terrenoScavatoInSerra, scavato);
         this.terrenoScavatoInSerra = scavato;
     }
 
@@ -0,0 +1,139 @@
+package di.lacosa;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classe che esegue gli effetti collaterali dei comandi fuori dal flusso del comando.
+ * <p>
+ * I comandi modificano lo stato della partita in modo sincrono; tutto ciò che non riguarda
+ * lo stato (scrittura dei salvataggi, finestre dell'interfaccia, messaggi di log) viene affidato
+ * a un {@link Canale}, in modo che la durata del comando comprenda solo la modifica dello stato.
+ * <p>
+ * Ogni canale esegue i propri effetti uno alla volta, nell'ordine in cui sono stati inviati:
+ * <ul>
+ *   <li>{@link Canale#PERSISTENZA} e {@link Canale#REGISTRO} usano ciascuno un thread dedicato alla partita,
+ *       che termina da solo quando resta inattivo</li>
+ *   <li>{@link Canale#INTERFACCIA} usa l'esecutore del frontend collegato alla partita
+ *       (l'Event Dispatch Thread per l'interfaccia Swing), impostato con {@link #setEsecutoreInterfaccia(Executor)}</li>
+ * </ul>
+ * Un errore in un effetto viene stampato e non interrompe gli effetti successivi.
+ *
+ * @author fabioMarchitelli
+ */
+public class EsecutoreEffetti {
+
+    private static final long SECONDI_INATTIVITA = 30;
+
+    /**
+     * Canali su cui possono essere inviati gli effetti collaterali.
+     */
+    public enum Canale {
+
+        /**
+         * Scrittura su disco (es. salvataggi)
+         */
+        PERSISTENZA,
+
+        /**
+         * Operazioni sull'interfaccia grafica (es. finestre di lettura)
+         */
+        INTERFACCIA,
+
+        /**
+         * Messaggi di log e diagnostica
+         */
+        REGISTRO
+    }
+
+    private final EnumMap<Canale, ExecutorService> esecutori = new EnumMap<>(Canale.class);
+    private volatile Executor esecutoreInterfaccia = Runnable::run;
+
+    /**
+     * Imposta l'esecutore del canale {@link Canale#INTERFACCIA}. Senza frontend collegato
+     * gli effetti sull'interfaccia vengono eseguiti subito, nel thread del comando.
+     *
+     * @param esecutore L'esecutore fornito dal frontend
+     */
+    public void setEsecutoreInterfaccia(Executor esecutore) {
+        this.esecutoreInterfaccia = esecutore;
+    }
+
+    /**
+     * Invia un effetto al canale indicato.
+     *
+     * @param canale Il canale su cui eseguire l'effetto
+     * @param effetto L'effetto da eseguire
+     */
+    public void esegui(Canale canale, Runnable effetto) {
+        Runnable protetto = () -> {
+            try {
+                effetto.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        };
+        if (canale == Canale.INTERFACCIA) {
+            esecutoreInterfaccia.execute(protetto);
+        } else {
+            getEsecutore(canale).execute(protetto);
+        }
+    }
+
+    /**
+     * Attende che gli effetti già inviati ai canali con thread dedicato siano completati,
+     * per al massimo il tempo indicato. Da usare prima di terminare una partita
+     * per non perdere salvataggi ancora in scrittura.
+     *
+     * @param millisecondi Il tempo massimo di attesa
+     * @return true se tutti gli effetti sono stati completati, false se il tempo è scaduto
+     * @throws InterruptedException Se il thread viene interrotto durante l'attesa
+     */
+    public boolean attendi(long millisecondi) throws InterruptedException {
+        long scadenza = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millisecondi);
+        List<Future<?>> marcatori = new ArrayList<>();
+        synchronized (esecutori) {
+            // Ogni canale esegue in ordine: il marcatore termina dopo tutti gli effetti inviati prima
+            for (ExecutorService esecutore : esecutori.values()) {
+                marcatori.add(esecutore.submit(() -> { }));
+            }
+        }
+        for (Future<?> marcatore : marcatori) {
+            try {
+                marcatore.get(Math.max(0, scadenza - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return true;
+    }
+
+    private ExecutorService getEsecutore(Canale canale) {
+        synchronized (esecutori) {
+            ExecutorService esecutore = esecutori.get(canale);
+            if (esecutore == null) {
+                ThreadPoolExecutor nuovo = new ThreadPoolExecutor(1, 1, SECONDI_INATTIVITA, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), r -> {
+                            Thread thread = new Thread(r, "Effetti-" + canale.name().toLowerCase());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                nuovo.allowCoreThreadTimeOut(true);
+                esecutori.put(canale, nuovo);
+                esecutore = nuovo;
+            }
+            return esecutore;
+        }
+    }
+}
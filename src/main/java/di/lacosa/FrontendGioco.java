@@ -0,0 +1,100 @@
+package di.lacosa;
+
+import java.util.function.Consumer;
+
+/**
+ * Interfaccia che rappresenta ciò che la logica di gioco richiede a un'interfaccia utente.
+ * <p>
+ * Gli osservatori, la partita e i thread di gioco comunicano con il giocatore solo attraverso
+ * questa interfaccia, per cui la stessa partita può essere giocata con l'interfaccia grafica Swing
+ * ({@link di.lacosa.ui.InterfacciaGioco}) oppure senza display, ad esempio su un server o nei benchmark
+ * ({@link di.lacosa.implementazione.FrontendTestuale}).
+ *
+ * @author fabioMarchitelli
+ */
+public interface FrontendGioco {
+
+    /**
+     * Scrive il testo nell'area di output, andando a capo alla fine.
+     *
+     * @param testo il testo da visualizzare
+     */
+    void scriviInAreaDiTesto(String testo);
+
+    /**
+     * Aggiunge il testo all'area di output così com'è, senza andare a capo.
+     *
+     * @param testo il testo da aggiungere
+     */
+    void aggiungiInAreaDiTesto(String testo);
+
+    /**
+     * Svuota l'area di output.
+     */
+    void svuotaAreaDiTesto();
+
+    /**
+     * Svuota l'area di output e mostra nome e descrizione della stanza.
+     *
+     * @param nomeStanza il nome della stanza
+     * @param descrizione la descrizione della stanza
+     */
+    void mostraStanzaPulita(String nomeStanza, String descrizione);
+
+    /**
+     * Aggiorna la posizione del giocatore sulla mappa.
+     *
+     * @param idStanza l'ID della stanza corrente
+     */
+    void aggiornaMappa(int idStanza);
+
+    /**
+     * Indirizza il prossimo input del giocatore al callback invece che al parser
+     * (utilizzato per i dialoghi e i codici delle porte). Con null si torna alla modalità comandi.
+     *
+     * @param callback la funzione che riceverà l'input, o null
+     */
+    void attendiRispostaGiocatore(Consumer<String> callback);
+
+    /**
+     * Consente al giocatore di inserire input.
+     */
+    void abilitaInput();
+
+    /**
+     * Impedisce al giocatore di inserire input.
+     */
+    void disabilitaInput();
+
+    /**
+     * Mostra un testo da leggere (documenti, istruzioni) senza bloccare il chiamante.
+     *
+     * @param testo il testo da mostrare
+     * @param titolo il titolo del testo
+     */
+    void mostraLettura(String testo, String titolo);
+
+    /**
+     * Chiede al giocatore di scegliere tra più opzioni e attende la risposta.
+     *
+     * @param messaggio la domanda da porre
+     * @param titolo il titolo della richiesta
+     * @param opzioni le opzioni disponibili
+     * @return l'indice dell'opzione scelta, o -1 se la richiesta è stata annullata
+     */
+    int chiediScelta(String messaggio, String titolo, String[] opzioni);
+
+    /**
+     * Esegue un'operazione nel contesto dell'interfaccia, dopo le operazioni già richieste.
+     *
+     * @param operazione l'operazione da eseguire
+     */
+    void eseguiInInterfaccia(Runnable operazione);
+
+    /**
+     * Restituisce il numero di caratteri accumulati nell'area di output.
+     *
+     * @return la lunghezza del testo mostrato
+     */
+    int getLunghezzaAreaDiTesto();
+}
@@ -0,0 +1,532 @@
+package di.lacosa;
+
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.CicloSessione;
+import di.lacosa.implementazione.DiarioComandi;
+import di.lacosa.implementazione.FrontendTestuale;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.implementazione.ModelloPartita;
+import di.lacosa.implementazione.SessioneGioco;
+import di.lacosa.tipi.Comando;
+import di.lacosa.tipi.Oggetto;
+import di.lacosa.tipi.Personaggio;
+import di.lacosa.tipi.PuntoCardinale;
+import di.lacosa.tipi.Utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fuzzer dei comandi: bombarda sessioni senza interfaccia con comandi casuali, alla massima velocità,
+ * alla ricerca di eccezioni, stati incoerenti della partita e comandi anomali per durata.
+ * <p>
+ * I comandi vengono composti dal vocabolario reale del gioco: nomi e alias dei comandi, degli oggetti
+ * e dei personaggi, direzioni, stopwords, numeri (risposte a dialoghi e codici delle porte) e spazzatura.
+ * La maggior parte segue la grammatica del parser ("verbo oggetto", "verbo oggetto con oggetto"),
+ * il resto mescola parole a caso o altera comandi validi.
+ * <p>
+ * Ogni thread gioca le proprie sessioni, indipendenti tra loro, con un {@link OrologioVirtuale} che avanza
+ * di un tempo casuale tra un comando e l'altro (per far scattare anche gli eventi a tempo) e un ciclo
+ * eseguito nel thread stesso. Dopo ogni comando vengono verificati gli invarianti della partita
+ * ({@link #verificaInvarianti}). Ogni sessione è registrata in un {@link DiarioComandi}: per ogni anomalia
+ * distinta il diario della prima occorrenza può essere scritto su file e riprodotto con {@link RiproduttorePartite}.
+ *
+ * @author fabioMarchitelli
+ */
+public class FuzzerComandi {
+
+    /**
+     * Comandi giocati da una sessione prima di ripartire da una nuova partita
+     */
+    public static final int COMANDI_PER_SESSIONE = 400;
+
+    /**
+     * Numero di comandi più lenti riportati
+     */
+    public static final int COMANDI_LENTI = 15;
+
+    private static final String CARATTERI_SPAZZATURA = "abcdefghijklmnopqrstuvwxyzàèéìòù0123456789 .,;:!?'\"-_/\\@#%&*()[]{}<>\t";
+    /** Avanzamento massimo dell'orologio virtuale tra due comandi */
+    private static final long AVANZAMENTO_MASSIMO_MS = 4000;
+
+    private final ModelloPartita modello;
+    private final Vocabolario vocabolario;
+    private final Path cartellaDiari;
+    private final Map<String, Anomalia> anomalie = new ConcurrentHashMap<>();
+    private final AtomicInteger progressivoDiari = new AtomicInteger();
+
+    /**
+     * Tipo di anomalia trovata dal fuzzer.
+     */
+    public enum TipoAnomalia {
+        /** Il comando ha sollevato un'eccezione */
+        ECCEZIONE,
+        /** Dopo il comando la partita viola un invariante */
+        INVARIANTE
+    }
+
+    /**
+     * Anomalia distinta trovata dal fuzzer.
+     *
+     * @param tipo Il tipo di anomalia
+     * @param firma La descrizione che distingue l'anomalia dalle altre
+     * @param comando Il comando della prima occorrenza
+     * @param occorrenze Le occorrenze dell'anomalia
+     * @param diario Il file con il diario della prima occorrenza, o null se non scritto
+     */
+    public record Anomalia(TipoAnomalia tipo, String firma, String comando, AtomicInteger occorrenze, Path diario) {
+    }
+
+    /**
+     * Comando lento.
+     *
+     * @param comando Il comando
+     * @param durataNanos La durata del comando
+     */
+    public record ComandoLento(String comando, long durataNanos) {
+    }
+
+    /**
+     * Rapporto di una campagna di fuzzing.
+     *
+     * @param comandi I comandi eseguiti
+     * @param sessioni Le sessioni giocate
+     * @param secondi La durata della campagna
+     * @param anomalie Le anomalie distinte trovate
+     * @param lenti I comandi più lenti, dal più lento
+     */
+    public record Rapporto(long comandi, long sessioni, double secondi, List<Anomalia> anomalie, List<ComandoLento> lenti) {
+
+        @Override
+        public String toString() {
+            StringBuilder rapporto = new StringBuilder();
+            rapporto.append(String.format("Comandi: %d in %.1f s (%.0f comandi/s), sessioni: %d%n",
+                    comandi, secondi, comandi / secondi, sessioni));
+            rapporto.append(String.format("Anomalie distinte: %d%n", anomalie.size()));
+            for (Anomalia anomalia : anomalie) {
+                rapporto.append(String.format("  [%s x%d] %s%n      comando: \"%s\"%s%n", anomalia.tipo(),
+                        anomalia.occorrenze().get(), anomalia.firma(), anomalia.comando(),
+                        anomalia.diario() != null ? "\n      diario: " + anomalia.diario() : ""));
+            }
+            rapporto.append("Comandi più lenti:").append(System.lineSeparator());
+            for (ComandoLento lento : lenti) {
+                rapporto.append(String.format("  %8.3f ms  \"%s\"%n", lento.durataNanos() / 1e6, lento.comando()));
+            }
+            return rapporto.toString();
+        }
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare le partite
+     * @param cartellaDiari La cartella in cui scrivere i diari delle anomalie, o null per non scriverli
+     * @throws IOException Se le stopwords o la cartella non sono disponibili
+     */
+    public FuzzerComandi(ModelloPartita modello, Path cartellaDiari) throws IOException {
+        this.modello = modello;
+        this.vocabolario = new Vocabolario(modello.creaPartita());
+        this.cartellaDiari = cartellaDiari;
+        if (cartellaDiari != null) {
+            Files.createDirectories(cartellaDiari);
+        }
+    }
+
+    /**
+     * Avvia una campagna di fuzzing. Argomenti nella forma {@code chiave=valore}, tutti facoltativi:
+     * {@code thread} (uno per processore), {@code durata} in secondi (30), {@code seme}
+     * e {@code diari} (cartella dei diari delle anomalie).
+     *
+     * @param args Gli argomenti della campagna
+     * @throws Exception Se il database non è disponibile o il fuzzer viene interrotto
+     */
+    public static void main(String[] args) throws Exception {
+        int thread = Runtime.getRuntime().availableProcessors();
+        long durata = 30;
+        long seme = System.nanoTime();
+        Path diari = null;
+        for (String argomento : args) {
+            int uguale = argomento.indexOf('=');
+            String chiave = uguale > 0 ? argomento.substring(0, uguale) : argomento;
+            String valore = uguale > 0 ? argomento.substring(uguale + 1) : "";
+            switch (chiave) {
+                case "thread":
+                    thread = Integer.parseInt(valore);
+                    break;
+                case "durata":
+                    durata = Long.parseLong(valore);
+                    break;
+                case "seme":
+                    seme = Long.parseLong(valore);
+                    break;
+                case "diari":
+                    diari = Paths.get(valore);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argomento sconosciuto: " + argomento);
+            }
+        }
+        DatabaseManager.main(new String[]{});
+        FuzzerComandi fuzzer = new FuzzerComandi(ModelloPartita.daDatabase(), diari);
+        System.out.println("Seme: " + seme);
+        System.out.println(fuzzer.esegui(thread, TimeUnit.SECONDS.toMillis(durata), seme));
+    }
+
+    /**
+     * Esegue una campagna di fuzzing.
+     *
+     * @param thread Il numero di thread, ognuno con le proprie sessioni
+     * @param durataMs La durata della campagna in millisecondi
+     * @param seme Il seme dei generatori casuali dei thread
+     * @return Il rapporto della campagna
+     * @throws InterruptedException Se il thread viene interrotto durante la campagna
+     */
+    public Rapporto esegui(int thread, long durataMs, long seme) throws InterruptedException {
+        AtomicInteger contatore = new AtomicInteger();
+        ExecutorService esecutore = Executors.newFixedThreadPool(thread, r -> {
+            Thread t = new Thread(r, "Fuzzer-" + contatore.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            long inizio = System.nanoTime();
+            long fine = inizio + TimeUnit.MILLISECONDS.toNanos(durataMs);
+            List<Future<Lavoratore>> lavori = new ArrayList<>(thread);
+            for (int i = 0; i < thread; i++) {
+                Lavoratore lavoratore = new Lavoratore(new SplittableRandom(seme + i));
+                lavori.add(esecutore.submit(() -> lavoratore.lavora(fine), lavoratore));
+            }
+            long comandi = 0;
+            long sessioni = 0;
+            PriorityQueue<ComandoLento> lenti = new PriorityQueue<>(Comparator.comparingLong(ComandoLento::durataNanos));
+            for (Future<Lavoratore> lavoro : lavori) {
+                Lavoratore lavoratore;
+                try {
+                    lavoratore = lavoro.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Un thread del fuzzer si è interrotto", e.getCause());
+                }
+                comandi += lavoratore.comandi;
+                sessioni += lavoratore.sessioni;
+                for (ComandoLento lento : lavoratore.lenti) {
+                    aggiungiLento(lenti, lento);
+                }
+            }
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            List<ComandoLento> ordinati = new ArrayList<>(lenti);
+            ordinati.sort(Comparator.comparingLong(ComandoLento::durataNanos).reversed());
+            List<Anomalia> trovate = new ArrayList<>(anomalie.values());
+            trovate.sort(Comparator.comparing(Anomalia::tipo).thenComparing(Anomalia::firma));
+            return new Rapporto(comandi, sessioni, secondi, trovate, ordinati);
+        } finally {
+            esecutore.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifica gli invarianti della partita:
+     * <ul>
+     *   <li>La stanza corrente esiste ed è quella registrata nel gioco con il suo identificativo</li>
+     *   <li>Gli identificativi degli oggetti sono unici</li>
+     *   <li>Nessun oggetto dell'inventario si trova anche in una stanza</li>
+     *   <li>Nessun oggetto visibile nella stanza corrente è anche nell'inventario</li>
+     *   <li>L'insieme visibile in cache coincide con quello ricalcolato da zero</li>
+     *   <li>La creatura non può essere sconfitta senza essere stata attivata</li>
+     * </ul>
+     *
+     * @param gioco La partita da verificare
+     * @return Le violazioni trovate, vuote se la partita è coerente
+     */
+    public static List<String> verificaInvarianti(DescrizioneGioco gioco) {
+        List<String> violazioni = new ArrayList<>();
+        if (gioco.getStanzaCorrente() == null) {
+            violazioni.add("Stanza corrente assente");
+            return violazioni;
+        }
+        int idStanza = gioco.getStanzaCorrente().getIdStanza();
+        if (gioco.getStanzaPerId(idStanza) != gioco.getStanzaCorrente()) {
+            violazioni.add("La stanza corrente " + idStanza + " non è quella registrata con il suo identificativo");
+        }
+        Set<Integer> identificativi = new HashSet<>();
+        for (Oggetto oggetto : gioco.getOggetti()) {
+            if (!identificativi.add(oggetto.getId())) {
+                violazioni.add("Identificativo duplicato per l'oggetto " + oggetto.getId());
+            }
+        }
+        for (Oggetto oggetto : gioco.getInventario()) {
+            if (oggetto.getId_stanza() > 0) {
+                violazioni.add("L'oggetto " + oggetto.getId() + " è nell'inventario e nella stanza " + oggetto.getId_stanza());
+            }
+        }
+        for (Oggetto oggetto : gioco.getOggettiVisibili()) {
+            if (gioco.getInventario().contains(oggetto)) {
+                violazioni.add("L'oggetto " + oggetto.getId() + " è visibile nella stanza ed è nell'inventario");
+            }
+        }
+        GestoreVisibilita.InsiemeVisibile ricalcolato = new GestoreVisibilita(gioco).getInsiemeVisibile(gioco.getStanzaCorrente());
+        if (!ricalcolato.getOggetti().equals(gioco.getOggettiVisibili())) {
+            violazioni.add("Oggetti visibili in cache non aggiornati nella stanza " + idStanza);
+        }
+        if (!ricalcolato.getPersonaggi().equals(gioco.getPersonaggiVisibili())) {
+            violazioni.add("Personaggi visibili in cache non aggiornati nella stanza " + idStanza);
+        }
+        if (gioco.isCreaturaCanideSconfitta() && !gioco.isCreaturaCanideAttivata()) {
+            violazioni.add("Creatura sconfitta senza essere stata attivata");
+        }
+        return violazioni;
+    }
+
+    /**
+     * Registra un'anomalia; la prima occorrenza di ogni firma scrive il diario della sessione.
+     */
+    private void segnala(TipoAnomalia tipo, String firma, String comando, DiarioComandi diario) {
+        Anomalia esistente = anomalie.get(firma);
+        if (esistente != null) {
+            esistente.occorrenze().incrementAndGet();
+            return;
+        }
+        Path file = null;
+        if (cartellaDiari != null) {
+            file = cartellaDiari.resolve("anomalia-" + progressivoDiari.incrementAndGet() + ".diario");
+        }
+        Anomalia nuova = new Anomalia(tipo, firma, comando, new AtomicInteger(1), file);
+        esistente = anomalie.putIfAbsent(firma, nuova);
+        if (esistente != null) {
+            esistente.occorrenze().incrementAndGet();
+        } else if (file != null) {
+            try {
+                diario.scrivi(file);
+            } catch (IOException e) {
+                System.err.println("Impossibile scrivere il diario " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void aggiungiLento(PriorityQueue<ComandoLento> lenti, ComandoLento lento) {
+        if (lenti.size() < COMANDI_LENTI) {
+            lenti.add(lento);
+        } else if (lenti.peek().durataNanos() < lento.durataNanos()) {
+            lenti.poll();
+            lenti.add(lento);
+        }
+    }
+
+    /**
+     * Firma di un'eccezione: la classe e il primo punto del gioco da cui è stata sollevata.
+     */
+    private static String firma(Throwable eccezione) {
+        Throwable causa = eccezione;
+        while (causa.getCause() != null && causa.getCause() != causa) {
+            causa = causa.getCause();
+        }
+        String punto = "?";
+        for (StackTraceElement elemento : causa.getStackTrace()) {
+            if (elemento.getClassName().startsWith("di.lacosa.")) {
+                punto = elemento.getClassName() + "." + elemento.getMethodName() + ":" + elemento.getLineNumber();
+                break;
+            }
+        }
+        return causa.getClass().getName() + " in " + punto;
+    }
+
+
+    /**
+     * Thread del fuzzer: gioca sessioni una dopo l'altra, con il proprio generatore e le proprie statistiche.
+     */
+    private final class Lavoratore {
+
+        private final SplittableRandom caso;
+        private final PriorityQueue<ComandoLento> lenti = new PriorityQueue<>(Comparator.comparingLong(ComandoLento::durataNanos));
+        private long comandi;
+        private long sessioni;
+
+        private Lavoratore(SplittableRandom caso) {
+            this.caso = caso;
+        }
+
+        private void lavora(long fine) {
+            while (System.nanoTime() - fine < 0) {
+                giocaSessione(fine);
+            }
+        }
+
+        private void giocaSessione(long fine) {
+            sessioni++;
+            LaCosa gioco = modello.creaPartita();
+            OrologioVirtuale orologio = new OrologioVirtuale();
+            gioco.setOrologio(orologio);
+            FrontendTestuale frontend = new FrontendTestuale(caso.nextInt(4) - 1);
+            SessioneGioco sessione = new SessioneGioco(gioco, frontend, new CicloSessione(Runnable::run));
+            sessione.setLimitatore(null);
+            DiarioComandi diario = new DiarioComandi(orologio);
+            sessione.setDiario(diario);
+            try {
+                sessione.presentaAmbiente();
+                for (int i = 0; i < COMANDI_PER_SESSIONE && !sessione.isConclusa() && System.nanoTime() - fine < 0; i++) {
+                    orologio.avanza(caso.nextLong(AVANZAMENTO_MASSIMO_MS), TimeUnit.MILLISECONDS);
+                    String comando = vocabolario.genera(caso);
+                    long inizio = System.nanoTime();
+                    try {
+                        sessione.eseguiComando(comando);
+                    } catch (RuntimeException | Error e) {
+                        segnala(TipoAnomalia.ECCEZIONE, firma(e), comando, diario);
+                        // Lo stato della partita dopo un'eccezione non è affidabile
+                        return;
+                    } finally {
+                        aggiungiLento(lenti, new ComandoLento(comando, System.nanoTime() - inizio));
+                        comandi++;
+                        frontend.prelevaTesto();
+                    }
+                    List<String> violazioni = verificaInvarianti(gioco);
+                    for (String violazione : violazioni) {
+                        segnala(TipoAnomalia.INVARIANTE, violazione, comando, diario);
+                    }
+                    if (!violazioni.isEmpty()) {
+                        return;
+                    }
+                }
+            } finally {
+                sessione.termina();
+            }
+        }
+    }
+
+    /**
+     * Vocabolario del gioco con cui vengono composti i comandi.
+     */
+    private static final class Vocabolario {
+
+        private final List<String> verbi = new ArrayList<>();
+        private final List<String> nomi = new ArrayList<>();
+        private final List<String> direzioni = new ArrayList<>();
+        private final List<String> stopwords;
+        private final List<String> tutte = new ArrayList<>();
+
+        private Vocabolario(LaCosa gioco) throws IOException {
+            for (Comando comando : gioco.getComandi()) {
+                aggiungi(verbi, comando.getNome(), comando.getAlias());
+            }
+            for (Oggetto oggetto : gioco.getOggetti()) {
+                aggiungi(nomi, oggetto.getNome(), oggetto.getAlias());
+            }
+            for (Personaggio personaggio : gioco.getPersonaggi()) {
+                aggiungi(nomi, personaggio.getNome(), personaggio.getAliases());
+            }
+            for (PuntoCardinale punto : PuntoCardinale.values()) {
+                if (punto != PuntoCardinale.INVALIDO) {
+                    direzioni.add(punto.name().toLowerCase());
+                }
+            }
+            stopwords = new ArrayList<>(Utils.caricaFileInSet(Utils.class.getResourceAsStream("/stopwords")));
+            // Ordine stabile: a parità di seme il fuzzer genera gli stessi comandi
+            verbi.sort(null);
+            nomi.sort(null);
+            stopwords.sort(null);
+            tutte.addAll(verbi);
+            tutte.addAll(nomi);
+            tutte.addAll(direzioni);
+            tutte.addAll(stopwords);
+            if (verbi.isEmpty()) {
+                verbi.add("osserva");
+            }
+            if (nomi.isEmpty()) {
+                nomi.add("oggetto");
+            }
+        }
+
+        private static void aggiungi(List<String> parole, String nome, Collection<String> alias) {
+            if (nome != null && !nome.isEmpty()) {
+                parole.add(nome);
+            }
+            if (alias != null) {
+                for (String a : alias) {
+                    if (a != null && !a.isEmpty()) {
+                        parole.add(a);
+                    }
+                }
+            }
+        }
+
+        private String genera(SplittableRandom caso) {
+            int forma = caso.nextInt(100);
+            String comando;
+            if (forma < 25) {
+                comando = scegli(verbi, caso) + " " + scegli(nomi, caso);
+            } else if (forma < 40) {
+                comando = scegli(verbi, caso) + " " + scegli(direzioni, caso);
+            } else if (forma < 50) {
+                comando = scegli(verbi, caso);
+            } else if (forma < 60) {
+                comando = scegli(verbi, caso) + " " + scegli(stopwords, caso) + " " + scegli(nomi, caso);
+            } else if (forma < 70) {
+                comando = scegli(verbi, caso) + " " + scegli(nomi, caso) + " " + scegli(stopwords, caso) + " " + scegli(nomi, caso);
+            } else if (forma < 75) {
+                comando = scegli(nomi, caso);
+            } else if (forma < 85) {
+                StringBuilder miscuglio = new StringBuilder();
+                int parole = 1 + caso.nextInt(6);
+                for (int i = 0; i < parole; i++) {
+                    miscuglio.append(i > 0 ? " " : "").append(scegli(tutte, caso));
+                }
+                comando = miscuglio.toString();
+            } else if (forma < 90) {
+                comando = String.valueOf(caso.nextInt(caso.nextBoolean() ? 10 : 10000));
+            } else if (forma < 95) {
+                comando = altera(scegli(verbi, caso) + " " + scegli(nomi, caso), caso);
+            } else {
+                comando = spazzatura(caso);
+            }
+            return caso.nextInt(10) == 0 ? comando.toUpperCase() : comando;
+        }
+
+        private static String scegli(List<String> parole, SplittableRandom caso) {
+            return parole.isEmpty() ? "" : parole.get(caso.nextInt(parole.size()));
+        }
+
+        /**
+         * Altera un comando valido: lo tronca, ne raddoppia gli spazi o vi inserisce un carattere casuale.
+         */
+        private static String altera(String comando, SplittableRandom caso) {
+            if (comando.isEmpty()) {
+                return comando;
+            }
+            int posizione = caso.nextInt(comando.length());
+            switch (caso.nextInt(3)) {
+                case 0:
+                    return comando.substring(0, posizione);
+                case 1:
+                    return comando.replace(" ", "   ");
+                default:
+                    char carattere = CARATTERI_SPAZZATURA.charAt(caso.nextInt(CARATTERI_SPAZZATURA.length()));
+                    return comando.substring(0, posizione) + carattere + comando.substring(posizione);
+            }
+        }
+
+        private static String spazzatura(SplittableRandom caso) {
+            int lunghezza = 1 + caso.nextInt(caso.nextInt(8) == 0 ? 2000 : 40);
+            StringBuilder spazzatura = new StringBuilder(lunghezza);
+            for (int i = 0; i < lunghezza; i++) {
+                spazzatura.append(CARATTERI_SPAZZATURA.charAt(caso.nextInt(CARATTERI_SPAZZATURA.length())));
+            }
+            return spazzatura.toString();
+        }
+    }
+}
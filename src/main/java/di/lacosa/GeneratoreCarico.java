@@ -0,0 +1,455 @@
+package di.lacosa;
+
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.FrontendTestuale;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.implementazione.ModelloPartita;
+import di.lacosa.implementazione.SchedulatoreShard;
+import di.lacosa.implementazione.SessioneGioco;
+import di.lacosa.tipi.Comando;
+import di.lacosa.tipi.Oggetto;
+import di.lacosa.tipi.Personaggio;
+import di.lacosa.tipi.RispostaInAttesa;
+import di.lacosa.tipi.TipoComando;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generatore di carico: avvia molte sessioni senza interfaccia e le fa giocare da bot,
+ * per dimensionare l'hardware di un server.
+ * <p>
+ * Ogni bot guida la propria {@link SessioneGioco} con un copione (un comando per riga, ripetuto
+ * ciclicamente) oppure con una partita casuale che si muove con "vai", raccoglie, legge ed esamina
+ * gli oggetti visibili, parla con i personaggi rispondendo ai dialoghi e spara. Tra un comando e l'altro
+ * il bot aspetta un tempo di riflessione casuale nell'intervallo configurato. Il limitatore dei comandi
+ * delle sessioni è disattivato: il ritmo lo decide il tempo di riflessione.
+ * <p>
+ * Al termine vengono riportati:
+ * <ul>
+ *   <li>Comandi eseguiti e throughput</li>
+ *   <li>Latenza dei comandi (p50, p99, p999 e massima), misurata dall'invio al termine del comando</li>
+ *   <li>Memoria allocata al secondo da tutti i thread della JVM durante la prova</li>
+ *   <li>Heap occupato da ogni sessione, misurato dopo una garbage collection</li>
+ * </ul>
+ *
+ * @author fabioMarchitelli
+ */
+public class GeneratoreCarico {
+
+    private static final String[] DIREZIONI = {"nord", "sud", "est", "ovest"};
+
+    private final ModelloPartita modello;
+    private final Parametri parametri;
+
+    /**
+     * Parametri della prova di carico.
+     *
+     * @param sessioni Il numero di sessioni, ognuna guidata da un bot
+     * @param durataMs La durata della prova in millisecondi
+     * @param riflessioneMinimaMs Il tempo di riflessione minimo tra due comandi
+     * @param riflessioneMassimaMs Il tempo di riflessione massimo tra due comandi
+     * @param copione I comandi da ripetere, o null per partite casuali
+     * @param seme Il seme dei generatori casuali dei bot
+     */
+    public record Parametri(int sessioni, long durataMs, long riflessioneMinimaMs, long riflessioneMassimaMs,
+                            List<String> copione, long seme) {
+    }
+
+    /**
+     * Risultato di una prova di carico. I tempi sono in nanosecondi.
+     *
+     * @param comandi I comandi eseguiti
+     * @param secondi La durata effettiva della prova
+     * @param p50 La mediana della latenza
+     * @param p99 Il 99° percentile della latenza
+     * @param p999 Il 99,9° percentile della latenza
+     * @param massimo La latenza massima
+     * @param byteAllocati I byte allocati da tutti i thread durante la prova, o -1 se non misurabili
+     * @param heapPerSessione I byte di heap occupati da ogni sessione
+     */
+    public record Risultato(long comandi, double secondi, long p50, long p99, long p999, long massimo,
+                            long byteAllocati, long heapPerSessione) {
+
+        public double getComandiAlSecondo() {
+            return comandi / secondi;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Comandi: %d in %.1f s (%.0f comandi/s)%n"
+                            + "Latenza: p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, massima %.3f ms%n"
+                            + "Allocazione: %s%n"
+                            + "Heap per sessione: %.1f KB",
+                    comandi, secondi, getComandiAlSecondo(),
+                    p50 / 1e6, p99 / 1e6, p999 / 1e6, massimo / 1e6,
+                    byteAllocati < 0 ? "non disponibile" : String.format("%.1f MB/s", byteAllocati / secondi / (1024 * 1024)),
+                    heapPerSessione / 1024.0);
+        }
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare le partite dei bot
+     * @param parametri I parametri della prova
+     */
+    public GeneratoreCarico(ModelloPartita modello, Parametri parametri) {
+        this.modello = modello;
+        this.parametri = parametri;
+    }
+
+    /**
+     * Avvia una prova di carico. Argomenti nella forma {@code chiave=valore}, tutti facoltativi:
+     * {@code sessioni} (100), {@code durata} in secondi (60), {@code riflessione} in millisecondi
+     * come {@code minimo-massimo} (200-1000), {@code copione} (file con un comando per riga), {@code seme}.
+     *
+     * @param args Gli argomenti della prova
+     * @throws Exception Se il database non è disponibile o i bot vengono interrotti
+     */
+    public static void main(String[] args) throws Exception {
+        int sessioni = 100;
+        long durata = 60;
+        long riflessioneMinima = 200;
+        long riflessioneMassima = 1000;
+        List<String> copione = null;
+        long seme = System.nanoTime();
+        for (String argomento : args) {
+            int uguale = argomento.indexOf('=');
+            String chiave = uguale > 0 ? argomento.substring(0, uguale) : argomento;
+            String valore = uguale > 0 ? argomento.substring(uguale + 1) : "";
+            switch (chiave) {
+                case "sessioni":
+                    sessioni = Integer.parseInt(valore);
+                    break;
+                case "durata":
+                    durata = Long.parseLong(valore);
+                    break;
+                case "riflessione": {
+                    String[] estremi = valore.split("-");
+                    riflessioneMinima = Long.parseLong(estremi[0]);
+                    riflessioneMassima = estremi.length > 1 ? Long.parseLong(estremi[1]) : riflessioneMinima;
+                    break;
+                }
+                case "copione":
+                    copione = leggiCopione(valore);
+                    break;
+                case "seme":
+                    seme = Long.parseLong(valore);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argomento sconosciuto: " + argomento);
+            }
+        }
+        DatabaseManager.main(new String[]{});
+        Parametri parametri = new Parametri(sessioni, TimeUnit.SECONDS.toMillis(durata),
+                riflessioneMinima, riflessioneMassima, copione, seme);
+        System.out.println(new GeneratoreCarico(ModelloPartita.daDatabase(), parametri).esegui());
+    }
+
+    /**
+     * Esegue la prova e ne restituisce il risultato.
+     *
+     * @return Il risultato della prova
+     * @throws InterruptedException Se il thread viene interrotto durante la prova
+     */
+    public Risultato esegui() throws InterruptedException {
+        SchedulatoreShard schedulatore = SchedulatoreShard.perProcessori();
+        // Thread di piattaforma: le allocazioni dei thread virtuali non sono misurate per thread
+        AtomicInteger contatore = new AtomicInteger();
+        ExecutorService esecutore = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Bot-" + contatore.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long heapIniziale = heapOccupato();
+            List<Bot> bot = new ArrayList<>(parametri.sessioni());
+            for (int i = 0; i < parametri.sessioni(); i++) {
+                bot.add(new Bot(i, schedulatore));
+            }
+            long heapPerSessione = Math.max(0, heapOccupato() - heapIniziale) / Math.max(1, parametri.sessioni());
+
+            long allocatiIniziali = byteAllocati();
+            long inizio = System.nanoTime();
+            long fine = inizio + TimeUnit.MILLISECONDS.toNanos(parametri.durataMs());
+            List<Future<?>> esecuzioni = new ArrayList<>(bot.size());
+            for (Bot b : bot) {
+                esecuzioni.add(esecutore.submit(() -> b.gioca(fine)));
+            }
+            for (Future<?> esecuzione : esecuzioni) {
+                try {
+                    esecuzione.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            long allocatiFinali = byteAllocati();
+
+            Istogramma totale = new Istogramma();
+            for (Bot b : bot) {
+                totale.aggiungi(b.latenze);
+                b.sessione.termina();
+            }
+            return new Risultato(totale.conteggio, secondi, totale.percentile(0.50), totale.percentile(0.99),
+                    totale.percentile(0.999), totale.massimo,
+                    allocatiIniziali < 0 ? -1 : allocatiFinali - allocatiIniziali, heapPerSessione);
+        } finally {
+            esecutore.shutdownNow();
+            schedulatore.ferma();
+        }
+    }
+
+    private static List<String> leggiCopione(String percorso) throws IOException {
+        List<String> comandi = new ArrayList<>();
+        for (String riga : Files.readAllLines(Paths.get(percorso), StandardCharsets.UTF_8)) {
+            riga = riga.trim();
+            if (!riga.isEmpty() && !riga.startsWith("#")) {
+                comandi.add(riga);
+            }
+        }
+        if (comandi.isEmpty()) {
+            throw new IllegalArgumentException("Il copione non contiene comandi: " + percorso);
+        }
+        return comandi;
+    }
+
+    /**
+     * Heap occupato dopo una garbage collection richiesta esplicitamente.
+     */
+    private static long heapOccupato() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Byte allocati finora dai thread vivi della JVM, o -1 se la JVM non li misura.
+     * I thread terminati durante la prova non vengono contati: i bot e gli shard restano vivi fino alla fine.
+     */
+    private static long byteAllocati() {
+        ThreadMXBean thread = ManagementFactory.getThreadMXBean();
+        if (!(thread instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean misuratore = (com.sun.management.ThreadMXBean) thread;
+        if (!misuratore.isThreadAllocatedMemorySupported() || !misuratore.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long totale = 0;
+        for (long allocati : misuratore.getThreadAllocatedBytes(thread.getAllThreadIds())) {
+            if (allocati > 0) {
+                totale += allocati;
+            }
+        }
+        return totale;
+    }
+
+
+    /**
+     * Un bot: una sessione, il suo generatore casuale e le latenze dei suoi comandi.
+     */
+    private final class Bot {
+
+        private final int indice;
+        private final SchedulatoreShard schedulatore;
+        private final SplittableRandom caso;
+        private final Istogramma latenze = new Istogramma();
+        private final Map<TipoComando, String> nomiComandi = new EnumMap<>(TipoComando.class);
+        private SessioneGioco sessione;
+        private int rigaCopione;
+
+        private Bot(int indice, SchedulatoreShard schedulatore) {
+            this.indice = indice;
+            this.schedulatore = schedulatore;
+            this.caso = new SplittableRandom(parametri.seme() + indice);
+            nuovaSessione();
+            for (Comando comando : sessione.getGioco().getComandi()) {
+                nomiComandi.put(comando.getTipo(), comando.getNome());
+            }
+        }
+
+        private void nuovaSessione() {
+            LaCosa partita = modello.creaPartita();
+            sessione = new SessioneGioco(partita, new FrontendTestuale(), schedulatore.creaCiclo("bot-" + indice));
+            sessione.setLimitatore(null);
+            sessione.presentaAmbiente();
+            sessione.getFrontend().prelevaTesto();
+        }
+
+        private void gioca(long fine) {
+            try {
+                while (System.nanoTime() - fine < 0) {
+                    if (sessione.isConclusa()) {
+                        nuovaSessione();
+                    }
+                    String comando = prossimoComando();
+                    long inizio = System.nanoTime();
+                    sessione.eseguiComando(comando);
+                    latenze.registra(System.nanoTime() - inizio);
+                    sessione.getFrontend().prelevaTesto();
+                    rifletti();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void rifletti() throws InterruptedException {
+            long minimo = parametri.riflessioneMinimaMs();
+            long massimo = parametri.riflessioneMassimaMs();
+            long attesa = massimo > minimo ? minimo + caso.nextLong(massimo - minimo + 1) : minimo;
+            if (attesa > 0) {
+                Thread.sleep(attesa);
+            }
+        }
+
+        private String prossimoComando() {
+            List<String> copione = parametri.copione();
+            if (copione != null) {
+                String comando = copione.get(rigaCopione);
+                rigaCopione = (rigaCopione + 1) % copione.size();
+                return comando;
+            }
+            // La scelta legge lo stato della partita, per cui viene fatta nel ciclo della sessione
+            String[] scelto = new String[1];
+            sessione.getCiclo().eseguiEAttendi(() -> scelto[0] = scegliComandoCasuale());
+            return scelto[0];
+        }
+
+        /**
+         * Sceglie un comando plausibile per lo stato corrente: risponde ai dialoghi e ai codici
+         * delle porte, altrimenti si muove, interagisce con oggetti e personaggi visibili o combatte.
+         */
+        private String scegliComandoCasuale() {
+            LaCosa gioco = sessione.getGioco();
+            if (sessione.getFrontend().isInAttesaDiRisposta()) {
+                if (gioco.getRispostaInAttesa() instanceof RispostaInAttesa.CodicePorta) {
+                    return String.format("%04d", caso.nextInt(10000));
+                }
+                return String.valueOf(1 + caso.nextInt(3));
+            }
+            int scelta = caso.nextInt(100);
+            if (scelta < 35) {
+                return comando(TipoComando.VAI, DIREZIONI[caso.nextInt(DIREZIONI.length)]);
+            }
+            if (scelta < 50) {
+                return comando(TipoComando.PRENDI, nomeCasuale(new ArrayList<>(gioco.getOggettiVisibili())));
+            }
+            if (scelta < 60) {
+                List<Oggetto> leggibili = new ArrayList<>(gioco.getOggettiVisibili());
+                leggibili.addAll(gioco.getInventario());
+                return comando(TipoComando.LEGGI, nomeCasuale(leggibili));
+            }
+            if (scelta < 70) {
+                return comando(TipoComando.ESAMINA, nomeCasuale(new ArrayList<>(gioco.getOggettiVisibili())));
+            }
+            if (scelta < 82) {
+                return comando(TipoComando.PARLA, nomePersonaggio(new ArrayList<>(gioco.getPersonaggiVisibili())));
+            }
+            if (scelta < 88) {
+                return comando(TipoComando.SPARA, nomePersonaggio(new ArrayList<>(gioco.getPersonaggiVisibili())));
+            }
+            if (scelta < 95) {
+                return comando(TipoComando.OSSERVA, "");
+            }
+            return comando(TipoComando.INVENTARIO, "");
+        }
+
+        private String comando(TipoComando tipo, String argomento) {
+            String nome = nomiComandi.getOrDefault(tipo, tipo.name().toLowerCase());
+            return argomento.isEmpty() ? nome : nome + " " + argomento;
+        }
+
+        private String nomeCasuale(List<Oggetto> oggetti) {
+            return oggetti.isEmpty() ? "" : oggetti.get(caso.nextInt(oggetti.size())).getNome();
+        }
+
+        private String nomePersonaggio(List<Personaggio> personaggi) {
+            return personaggi.isEmpty() ? "" : personaggi.get(caso.nextInt(personaggi.size())).getNome();
+        }
+    }
+
+    /**
+     * Istogramma logaritmico-lineare delle latenze: ogni potenza di due è divisa in 16 intervalli,
+     * per un errore relativo dei percentili inferiore al 7%. La registrazione non crea oggetti.
+     */
+    private static final class Istogramma {
+
+        private static final int SOTTO_INTERVALLI = 16;
+        private static final int BIT_SOTTO_INTERVALLI = 4;
+
+        private final long[] conteggi = new long[64 * SOTTO_INTERVALLI];
+        private long conteggio;
+        private long massimo;
+
+        private void registra(long nanosecondi) {
+            long valore = Math.max(0, nanosecondi);
+            conteggi[indice(valore)]++;
+            conteggio++;
+            massimo = Math.max(massimo, valore);
+        }
+
+        private void aggiungi(Istogramma altro) {
+            for (int i = 0; i < conteggi.length; i++) {
+                conteggi[i] += altro.conteggi[i];
+            }
+            conteggio += altro.conteggio;
+            massimo = Math.max(massimo, altro.massimo);
+        }
+
+        private static int indice(long valore) {
+            if (valore < SOTTO_INTERVALLI) {
+                return (int) valore;
+            }
+            int esponente = 63 - Long.numberOfLeadingZeros(valore);
+            int sotto = (int) (valore >>> (esponente - BIT_SOTTO_INTERVALLI)) & (SOTTO_INTERVALLI - 1);
+            return (esponente - BIT_SOTTO_INTERVALLI + 1) * SOTTO_INTERVALLI + sotto;
+        }
+
+        /**
+         * Limite superiore dell'intervallo con l'indice indicato.
+         */
+        private static long limiteSuperiore(int indice) {
+            if (indice < SOTTO_INTERVALLI) {
+                return indice;
+            }
+            int esponente = indice / SOTTO_INTERVALLI + BIT_SOTTO_INTERVALLI - 1;
+            long ampiezza = 1L << (esponente - BIT_SOTTO_INTERVALLI);
+            return (SOTTO_INTERVALLI + indice % SOTTO_INTERVALLI) * ampiezza + ampiezza - 1;
+        }
+
+        private long percentile(double frazione) {
+            if (conteggio == 0) {
+                return 0;
+            }
+            long soglia = (long) Math.ceil(conteggio * frazione);
+            long cumulato = 0;
+            for (int i = 0; i < conteggi.length; i++) {
+                cumulato += conteggi[i];
+                if (cumulato >= soglia) {
+                    return Math.min(massimo, limiteSuperiore(i));
+                }
+            }
+            return massimo;
+        }
+    }
+}
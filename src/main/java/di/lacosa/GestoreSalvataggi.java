@@ -1,12 +1,27 @@
 package di.lacosa;
 
+import di.lacosa.implementazione.IstantaneaPartita;
 import di.lacosa.implementazione.LaCosa;
+import di.lacosa.tipi.Oggetto;
 import java.io.*;
+import java.util.Arrays;
+import java.util.zip.CRC32;
 
 /**
  * Classe di utilità per la gestione del salvataggio e caricamento delle partite.
  * Fornisce metodi statici per salvare, caricare e gestire i salvataggi del gioco
  * in slot numerati (1-3). I salvataggi vengono memorizzati nella cartella 'saves/'.
+ * <p>
+ * Ogni slot contiene un salvataggio completo della partita ed eventuali incrementi successivi:
+ * se l'ultimo salvataggio della partita è stato fatto nello stesso slot, viene aggiunto
+ * solo un {@link IncrementoSalvataggio} con le entità modificate nel frattempo. Dopo un certo
+ * numero di incrementi lo slot viene riscritto per intero. Il file degli incrementi riporta
+ * l'impronta del salvataggio completo a cui si riferisce, per cui incrementi rimasti
+ * da un salvataggio completo precedente vengono ignorati.
+ * <p>
+ * Le partite ospitate da un server salvano nello {@link LaCosa#getSpazioSalvataggi() spazio} della propria sessione,
+ * la sottocartella di 'saves/sessioni/' con la chiave della sessione: ogni sessione ha i propri slot
+ * e non legge né sovrascrive quelli delle altre o della partita locale.
  *
  * @author fabioMarchitelli
  */
@@ -17,11 +32,43 @@ public class GestoreSalvataggi {
      */
     private static final String CARTELLA_SALVATAGGIO = "saves/";
 
+    /**
+     * Sottocartella che contiene gli spazi dei salvataggi delle sessioni
+     */
+    private static final String CARTELLA_SESSIONI = "sessioni/";
+
+    /**
+     * Lunghezza massima del nome di uno spazio dei salvataggi
+     */
+    private static final int LUNGHEZZA_MASSIMA_SPAZIO = 64;
+
+    /**
+     * Filtro delle classi ammesse nella lettura di una partita serializzata: solo le classi del modello di gioco,
+     * le stringhe, i tipi numerici e le collezioni usate dal modello, con limiti di profondità e di riferimenti.
+     * Un file di salvataggio o un'istantanea alterati non possono quindi istanziare altre classi del classpath.
+     */
+    public static final ObjectInputFilter FILTRO_PARTITA = ObjectInputFilter.Config.createFilter(
+            "maxdepth=64;maxrefs=1000000;maxbytes=67108864"
+                    + ";di.lacosa.implementazione.LaCosa;di.lacosa.DescrizioneGioco;di.lacosa.tipi.*"
+                    + ";java.lang.Object;java.lang.String;java.lang.Enum;java.lang.Number;java.lang.Integer;java.lang.Boolean"
+                    + ";java.util.ArrayList;java.util.HashSet;java.util.LinkedHashSet;java.util.HashMap;java.util.Map$Entry;java.util.CollSer"
+                    + ";!*");
+
     /**
      * Numero massimo di slot di salvataggio disponibili
      */
     private static final int MAX_SLOTS = 3;
 
+    /**
+     * Tempo massimo di attesa per le scritture in background prima di un salvataggio sincrono
+     */
+    private static final long ATTESA_MASSIMA_MS = 5000;
+
+    /**
+     * Numero massimo di incrementi aggiunti a un salvataggio completo prima di riscriverlo per intero
+     */
+    private static final int MAX_INCREMENTI = 32;
+
     // Inizializzazione statica: crea la cartella se non esiste
     static {
         File dir = new File(CARTELLA_SALVATAGGIO);
@@ -43,11 +90,196 @@ public class GestoreSalvataggi {
             System.err.println("Slot invalido: " + slot);
             return false;
         }
-        String nomeFile = CARTELLA_SALVATAGGIO + "slot" + slot + ".dat";
+        // Un salvataggio in background ancora in coda non deve sovrascrivere questo
+        if (!attendiSalvataggiInCorso(game)) {
+            return false;
+        }
+        StatoModifiche modifiche = game.getModifiche();
+        boolean incrementale = isIncrementale(game, slot);
+        StatoModifiche.Salvataggio salvataggio = modifiche.avviaSalvataggio(slot, incrementale);
+        byte[] dati = incrementale ? IncrementoSalvataggio.scrivi(game, salvataggio.getModifiche()) : serializzaPartita(game);
+        String spazio = game.getSpazioSalvataggi();
+        boolean scritto = dati != null
+                && (incrementale ? aggiungiIncremento(dati, spazio, slot) : scriviSlot(dati, spazio, slot));
+        modifiche.concludiSalvataggio(salvataggio, scritto);
+        return scritto;
+    }
+
+    /**
+     * Salva lo stato del gioco nello slot specificato senza attendere la scrittura su disco.
+     * Lo stato viene serializzato subito, in modo che il salvataggio rifletta la partita
+     * nel momento della richiesta; la scrittura del file avviene sul canale di persistenza
+     * della partita e un eventuale errore viene segnalato nell'interfaccia.
+     * Le modifiche salvate risultano tali solo dopo la scrittura: se questa fallisce
+     * tornano tra quelle non salvate e il salvataggio successivo sarà completo.
+     *
+     * @param game L'istanza del gioco da salvare (non null)
+     * @param slot Il numero dello slot (1-3)
+     * @return true se il salvataggio è stato avviato, false se lo slot non è valido o la serializzazione è fallita
+     */
+    public static boolean salvaPartitaInBackground(LaCosa game, int slot) {
+        if (slot < 1 || slot > 3) {
+            System.err.println("Slot invalido: " + slot);
+            return false;
+        }
+        StatoModifiche modifiche = game.getModifiche();
+        boolean incrementale = isIncrementale(game, slot);
+        // Le modifiche passano al salvataggio, che le scarta solo dopo la scrittura su disco
+        StatoModifiche.Salvataggio salvataggio = modifiche.avviaSalvataggio(slot, incrementale);
+        byte[] dati = incrementale ? IncrementoSalvataggio.scrivi(game, salvataggio.getModifiche()) : serializzaPartita(game);
+        if (dati == null) {
+            modifiche.concludiSalvataggio(salvataggio, false);
+            return false;
+        }
+        String spazio = game.getSpazioSalvataggi();
+        game.eseguiEffetto(EsecutoreEffetti.Canale.PERSISTENZA, () -> {
+            // Un incremento successivo a una scrittura fallita non ha più un salvataggio su cui appoggiarsi
+            boolean scritto = modifiche.isScrivibile(salvataggio)
+                    && (incrementale ? aggiungiIncremento(dati, spazio, slot) : scriviSlot(dati, spazio, slot));
+            modifiche.concludiSalvataggio(salvataggio, scritto);
+            if (!scritto && game.getInterfacciaGioco() != null) {
+                game.eseguiEffetto(EsecutoreEffetti.Canale.INTERFACCIA,
+                        () -> game.getInterfacciaGioco().scriviInAreaDiTesto("\nErrore durante il salvataggio nello slot " + slot + ".\n"));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Verifica se il salvataggio nello slot può limitarsi a un incremento: l'ultimo salvataggio della partita
+     * deve essere avvenuto nello stesso slot, il cui salvataggio completo deve esistere ancora,
+     * e il numero di incrementi non deve aver raggiunto il massimo.
+     *
+     * @param game L'istanza del gioco
+     * @param slot Il numero dello slot
+     * @return true se basta aggiungere un incremento, false se va scritto il salvataggio completo
+     */
+    private static boolean isIncrementale(LaCosa game, int slot) {
+        StatoModifiche modifiche = game.getModifiche();
+        return modifiche.getSlotSalvato() == slot
+                && modifiche.getIncrementiSalvati() < MAX_INCREMENTI
+                && fileSlot(game.getSpazioSalvataggi(), slot).exists();
+    }
+
+    /**
+     * Attende il completamento delle scritture avviate in background per la partita.
+     *
+     * @param game L'istanza del gioco
+     * @return true se non ci sono scritture in corso, false se l'attesa è scaduta o è stata interrotta
+     */
+    private static boolean attendiSalvataggiInCorso(LaCosa game) {
+        try {
+            return game.getEsecutoreEffetti().attendi(ATTESA_MASSIMA_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(nomeFile))) {
+    /**
+     * Serializza lo stato del gioco in memoria.
+     *
+     * @param game L'istanza del gioco da serializzare
+     * @return I byte della partita serializzata, o null in caso di errore
+     */
+    private static byte[] serializzaPartita(LaCosa game) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
             oos.writeObject(game);
-            System.out.println("Partita salvata su: " + nomeFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Verifica che uno slot salvato per intero e poi con un incremento si possa ricaricare:
+     * una copia della partita letta dal salvataggio completo, a cui viene applicato un incremento
+     * con l'intero inventario, deve coincidere con la partita. La partita indicata non viene modificata.
+     * Va chiamato prima di ospitare partite dello stesso tipo, perché un incremento che non si applica
+     * rende illeggibile lo slot.
+     *
+     * @param game Una nuova partita
+     * @throws IllegalStateException Se la partita ricaricata non coincide con quella salvata
+     */
+    public static void verificaIncrementi(LaCosa game) {
+        byte[] completo = serializzaPartita(game);
+        if (completo == null) {
+            throw new IllegalStateException("La partita non può essere salvata");
+        }
+        try {
+            LaCosa salvata = deserializzaPartita(completo);
+            salvata.getModifiche().segnaInventario();
+            for (Oggetto oggetto : salvata.getInventario()) {
+                salvata.getModifiche().segnaOggetto(oggetto.getId());
+            }
+            byte[] incremento = IncrementoSalvataggio.scrivi(salvata, salvata.getModifiche().getNonSalvate());
+
+            LaCosa caricata = deserializzaPartita(completo);
+            IncrementoSalvataggio.applica(caricata, new DataInputStream(new ByteArrayInputStream(incremento)));
+            if (!Arrays.equals(IstantaneaPartita.crea(salvata), IstantaneaPartita.crea(caricata))) {
+                throw new IllegalStateException("Gli incrementi non ricostruiscono fedelmente la partita salvata");
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Gli incrementi non possono essere applicati alla partita salvata", e);
+        }
+    }
+
+    private static LaCosa deserializzaPartita(byte[] dati) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(dati))) {
+            ois.setObjectInputFilter(FILTRO_PARTITA);
+            return (LaCosa) ois.readObject();
+        }
+    }
+
+    /**
+     * Scrive una partita già serializzata nello slot specificato.
+     *
+     * @param dati I byte della partita serializzata
+     * @param spazio Lo spazio dei salvataggi, o null per quello della partita locale
+     * @param slot Il numero dello slot (1-3)
+     * @return true se la scrittura è avvenuta con successo, false altrimenti
+     */
+    private static boolean scriviSlot(byte[] dati, String spazio, int slot) {
+        File file = fileSlot(spazio, slot);
+        file.getParentFile().mkdirs();
+
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(dati);
+            // Gli incrementi del salvataggio precedente non valgono più
+            fileIncrementi(spazio, slot).delete();
+            System.out.println("Partita salvata su: " + file.getPath());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Aggiunge un incremento in coda al file degli incrementi dello slot, creandolo se necessario
+     * con l'impronta del salvataggio completo a cui si riferisce.
+     * Ogni incremento è preceduto dalla sua lunghezza.
+     *
+     * @param incremento I byte dell'incremento
+     * @param spazio Lo spazio dei salvataggi, o null per quello della partita locale
+     * @param slot Il numero dello slot (1-3)
+     * @return true se la scrittura è avvenuta con successo, false altrimenti
+     */
+    private static boolean aggiungiIncremento(byte[] incremento, String spazio, int slot) {
+        File file = fileIncrementi(spazio, slot);
+        try {
+            boolean nuovo = !file.exists();
+            long impronta = nuovo ? improntaSlot(spazio, slot) : 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                if (nuovo) {
+                    out.writeLong(impronta);
+                }
+                out.writeInt(incremento.length);
+                out.write(incremento);
+            }
+            System.out.println("Incremento salvato su: " + file.getPath());
             return true;
         } catch (IOException e) {
             e.printStackTrace();
@@ -55,6 +287,92 @@ public class GestoreSalvataggi {
         }
     }
 
+    /**
+     * Applica alla partita gli incrementi dello slot che si riferiscono al suo salvataggio completo.
+     * Un incremento troncato in coda al file (scrittura interrotta) viene ignorato.
+     *
+     * @param game La partita appena letta dal salvataggio completo
+     * @param spazio Lo spazio dei salvataggi, o null per quello della partita locale
+     * @param slot Il numero dello slot (1-3)
+     * @return Il numero di incrementi applicati
+     * @throws IOException Se un incremento completo non può essere applicato
+     */
+    private static int applicaIncrementi(LaCosa game, String spazio, int slot) throws IOException {
+        File file = fileIncrementi(spazio, slot);
+        if (!file.exists()) {
+            return 0;
+        }
+        int applicati = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != improntaSlot(spazio, slot)) {
+                System.err.println("Incrementi dello slot " + slot + " relativi a un altro salvataggio: ignorati.");
+                return 0;
+            }
+            while (true) {
+                byte[] incremento;
+                try {
+                    incremento = new byte[in.readInt()];
+                    in.readFully(incremento);
+                } catch (EOFException e) {
+                    break;
+                }
+                IncrementoSalvataggio.applica(game, new DataInputStream(new ByteArrayInputStream(incremento)));
+                applicati++;
+            }
+        } catch (EOFException e) {
+            // File degli incrementi vuoto o con l'impronta troncata
+            return 0;
+        }
+        return applicati;
+    }
+
+    /**
+     * Calcola l'impronta del salvataggio completo presente nello slot.
+     *
+     * @param spazio Lo spazio dei salvataggi, o null per quello della partita locale
+     * @param slot Il numero dello slot (1-3)
+     * @return Il CRC32 del file, combinato con la sua lunghezza
+     * @throws IOException Se il file non può essere letto
+     */
+    private static long improntaSlot(String spazio, int slot) throws IOException {
+        File file = fileSlot(spazio, slot);
+        CRC32 crc = new CRC32();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            for (int letti = in.read(buffer); letti > 0; letti = in.read(buffer)) {
+                crc.update(buffer, 0, letti);
+            }
+        }
+        return (file.length() << 32) ^ crc.getValue();
+    }
+
+    private static File fileSlot(String spazio, int slot) {
+        return new File(cartella(spazio), "slot" + slot + ".dat");
+    }
+
+    private static File fileIncrementi(String spazio, int slot) {
+        return new File(cartella(spazio), "slot" + slot + ".inc");
+    }
+
+    /**
+     * Restituisce la cartella dello spazio dei salvataggi indicato.
+     *
+     * @param spazio Lo spazio dei salvataggi, o null per quello della partita locale
+     * @return La cartella dei file dello spazio
+     * @throws IllegalArgumentException Se il nome dello spazio non è composto da lettere minuscole, cifre e trattini
+     */
+    private static File cartella(String spazio) {
+        if (spazio == null) {
+            return new File(CARTELLA_SALVATAGGIO);
+        }
+        // Il nome diventa parte del percorso: niente separatori né ".."
+        if (spazio.isEmpty() || spazio.length() > LUNGHEZZA_MASSIMA_SPAZIO
+                || !spazio.chars().allMatch(c -> (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-')) {
+            throw new IllegalArgumentException("Spazio dei salvataggi non valido: " + spazio);
+        }
+        return new File(CARTELLA_SALVATAGGIO + CARTELLA_SESSIONI + spazio);
+    }
+
     /**
      * Carica una partita dallo slot specificato.
      *
@@ -65,23 +383,43 @@ public class GestoreSalvataggi {
      *         - si verifica un errore durante la lettura
      */
     public static LaCosa caricaPartita(int slot) {
+        return caricaPartita(null, slot);
+    }
+
+    /**
+     * Carica una partita dallo slot specificato dello spazio dei salvataggi indicato.
+     * La partita caricata salverà nello stesso spazio.
+     *
+     * @param spazio Lo spazio dei salvataggi, o null per quello della partita locale
+     * @param slot Il numero dello slot da caricare (1-3)
+     * @return L'istanza del gioco caricata, o null se lo slot non è valido, è vuoto o non è leggibile
+     * @throws IllegalArgumentException Se il nome dello spazio non è valido
+     */
+    public static LaCosa caricaPartita(String spazio, int slot) {
         if (slot < 1 || slot > 3) {
             System.err.println("Slot invalido: " + slot);
             return null;
         }
-        String nomeFile = CARTELLA_SALVATAGGIO + "slot" + slot + ".dat";
-        File file = new File(nomeFile);
+        File file = fileSlot(spazio, slot);
 
         if (!file.exists()) {
             System.out.println("Nessuna partita salvata trovata nello slot " + slot);
             return null;
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(nomeFile))) {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            ois.setObjectInputFilter(FILTRO_PARTITA);
             Object obj = ois.readObject();
             if (obj instanceof LaCosa) {
-                System.out.println("Partita caricata dallo slot " + slot);
-                return (LaCosa) obj;
+                LaCosa partita = (LaCosa) obj;
+                partita.setSpazioSalvataggi(spazio);
+                int incrementi = applicaIncrementi(partita, spazio, slot);
+                // La partita letta coincide con lo slot: i prossimi salvataggi possono essere incrementali
+                partita.getModifiche().confermaSalvataggio();
+                partita.getModifiche().registraSalvataggio(slot, incrementi);
+                System.out.println("Partita caricata dallo slot " + slot
+                        + (incrementi > 0 ? " (" + incrementi + " incrementi)" : ""));
+                return partita;
             } else {
                 System.err.println("Il file non contiene un oggetto LaCosa!");
                 return null;
@@ -93,7 +431,7 @@ public class GestoreSalvataggi {
     }
 
     /**
-     * Conta quanti slot di salvataggio sono attualmente utilizzati.
+     * Conta quanti slot di salvataggio della partita locale sono attualmente utilizzati.
      *
      * @return Il numero di slot occupati (0-3)
      */
@@ -109,7 +447,7 @@ public class GestoreSalvataggi {
     }
 
     /**
-     * Elimina il salvataggio nello slot specificato.
+     * Elimina il salvataggio della partita locale nello slot specificato.
      *
      * @param slot Il numero dello slot da cancellare (1-3)
      * @return true se l'eliminazione è avvenuta con successo o il file non esisteva,
@@ -117,7 +455,8 @@ public class GestoreSalvataggi {
      */
     public static boolean cancellaSlot(int slot) {
         if (slot < 1 || slot > 3) return false;
-        File f = new File(CARTELLA_SALVATAGGIO + "slot" + slot + ".dat");
+        File f = fileSlot(null, slot);
+        fileIncrementi(null, slot).delete();
         if (f.exists()) {
             return f.delete();
         }
@@ -127,7 +466,7 @@ public class GestoreSalvataggi {
 
 
     /**
-     * Verifica se esiste un salvataggio nello slot specificato.
+     * Verifica se esiste un salvataggio della partita locale nello slot specificato.
      *
      * @param slot Il numero dello slot da verificare (1-3)
      * @return true se esiste un salvataggio nello slot, false altrimenti
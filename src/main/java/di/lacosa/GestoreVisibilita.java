@@ -0,0 +1,198 @@
+package di.lacosa;
+
+import di.lacosa.tipi.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classe che gestisce l'illuminazione delle stanze e ciò che il giocatore è in grado di percepire.
+ * <p>
+ * Per ogni stanza calcola:
+ * <ul>
+ *   <li>Il livello di luce, dato dalla luce propria della stanza e dalle sorgenti di luce attive</li>
+ *   <li>L'insieme degli oggetti visibili, secondo la {@link RegolaVisibilita} di ciascun oggetto</li>
+ *   <li>L'insieme dei personaggi presenti</li>
+ * </ul>
+ * Gli insiemi calcolati vengono conservati in una cache e ricalcolati, stanza per stanza,
+ * solo quando cambia la luce o il contenuto di quella stanza, in modo che
+ * osservazione, parser e interfaccia leggano sempre un insieme già pronto.
+ * La luce propria della stanza viene ricontrollata a ogni lettura, per cui
+ * un cambio di illuminazione della stanza non richiede un'invalidazione esplicita.
+ *
+ * @author fabioMarchitelli
+ */
+public class GestoreVisibilita {
+
+    private final DescrizioneGioco descrizione;
+    private final Map<Integer, InsiemeVisibile> cache = new HashMap<>();
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param descrizione Lo stato del gioco su cui calcolare la visibilità
+     */
+    public GestoreVisibilita(DescrizioneGioco descrizione) {
+        this.descrizione = descrizione;
+    }
+
+    /**
+     * Restituisce l'insieme visibile della stanza, calcolandolo solo se non è già presente in cache.
+     *
+     * @param stanza La stanza di cui si vuole conoscere il contenuto visibile
+     * @return L'insieme visibile della stanza
+     */
+    public InsiemeVisibile getInsiemeVisibile(Stanza stanza) {
+        InsiemeVisibile insieme = cache.get(stanza.getIdStanza());
+        if (insieme == null || insieme.luceStanza != stanza.getLivelloLuce()) {
+            insieme = calcolaInsiemeVisibile(stanza);
+            cache.put(stanza.getIdStanza(), insieme);
+        }
+        return insieme;
+    }
+
+    /**
+     * Invalida tutti gli insiemi calcolati.
+     * Da chiamare solo quando viene sostituito l'intero stato della partita.
+     */
+    public void invalida() {
+        cache.clear();
+    }
+
+    /**
+     * Invalida l'insieme calcolato di una singola stanza.
+     * Da chiamare quando un oggetto o un personaggio entra o esce dalla stanza.
+     *
+     * @param idStanza L'ID della stanza da invalidare
+     */
+    public void invalidaStanza(int idStanza) {
+        cache.remove(idStanza);
+    }
+
+    /**
+     * Aggiorna la cache dopo lo spostamento del giocatore.
+     * La luce dell'inventario conta solo nella stanza corrente: se l'inventario illumina,
+     * cambiano la stanza lasciata e quella raggiunta, altrimenti nessuna delle due.
+     *
+     * @param precedente La stanza lasciata dal giocatore (può essere null)
+     * @param corrente La stanza raggiunta dal giocatore (può essere null)
+     */
+    public void giocatoreSpostato(Stanza precedente, Stanza corrente) {
+        if (getLuceInventario() == 0) {
+            return;
+        }
+        if (precedente != null) {
+            invalidaStanza(precedente.getIdStanza());
+        }
+        if (corrente != null) {
+            invalidaStanza(corrente.getIdStanza());
+        }
+    }
+
+    /**
+     * Aggiorna la cache dopo che una sorgente di luce è stata accesa o spenta,
+     * invalidando solo la stanza che ne riceve la luce.
+     *
+     * @param sorgente L'oggetto la cui luce è cambiata
+     */
+    public void luceCambiata(Oggetto sorgente) {
+        if (!descrizione.getInventario().contains(sorgente)) {
+            invalidaStanza(sorgente.getId_stanza());
+        } else if (descrizione.getStanzaCorrente() != null) {
+            invalidaStanza(descrizione.getStanzaCorrente().getIdStanza());
+        }
+    }
+
+    /**
+     * Restituisce la luce emessa dagli oggetti nell'inventario del giocatore.
+     *
+     * @return La luce complessiva dell'inventario
+     */
+    private int getLuceInventario() {
+        int luce = 0;
+        for (Oggetto oggetto : descrizione.getInventario()) {
+            luce += oggetto.getLuceEmessa();
+        }
+        return luce;
+    }
+
+    /**
+     * Calcola il livello di luce della stanza sommando la luce propria della stanza,
+     * quella delle sorgenti presenti al suo interno e, se il giocatore si trova lì,
+     * quella delle sorgenti nel suo inventario.
+     *
+     * @param stanza La stanza da valutare
+     * @return Il livello di luce complessivo
+     */
+    private int calcolaLivelloLuce(Stanza stanza, Set<Oggetto> oggettiInStanza) {
+        int livello = stanza.getLivelloLuce();
+        for (Oggetto oggetto : oggettiInStanza) {
+            livello += oggetto.getLuceEmessa();
+        }
+        if (stanza.equals(descrizione.getStanzaCorrente())) {
+            livello += getLuceInventario();
+        }
+        return livello;
+    }
+
+    /**
+     * Calcola da zero l'insieme visibile di una stanza.
+     *
+     * @param stanza La stanza da valutare
+     * @return Il nuovo insieme visibile
+     */
+    private InsiemeVisibile calcolaInsiemeVisibile(Stanza stanza) {
+        Set<Oggetto> oggettiInStanza = descrizione.getOggettiPerStanza(stanza.getIdStanza());
+        int livelloLuce = calcolaLivelloLuce(stanza, oggettiInStanza);
+        boolean illuminata = livelloLuce > Stanza.BUIO;
+
+        Set<Oggetto> oggettiVisibili = new HashSet<>();
+        for (Oggetto oggetto : oggettiInStanza) {
+            if (illuminata || oggetto.getRegolaVisibilita() == RegolaVisibilita.SEMPRE_VISIBILE) {
+                oggettiVisibili.add(oggetto);
+            }
+        }
+        Set<Personaggio> personaggi = descrizione.getPersonaggiPerStanza(stanza.getIdStanza());
+
+        return new InsiemeVisibile(stanza.getLivelloLuce(), livelloLuce, oggettiVisibili, personaggi);
+    }
+
+
+    /**
+     * Insieme immutabile di ciò che il giocatore percepisce in una stanza.
+     */
+    public static final class InsiemeVisibile {
+
+        /** Luce propria della stanza al momento del calcolo, per riconoscere un insieme non più valido */
+        private final int luceStanza;
+        private final int livelloLuce;
+        private final Set<Oggetto> oggetti;
+        private final Set<Personaggio> personaggi;
+
+        private InsiemeVisibile(int luceStanza, int livelloLuce, Set<Oggetto> oggetti, Set<Personaggio> personaggi) {
+            this.luceStanza = luceStanza;
+            this.livelloLuce = livelloLuce;
+            this.oggetti = Collections.unmodifiableSet(oggetti);
+            this.personaggi = Collections.unmodifiableSet(personaggi);
+        }
+
+        public int getLivelloLuce() {
+            return livelloLuce;
+        }
+
+        public boolean isIlluminata() {
+            return livelloLuce > Stanza.BUIO;
+        }
+
+        public Set<Oggetto> getOggetti() {
+            return oggetti;
+        }
+
+        public Set<Personaggio> getPersonaggi() {
+            return personaggi;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package di.lacosa;
+
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.tipi.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formato degli incrementi di salvataggio: le sole entità modificate dall'ultimo salvataggio,
+ * scritte campo per campo a partire dai bit di {@link StatoModifiche}.
+ * <p>
+ * Ogni incremento contiene il valore corrente dei flag cambiati, della stanza corrente,
+ * dell'inventario e dei campi mutabili di stanze, oggetti, personaggi e dialoghi segnati come modificati.
+ * Applicando in ordine gli incrementi a una partita letta dal salvataggio completo si ottiene
+ * lo stato della partita al momento dell'ultimo incremento.
+ *
+ * @author fabioMarchitelli
+ * @see GestoreSalvataggi
+ */
+final class IncrementoSalvataggio {
+
+    /**
+     * Identificativo e versione del formato, scritti in testa a ogni incremento
+     */
+    private static final int FORMATO = 0x4C430001;
+
+    private static final FlagDiGioco[] FLAG = FlagDiGioco.values();
+
+    private IncrementoSalvataggio() {
+    }
+
+    /**
+     * Scrive l'incremento con lo stato corrente delle entità modificate.
+     *
+     * @param gioco La partita
+     * @param modifiche Le modifiche da includere nell'incremento
+     * @return I byte dell'incremento
+     */
+    static byte[] scrivi(LaCosa gioco, StatoModifiche.Modifiche modifiche) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMATO);
+
+            long maschera = 0;
+            for (FlagDiGioco flag : FLAG) {
+                if (modifiche.isFlagCambiato(flag)) {
+                    maschera |= 1L << flag.ordinal();
+                }
+            }
+            out.writeLong(maschera);
+            for (FlagDiGioco flag : FLAG) {
+                if ((maschera & (1L << flag.ordinal())) != 0) {
+                    out.writeBoolean(gioco.getFlag(flag));
+                }
+            }
+
+            out.writeInt(modifiche.isStanzaCorrenteCambiata() && gioco.getStanzaCorrente() != null
+                    ? gioco.getStanzaCorrente().getIdStanza() : -1);
+
+            out.writeBoolean(modifiche.isInventarioCambiato());
+            if (modifiche.isInventarioCambiato()) {
+                out.writeInt(gioco.getInventario().size());
+                for (Oggetto oggetto : gioco.getInventario()) {
+                    out.writeInt(oggetto.getId());
+                }
+            }
+
+            int[] stanze = modifiche.getStanze();
+            out.writeInt(stanze.length);
+            for (int id : stanze) {
+                Stanza stanza = richiedi(gioco.getStanzaPerId(id), "Stanza", id);
+                out.writeInt(id);
+                out.writeBoolean(stanza.isPortaBloccata());
+                out.writeBoolean(stanza.isOsservazioneAggiornataAttiva());
+            }
+
+            int[] oggetti = modifiche.getOggetti();
+            out.writeInt(oggetti.length);
+            for (int id : oggetti) {
+                Oggetto oggetto = richiedi(gioco.getOggettoPerId(id), "Oggetto", id);
+                out.writeInt(id);
+                out.writeInt(oggetto.getId_stanza());
+            }
+
+            int[] personaggi = modifiche.getPersonaggi();
+            out.writeInt(personaggi.length);
+            for (int id : personaggi) {
+                Personaggio personaggio = richiedi(gioco.getPersonaggioPerId(id), "Personaggio", id);
+                out.writeInt(id);
+                out.writeInt(personaggio.getId_stanza());
+                out.writeInt(personaggio.getVita());
+                out.writeBoolean(personaggio.isInterazioneAvvenuta());
+            }
+
+            int[] dialoghi = modifiche.getDialoghi();
+            out.writeInt(dialoghi.length);
+            for (int id : dialoghi) {
+                DialogoGiocatore dialogo = richiedi(gioco.getDialogoPerId(id), "Dialogo", id);
+                out.writeInt(id);
+                out.writeBoolean(dialogo.isUtilizzato());
+            }
+        } catch (IOException e) {
+            // Lo stream in memoria non lancia eccezioni di I/O
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Legge un incremento e lo applica alla partita.
+     *
+     * @param gioco La partita, letta dal salvataggio completo e dagli incrementi precedenti
+     * @param in Lo stream posizionato all'inizio dell'incremento
+     * @throws IOException Se l'incremento non è leggibile o si riferisce a entità inesistenti
+     */
+    static void applica(LaCosa gioco, DataInputStream in) throws IOException {
+        if (in.readInt() != FORMATO) {
+            throw new IOException("Formato dell'incremento di salvataggio non riconosciuto.");
+        }
+
+        long maschera = in.readLong();
+        for (FlagDiGioco flag : FLAG) {
+            if ((maschera & (1L << flag.ordinal())) != 0) {
+                gioco.setFlag(flag, in.readBoolean());
+            }
+        }
+
+        int idStanzaCorrente = in.readInt();
+        if (idStanzaCorrente != -1) {
+            gioco.setStanzaCorrente(leggi(gioco.getStanzaPerId(idStanzaCorrente), "Stanza", idStanzaCorrente));
+        }
+
+        if (in.readBoolean()) {
+            // Gli identificativi vanno risolti prima di svuotare l'inventario, che contiene gli oggetti iniziali
+            List<Oggetto> inventario = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                inventario.add(leggi(gioco.getOggettoPerId(id), "Oggetto", id));
+            }
+            gioco.getInventario().clear();
+            gioco.getInventario().addAll(inventario);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = in.readInt();
+            Stanza stanza = leggi(gioco.getStanzaPerId(id), "Stanza", id);
+            stanza.setBloccoPorta(in.readBoolean());
+            stanza.setOsservazioneAggiornataAttiva(in.readBoolean());
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = in.readInt();
+            leggi(gioco.getOggettoPerId(id), "Oggetto", id).setId_stanza(in.readInt());
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = in.readInt();
+            Personaggio personaggio = leggi(gioco.getPersonaggioPerId(id), "Personaggio", id);
+            personaggio.setId_stanza(in.readInt());
+            personaggio.setVita(in.readInt());
+            if (in.readBoolean()) {
+                personaggio.setInterazioneAvvenuta();
+            }
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = in.readInt();
+            leggi(gioco.getDialogoPerId(id), "Dialogo", id).setUtilizzato(in.readBoolean());
+        }
+    }
+
+    private static <T> T richiedi(T entita, String tipo, int id) {
+        if (entita == null) {
+            throw new IllegalStateException(tipo + " con id " + id + " segnato come modificato ma non trovato.");
+        }
+        return entita;
+    }
+
+    private static <T> T leggi(T entita, String tipo, int id) throws IOException {
+        if (entita == null) {
+            throw new IOException(tipo + " con id " + id + " non presente nella partita salvata.");
+        }
+        return entita;
+    }
+}
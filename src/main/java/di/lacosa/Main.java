@@ -181,13 +181,13 @@ public class Main implements FaseFinaleListener {
             interfacciaGioco.disabilitaInput(); // blocca l'inserimento dell'input durante la scena iniziale
 
             // Mostra fase d'introduzione solo se è una nuova partita
-            engine.mostraIntroParte1(() -> new Thread(engine::presentaAmbienteIniziale).start());
+            engine.mostraIntroParte1(engine::presentaAmbienteIniziale);
         } else {
 
             abilitaMappaAttiva(interfacciaGioco);
             // Se è una partita caricata, parte direttamente nel "vivo" del gioco
             // ovvero che salta tutta l'introduzione iniziale
-            new Thread(engine::presentaAmbienteIniziale).start();
+            interfacciaGioco.eseguiInInterfaccia(engine::presentaAmbienteIniziale);
         }
     }
 
@@ -263,9 +263,9 @@ public class Main implements FaseFinaleListener {
     public void processaComando(String comando) {
         if (comando == null || comando.trim().isEmpty()) return;
 
-        int id_stanza_corrente = game.getStanzaCorrente().getIdStanza();
-        Set<Oggetto> oggettiInStanzaCorrente = game.getOggettiPerStanza(id_stanza_corrente);
-        Set<Personaggio> personaggiInStanzaCorrente = game.getPersonaggiPerStanza(id_stanza_corrente);
+        // Il parser considera solo ciò che il giocatore è in grado di percepire nella stanza corrente
+        Set<Oggetto> oggettiInStanzaCorrente = game.getOggettiVisibili();
+        Set<Personaggio> personaggiInStanzaCorrente = game.getPersonaggiVisibili();
 
         //Passa il comando nella sua forma naturale al parser
         ParserOutput p = parser.parse(comando, game.getComandi(), oggettiInStanzaCorrente, game.getInventario(), personaggiInStanzaCorrente);
@@ -284,6 +284,7 @@ public class Main implements FaseFinaleListener {
             gestisciUscita();
         } else {
             game.prossimaMossa(p, System.out);
+            game.getRegistroEventi().fissaIstantaneaSeNecessaria();
         }
     }
 
@@ -294,18 +295,13 @@ public class Main implements FaseFinaleListener {
      */
     public void gestisciUscita() {
 
-        int scelta = JOptionPane.showOptionDialog(
-                null,
+        int scelta = interfacciaGioco.chiediScelta(
                 "Vuoi salvare prima di uscire?",
                 "Conferma Uscita",
-                JOptionPane.YES_NO_CANCEL_OPTION,
-                JOptionPane.QUESTION_MESSAGE,
-                null,
-                new Object[]{"Sì", "No", "Annulla"},
-                "Sì"
+                new String[]{"Sì", "No", "Annulla"}
         );
 
-        if (scelta == JOptionPane.YES_OPTION) {
+        if (scelta == 0) {
             LaCosa gioco = (LaCosa) game;
             int slot = gioco.getSlotCorrente();
 
@@ -329,7 +325,7 @@ public class Main implements FaseFinaleListener {
             } else {
                 System.out.println(" Errore durante il salvataggio.");
             }
-        } else if (scelta == JOptionPane.NO_OPTION) {
+        } else if (scelta == 1) {
             interfacciaGioco.svuotaAreaDiTesto();
             interfacciaGioco.disabilitaInput();
             interfacciaGioco.scriviInAreaDiTesto("\n\nGrazie per aver giocato.\n\n");
@@ -1,5 +1,10 @@
 package di.lacosa;
 import di.lacosa.parser.ParserOutput;
+import di.lacosa.tipi.RispostaInAttesa;
+import di.lacosa.tipi.TipoComando;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Interfaccia che definisce il comportamento di un osservatore nel pattern Observer.
@@ -11,6 +16,16 @@ import di.lacosa.parser.ParserOutput;
  */
 public interface Observer {
 
+    /**
+     * Ordine predefinito degli osservatori che modificano lo stato della partita.
+     */
+    public static final int ORDINE_STATO = 0;
+
+    /**
+     * Ordine degli osservatori che devono vedere lo stato già aggiornato dagli altri (es. salvataggio).
+     */
+    public static final int ORDINE_SUCCESSIVO = 100;
+
     /**
      * Metodo chiamato quando l'oggetto osservato notifica un cambiamento di stato.
      *
@@ -19,4 +34,54 @@ public interface Observer {
      * @return Una stringa che rappresenta la risposta all'aggiornamento
      */
     public String update(DescrizioneGioco description, ParserOutput parserOutput);
+
+    /**
+     * Metodo chiamato dall'oggetto osservato per far scrivere la risposta direttamente nel buffer di output.
+     * L'implementazione predefinita scrive la stringa restituita da
+     * {@link #update(DescrizioneGioco, ParserOutput)}; gli osservatori che compongono
+     * la risposta pezzo per pezzo possono ridefinirlo per evitare stringhe intermedie.
+     *
+     * @param description L'istanza del gioco che rappresenta lo stato corrente (non null)
+     * @param parserOutput L'output del parser contenente il comando processato (può essere null)
+     * @param uscita Il buffer in cui scrivere la risposta (non null)
+     */
+    public default void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput uscita) {
+        uscita.append(update(description, parserOutput));
+    }
+
+    /**
+     * Restituisce i tipi di comando gestiti dall'osservatore.
+     * L'oggetto osservato notifica l'osservatore solo per i comandi di questi tipi.
+     * L'implementazione predefinita dichiara tutti i tipi di comando.
+     *
+     * @return L'insieme dei tipi di comando gestiti (non null)
+     */
+    public default Set<TipoComando> getComandiGestiti() {
+        return EnumSet.allOf(TipoComando.class);
+    }
+
+    /**
+     * Restituisce la posizione dell'osservatore nell'ordine di notifica: a parità di comando
+     * vengono notificati prima gli osservatori con ordine più basso, e a parità di ordine
+     * quelli registrati per primi. Gli osservatori vengono sempre eseguiti in modo sincrono;
+     * gli effetti collaterali lenti vanno affidati a {@link DescrizioneGioco#eseguiEffetto}.
+     *
+     * @return L'ordine dell'osservatore
+     */
+    public default int getOrdine() {
+        return ORDINE_STATO;
+    }
+
+    /**
+     * Ricrea l'attesa di una risposta del giocatore dopo il ripristino della partita
+     * (es. un dialogo interrotto dall'ibernazione della sessione).
+     * L'implementazione predefinita non riconosce alcuna attesa.
+     *
+     * @param description L'istanza del gioco ripristinata (non null)
+     * @param risposta La risposta che la partita stava aspettando (non null)
+     * @return true se l'osservatore ha ripreso l'attesa
+     */
+    public default boolean riprendiRisposta(DescrizioneGioco description, RispostaInAttesa risposta) {
+        return false;
+    }
 }
@@ -0,0 +1,62 @@
+package di.lacosa;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorgente del tempo per gli eventi a tempo della partita.
+ * <p>
+ * In gioco si usa l'{@link #diSistema() orologio di sistema}, cioè la {@link RuotaTemporizzatori} condivisa;
+ * la riproduzione di una partita registrata usa invece un {@link OrologioVirtuale}, in cui il tempo
+ * avanza solo quando richiesto e gli eventi scadono senza alcuna attesa reale.
+ *
+ * @author fabioMarchitelli
+ */
+public interface Orologio {
+
+    /**
+     * Restituisce l'istante corrente, con lo stesso significato di {@link System#nanoTime()}:
+     * conta solo la differenza tra due istanti dello stesso orologio.
+     *
+     * @return L'istante corrente in nanosecondi
+     */
+    long nanoTime();
+
+    /**
+     * Pianifica un evento.
+     *
+     * @param evento L'evento da eseguire alla scadenza
+     * @param ritardo Il ritardo dopo il quale l'evento scade
+     * @param unita L'unità di misura del ritardo
+     * @param esecutore L'esecutore a cui consegnare l'evento scaduto
+     * @return L'evento pianificato, con cui può essere annullato
+     */
+    EventoPianificato pianifica(Runnable evento, long ritardo, TimeUnit unita, Executor esecutore);
+
+    /**
+     * Restituisce l'orologio di sistema, basato sulla ruota dei temporizzatori condivisa.
+     *
+     * @return L'orologio di sistema
+     */
+    static Orologio diSistema() {
+        return RuotaTemporizzatori.getCondivisa();
+    }
+
+
+    /**
+     * Evento pianificato su un orologio.
+     */
+    interface EventoPianificato {
+
+        /**
+         * Annulla l'evento, se non è ancora scaduto.
+         *
+         * @return true se l'evento è stato annullato, false se era già scaduto o annullato
+         */
+        boolean annulla();
+
+        boolean isAnnullato();
+
+        boolean isScaduto();
+    }
+}
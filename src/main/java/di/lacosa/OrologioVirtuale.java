@@ -0,0 +1,161 @@
+package di.lacosa;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orologio in cui il tempo avanza solo su richiesta, per riprodurre una partita
+ * in modo deterministico e alla massima velocità.
+ * <p>
+ * Il tempo parte da zero. Gli eventi pianificati restano in attesa finché l'orologio non raggiunge
+ * la loro scadenza con {@link #avanza(long, TimeUnit)}, oppure finché non vengono consegnati uno alla volta
+ * con {@link #consegnaProssimo()}; vengono consegnati in ordine di scadenza e, a parità di scadenza,
+ * nell'ordine di pianificazione, nel thread che fa avanzare l'orologio. Nessun thread viene creato.
+ *
+ * @author fabioMarchitelli
+ */
+public class OrologioVirtuale implements Orologio {
+
+    private final PriorityQueue<Evento> inAttesa = new PriorityQueue<>();
+    private long istante;
+    private long progressivo;
+
+    @Override
+    public synchronized long nanoTime() {
+        return istante;
+    }
+
+    @Override
+    public synchronized EventoPianificato pianifica(Runnable evento, long ritardo, TimeUnit unita, Executor esecutore) {
+        Evento pianificato = new Evento(evento, esecutore, istante + Math.max(0, unita.toNanos(ritardo)), progressivo++);
+        inAttesa.add(pianificato);
+        return pianificato;
+    }
+
+    /**
+     * Fa avanzare il tempo, consegnando gli eventi che scadono nel frattempo, compresi quelli
+     * pianificati dagli eventi stessi.
+     *
+     * @param durata La durata dell'avanzamento
+     * @param unita L'unità di misura della durata
+     */
+    public void avanza(long durata, TimeUnit unita) {
+        long destinazione;
+        synchronized (this) {
+            destinazione = istante + Math.max(0, unita.toNanos(durata));
+        }
+        Evento evento;
+        while ((evento = preleva(destinazione)) != null) {
+            evento.consegna();
+        }
+        synchronized (this) {
+            istante = Math.max(istante, destinazione);
+        }
+    }
+
+    /**
+     * Porta il tempo all'istante indicato senza consegnare eventi: quelli già scaduti
+     * restano in attesa di {@link #consegnaProssimo()}. Il tempo non torna mai indietro.
+     *
+     * @param istante L'istante in nanosecondi
+     */
+    public synchronized void impostaIstante(long istante) {
+        this.istante = Math.max(this.istante, istante);
+    }
+
+    /**
+     * Consegna il primo evento in attesa, portando il tempo alla sua scadenza se non è ancora arrivata.
+     *
+     * @return true se un evento è stato consegnato, false se non ci sono eventi in attesa
+     */
+    public boolean consegnaProssimo() {
+        Evento evento = preleva(Long.MAX_VALUE);
+        if (evento == null) {
+            return false;
+        }
+        evento.consegna();
+        return true;
+    }
+
+    /**
+     * Restituisce il numero di eventi pianificati e non ancora consegnati o annullati.
+     *
+     * @return Gli eventi in attesa
+     */
+    public synchronized int getNumeroInAttesa() {
+        return inAttesa.size();
+    }
+
+    /**
+     * Rimuove il primo evento con scadenza entro il limite, lo segna come scaduto
+     * e porta il tempo alla sua scadenza. Gli eventi annullati sono già stati rimossi.
+     */
+    private synchronized Evento preleva(long limite) {
+        Evento evento = inAttesa.peek();
+        if (evento == null || evento.scadenza > limite) {
+            return null;
+        }
+        inAttesa.poll();
+        evento.scaduto = true;
+        istante = Math.max(istante, evento.scadenza);
+        return evento;
+    }
+
+
+    /**
+     * Evento in attesa sull'orologio virtuale.
+     */
+    private final class Evento implements EventoPianificato, Comparable<Evento> {
+
+        private final Runnable evento;
+        private final Executor esecutore;
+        private final long scadenza;
+        private final long ordine;
+        private boolean annullato;
+        private boolean scaduto;
+
+        private Evento(Runnable evento, Executor esecutore, long scadenza, long ordine) {
+            this.evento = evento;
+            this.esecutore = esecutore;
+            this.scadenza = scadenza;
+            this.ordine = ordine;
+        }
+
+        private void consegna() {
+            esecutore.execute(evento);
+        }
+
+        @Override
+        public boolean annulla() {
+            synchronized (OrologioVirtuale.this) {
+                if (annullato || scaduto) {
+                    return false;
+                }
+                annullato = true;
+                inAttesa.remove(this);
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isAnnullato() {
+            synchronized (OrologioVirtuale.this) {
+                return annullato;
+            }
+        }
+
+        @Override
+        public boolean isScaduto() {
+            synchronized (OrologioVirtuale.this) {
+                return scaduto;
+            }
+        }
+
+        @Override
+        public int compareTo(Evento altro) {
+            int confronto = Long.compare(scadenza, altro.scadenza);
+            return confronto != 0 ? confronto : Long.compare(ordine, altro.ordine);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package di.lacosa;
+
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.DiarioComandi;
+import di.lacosa.implementazione.ModelloPartita;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Esegue i test di regressione su una raccolta di partite registrate.
+ * <p>
+ * La raccolta è una cartella di diari ({@code nome.diario}, vedi {@link DiarioComandi}); accanto a ogni diario
+ * si trovano il testo atteso ({@code nome.uscita}) e il riepilogo dello stato finale atteso ({@code nome.stato},
+ * vedi {@link RiproduttorePartite#descriviStato}). Ogni diario viene riprodotto su una nuova partita
+ * e il risultato confrontato con quanto atteso; i diari vengono distribuiti su un {@link ForkJoinPool}
+ * con un thread per core, dato che ogni riproduzione avviene interamente nel thread che la esegue.
+ * <p>
+ * Con l'opzione {@code aggiorna} i file attesi vengono riscritti con il risultato corrente, ad esempio
+ * dopo una modifica voluta ai contenuti. I diari non dovrebbero contenere salvataggi: la scrittura
+ * degli slot avviene fuori dal ciclo della partita e il suo messaggio non ha una posizione stabile nel testo.
+ *
+ * @author fabioMarchitelli
+ */
+public class RegressionePartite {
+
+    private static final String ESTENSIONE_DIARIO = ".diario";
+    private static final String ESTENSIONE_USCITA = ".uscita";
+    private static final String ESTENSIONE_STATO = ".stato";
+    /** Numero di partite più lente riportate */
+    private static final int PARTITE_LENTE = 10;
+
+    private final RiproduttorePartite riproduttore;
+    private final ForkJoinPool pool;
+
+    /**
+     * Esito della riproduzione di un diario.
+     */
+    public enum TipoEsito {
+        /** Testo e stato finale coincidono con quelli attesi */
+        SUPERATA,
+        /** I file attesi sono stati riscritti */
+        AGGIORNATA,
+        /** Il testo prodotto è diverso da quello atteso */
+        TESTO_DIVERSO,
+        /** Lo stato finale è diverso da quello atteso */
+        STATO_DIVERSO,
+        /** Mancano i file attesi */
+        SENZA_RIFERIMENTO,
+        /** La riproduzione non è riuscita */
+        ERRORE
+    }
+
+    /**
+     * Esito di un diario della raccolta.
+     *
+     * @param nome Il nome del diario, senza estensione
+     * @param tipo L'esito
+     * @param dettaglio La prima differenza trovata o l'errore, vuoto se non ce ne sono
+     * @param comandi I comandi riprodotti
+     * @param durataNanos La durata della riproduzione
+     */
+    public record Esito(String nome, TipoEsito tipo, String dettaglio, int comandi, long durataNanos) {
+
+        public boolean isRiuscito() {
+            return tipo == TipoEsito.SUPERATA || tipo == TipoEsito.AGGIORNATA;
+        }
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare le partite
+     * @param pool Il pool su cui distribuire i diari
+     */
+    public RegressionePartite(ModelloPartita modello, ForkJoinPool pool) {
+        this.riproduttore = new RiproduttorePartite(modello);
+        this.pool = pool;
+    }
+
+    /**
+     * Esegue la regressione. Argomenti: la cartella della raccolta e, facoltativo, {@code aggiorna}.
+     * Termina con codice 1 se almeno un diario non supera il confronto.
+     *
+     * @param args La cartella della raccolta e l'eventuale opzione
+     * @throws Exception Se il database o la cartella non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Uso: RegressionePartite <cartella> [aggiorna]");
+            return;
+        }
+        Path cartella = Paths.get(args[0]);
+        boolean aggiorna = args.length > 1 && args[1].equals("aggiorna");
+        DatabaseManager.main(new String[]{});
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            long inizio = System.nanoTime();
+            List<Esito> esiti = new RegressionePartite(ModelloPartita.daDatabase(), pool).esegui(cartella, aggiorna);
+            long durata = System.nanoTime() - inizio;
+            System.out.println(resoconto(esiti, durata));
+            if (esiti.stream().anyMatch(e -> !e.isRiuscito())) {
+                System.exit(1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Riproduce tutti i diari della cartella.
+     *
+     * @param cartella La cartella della raccolta
+     * @param aggiorna true per riscrivere i file attesi invece di confrontarli
+     * @return Gli esiti, nell'ordine dei nomi dei diari
+     * @throws IOException Se la cartella non può essere letta
+     */
+    public List<Esito> esegui(Path cartella, boolean aggiorna) throws IOException {
+        List<Path> diari;
+        try (Stream<Path> file = Files.list(cartella)) {
+            diari = file.filter(f -> f.getFileName().toString().endsWith(ESTENSIONE_DIARIO))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return pool.invoke(new Riproduzioni(diari, 0, diari.size(), aggiorna));
+    }
+
+    /**
+     * Riproduce un diario e lo confronta con i file attesi, o li riscrive.
+     *
+     * @param diario Il file del diario
+     * @param aggiorna true per riscrivere i file attesi
+     * @return L'esito
+     */
+    public Esito verifica(Path diario, boolean aggiorna) {
+        String nomeFile = diario.getFileName().toString();
+        String nome = nomeFile.substring(0, nomeFile.length() - ESTENSIONE_DIARIO.length());
+        Path fileUscita = diario.resolveSibling(nome + ESTENSIONE_USCITA);
+        Path fileStato = diario.resolveSibling(nome + ESTENSIONE_STATO);
+        RiproduttorePartite.Risultato risultato;
+        try {
+            risultato = riproduttore.riproduci(DiarioComandi.leggi(diario));
+        } catch (IOException | RuntimeException e) {
+            return new Esito(nome, TipoEsito.ERRORE, e.toString(), 0, 0);
+        }
+        int comandi = risultato.comandi();
+        long durata = risultato.durataNanos();
+        try {
+            if (aggiorna) {
+                Files.writeString(fileUscita, risultato.testo(), StandardCharsets.UTF_8);
+                Files.writeString(fileStato, risultato.stato(), StandardCharsets.UTF_8);
+                return new Esito(nome, TipoEsito.AGGIORNATA, "", comandi, durata);
+            }
+            if (!Files.exists(fileUscita) || !Files.exists(fileStato)) {
+                return new Esito(nome, TipoEsito.SENZA_RIFERIMENTO, "", comandi, durata);
+            }
+            String differenza = primaDifferenza(Files.readString(fileUscita, StandardCharsets.UTF_8), risultato.testo());
+            if (differenza != null) {
+                return new Esito(nome, TipoEsito.TESTO_DIVERSO, differenza, comandi, durata);
+            }
+            differenza = primaDifferenza(Files.readString(fileStato, StandardCharsets.UTF_8), risultato.stato());
+            if (differenza != null) {
+                return new Esito(nome, TipoEsito.STATO_DIVERSO, differenza, comandi, durata);
+            }
+            return new Esito(nome, TipoEsito.SUPERATA, "", comandi, durata);
+        } catch (IOException e) {
+            return new Esito(nome, TipoEsito.ERRORE, e.toString(), comandi, durata);
+        }
+    }
+
+    /**
+     * Compone il resoconto della regressione: conteggio degli esiti, partite non riuscite
+     * e partite più lente, per individuare i percorsi del motore diventati lenti.
+     *
+     * @param esiti Gli esiti della regressione
+     * @param durataNanos La durata complessiva della regressione
+     * @return Il resoconto
+     */
+    public static String resoconto(List<Esito> esiti, long durataNanos) {
+        StringBuilder resoconto = new StringBuilder();
+        long riuscite = esiti.stream().filter(Esito::isRiuscito).count();
+        long durataRiproduzioni = esiti.stream().mapToLong(Esito::durataNanos).sum();
+        resoconto.append(String.format("Partite: %d, riuscite: %d, non riuscite: %d%n",
+                esiti.size(), riuscite, esiti.size() - riuscite));
+        resoconto.append(String.format("Durata: %.1f ms (%.1f ms di riproduzione)%n",
+                durataNanos / 1e6, durataRiproduzioni / 1e6));
+        for (Esito esito : esiti) {
+            if (!esito.isRiuscito()) {
+                resoconto.append(String.format("  %s: %s %s%n", esito.nome(), esito.tipo(), esito.dettaglio()));
+            }
+        }
+        resoconto.append("Partite più lente:").append(System.lineSeparator());
+        esiti.stream()
+                .sorted(Comparator.comparingLong(Esito::durataNanos).reversed())
+                .limit(PARTITE_LENTE)
+                .forEach(esito -> resoconto.append(String.format("  %-30s %8.3f ms  %5d comandi  %.1f µs/comando%n",
+                        esito.nome(), esito.durataNanos() / 1e6, esito.comandi(),
+                        esito.comandi() > 0 ? esito.durataNanos() / 1e3 / esito.comandi() : 0.0)));
+        return resoconto.toString();
+    }
+
+    /**
+     * Restituisce la prima riga diversa tra il testo atteso e quello ottenuto, o null se coincidono.
+     */
+    private static String primaDifferenza(String atteso, String ottenuto) {
+        if (atteso.equals(ottenuto)) {
+            return null;
+        }
+        String[] righeAttese = atteso.split("\n", -1);
+        String[] righeOttenute = ottenuto.split("\n", -1);
+        int righe = Math.min(righeAttese.length, righeOttenute.length);
+        for (int i = 0; i < righe; i++) {
+            if (!righeAttese[i].equals(righeOttenute[i])) {
+                return "riga " + (i + 1) + ": atteso \"" + righeAttese[i] + "\", ottenuto \"" + righeOttenute[i] + "\"";
+            }
+        }
+        return "righe attese " + righeAttese.length + ", ottenute " + righeOttenute.length;
+    }
+
+
+    /**
+     * Riproduzione di un intervallo di diari, divisa a metà finché non resta un solo diario:
+     * i thread liberi del pool sottraggono le metà non ancora iniziate a quelli occupati.
+     */
+    private final class Riproduzioni extends RecursiveTask<List<Esito>> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Il task è serializzabile solo perché lo è {@link RecursiveTask}: non viene mai serializzato */
+        private final transient List<Path> diari;
+        private final int da;
+        private final int a;
+        private final boolean aggiorna;
+
+        private Riproduzioni(List<Path> diari, int da, int a, boolean aggiorna) {
+            this.diari = diari;
+            this.da = da;
+            this.a = a;
+            this.aggiorna = aggiorna;
+        }
+
+        @Override
+        protected List<Esito> compute() {
+            if (a - da <= 1) {
+                List<Esito> esiti = new ArrayList<>(1);
+                if (a > da) {
+                    esiti.add(verifica(diari.get(da), aggiorna));
+                }
+                return esiti;
+            }
+            int meta = (da + a) >>> 1;
+            Riproduzioni prima = new Riproduzioni(diari, da, meta, aggiorna);
+            Riproduzioni seconda = new Riproduzioni(diari, meta, a, aggiorna);
+            prima.fork();
+            List<Esito> esiti = new ArrayList<>(seconda.compute());
+            esiti.addAll(0, prima.join());
+            return esiti;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package di.lacosa;
+
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.CicloSessione;
+import di.lacosa.implementazione.DiarioComandi;
+import di.lacosa.implementazione.FrontendTestuale;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.implementazione.ModelloPartita;
+import di.lacosa.implementazione.SessioneGioco;
+import di.lacosa.tipi.FlagDiGioco;
+import di.lacosa.tipi.Oggetto;
+import di.lacosa.tipi.Personaggio;
+
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Riproduce una partita registrata in un {@link DiarioComandi} su una nuova sessione,
+ * alla massima velocità e in modo deterministico.
+ * <p>
+ * La partita riprodotta usa un {@link OrologioVirtuale} e un ciclo eseguito nel thread chiamante:
+ * il tempo avanza da una voce del diario alla successiva senza attese, gli avvertimenti della creatura
+ * vengono consegnati nel punto della sequenza in cui erano stati eseguiti e nessun altro thread
+ * tocca la partita. Due riproduzioni dello stesso diario producono quindi esattamente lo stesso testo,
+ * lo stesso prodotto dalla sessione registrata, e una partita completa viene riprodotta in pochi
+ * millisecondi: utile per la profilazione e per i test di regressione.
+ *
+ * @author fabioMarchitelli
+ */
+public class RiproduttorePartite {
+
+    /**
+     * Spazio dei salvataggi delle partite riprodotte
+     */
+    private static final String SPAZIO_SALVATAGGI = "riproduzioni";
+
+    private final ModelloPartita modello;
+
+    /**
+     * Risultato di una riproduzione.
+     *
+     * @param testo Il testo prodotto dalla partita riprodotta
+     * @param stato Il riepilogo dello stato finale della partita, prodotto da {@link #descriviStato}
+     * @param comandi I comandi riprodotti
+     * @param eventi Gli eventi a tempo riprodotti
+     * @param eventiMancanti Gli eventi del diario che la partita riprodotta non aveva in attesa: di norma
+     *                       avvertimenti già consegnati quando la creatura è stata fermata, che non producono testo
+     * @param durataNanos La durata reale della riproduzione
+     */
+    public record Risultato(String testo, String stato, int comandi, int eventi, int eventiMancanti, long durataNanos) {
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare la partita, lo stesso della sessione registrata
+     */
+    public RiproduttorePartite(ModelloPartita modello) {
+        this.modello = modello;
+    }
+
+    /**
+     * Riproduce un diario da file. Argomenti: il file del diario e, facoltativo, il numero
+     * di riproduzioni; il testo della prima viene stampato e le successive vengono confrontate con essa.
+     *
+     * @param args Il file del diario e il numero di riproduzioni
+     * @throws Exception Se il database o il diario non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Uso: RiproduttorePartite <diario> [riproduzioni]");
+            return;
+        }
+        DiarioComandi diario = DiarioComandi.leggi(Paths.get(args[0]));
+        int riproduzioni = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        DatabaseManager.main(new String[]{});
+        RiproduttorePartite riproduttore = new RiproduttorePartite(ModelloPartita.daDatabase());
+
+        Risultato prima = riproduttore.riproduci(diario);
+        System.out.print(prima.testo());
+        long durataTotale = prima.durataNanos();
+        int diverse = 0;
+        for (int i = 1; i < riproduzioni; i++) {
+            Risultato successiva = riproduttore.riproduci(diario);
+            durataTotale += successiva.durataNanos();
+            if (!successiva.testo().equals(prima.testo())) {
+                diverse++;
+            }
+        }
+        System.err.printf("Riprodotti %d comandi e %d eventi (%d mancanti) in %.3f ms per riproduzione%n",
+                prima.comandi(), prima.eventi(), prima.eventiMancanti(), durataTotale / 1e6 / riproduzioni);
+        if (diverse > 0) {
+            System.err.println("Riproduzioni con testo diverso dalla prima: " + diverse);
+        }
+    }
+
+    /**
+     * Riproduce il diario su una nuova partita.
+     *
+     * @param diario Il diario da riprodurre
+     * @return Il risultato della riproduzione
+     */
+    public Risultato riproduci(DiarioComandi diario) {
+        long inizio = System.nanoTime();
+        LaCosa gioco = modello.creaPartita();
+        OrologioVirtuale orologio = new OrologioVirtuale();
+        gioco.setOrologio(orologio);
+        // I salvataggi presenti nel diario non devono sovrascrivere quelli del giocatore
+        gioco.setSpazioSalvataggi(SPAZIO_SALVATAGGI);
+
+        FrontendTestuale frontend = new FrontendTestuale();
+        StringBuilder testo = new StringBuilder();
+        // Il testo viene raccolto a ogni scrittura, per non incorrere nel limite del testo in attesa
+        frontend.setAscoltatoreTesto(() -> testo.append(frontend.prelevaTesto()));
+        SessioneGioco sessione = new SessioneGioco(gioco, frontend, new CicloSessione(Runnable::run));
+        sessione.setLimitatore(null);
+
+        int comandi = 0;
+        int eventi = 0;
+        int eventiMancanti = 0;
+        for (DiarioComandi.Voce voce : diario.getVoci()) {
+            orologio.impostaIstante(voce.istanteNanos());
+            switch (voce.tipo()) {
+                case COMANDO:
+                    sessione.eseguiComando(voce.comando());
+                    comandi++;
+                    break;
+                case EVENTO:
+                    if (orologio.consegnaProssimo()) {
+                        eventi++;
+                    } else {
+                        eventiMancanti++;
+                    }
+                    break;
+                case AMBIENTE:
+                    sessione.presentaAmbiente();
+                    break;
+            }
+        }
+        String stato = descriviStato(gioco);
+        sessione.termina();
+        return new Risultato(testo.toString(), stato, comandi, eventi, eventiMancanti, System.nanoTime() - inizio);
+    }
+
+    /**
+     * Descrive lo stato di una partita in un testo stabile, una proprietà per riga:
+     * stanza corrente, risposta in attesa, flag, inventario, posizione degli oggetti
+     * e posizione e vita dei personaggi, in ordine di identificativo. Il testo non dipende
+     * dall'ordine interno delle collezioni, per cui due partite nello stesso stato hanno lo stesso riepilogo.
+     *
+     * @param gioco La partita da descrivere
+     * @return Il riepilogo dello stato
+     */
+    public static String descriviStato(DescrizioneGioco gioco) {
+        StringBuilder stato = new StringBuilder();
+        stato.append("stanza=").append(gioco.getStanzaCorrente().getIdStanza()).append('\n');
+        stato.append("rispostaInAttesa=").append(gioco.getRispostaInAttesa()).append('\n');
+        for (FlagDiGioco flag : FlagDiGioco.values()) {
+            stato.append("flag.").append(flag.name()).append('=').append(gioco.getFlag(flag)).append('\n');
+        }
+        stato.append("inventario=").append(gioco.getInventario().stream()
+                .map(Oggetto::getId).sorted().map(String::valueOf).collect(Collectors.joining(","))).append('\n');
+        List<Oggetto> oggetti = gioco.getOggetti().stream().sorted(Comparator.comparingInt(Oggetto::getId)).toList();
+        for (Oggetto oggetto : oggetti) {
+            stato.append("oggetto.").append(oggetto.getId()).append(".stanza=").append(oggetto.getId_stanza()).append('\n');
+        }
+        List<Personaggio> personaggi = gioco.getPersonaggi().stream().sorted(Comparator.comparingInt(Personaggio::getId)).toList();
+        for (Personaggio personaggio : personaggi) {
+            stato.append("personaggio.").append(personaggio.getId())
+                    .append(".stanza=").append(personaggio.getId_stanza())
+                    .append(" vita=").append(personaggio.getVita()).append('\n');
+        }
+        return stato.toString();
+    }
+}
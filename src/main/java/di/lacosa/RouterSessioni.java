@@ -0,0 +1,753 @@
+package di.lacosa;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import di.lacosa.implementazione.AnelloConsistente;
+import di.lacosa.implementazione.SchedulatoreShard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Router che distribuisce le sessioni su più processi {@link ServerHttpGioco} (nodi) della stessa macchina,
+ * per non concentrare tutte le partite nell'heap di un'unica JVM.
+ * <p>
+ * Il router espone la stessa API dei nodi: sceglie la chiave delle nuove sessioni e le assegna al nodo
+ * indicato da un {@link AnelloConsistente} sul nome {@code host:porta} dei nodi, poi inoltra ogni richiesta
+ * di una sessione al suo nodo. Il router non conserva partite né testo: per lui una sessione è solo la sua chiave.
+ * Una sessione ricreata da un salvataggio ({@code POST /sessioni/carica?slot=n&id=chiave}) mantiene invece
+ * la chiave indicata dal client, a cui appartengono i salvataggi.
+ * <p>
+ * Aggiungendo un nodo ({@code POST /cluster/nodi?porta=n}) si spostano solo le sessioni che l'anello
+ * gli assegna, circa una su (nodi + 1): ognuna viene esportata dal nodo che la ospita come
+ * {@link di.lacosa.implementazione.IstantaneaPartita} (lo stesso formato compatto dell'ibernazione,
+ * con i soli campi mutabili della partita, compresso) e importata nel nuovo. Durante lo spostamento
+ * le richieste di quella sessione attendono; le altre proseguono. Una sessione che non si riesce a spostare
+ * torna al nodo di origine e il router ne ricorda la posizione. Se anche il ritorno fallisce la sessione
+ * non è su alcun nodo: il router ne conserva il trasferimento, anche su disco nella cartella
+ * {@code sospese-porta}, e lo reimporta nel nodo di origine alla richiesta successiva della sessione
+ * o alla prossima aggiunta di un nodo. Un router riavviato sulla stessa porta riprende i trasferimenti sospesi.
+ * <p>
+ * Altri endpoint del router:
+ * <ul>
+ *   <li>{@code GET /cluster/stato} (o {@code GET /sessioni/stato}): lo stato di ogni nodo</li>
+ *   <li>{@code POST /cluster/nodi?porta=n[&avvia=true]}: aggiunge un nodo sull'interfaccia di loopback,
+ *       avviandone il processo se richiesto</li>
+ * </ul>
+ * Le letture degli spettatori vengono chieste ai nodi uno dopo l'altro, dato che la chiave da spettatore
+ * non dice a quale sessione appartiene; la chiave si sposta con la sessione.
+ * <p>
+ * Per provare il cluster su una sola macchina: {@code RouterSessioni 8000 -avvia 8081 8082} avvia due nodi
+ * come processi figli (uno alla volta, dato che all'avvio ognuno legge il database) e il router sulla porta 8000;
+ * {@code curl -X POST -H 'X-Token-Amministrazione: ...' 'localhost:8000/cluster/nodi?porta=8083&avvia=true'}
+ * aggiunge un terzo nodo.
+ * I nodi devono avere lo stesso database, perché le istantanee si riferiscono alle entità del modello.
+ * <p>
+ * Elenco, esportazione e importazione sono endpoint di amministrazione dei nodi: il router li chiama
+ * con il token della proprietà {@value ServerHttpGioco#PROPRIETA_TOKEN}, o con uno casuale se non è impostata,
+ * e lo passa ai nodi che avvia. I nodi avviati a parte vanno avviati con la stessa proprietà del router.
+ * Le richieste dei client vengono inoltrate senza token. Le richieste che modificano il cluster richiedono
+ * lo stesso token nell'intestazione {@value ServerHttpGioco#INTESTAZIONE_TOKEN}: senza la proprietà
+ * il token è casuale e il cluster non può essere modificato via HTTP.
+ *
+ * @author fabioMarchitelli
+ */
+public class RouterSessioni {
+
+    /**
+     * Porta predefinita del router
+     */
+    public static final int PORTA_PREDEFINITA = 8000;
+
+    private static final String PERCORSO_SESSIONI = "/sessioni";
+    private static final String PERCORSO_CLUSTER = "/cluster";
+    private static final String HOST_PREDEFINITO = "127.0.0.1";
+    private static final char[] ALFABETO = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final int LUNGHEZZA_CHIAVE = 16;
+    /** Lock per le sessioni: una sessione in spostamento blocca solo le sessioni dello stesso lock */
+    private static final int NUMERO_LOCK = 64;
+    private static final Duration TIMEOUT_RICHIESTA = Duration.ofSeconds(30);
+    private static final long ATTESA_AVVIO_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final Pattern CHIAVE = Pattern.compile("\"([a-z0-9]+)\"");
+    private static final String CARTELLA_SOSPESE = "sospese";
+    private static final String ESTENSIONE_SOSPESA = ".trasferimento";
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ExecutorService esecutore = Executors.newVirtualThreadPerTaskExecutor();
+    private final ReentrantReadWriteLock[] lockSessioni = new ReentrantReadWriteLock[NUMERO_LOCK];
+    /** Preso in scrittura solo per cambiare anello: le creazioni in corso lo tengono in lettura */
+    private final ReentrantReadWriteLock topologia = new ReentrantReadWriteLock();
+    /** Sessioni che non si trovano sul nodo indicato dall'anello corrente: spostate o non spostabili */
+    private final ConcurrentHashMap<String, Nodo> posizioni = new ConcurrentHashMap<>();
+    /** Trasferimenti delle sessioni uscite da un nodo e non reimportate in nessuno, da riprovare */
+    private final ConcurrentHashMap<String, byte[]> sospese = new ConcurrentHashMap<>();
+    /** Cartella in cui sono scritti i trasferimenti sospesi, null finché il router non è avviato */
+    private volatile File cartellaSospese;
+    private final List<Process> processi = new CopyOnWriteArrayList<>();
+    private final SecureRandom casuale = new SecureRandom();
+    /** Token di amministrazione presentato ai nodi */
+    private final String token;
+    private volatile AnelloConsistente<Nodo> anello;
+    /** L'anello che sostituirà quello corrente, mentre le sessioni vengono spostate; altrimenti null */
+    private volatile AnelloConsistente<Nodo> anelloInArrivo;
+    private HttpServer server;
+
+    /**
+     * Un nodo del cluster: un processo {@link ServerHttpGioco}.
+     *
+     * @param host L'indirizzo del nodo
+     * @param porta La porta del nodo
+     */
+    public record Nodo(String host, int porta) {
+
+        public String nome() {
+            return host + ":" + porta;
+        }
+
+        private URI uri(String percorso) {
+            return URI.create("http://" + nome() + percorso);
+        }
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param nodi I nodi iniziali, già in ascolto
+     */
+    public RouterSessioni(List<Nodo> nodi) {
+        anello = new AnelloConsistente<>(nodi, Nodo::nome, SchedulatoreShard.NODI_VIRTUALI);
+        String configurato = System.getProperty(ServerHttpGioco.PROPRIETA_TOKEN);
+        if (configurato != null) {
+            token = configurato;
+        } else {
+            byte[] casuali = new byte[32];
+            casuale.nextBytes(casuali);
+            token = HexFormat.of().formatHex(casuali);
+        }
+        for (int i = 0; i < lockSessioni.length; i++) {
+            lockSessioni[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Avvia il router. Argomenti: la porta del router, l'opzione facoltativa {@code -avvia} per avviare i nodi
+     * come processi figli e i nodi, come porte sull'interfaccia di loopback o come {@code host:porta}.
+     *
+     * @param args La porta, l'eventuale opzione e i nodi
+     * @throws Exception Se un nodo non risponde o il socket non è disponibile
+     */
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PREDEFINITA;
+        boolean avvia = args.length > 1 && args[1].equals("-avvia");
+        List<Nodo> nodi = new ArrayList<>();
+        for (int i = avvia ? 2 : 1; i < args.length; i++) {
+            nodi.add(nodo(args[i]));
+        }
+        if (nodi.isEmpty()) {
+            System.err.println("Uso: RouterSessioni <porta> [-avvia] <nodo> [<nodo>...]");
+            return;
+        }
+        RouterSessioni router = new RouterSessioni(nodi);
+        Runtime.getRuntime().addShutdownHook(new Thread(router::fermaNodi));
+        for (Nodo nodo : nodi) {
+            if (avvia) {
+                router.processi.add(router.avviaProcesso(nodo));
+            }
+            // Un nodo alla volta: all'avvio ognuno apre il database, che accetta un solo processo
+            router.attendiNodo(nodo);
+        }
+        router.avvia(porta);
+    }
+
+    /**
+     * Avvia il router sulla porta indicata, sull'interfaccia di loopback.
+     *
+     * @param porta La porta su cui ascoltare
+     * @throws IOException Se il socket non può essere aperto
+     */
+    public void avvia(int porta) throws IOException {
+        cartellaSospese = new File(CARTELLA_SOSPESE + "-" + porta);
+        caricaSospese();
+        server = ServerHttpGioco.creaServer(porta);
+        server.createContext(PERCORSO_SESSIONI, this::gestisci);
+        server.createContext(PERCORSO_CLUSTER, this::gestisci);
+        server.setExecutor(esecutore);
+        server.start();
+        System.out.println("Router in ascolto su " + server.getAddress() + ", nodi: " + anello.getNodi());
+    }
+
+    /**
+     * Ferma il router e i processi dei nodi che ha avviato.
+     */
+    public void ferma() {
+        if (server != null) {
+            server.stop(1);
+        }
+        esecutore.shutdown();
+        fermaNodi();
+    }
+
+    private void fermaNodi() {
+        for (Process processo : processi) {
+            processo.destroy();
+        }
+    }
+
+    /**
+     * Aggiunge un nodo al cluster e vi sposta le sessioni che il nuovo anello gli assegna.
+     * Le sessioni create durante lo spostamento vengono già assegnate secondo il nuovo anello.
+     *
+     * @param nodo Il nodo da aggiungere
+     * @param avvia true per avviare il processo del nodo sulla porta indicata
+     * @return Il numero di sessioni spostate
+     * @throws IOException Se il nodo non risponde o l'elenco delle sessioni di un nodo non può essere letto
+     */
+    public synchronized int aggiungiNodo(Nodo nodo, boolean avvia) throws IOException {
+        AnelloConsistente<Nodo> corrente = anello;
+        if (corrente.getNodi().contains(nodo)) {
+            throw new IllegalArgumentException("Il nodo " + nodo.nome() + " fa già parte del cluster");
+        }
+        if (avvia) {
+            processi.add(avviaProcesso(nodo));
+        }
+        attendiNodo(nodo);
+        for (String id : sospese.keySet()) {
+            try {
+                riprendi(id);
+            } catch (IOException e) {
+                System.err.println("Sessione " + id + " ancora sospesa: " + e.getMessage());
+            }
+        }
+        List<Nodo> nodi = new ArrayList<>(corrente.getNodi());
+        nodi.add(nodo);
+        AnelloConsistente<Nodo> nuovo = new AnelloConsistente<>(nodi, Nodo::nome, SchedulatoreShard.NODI_VIRTUALI);
+        topologia.writeLock().lock();
+        try {
+            anelloInArrivo = nuovo;
+        } finally {
+            topologia.writeLock().unlock();
+        }
+
+        int spostate = 0;
+        try {
+            for (Nodo origine : corrente.getNodi()) {
+                for (String id : elenco(origine)) {
+                    Nodo destinazione = nuovo.get(id);
+                    if (destinazione.equals(origine)) {
+                        continue;
+                    }
+                    try {
+                        if (sposta(id, origine, destinazione)) {
+                            spostate++;
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Sessione " + id + " non spostata su " + destinazione.nome() + ": " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            topologia.writeLock().lock();
+            try {
+                anello = nuovo;
+                anelloInArrivo = null;
+                // Restano solo le sessioni che non si trovano dove le mette il nuovo anello
+                posizioni.entrySet().removeIf(voce -> voce.getValue().equals(nuovo.get(voce.getKey())));
+            } finally {
+                topologia.writeLock().unlock();
+            }
+        }
+        return spostate;
+    }
+
+    /**
+     * Sposta una sessione tra due nodi, bloccandone le richieste fino al termine.
+     *
+     * @return true se la sessione è stata spostata, false se non esisteva più sul nodo di origine
+     */
+    private boolean sposta(String id, Nodo origine, Nodo destinazione) throws IOException {
+        Lock lock = lockSessione(id).writeLock();
+        lock.lock();
+        try {
+            HttpResponse<byte[]> esportata = invia(origine, "POST", PERCORSO_SESSIONI + "/" + id + "/esporta", new byte[0], true);
+            if (esportata.statusCode() == 404) {
+                return false;
+            }
+            if (esportata.statusCode() != 200) {
+                throw new IOException("esportazione rifiutata da " + origine.nome() + " (" + esportata.statusCode() + ")");
+            }
+            byte[] trasferimento = esportata.body();
+            try {
+                importa(destinazione, id, trasferimento);
+                posizioni.put(id, destinazione);
+                return true;
+            } catch (IOException e) {
+                // La sessione è già uscita dal nodo di origine: vi torna, e il router ricorda che è lì
+                posizioni.put(id, origine);
+                try {
+                    importa(origine, id, trasferimento);
+                } catch (IOException ritorno) {
+                    sospendi(id, origine, trasferimento);
+                    System.err.println("Sessione " + id + " sospesa, non reimportata in " + origine.nome()
+                            + ": " + ritorno.getMessage());
+                    e.addSuppressed(ritorno);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reimporta una sessione sospesa nel nodo indicato dalla sua posizione, se il trasferimento è ancora sospeso.
+     *
+     * @throws IOException Se il nodo rifiuta ancora l'importazione: il trasferimento resta sospeso
+     */
+    private void riprendi(String id) throws IOException {
+        Lock lock = lockSessione(id).writeLock();
+        lock.lock();
+        try {
+            byte[] trasferimento = sospese.get(id);
+            if (trasferimento != null) {
+                importa(nodoPer(id), id, trasferimento);
+                sospese.remove(id);
+                File cartella = cartellaSospese;
+                if (cartella != null) {
+                    new File(cartella, id + ESTENSIONE_SOSPESA).delete();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Conserva il trasferimento di una sessione che non si trova su alcun nodo, in memoria e su disco
+     * insieme al nodo in cui va reimportata. Va chiamato con il lock della sessione.
+     */
+    private void sospendi(String id, Nodo origine, byte[] trasferimento) {
+        sospese.put(id, trasferimento);
+        File cartella = cartellaSospese;
+        if (cartella == null) {
+            return;
+        }
+        cartella.mkdirs();
+        File file = new File(cartella, id + ESTENSIONE_SOSPESA);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeUTF(origine.nome());
+            out.writeInt(trasferimento.length);
+            out.write(trasferimento);
+        } catch (IOException e) {
+            System.err.println("Trasferimento della sessione " + id + " conservato solo in memoria: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Riprende i trasferimenti sospesi scritti da un'esecuzione precedente del router sulla stessa porta.
+     */
+    private void caricaSospese() {
+        File[] file = cartellaSospese.listFiles((cartella, nome) -> nome.endsWith(ESTENSIONE_SOSPESA));
+        if (file == null) {
+            return;
+        }
+        for (File sospesa : file) {
+            String id = sospesa.getName().substring(0, sospesa.getName().length() - ESTENSIONE_SOSPESA.length());
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sospesa)))) {
+                Nodo origine = nodo(in.readUTF());
+                byte[] trasferimento = new byte[in.readInt()];
+                in.readFully(trasferimento);
+                posizioni.put(id, origine);
+                sospese.put(id, trasferimento);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Trasferimento sospeso " + sospesa.getName() + " non leggibile: " + e.getMessage());
+            }
+        }
+        if (!sospese.isEmpty()) {
+            System.out.println("Sessioni sospese da reimportare: " + sospese.keySet());
+        }
+    }
+
+    private void importa(Nodo nodo, String id, byte[] trasferimento) throws IOException {
+        HttpResponse<byte[]> risposta = invia(nodo, "POST", PERCORSO_SESSIONI + "/importa?id=" + id, trasferimento, true);
+        if (risposta.statusCode() != 201) {
+            throw new IOException("importazione rifiutata da " + nodo.nome() + " (" + risposta.statusCode() + "): "
+                    + new String(risposta.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Restituisce le chiavi delle sessioni ospitate da un nodo.
+     */
+    private List<String> elenco(Nodo nodo) throws IOException {
+        HttpResponse<byte[]> risposta = invia(nodo, "GET", PERCORSO_SESSIONI + "/elenco", new byte[0], true);
+        if (risposta.statusCode() != 200) {
+            throw new IOException("elenco non disponibile da " + nodo.nome() + " (" + risposta.statusCode() + ")");
+        }
+        String json = new String(risposta.body(), StandardCharsets.UTF_8);
+        List<String> chiavi = new ArrayList<>();
+        Matcher chiave = CHIAVE.matcher(json);
+        chiave.region(json.indexOf('[') + 1, json.length());
+        while (chiave.find()) {
+            chiavi.add(chiave.group(1));
+        }
+        return chiavi;
+    }
+
+    /**
+     * Restituisce il nodo che ospita la sessione. Va chiamato con il lock della sessione.
+     */
+    private Nodo nodoPer(String id) {
+        Nodo nodo = posizioni.get(id);
+        return nodo != null ? nodo : anello.get(id);
+    }
+
+    private ReentrantReadWriteLock lockSessione(String id) {
+        return lockSessioni[Math.floorMod(AnelloConsistente.hash(id), NUMERO_LOCK)];
+    }
+
+    private void gestisci(HttpExchange scambio) throws IOException {
+        try {
+            instrada(scambio);
+        } catch (NumberFormatException e) {
+            rispondi(scambio, 400, ServerHttpGioco.errore("Parametro numerico non valido"));
+        } catch (IllegalArgumentException e) {
+            rispondi(scambio, 400, ServerHttpGioco.errore(e.getMessage()));
+        } catch (IOException e) {
+            rispondi(scambio, 502, ServerHttpGioco.errore("Nodo non raggiungibile: " + e.getMessage()));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            rispondi(scambio, 500, ServerHttpGioco.errore("Errore interno"));
+        } finally {
+            scambio.close();
+        }
+    }
+
+    private void instrada(HttpExchange scambio) throws IOException {
+        URI uri = scambio.getRequestURI();
+        String metodo = scambio.getRequestMethod();
+        String percorso = uri.getPath();
+
+        if (percorso.startsWith(PERCORSO_CLUSTER)) {
+            String risorsa = percorso.substring(PERCORSO_CLUSTER.length());
+            // Un nodo aggiunto riceve il token e le sessioni: solo l'amministratore può cambiare il cluster
+            if (!metodo.equals("GET") && !autorizza(scambio)) {
+                return;
+            }
+            if (risorsa.equals("/stato") && metodo.equals("GET")) {
+                rispondi(scambio, 200, stato());
+            } else if (risorsa.equals("/nodi") && metodo.equals("POST")) {
+                String host = ServerHttpGioco.parametro(uri, "host");
+                String porta = ServerHttpGioco.parametro(uri, "porta");
+                if (porta == null) {
+                    throw new IllegalArgumentException("Porta del nodo mancante");
+                }
+                if (host != null && !host.equals(HOST_PREDEFINITO)) {
+                    throw new IllegalArgumentException("Si possono aggiungere solo nodi su " + HOST_PREDEFINITO);
+                }
+                Nodo nodo = new Nodo(HOST_PREDEFINITO, Integer.parseInt(porta));
+                int spostate = aggiungiNodo(nodo, "true".equals(ServerHttpGioco.parametro(uri, "avvia")));
+                rispondi(scambio, 200, "{\"nodo\":\"" + nodo.nome() + "\",\"spostate\":" + spostate + "}");
+            } else {
+                rispondi(scambio, 404, ServerHttpGioco.errore("Richiesta non riconosciuta"));
+            }
+            return;
+        }
+
+        String[] parti = percorso.substring(PERCORSO_SESSIONI.length()).split("/");
+        String primo = parti.length > 1 ? parti[1] : "";
+        // I client inviano al più un comando: i trasferimenti passano solo tra router e nodi
+        byte[] corpo = ServerHttpGioco.leggiCorpo(scambio, ServerHttpGioco.LUNGHEZZA_MASSIMA_COMANDO);
+        if (corpo == null) {
+            rispondi(scambio, 413, ServerHttpGioco.errore("Comando troppo lungo: al massimo "
+                    + ServerHttpGioco.LUNGHEZZA_MASSIMA_COMANDO + " byte"));
+            return;
+        }
+
+        if (metodo.equals("POST") && primo.isEmpty()) {
+            crea(scambio, PERCORSO_SESSIONI, uri.getRawQuery(), corpo);
+            return;
+        }
+        if (metodo.equals("POST") && primo.equals("carica") && parti.length == 2) {
+            String id = ServerHttpGioco.parametro(uri, "id");
+            if (id == null) {
+                throw new IllegalArgumentException("Chiave della sessione mancante");
+            }
+            if (sospese.containsKey(id)) {
+                riprendi(id);
+            }
+            carica(scambio, id, uri.getRawQuery(), corpo);
+            return;
+        }
+        if (primo.equals("stato") && parti.length == 2 && metodo.equals("GET")) {
+            rispondi(scambio, 200, stato());
+            return;
+        }
+        if (primo.equals("spettatori") && parti.length == 3) {
+            inoltraSpettatore(scambio, corpo);
+            return;
+        }
+        if (primo.isEmpty() || primo.equals("elenco") || primo.equals("importa") || primo.equals("carica")
+                || (parti.length > 2 && parti[2].equals("esporta"))) {
+            // Le operazioni dei nodi sul loro insieme di sessioni restano interne al cluster
+            rispondi(scambio, 404, ServerHttpGioco.errore("Richiesta non riconosciuta"));
+            return;
+        }
+
+        if (sospese.containsKey(primo)) {
+            riprendi(primo);
+        }
+        ReentrantReadWriteLock.ReadLock lock = lockSessione(primo).readLock();
+        lock.lock();
+        try {
+            inoltra(scambio, nodoPer(primo), corpo);
+            if (metodo.equals("DELETE") && parti.length == 2) {
+                posizioni.remove(primo);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verifica che la richiesta presenti il token di amministrazione del router, altrimenti risponde 403.
+     *
+     * @return true se la richiesta è autorizzata
+     */
+    private boolean autorizza(HttpExchange scambio) throws IOException {
+        String presentato = scambio.getRequestHeaders().getFirst(ServerHttpGioco.INTESTAZIONE_TOKEN);
+        if (presentato == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                presentato.getBytes(StandardCharsets.UTF_8))) {
+            rispondi(scambio, 403, ServerHttpGioco.errore("Token di amministrazione non valido"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Crea una sessione sul nodo assegnato alla nuova chiave, scelta dal router.
+     */
+    private void crea(HttpExchange scambio, String percorso, String query, byte[] corpo) throws IOException {
+        topologia.readLock().lock();
+        try {
+            while (true) {
+                String id = nuovaChiave();
+                AnelloConsistente<Nodo> inArrivo = anelloInArrivo;
+                Nodo nodo = inArrivo != null ? inArrivo.get(id) : anello.get(id);
+                String percorsoNodo = percorso + "?id=" + id + (query != null ? "&" + query : "");
+                HttpResponse<byte[]> risposta = invia(nodo, "POST", percorsoNodo, corpo);
+                // Chiave già in uso sul nodo: se ne sceglie un'altra
+                if (risposta.statusCode() == 409) {
+                    continue;
+                }
+                if (inArrivo != null && risposta.statusCode() == 201) {
+                    posizioni.put(id, nodo);
+                }
+                rispondi(scambio, risposta);
+                return;
+            }
+        } finally {
+            topologia.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ricrea una sessione dalla partita che ha salvato. I salvataggi appartengono alla chiave della sessione,
+     * per cui la chiave è quella indicata dal client e il nodo è quello a cui è assegnata;
+     * se la sessione esiste ancora il suo nodo risponde che la chiave è in uso.
+     */
+    private void carica(HttpExchange scambio, String id, String query, byte[] corpo) throws IOException {
+        topologia.readLock().lock();
+        ReentrantReadWriteLock.ReadLock lock = lockSessione(id).readLock();
+        lock.lock();
+        try {
+            AnelloConsistente<Nodo> inArrivo = anelloInArrivo;
+            Nodo nodo = posizioni.containsKey(id) || inArrivo == null ? nodoPer(id) : inArrivo.get(id);
+            HttpResponse<byte[]> risposta = invia(nodo, "POST", PERCORSO_SESSIONI + "/carica?" + query, corpo);
+            if (inArrivo != null && risposta.statusCode() == 201) {
+                posizioni.put(id, nodo);
+            }
+            rispondi(scambio, risposta);
+        } finally {
+            lock.unlock();
+            topologia.readLock().unlock();
+        }
+    }
+
+    private void inoltraSpettatore(HttpExchange scambio, byte[] corpo) throws IOException {
+        AnelloConsistente<Nodo> inArrivo = anelloInArrivo;
+        List<Nodo> nodi = (inArrivo != null ? inArrivo : anello).getNodi();
+        HttpResponse<byte[]> risposta = null;
+        for (Nodo nodo : nodi) {
+            risposta = invia(nodo, scambio.getRequestMethod(), scambio.getRequestURI().getRawPath() + query(scambio), corpo);
+            if (risposta.statusCode() != 404) {
+                break;
+            }
+        }
+        rispondi(scambio, risposta);
+    }
+
+    private void inoltra(HttpExchange scambio, Nodo nodo, byte[] corpo) throws IOException {
+        String percorso = scambio.getRequestURI().getRawPath() + query(scambio);
+        rispondi(scambio, invia(nodo, scambio.getRequestMethod(), percorso, corpo));
+    }
+
+    private HttpResponse<byte[]> invia(Nodo nodo, String metodo, String percorso, byte[] corpo) throws IOException {
+        return invia(nodo, metodo, percorso, corpo, false);
+    }
+
+    /**
+     * Invia una richiesta a un nodo, presentando il token di amministrazione se richiesto.
+     */
+    private HttpResponse<byte[]> invia(Nodo nodo, String metodo, String percorso, byte[] corpo,
+                                       boolean amministrazione) throws IOException {
+        HttpRequest.Builder richiesta = HttpRequest.newBuilder(nodo.uri(percorso))
+                .timeout(TIMEOUT_RICHIESTA)
+                .method(metodo, corpo.length > 0 ? HttpRequest.BodyPublishers.ofByteArray(corpo) : HttpRequest.BodyPublishers.noBody());
+        if (amministrazione) {
+            richiesta.header(ServerHttpGioco.INTESTAZIONE_TOKEN, token);
+        }
+        try {
+            return client.send(richiesta.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Richiesta a " + nodo.nome() + " interrotta");
+        }
+    }
+
+    /**
+     * Stato del cluster: per ogni nodo lo stato riportato dal nodo stesso, più le sessioni fuori posto.
+     */
+    private String stato() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"nodi\":[");
+        List<Nodo> nodi = anello.getNodi();
+        for (int i = 0; i < nodi.size(); i++) {
+            Nodo nodo = nodi.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"nodo\":");
+            ServerHttpGioco.stringaJson(json, nodo.nome());
+            try {
+                HttpResponse<byte[]> risposta = invia(nodo, "GET", PERCORSO_SESSIONI + "/stato", new byte[0]);
+                json.append(",\"stato\":").append(new String(risposta.body(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                json.append(",\"stato\":null");
+            }
+            json.append('}');
+        }
+        json.append("],\"fuoriPosto\":").append(posizioni.size());
+        json.append(",\"sospese\":").append(sospese.size());
+        json.append(",\"inSpostamento\":").append(anelloInArrivo != null);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Attende che il nodo risponda, fino a {@link #ATTESA_AVVIO_MS} millisecondi.
+     */
+    private void attendiNodo(Nodo nodo) throws IOException {
+        long limite = System.currentTimeMillis() + ATTESA_AVVIO_MS;
+        while (true) {
+            try {
+                if (invia(nodo, "GET", PERCORSO_SESSIONI + "/stato", new byte[0]).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > limite) {
+                    throw new IOException("Il nodo " + nodo.nome() + " non risponde", e);
+                }
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Attesa del nodo " + nodo.nome() + " interrotta");
+            }
+        }
+    }
+
+    /**
+     * Avvia un nodo come processo figlio, con la stessa JVM, lo stesso classpath e lo stesso token del router.
+     */
+    private Process avviaProcesso(Nodo nodo) throws IOException {
+        if (!nodo.host().equals(HOST_PREDEFINITO)) {
+            throw new IllegalArgumentException("Si possono avviare solo nodi locali");
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder comando = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-D" + ServerHttpGioco.PROPRIETA_TOKEN + "=" + token, ServerHttpGioco.class.getName(), Integer.toString(nodo.porta()));
+        return comando.inheritIO().start();
+    }
+
+    private static Nodo nodo(String argomento) {
+        int dueP = argomento.lastIndexOf(':');
+        if (dueP < 0) {
+            return new Nodo(HOST_PREDEFINITO, Integer.parseInt(argomento));
+        }
+        return new Nodo(argomento.substring(0, dueP), Integer.parseInt(argomento.substring(dueP + 1)));
+    }
+
+    private String nuovaChiave() {
+        char[] chiave = new char[LUNGHEZZA_CHIAVE];
+        for (int i = 0; i < chiave.length; i++) {
+            chiave[i] = ALFABETO[casuale.nextInt(ALFABETO.length)];
+        }
+        return new String(chiave);
+    }
+
+    private static String query(HttpExchange scambio) {
+        String query = scambio.getRequestURI().getRawQuery();
+        return query != null ? "?" + query : "";
+    }
+
+    private static void rispondi(HttpExchange scambio, HttpResponse<byte[]> risposta) throws IOException {
+        risposta.headers().firstValue("Content-Type").ifPresent(tipo -> scambio.getResponseHeaders().set("Content-Type", tipo));
+        risposta.headers().firstValue("Retry-After").ifPresent(attesa -> scambio.getResponseHeaders().set("Retry-After", attesa));
+        byte[] corpo = risposta.body();
+        scambio.sendResponseHeaders(risposta.statusCode(), corpo.length > 0 ? corpo.length : -1);
+        try (OutputStream out = scambio.getResponseBody()) {
+            out.write(corpo);
+        }
+    }
+
+    private static void rispondi(HttpExchange scambio, int stato, String json) throws IOException {
+        byte[] corpo = json.getBytes(StandardCharsets.UTF_8);
+        scambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        scambio.sendResponseHeaders(stato, corpo.length);
+        try (OutputStream out = scambio.getResponseBody()) {
+            out.write(corpo);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package di.lacosa;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporizzatore a ruota (hashed wheel) condiviso da tutte le partite per gli eventi a tempo
+ * del mondo di gioco: avvicinamento della creatura, conti alla rovescia, narrazione ritardata.
+ * <p>
+ * La ruota è un array di caselle, ognuna con una lista doppiamente collegata di eventi;
+ * un unico thread avanza di una casella a ogni tick e consegna gli eventi scaduti.
+ * Un evento più lontano di un giro completo conta i giri che gli mancano. In questo modo:
+ * <ul>
+ *   <li>Un evento in attesa occupa un piccolo oggetto, senza thread né stack propri</li>
+ *   <li>Pianificazione e annullamento costano O(1); gli annullati vengono scollegati dal thread della ruota</li>
+ *   <li>La precisione è quella del tick ({@link #DURATA_TICK_MS} ms per la ruota condivisa),
+ *       più che sufficiente per eventi narrativi</li>
+ * </ul>
+ * Gli eventi non vengono eseguiti dal thread della ruota ma consegnati all'esecutore indicato
+ * alla pianificazione, che li inserisce nel ciclo dei comandi della partita.
+ * <p>
+ * La ruota condivisa è l'{@link Orologio#diSistema() orologio di sistema} delle partite.
+ *
+ * @author fabioMarchitelli
+ */
+public class RuotaTemporizzatori implements Orologio {
+
+    /**
+     * Durata del tick della ruota condivisa, in millisecondi
+     */
+    public static final long DURATA_TICK_MS = 100;
+
+    private static final int CASELLE_PREDEFINITE = 512;
+    /** Limite dei nuovi eventi trasferiti nelle caselle a ogni tick, per non ritardare la ruota */
+    private static final int TRASFERIMENTI_PER_TICK = 100_000;
+
+    private static volatile RuotaTemporizzatori condivisa;
+
+    private final long durataTick;
+    private final Temporizzatore[] caselle;
+    private final int maschera;
+    private final ConcurrentLinkedQueue<Temporizzatore> daAggiungere = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Temporizzatore> daAnnullare = new ConcurrentLinkedQueue<>();
+    private final AtomicLong inAttesa = new AtomicLong();
+    private final long inizio = System.nanoTime();
+    private final Thread thread;
+    private volatile boolean attiva = true;
+    /** Numero di tick già elaborati; usato solo dal thread della ruota */
+    private long tick;
+
+    /**
+     * Costruttore della classe. Avvia il thread della ruota.
+     *
+     * @param durataTick La durata di un tick
+     * @param unita L'unità di misura della durata
+     * @param numeroCaselle Il numero di caselle, arrotondato alla potenza di due successiva
+     */
+    public RuotaTemporizzatori(long durataTick, TimeUnit unita, int numeroCaselle) {
+        if (durataTick <= 0 || numeroCaselle <= 0) {
+            throw new IllegalArgumentException("Durata del tick e numero di caselle devono essere positivi");
+        }
+        this.durataTick = unita.toNanos(durataTick);
+        int dimensione = Integer.highestOneBit(numeroCaselle - 1) << 1;
+        this.caselle = new Temporizzatore[Math.max(1, dimensione)];
+        this.maschera = caselle.length - 1;
+        this.thread = new Thread(this::avanza, "Ruota-temporizzatori");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Restituisce la ruota condivisa da tutte le partite, creata alla prima richiesta.
+     *
+     * @return La ruota condivisa
+     */
+    public static RuotaTemporizzatori getCondivisa() {
+        RuotaTemporizzatori ruota = condivisa;
+        if (ruota == null) {
+            synchronized (RuotaTemporizzatori.class) {
+                ruota = condivisa;
+                if (ruota == null) {
+                    ruota = new RuotaTemporizzatori(DURATA_TICK_MS, TimeUnit.MILLISECONDS, CASELLE_PREDEFINITE);
+                    condivisa = ruota;
+                }
+            }
+        }
+        return ruota;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Pianifica un evento.
+     *
+     * @param evento L'evento da eseguire alla scadenza
+     * @param ritardo Il ritardo dopo il quale l'evento scade
+     * @param unita L'unità di misura del ritardo
+     * @param esecutore L'esecutore a cui consegnare l'evento scaduto
+     * @return Il temporizzatore, con cui l'evento può essere annullato
+     */
+    @Override
+    public Temporizzatore pianifica(Runnable evento, long ritardo, TimeUnit unita, Executor esecutore) {
+        if (!attiva) {
+            throw new IllegalStateException("La ruota dei temporizzatori è stata fermata");
+        }
+        long scadenza = System.nanoTime() - inizio + Math.max(0, unita.toNanos(ritardo));
+        Temporizzatore temporizzatore = new Temporizzatore(this, evento, esecutore, scadenza);
+        inAttesa.incrementAndGet();
+        daAggiungere.add(temporizzatore);
+        return temporizzatore;
+    }
+
+    /**
+     * Restituisce il numero di eventi pianificati e non ancora scaduti o annullati.
+     *
+     * @return Gli eventi in attesa
+     */
+    public long getNumeroInAttesa() {
+        return inAttesa.get();
+    }
+
+    /**
+     * Ferma il thread della ruota; gli eventi in attesa non verranno più consegnati.
+     */
+    public void ferma() {
+        attiva = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Ciclo del thread della ruota: attende la fine di ogni tick ed elabora la casella corrispondente.
+     */
+    private void avanza() {
+        while (attiva) {
+            long fineTick = (tick + 1) * durataTick;
+            long attesa = fineTick - (System.nanoTime() - inizio);
+            if (attesa > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(attesa);
+                } catch (InterruptedException e) {
+                    if (!attiva) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            scollegaAnnullati();
+            trasferisciNuovi();
+            scadi(caselle[(int) (tick & maschera)], fineTick);
+            tick++;
+        }
+    }
+
+    private void scollegaAnnullati() {
+        Temporizzatore temporizzatore;
+        while ((temporizzatore = daAnnullare.poll()) != null) {
+            if (temporizzatore.casella >= 0) {
+                scollega(temporizzatore);
+            }
+        }
+    }
+
+    private void trasferisciNuovi() {
+        for (int i = 0; i < TRASFERIMENTI_PER_TICK; i++) {
+            Temporizzatore temporizzatore = daAggiungere.poll();
+            if (temporizzatore == null) {
+                return;
+            }
+            if (temporizzatore.stato != Temporizzatore.IN_ATTESA) {
+                continue;
+            }
+            long tickScadenza = temporizzatore.scadenza / durataTick;
+            temporizzatore.giri = (tickScadenza - tick) / caselle.length;
+            // Un evento già scaduto va nella casella corrente, non in una già superata
+            int indice = (int) (Math.max(tickScadenza, tick) & maschera);
+            collega(temporizzatore, indice);
+        }
+    }
+
+    private void scadi(Temporizzatore testa, long fineTick) {
+        Temporizzatore temporizzatore = testa;
+        while (temporizzatore != null) {
+            Temporizzatore successivo = temporizzatore.successivo;
+            if (temporizzatore.stato == Temporizzatore.ANNULLATO) {
+                scollega(temporizzatore);
+            } else if (temporizzatore.giri <= 0 && temporizzatore.scadenza < fineTick) {
+                scollega(temporizzatore);
+                temporizzatore.scadi();
+            } else {
+                temporizzatore.giri--;
+            }
+            temporizzatore = successivo;
+        }
+    }
+
+    private void collega(Temporizzatore temporizzatore, int indice) {
+        Temporizzatore testa = caselle[indice];
+        temporizzatore.casella = indice;
+        temporizzatore.successivo = testa;
+        if (testa != null) {
+            testa.precedente = temporizzatore;
+        }
+        caselle[indice] = temporizzatore;
+    }
+
+    private void scollega(Temporizzatore temporizzatore) {
+        if (temporizzatore.precedente != null) {
+            temporizzatore.precedente.successivo = temporizzatore.successivo;
+        } else {
+            caselle[temporizzatore.casella] = temporizzatore.successivo;
+        }
+        if (temporizzatore.successivo != null) {
+            temporizzatore.successivo.precedente = temporizzatore.precedente;
+        }
+        temporizzatore.precedente = null;
+        temporizzatore.successivo = null;
+        temporizzatore.casella = -1;
+    }
+
+
+    /**
+     * Evento pianificato nella ruota. I collegamenti alla casella sono usati solo dal thread della ruota;
+     * lo stato è l'unico campo condiviso con gli altri thread.
+     */
+    public static final class Temporizzatore implements EventoPianificato {
+
+        private static final int IN_ATTESA = 0;
+        private static final int ANNULLATO = 1;
+        private static final int SCADUTO = 2;
+        private static final AtomicIntegerFieldUpdater<Temporizzatore> STATO =
+                AtomicIntegerFieldUpdater.newUpdater(Temporizzatore.class, "stato");
+
+        private final RuotaTemporizzatori ruota;
+        private final Runnable evento;
+        private final Executor esecutore;
+        /** Scadenza in nanosecondi dall'avvio della ruota */
+        private final long scadenza;
+        private volatile int stato = IN_ATTESA;
+        private long giri;
+        private int casella = -1;
+        private Temporizzatore precedente;
+        private Temporizzatore successivo;
+
+        private Temporizzatore(RuotaTemporizzatori ruota, Runnable evento, Executor esecutore, long scadenza) {
+            this.ruota = ruota;
+            this.evento = evento;
+            this.esecutore = esecutore;
+            this.scadenza = scadenza;
+        }
+
+        @Override
+        public boolean annulla() {
+            if (!STATO.compareAndSet(this, IN_ATTESA, ANNULLATO)) {
+                return false;
+            }
+            ruota.inAttesa.decrementAndGet();
+            ruota.daAnnullare.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isAnnullato() {
+            return stato == ANNULLATO;
+        }
+
+        @Override
+        public boolean isScaduto() {
+            return stato == SCADUTO;
+        }
+
+        private void scadi() {
+            if (!STATO.compareAndSet(this, IN_ATTESA, SCADUTO)) {
+                return;
+            }
+            ruota.inAttesa.decrementAndGet();
+            try {
+                esecutore.execute(evento);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
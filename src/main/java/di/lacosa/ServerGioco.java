@@ -0,0 +1,285 @@
+package di.lacosa;
+
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.FrontendTestuale;
+import di.lacosa.implementazione.ModelloPartita;
+import di.lacosa.implementazione.CicloSessione;
+import di.lacosa.implementazione.DiarioComandi;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.implementazione.SchedulatoreShard;
+import di.lacosa.implementazione.SessioneGioco;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Punto di ingresso del gioco in modalità server, alternativo a {@link Main}.
+ * <p>
+ * Il server accetta connessioni TCP sull'interfaccia di loopback e ospita una partita
+ * per ogni connessione, senza interfaccia grafica: il giocatore invia un comando per riga
+ * e riceve il testo prodotto dalla partita. Tutte le sessioni condividono il parser
+ * e il contenuto statico del gioco (tramite {@link ModelloPartita}), per cui ogni giocatore
+ * collegato costa solo lo stato della propria partita e un thread leggero.
+ * <p>
+ * Ogni connessione viene servita da un thread virtuale. Le righe più lunghe di {@link #LUNGHEZZA_MASSIMA_RIGA}
+ * caratteri vengono scartate senza essere accumulate in memoria. Il testo prodotto fuori dai comandi
+ * (es. gli avvertimenti della creatura) viene inviato subito, da un altro thread virtuale:
+ * le scritture sul socket sono serializzate da un lock, per cui l'output mantiene l'ordine di produzione.
+ * <p>
+ * Con una {@link #setCartellaDiari(Path) cartella dei diari} ogni partita viene registrata
+ * in un {@link DiarioComandi}, scritto alla chiusura della connessione e riproducibile con {@link RiproduttorePartite}.
+ *
+ * @author fabioMarchitelli
+ */
+public class ServerGioco {
+
+    /**
+     * Porta predefinita del server
+     */
+    public static final int PORTA_PREDEFINITA = 4000;
+
+    /**
+     * Lunghezza massima di una riga di input, in caratteri
+     */
+    public static final int LUNGHEZZA_MASSIMA_RIGA = 512;
+
+    /** Riga restituita da {@link #leggiRiga} al posto di una riga troppo lunga; confrontata per identità */
+    private static final String RIGA_TROPPO_LUNGA = new String("");
+
+    private final ModelloPartita modello;
+    private final ExecutorService esecutore = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger sessioniAttive = new AtomicInteger();
+    private final AtomicLong progressivoConnessioni = new AtomicLong();
+    private final SchedulatoreShard schedulatore = SchedulatoreShard.perProcessori();
+    private volatile ServerSocket socketServer;
+    private volatile Path cartellaDiari;
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare la partita di ogni connessione
+     */
+    public ServerGioco(ModelloPartita modello) {
+        this.modello = modello;
+    }
+
+    /**
+     * Avvia il server.
+     *
+     * @param args La porta su cui ascoltare e la cartella dei diari (entrambe facoltative)
+     * @throws Exception Se il database o il socket non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PREDEFINITA;
+        DatabaseManager.main(new String[]{});
+        ModelloPartita modello = ModelloPartita.daDatabase();
+        System.out.println("Modello della partita pronto (" + modello.getDimensione() + " byte).");
+        ServerGioco server = new ServerGioco(modello);
+        if (args.length > 1) {
+            server.setCartellaDiari(Paths.get(args[1]));
+        }
+        server.ascolta(porta);
+    }
+
+    /**
+     * Accetta connessioni sulla porta indicata finché il server non viene chiuso.
+     *
+     * @param porta La porta su cui ascoltare
+     * @throws IOException Se il socket non può essere aperto
+     */
+    public void ascolta(int porta) throws IOException {
+        try (ServerSocket server = new ServerSocket(porta, 128, InetAddress.getLoopbackAddress())) {
+            socketServer = server;
+            System.out.println("Server in ascolto su " + server.getLocalSocketAddress());
+            while (!server.isClosed()) {
+                Socket connessione;
+                try {
+                    connessione = server.accept();
+                } catch (IOException e) {
+                    if (server.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                esecutore.execute(() -> servi(connessione));
+            }
+        } finally {
+            esecutore.shutdown();
+            schedulatore.ferma();
+        }
+    }
+
+    /**
+     * Chiude il server: le connessioni già aperte terminano normalmente.
+     *
+     * @throws IOException Se il socket non può essere chiuso
+     */
+    public void chiudi() throws IOException {
+        ServerSocket server = socketServer;
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public int getSessioniAttive() {
+        return sessioniAttive.get();
+    }
+
+    /**
+     * Imposta la cartella in cui scrivere il diario di ogni partita, creandola se necessario.
+     *
+     * @param cartella La cartella dei diari, o null per non registrare le partite
+     * @throws IOException Se la cartella non può essere creata
+     */
+    public void setCartellaDiari(Path cartella) throws IOException {
+        if (cartella != null) {
+            Files.createDirectories(cartella);
+        }
+        this.cartellaDiari = cartella;
+    }
+
+    /**
+     * Gioca una partita sulla connessione indicata, un comando per riga.
+     *
+     * @param connessione La connessione del giocatore
+     */
+    private void servi(Socket connessione) {
+        sessioniAttive.incrementAndGet();
+        DiarioComandi diario = null;
+        Path fileDiario = null;
+        SessioneGioco sessione = null;
+        try (Socket socket = connessione;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+
+            // Il thread della connessione legge e scrive; la partita viene eseguita dallo shard assegnato
+            String chiave = "tcp-" + progressivoConnessioni.incrementAndGet();
+            CicloSessione ciclo = schedulatore.creaCiclo(chiave);
+            LaCosa partita = modello.creaPartita();
+            // I salvataggi della connessione non sovrascrivono quelli delle altre
+            partita.setSpazioSalvataggi(chiave);
+            FrontendTestuale frontend = new FrontendTestuale();
+            Lock scrittura = new ReentrantLock();
+            AtomicBoolean invioPianificato = new AtomicBoolean();
+            // L'ascoltatore gira nello shard e non può bloccarsi sul socket: l'invio passa a un thread virtuale
+            frontend.setAscoltatoreTesto(() -> {
+                if (invioPianificato.compareAndSet(false, true)) {
+                    try {
+                        esecutore.execute(() -> {
+                            invioPianificato.set(false);
+                            try {
+                                invia(out, frontend, scrittura);
+                            } catch (IOException e) {
+                                // La connessione è caduta: se ne accorge il thread che la legge
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        invioPianificato.set(false);
+                    }
+                }
+            });
+            sessione = new SessioneGioco(partita, frontend, ciclo);
+            Path cartella = cartellaDiari;
+            if (cartella != null) {
+                diario = new DiarioComandi(partita.getOrologio());
+                fileDiario = cartella.resolve(chiave + ".diario");
+                sessione.setDiario(diario);
+            }
+            sessione.presentaAmbiente();
+            invia(out, frontend, scrittura);
+
+            String riga;
+            while (!sessione.isConclusa() && (riga = leggiRiga(in)) != null) {
+                if (riga == RIGA_TROPPO_LUNGA) {
+                    frontend.scriviInAreaDiTesto("\nComando troppo lungo: al massimo "
+                            + LUNGHEZZA_MASSIMA_RIGA + " caratteri per riga.\n?> \n");
+                } else {
+                    sessione.eseguiComando(riga);
+                }
+                invia(out, frontend, scrittura);
+            }
+        } catch (IOException e) {
+            System.err.println("Connessione interrotta: " + e.getMessage());
+        } finally {
+            // Anche se la connessione cade, la creatura della partita non deve restare attiva
+            if (sessione != null) {
+                sessione.termina();
+            }
+            sessioniAttive.decrementAndGet();
+        }
+        if (diario != null) {
+            try {
+                diario.scrivi(fileDiario);
+            } catch (IOException e) {
+                System.err.println("Impossibile scrivere il diario " + fileDiario + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Invia al giocatore il testo prodotto dalla partita. Il testo viene prelevato e scritto
+     * con il lock della connessione, per cui gli invii non si sovrappongono né si scambiano di ordine.
+     */
+    private static void invia(Writer out, FrontendTestuale frontend, Lock scrittura) throws IOException {
+        scrittura.lock();
+        try {
+            String testo = frontend.prelevaTesto();
+            if (!testo.isEmpty()) {
+                out.write(testo);
+                out.flush();
+            }
+        } finally {
+            scrittura.unlock();
+        }
+    }
+
+    /**
+     * Legge una riga di al più {@link #LUNGHEZZA_MASSIMA_RIGA} caratteri. Il resto di una riga più lunga
+     * viene letto e scartato senza essere conservato.
+     *
+     * @param in Lo stream della connessione
+     * @return La riga senza terminatore, {@link #RIGA_TROPPO_LUNGA} se supera il limite, null a fine stream
+     * @throws IOException Se la lettura fallisce
+     */
+    private static String leggiRiga(BufferedReader in) throws IOException {
+        StringBuilder riga = new StringBuilder();
+        boolean troppoLunga = false;
+        int carattere;
+        while ((carattere = in.read()) != -1 && carattere != '\n') {
+            if (riga.length() < LUNGHEZZA_MASSIMA_RIGA) {
+                riga.append((char) carattere);
+            } else {
+                troppoLunga = true;
+            }
+        }
+        if (carattere == -1 && riga.length() == 0) {
+            return null;
+        }
+        if (troppoLunga) {
+            return RIGA_TROPPO_LUNGA;
+        }
+        int fine = riga.length();
+        if (fine > 0 && riga.charAt(fine - 1) == '\r') {
+            riga.setLength(fine - 1);
+        }
+        return riga.toString();
+    }
+}
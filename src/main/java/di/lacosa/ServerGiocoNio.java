@@ -0,0 +1,504 @@
+package di.lacosa;
+
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.FrontendTestuale;
+import di.lacosa.implementazione.ModelloPartita;
+import di.lacosa.implementazione.CicloSessione;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.implementazione.SchedulatoreShard;
+import di.lacosa.implementazione.SessioneGioco;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Punto di ingresso del gioco in modalità server non bloccante, per un numero molto alto di connessioni.
+ * <p>
+ * A differenza di {@link ServerGioco}, che dedica un thread a ogni connessione, tutte le connessioni
+ * sono gestite da un unico {@link Selector}:
+ * <ul>
+ *   <li>Il thread del selettore accetta le connessioni, legge i byte in un buffer diretto preso
+ *       da un pool e ne ricava le righe, scrive l'output accumulato con scritture a raccolta</li>
+ *   <li>I comandi vengono eseguiti nel ciclo della {@link SessioneGioco}, nell'ordine in cui le righe
+ *       sono arrivate, dallo shard del {@link SchedulatoreShard} assegnato alla connessione: lettura
+ *       delle righe, comandi ed eventi a tempo di una partita usano sempre lo stesso thread</li>
+ * </ul>
+ * Il testo prodotto dalla partita, anche fuori dai comandi (es. la creatura), viene segnalato al selettore,
+ * che è l'unico a prelevarlo dal frontend e a scriverlo sul socket: l'ordine dell'output è quindi sempre
+ * quello di produzione e le code di scrittura non richiedono sincronizzazione.
+ * <p>
+ * Un client lento o che invia troppe righe non può accumulare memoria: quando l'output in coda supera
+ * {@link #ALTA_MAREA_USCITA} byte, o le righe in attesa sono {@link #RIGHE_MASSIME_IN_CODA}, il selettore
+ * smette di leggere dalla connessione finché l'output non scende sotto {@link #BASSA_MAREA_USCITA}
+ * e le righe non sono state eseguite. Il client rallenta per effetto del controllo di flusso TCP.
+ * <p>
+ * Allo stesso modo, le righe inviate oltre il ritmo consentito dal limitatore della sessione non vengono
+ * scartate: restano in coda e la loro esecuzione riprende, con un evento della {@link RuotaTemporizzatori},
+ * quando la sessione può accettare il comando successivo.
+ *
+ * @author fabioMarchitelli
+ */
+public class ServerGiocoNio {
+
+    /**
+     * Porta predefinita del server
+     */
+    public static final int PORTA_PREDEFINITA = 4001;
+
+    /**
+     * Lunghezza massima di una riga di input, pari alla capacità dei buffer di lettura
+     */
+    private static final int LUNGHEZZA_RIGA = 512;
+
+    /**
+     * Segnaposto accodato al posto di una riga più lunga del buffer, riconosciuto per identità:
+     * il ciclo della connessione risponde con un errore invece di eseguirlo
+     */
+    private static final String RIGA_TROPPO_LUNGA = new String("");
+
+    /**
+     * Numero massimo di buffer scritti con una sola scrittura a raccolta
+     */
+    private static final int BUFFER_PER_SCRITTURA = 16;
+
+    /**
+     * Byte di output in coda oltre i quali la lettura della connessione viene sospesa
+     */
+    public static final int ALTA_MAREA_USCITA = 64 * 1024;
+
+    /**
+     * Byte di output in coda sotto i quali la lettura sospesa riprende
+     */
+    public static final int BASSA_MAREA_USCITA = 16 * 1024;
+
+    /**
+     * Righe in attesa di esecuzione oltre le quali la lettura della connessione viene sospesa
+     */
+    public static final int RIGHE_MASSIME_IN_CODA = 16;
+
+    private final ModelloPartita modello;
+    private final SchedulatoreShard schedulatore;
+    private final AtomicLong progressivoConnessioni = new AtomicLong();
+    private final PoolBuffer poolBuffer = new PoolBuffer(LUNGHEZZA_RIGA);
+    private final Queue<Connessione> daSvuotare = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connessioniAttive = new AtomicInteger();
+    private final ByteBuffer[] raccolta = new ByteBuffer[BUFFER_PER_SCRITTURA];
+    private volatile Selector selettore;
+    private volatile boolean attivo = true;
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare la partita di ogni connessione
+     * @param numeroShard Il numero di shard, cioè di thread che eseguono i comandi
+     */
+    public ServerGiocoNio(ModelloPartita modello, int numeroShard) {
+        this.modello = modello;
+        this.schedulatore = new SchedulatoreShard(numeroShard);
+    }
+
+    /**
+     * Avvia il server.
+     *
+     * @param args La porta su cui ascoltare e il numero di shard (facoltativi)
+     * @throws Exception Se il database o il socket non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PREDEFINITA;
+        int numeroShard = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        DatabaseManager.main(new String[]{});
+        new ServerGiocoNio(ModelloPartita.daDatabase(), numeroShard).ascolta(porta);
+    }
+
+    /**
+     * Gestisce le connessioni sulla porta indicata finché il server non viene chiuso.
+     *
+     * @param porta La porta su cui ascoltare
+     * @throws IOException Se il socket o il selettore non possono essere aperti
+     */
+    public void ascolta(int porta) throws IOException {
+        try (Selector sel = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+            selettore = sel;
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 1024);
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
+            System.out.println("Server NIO in ascolto su " + server.getLocalAddress());
+
+            while (attivo) {
+                sel.select();
+                svuotaConnessioniSegnalate();
+                Iterator<SelectionKey> chiavi = sel.selectedKeys().iterator();
+                while (chiavi.hasNext()) {
+                    SelectionKey chiave = chiavi.next();
+                    chiavi.remove();
+                    try {
+                        if (!chiave.isValid()) {
+                            continue;
+                        }
+                        if (chiave.isAcceptable()) {
+                            accetta(server, sel);
+                        } else {
+                            if (chiave.isReadable()) {
+                                leggi((Connessione) chiave.attachment());
+                            }
+                            if (chiave.isValid() && chiave.isWritable()) {
+                                scrivi((Connessione) chiave.attachment());
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (chiave.attachment() != null) {
+                            chiudi((Connessione) chiave.attachment());
+                        }
+                    }
+                }
+            }
+            for (SelectionKey chiave : sel.keys()) {
+                if (chiave.attachment() != null) {
+                    chiudi((Connessione) chiave.attachment());
+                }
+            }
+        } finally {
+            schedulatore.ferma();
+        }
+    }
+
+    /**
+     * Chiede la chiusura del server: il thread del selettore chiude tutte le connessioni aperte e termina.
+     */
+    public void chiudi() {
+        attivo = false;
+        Selector sel = selettore;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    public int getConnessioniAttive() {
+        return connessioniAttive.get();
+    }
+
+    public SchedulatoreShard getSchedulatore() {
+        return schedulatore;
+    }
+
+    private void accetta(ServerSocketChannel server, Selector sel) throws IOException {
+        SocketChannel canale = server.accept();
+        if (canale == null) {
+            return;
+        }
+        canale.configureBlocking(false);
+        canale.socket().setTcpNoDelay(true);
+        String id = "nio-" + progressivoConnessioni.incrementAndGet();
+        Connessione connessione = new Connessione(canale, poolBuffer.preleva(), id, schedulatore.creaCiclo(id));
+        connessione.chiave = canale.register(sel, SelectionKey.OP_READ, connessione);
+        connessioniAttive.incrementAndGet();
+        // La partita viene creata dallo shard della connessione, insieme ai primi comandi
+        pianifica(connessione);
+    }
+
+    /**
+     * Legge i byte disponibili e ne ricava le righe complete, che vengono accodate alla connessione.
+     * Una riga che riempie il buffer senza terminare viene scartata fino al ritorno a capo successivo,
+     * e al suo posto viene accodato {@link #RIGA_TROPPO_LUNGA}: la sua coda non va eseguita come comando.
+     */
+    private void leggi(Connessione connessione) throws IOException {
+        ByteBuffer buffer = connessione.lettura;
+        int letti = connessione.canale.read(buffer);
+        if (letti == -1) {
+            chiudi(connessione);
+            return;
+        }
+        buffer.flip();
+        int inizioRiga = buffer.position();
+        boolean nuoveRighe = false;
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                if (connessione.scartaRiga) {
+                    connessione.scartaRiga = false;
+                    connessione.righe.add(RIGA_TROPPO_LUNGA);
+                } else {
+                    connessione.righe.add(decodificaRiga(buffer, inizioRiga, i));
+                }
+                inizioRiga = i + 1;
+                nuoveRighe = true;
+            }
+        }
+        buffer.position(inizioRiga);
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // Riga più lunga del buffer: viene scartata fino al prossimo ritorno a capo
+            buffer.clear();
+            connessione.scartaRiga = true;
+        }
+        if (nuoveRighe) {
+            // La sospensione va segnata prima di pianificare, perché il ciclo la veda al termine delle righe
+            if (connessione.righe.size() >= RIGHE_MASSIME_IN_CODA) {
+                aggiornaInteresse(connessione);
+            }
+            pianifica(connessione);
+        }
+    }
+
+    private static String decodificaRiga(ByteBuffer buffer, int inizio, int fine) {
+        if (fine > inizio && buffer.get(fine - 1) == '\r') {
+            fine--;
+        }
+        byte[] byteRiga = new byte[fine - inizio];
+        for (int i = 0; i < byteRiga.length; i++) {
+            byteRiga[i] = buffer.get(inizio + i);
+        }
+        return new String(byteRiga, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Accoda l'esecuzione delle righe nel ciclo della connessione, se non è già accodata.
+     */
+    private void pianifica(Connessione connessione) {
+        if (!connessione.inPausa && connessione.inEsecuzione.compareAndSet(false, true)) {
+            connessione.ciclo.execute(() -> eseguiComandi(connessione));
+        }
+    }
+
+    /**
+     * Eseguito nel ciclo della connessione: crea la partita se necessario ed esegue le righe accodate, in ordine.
+     * I comandi della sessione vengono quindi eseguiti subito, senza passare ad altri thread.
+     */
+    private void eseguiComandi(Connessione connessione) {
+        while (true) {
+            try {
+                if (connessione.sessione == null && !connessione.chiusa) {
+                    FrontendTestuale frontend = new FrontendTestuale();
+                    frontend.setAscoltatoreTesto(() -> segnala(connessione));
+                    LaCosa partita = modello.creaPartita();
+                    // I salvataggi della connessione non sovrascrivono quelli delle altre
+                    partita.setSpazioSalvataggi(connessione.id);
+                    connessione.sessione = new SessioneGioco(partita, frontend, connessione.ciclo);
+                    connessione.sessione.presentaAmbiente();
+                }
+                String riga;
+                while (!connessione.chiusa && (riga = connessione.righe.peek()) != null) {
+                    long attesa = riga == RIGA_TROPPO_LUNGA ? 0 : connessione.sessione.getAttesaComandoNanos();
+                    if (attesa > 0) {
+                        // Il ciclo è condiviso con altre sessioni: la riga resta in coda e viene ripresa più tardi
+                        connessione.inPausa = true;
+                        RuotaTemporizzatori.getCondivisa().pianifica(() -> {
+                            connessione.inPausa = false;
+                            pianifica(connessione);
+                        }, attesa, TimeUnit.NANOSECONDS, connessione.ciclo);
+                        break;
+                    }
+                    connessione.righe.poll();
+                    if (riga == RIGA_TROPPO_LUNGA) {
+                        connessione.sessione.getFrontend().scriviInAreaDiTesto(
+                                "\nComando troppo lungo: al massimo " + LUNGHEZZA_RIGA + " byte per riga.\n?> \n");
+                        continue;
+                    }
+                    connessione.sessione.eseguiComando(riga);
+                    if (connessione.sessione.isConclusa()) {
+                        connessione.chiudiDopoScrittura = true;
+                        segnala(connessione);
+                        connessione.righe.clear();
+                    }
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                connessione.chiudiDopoScrittura = true;
+                segnala(connessione);
+            } finally {
+                connessione.inEsecuzione.set(false);
+                if (connessione.letturaSospesa) {
+                    // Le righe sono state eseguite: il selettore può valutare se riprendere la lettura
+                    segnala(connessione);
+                }
+            }
+            // Una riga arrivata dopo il controllo della coda ma prima del rilascio va ancora eseguita
+            if (connessione.inPausa || connessione.righe.isEmpty()
+                    || !connessione.inEsecuzione.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Segnala al selettore che la connessione ha del testo da scrivere. Può essere chiamato da qualsiasi thread.
+     */
+    private void segnala(Connessione connessione) {
+        if (connessione.segnalata.compareAndSet(false, true)) {
+            daSvuotare.add(connessione);
+            Selector sel = selettore;
+            if (sel != null) {
+                sel.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Preleva il testo delle connessioni segnalate, lo accoda come buffer e prova a scriverlo subito.
+     */
+    private void svuotaConnessioniSegnalate() {
+        Connessione connessione;
+        while ((connessione = daSvuotare.poll()) != null) {
+            connessione.segnalata.set(false);
+            if (connessione.chiusa) {
+                continue;
+            }
+            String testo = connessione.sessione != null ? connessione.sessione.getFrontend().prelevaTesto() : "";
+            if (!testo.isEmpty()) {
+                ByteBuffer buffer = ByteBuffer.wrap(testo.getBytes(StandardCharsets.UTF_8));
+                connessione.byteInUscita += buffer.remaining();
+                connessione.uscita.add(buffer);
+            }
+            try {
+                scrivi(connessione);
+            } catch (IOException e) {
+                chiudi(connessione);
+            }
+        }
+    }
+
+    /**
+     * Scrive il maggior numero possibile di buffer in coda con una scrittura a raccolta,
+     * attivando l'interesse in scrittura solo se il socket non accetta tutto il testo.
+     */
+    private void scrivi(Connessione connessione) throws IOException {
+        while (!connessione.uscita.isEmpty()) {
+            int numero = 0;
+            for (ByteBuffer buffer : connessione.uscita) {
+                if (numero == BUFFER_PER_SCRITTURA) {
+                    break;
+                }
+                raccolta[numero++] = buffer;
+            }
+            long scritti = connessione.canale.write(raccolta, 0, numero);
+            connessione.byteInUscita -= scritti;
+            while (!connessione.uscita.isEmpty() && !connessione.uscita.peek().hasRemaining()) {
+                connessione.uscita.poll();
+            }
+            Arrays.fill(raccolta, 0, numero, null);
+            if (scritti == 0) {
+                break;
+            }
+        }
+        if (connessione.uscita.isEmpty() && connessione.chiudiDopoScrittura) {
+            chiudi(connessione);
+        } else {
+            aggiornaInteresse(connessione);
+        }
+    }
+
+    /**
+     * Aggiorna le operazioni attese dalla connessione: la scrittura se c'è output in coda,
+     * la lettura solo se output e righe in attesa sono sotto i rispettivi limiti.
+     */
+    private void aggiornaInteresse(Connessione connessione) {
+        if (!connessione.chiave.isValid()) {
+            return;
+        }
+        boolean sospendi;
+        if (connessione.righe.size() >= RIGHE_MASSIME_IN_CODA) {
+            sospendi = true;
+        } else if (connessione.letturaSospesa) {
+            sospendi = connessione.byteInUscita > BASSA_MAREA_USCITA;
+        } else {
+            sospendi = connessione.byteInUscita > ALTA_MAREA_USCITA;
+        }
+        connessione.letturaSospesa = sospendi;
+        int operazioni = (sospendi ? 0 : SelectionKey.OP_READ)
+                | (connessione.uscita.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        connessione.chiave.interestOps(operazioni);
+    }
+
+    private void chiudi(Connessione connessione) {
+        if (connessione.chiusa) {
+            return;
+        }
+        connessione.chiusa = true;
+        connessione.chiave.cancel();
+        try {
+            connessione.canale.close();
+        } catch (IOException e) {
+            // La connessione è comunque da scartare
+        }
+        poolBuffer.restituisci(connessione.lettura);
+        connessione.uscita.clear();
+        if (connessione.sessione != null) {
+            connessione.sessione.termina();
+        }
+        connessioniAttive.decrementAndGet();
+    }
+
+
+    /**
+     * Stato di una connessione. Buffer di lettura, coda di uscita e chiave sono usati
+     * solo dal thread del selettore; la sessione solo dal suo ciclo.
+     */
+    private static final class Connessione {
+
+        private final SocketChannel canale;
+        private final ByteBuffer lettura;
+        private final Queue<String> righe = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<ByteBuffer> uscita = new ArrayDeque<>();
+        private final AtomicBoolean inEsecuzione = new AtomicBoolean();
+        private final AtomicBoolean segnalata = new AtomicBoolean();
+        private final String id;
+        private final CicloSessione ciclo;
+        private SelectionKey chiave;
+        private long byteInUscita;
+        /** true mentre la lettura scarta il resto di una riga più lunga del buffer */
+        private boolean scartaRiga;
+        private volatile boolean letturaSospesa;
+        /** true mentre l'esecuzione delle righe attende il ritmo consentito dal limitatore */
+        private volatile boolean inPausa;
+        private volatile SessioneGioco sessione;
+        private volatile boolean chiudiDopoScrittura;
+        private volatile boolean chiusa;
+
+        private Connessione(SocketChannel canale, ByteBuffer lettura, String id, CicloSessione ciclo) {
+            this.canale = canale;
+            this.lettura = lettura;
+            this.id = id;
+            this.ciclo = ciclo;
+        }
+    }
+
+    /**
+     * Pool di buffer diretti di lettura, riutilizzati tra le connessioni per non allocare
+     * memoria nativa a ogni nuova connessione.
+     */
+    private static final class PoolBuffer {
+
+        private final int capacita;
+        private final Queue<ByteBuffer> liberi = new ConcurrentLinkedQueue<>();
+
+        private PoolBuffer(int capacita) {
+            this.capacita = capacita;
+        }
+
+        private ByteBuffer preleva() {
+            ByteBuffer buffer = liberi.poll();
+            return buffer != null ? buffer : ByteBuffer.allocateDirect(capacita);
+        }
+
+        private void restituisci(ByteBuffer buffer) {
+            buffer.clear();
+            liberi.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package di.lacosa;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import di.lacosa.database.DatabaseManager;
+import di.lacosa.implementazione.GestoreSessioni;
+import di.lacosa.implementazione.ModelloPartita;
+import di.lacosa.implementazione.RegistroSegmenti;
+import di.lacosa.implementazione.StimaMemoria;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Punto di ingresso del gioco come API HTTP/JSON locale, per client web e bot.
+ * <p>
+ * Le sessioni restano in memoria nel {@link GestoreSessioni} tra una richiesta e l'altra,
+ * per cui ogni richiesta esegue solo il comando richiesto. Endpoint disponibili:
+ * <ul>
+ *   <li>{@code POST /sessioni}: crea una nuova partita, con la chiave indicata da {@code ?id=} se presente</li>
+ *   <li>{@code POST /sessioni/carica?slot=n&id=chiave}: ricrea la sessione con la chiave indicata dalla partita
+ *       che ha salvato nello slot</li>
+ *   <li>{@code POST /sessioni/{id}/comando}: esegue il comando contenuto nel corpo della richiesta,
+ *       al massimo {@value #LUNGHEZZA_MASSIMA_COMANDO} byte (413 se più lungo); un comando inviato oltre
+ *       il ritmo consentito non viene eseguito e riceve 429 con l'intestazione {@code Retry-After}</li>
+ *   <li>{@code GET /sessioni/{id}/output?da=cursore}: restituisce il testo prodotto dal cursore in poi</li>
+ *   <li>{@code POST /sessioni/{id}/salva?slot=n}: salva la partita nello slot, tra i salvataggi della sessione</li>
+ *   <li>{@code DELETE /sessioni/{id}}: chiude la sessione</li>
+ *   <li>{@code GET /sessioni/{id}/spettatore}: restituisce la chiave da spettatore della sessione</li>
+ *   <li>{@code GET /sessioni/spettatori/{chiave}?da=cursore}: come l'output, in sola lettura per gli spettatori</li>
+ *   <li>{@code GET /sessioni/stato}: numero di sessioni e profondità della coda di ogni shard</li>
+ *   <li>{@code GET /sessioni/elenco}: chiavi delle sessioni presenti</li>
+ *   <li>{@code POST /sessioni/{id}/esporta}: rimuove la sessione e ne restituisce il trasferimento binario</li>
+ *   <li>{@code POST /sessioni/importa?id=chiave}: importa la sessione trasferita contenuta nel corpo</li>
+ *   <li>{@code GET /sessioni/{id}/memoria}: memoria stimata della sessione, suddivisa per categoria</li>
+ * </ul>
+ * Ogni sessione ha i propri slot, nello spazio dei salvataggi della sua chiave (vedi {@link GestoreSalvataggi}).
+ * Elenco, esportazione e importazione servono al {@link RouterSessioni}, che distribuisce le sessioni su più server.
+ * Questi tre endpoint e la memoria stimata sono di amministrazione: rispondono solo alle richieste con l'intestazione
+ * {@value #INTESTAZIONE_TOKEN} uguale al token indicato dalla proprietà di sistema {@value #PROPRIETA_TOKEN},
+ * e senza token configurato sono disabilitati. Il router passa il proprio token ai nodi che avvia.
+ * Le risposte sono oggetti JSON; gli errori hanno il campo {@code errore}.
+ * Le richieste sono eseguite su thread virtuali.
+ * Le sessioni inattive da più di {@link #MINUTI_IBERNAZIONE_PREDEFINITI} minuti vengono ibernate
+ * nella cartella {@code sessioni} ({@code sessioni-porta} sulle porte diverse dalla predefinita)
+ * e ripristinate al primo comando successivo.
+ *
+ * @author fabioMarchitelli
+ */
+public class ServerHttpGioco {
+
+    /**
+     * Porta predefinita del server
+     */
+    public static final int PORTA_PREDEFINITA = 8080;
+
+    /**
+     * Minuti di inattività predefiniti dopo i quali una sessione viene ibernata
+     */
+    public static final int MINUTI_IBERNAZIONE_PREDEFINITI = 10;
+
+    /**
+     * Proprietà di sistema con il token richiesto dagli endpoint di amministrazione
+     */
+    public static final String PROPRIETA_TOKEN = "lacosa.tokenAmministrazione";
+
+    /**
+     * Intestazione HTTP con cui le richieste di amministrazione presentano il token
+     */
+    public static final String INTESTAZIONE_TOKEN = "X-Token-Amministrazione";
+
+    private static final String CARTELLA_IBERNAZIONE = "sessioni";
+    private static final String PERCORSO_BASE = "/sessioni";
+    static final int LUNGHEZZA_MASSIMA_COMANDO = 512;
+    static final int LUNGHEZZA_MASSIMA_TRASFERIMENTO = 16 * 1024 * 1024;
+
+    private final GestoreSessioni gestore;
+    private final byte[] tokenAmministrazione;
+    private final ExecutorService esecutore = Executors.newVirtualThreadPerTaskExecutor();
+    private HttpServer server;
+
+    /**
+     * Costruttore della classe, con il token di amministrazione letto dalla proprietà {@value #PROPRIETA_TOKEN}.
+     *
+     * @param gestore Il gestore delle sessioni da esporre
+     */
+    public ServerHttpGioco(GestoreSessioni gestore) {
+        this(gestore, System.getProperty(PROPRIETA_TOKEN));
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param gestore Il gestore delle sessioni da esporre
+     * @param tokenAmministrazione Il token degli endpoint di amministrazione, o null per disabilitarli
+     */
+    public ServerHttpGioco(GestoreSessioni gestore, String tokenAmministrazione) {
+        this.gestore = gestore;
+        this.tokenAmministrazione = tokenAmministrazione == null || tokenAmministrazione.isEmpty()
+                ? null : tokenAmministrazione.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Avvia il server.
+     *
+     * @param args La porta su cui ascoltare e i minuti di inattività prima dell'ibernazione (facoltativi)
+     * @throws Exception Se il database o il socket non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PREDEFINITA;
+        int minuti = args.length > 1 ? Integer.parseInt(args[1]) : MINUTI_IBERNAZIONE_PREDEFINITI;
+        DatabaseManager.main(new String[]{});
+        GestoreSessioni gestore = new GestoreSessioni(ModelloPartita.daDatabase());
+        // Più nodi sulla stessa macchina non devono condividere la cartella: all'avvio viene svuotata
+        String cartella = porta == PORTA_PREDEFINITA ? CARTELLA_IBERNAZIONE : CARTELLA_IBERNAZIONE + "-" + porta;
+        gestore.avviaIbernazione(TimeUnit.MINUTES.toMillis(minuti), new File(cartella));
+        new ServerHttpGioco(gestore).avvia(porta);
+    }
+
+    /**
+     * Avvia il server sulla porta indicata, sull'interfaccia di loopback.
+     *
+     * @param porta La porta su cui ascoltare
+     * @throws IOException Se il socket non può essere aperto
+     */
+    public void avvia(int porta) throws IOException {
+        server = creaServer(porta);
+        server.createContext(PERCORSO_BASE, this::gestisci);
+        server.setExecutor(esecutore);
+        server.start();
+        System.out.println("API in ascolto su " + server.getAddress());
+    }
+
+    /**
+     * Crea un server HTTP sulla porta indicata, sull'interfaccia di loopback, con TCP_NODELAY sulle connessioni.
+     * Il server scrive intestazioni e corpo della risposta separatamente: con l'algoritmo di Nagle il corpo
+     * attende la conferma delle intestazioni, che i client con conferma ritardata (come {@code java.net.http})
+     * inviano dopo circa 40 ms. L'opzione viene letta alla creazione del primo server della JVM.
+     *
+     * @param porta La porta su cui ascoltare
+     * @return Il server, non ancora avviato
+     * @throws IOException Se il socket non può essere aperto
+     */
+    static HttpServer creaServer(int porta) throws IOException {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        return HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+    }
+
+    /**
+     * Ferma il server, lasciando un secondo alle richieste in corso.
+     */
+    public void ferma() {
+        if (server != null) {
+            server.stop(1);
+        }
+        esecutore.shutdown();
+        gestore.fermaIbernazione();
+    }
+
+    public GestoreSessioni getGestore() {
+        return gestore;
+    }
+
+    private void gestisci(HttpExchange scambio) throws IOException {
+        try {
+            instrada(scambio);
+        } catch (NumberFormatException e) {
+            rispondi(scambio, 400, errore("Parametro numerico non valido"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            rispondi(scambio, 500, errore("Errore interno"));
+        } finally {
+            scambio.close();
+        }
+    }
+
+    private void instrada(HttpExchange scambio) throws IOException {
+        URI uri = scambio.getRequestURI();
+        String metodo = scambio.getRequestMethod();
+        String[] parti = uri.getPath().substring(PERCORSO_BASE.length()).split("/");
+        // parti[0] è vuota: il percorso dopo la base inizia con "/" oppure è vuoto
+        String primo = parti.length > 1 ? parti[1] : "";
+        String azione = parti.length > 2 ? parti[2] : "";
+
+        if (primo.isEmpty()) {
+            if (!metodo.equals("POST")) {
+                rispondi(scambio, 405, errore("Metodo non consentito"));
+                return;
+            }
+            String id = parametro(uri, "id");
+            if (id == null) {
+                rispondiSessione(scambio, gestore.crea());
+                return;
+            }
+            GestoreSessioni.Voce voce;
+            try {
+                voce = gestore.crea(id);
+            } catch (IllegalArgumentException e) {
+                rispondi(scambio, 400, errore(e.getMessage()));
+                return;
+            }
+            if (voce == null) {
+                rispondi(scambio, 409, errore("Sessione già esistente"));
+            } else {
+                rispondiSessione(scambio, voce);
+            }
+            return;
+        }
+        if (primo.equals("carica") && parti.length == 2) {
+            if (!metodo.equals("POST")) {
+                rispondi(scambio, 405, errore("Metodo non consentito"));
+                return;
+            }
+            int slot = parametroIntero(uri, "slot", -1);
+            String id = parametro(uri, "id");
+            if (gestore.get(id) != null) {
+                rispondi(scambio, 409, errore("Sessione già esistente"));
+                return;
+            }
+            GestoreSessioni.Voce voce;
+            try {
+                voce = gestore.carica(slot, id);
+            } catch (IllegalArgumentException e) {
+                rispondi(scambio, 400, errore(e.getMessage()));
+                return;
+            }
+            if (voce == null) {
+                rispondi(scambio, 404, errore("Nessuna partita nello slot indicato"));
+            } else {
+                rispondiSessione(scambio, voce);
+            }
+            return;
+        }
+
+        if (primo.equals("spettatori") && parti.length == 3) {
+            if (!metodo.equals("GET")) {
+                rispondi(scambio, 405, errore("Metodo non consentito"));
+                return;
+            }
+            GestoreSessioni.Voce osservata = gestore.getPerSpettatore(azione);
+            if (osservata == null) {
+                rispondi(scambio, 404, errore("Sessione inesistente"));
+                return;
+            }
+            // Lo spettatore legge i segmenti del registro senza ripristinare la sessione né rinnovarne l'accesso
+            RegistroSegmenti.Lettura lettura = osservata.getRegistro().leggi(parametroLungo(uri, "da", 0));
+            rispondi(scambio, 200, output(lettura.segmenti(), lettura.cursore(), osservata.isConclusa()));
+            return;
+        }
+
+        if (primo.equals("elenco") && parti.length == 2) {
+            if (!metodo.equals("GET")) {
+                rispondi(scambio, 405, errore("Metodo non consentito"));
+                return;
+            }
+            if (!autorizza(scambio)) {
+                return;
+            }
+            StringBuilder json = new StringBuilder("{\"sessioni\":[");
+            boolean prima = true;
+            for (GestoreSessioni.Voce voce : gestore.getSessioni()) {
+                if (!prima) {
+                    json.append(',');
+                }
+                stringaJson(json, voce.getId());
+                prima = false;
+            }
+            rispondi(scambio, 200, json.append("]}").toString());
+            return;
+        }
+
+        if (primo.equals("importa") && parti.length == 2) {
+            if (!metodo.equals("POST")) {
+                rispondi(scambio, 405, errore("Metodo non consentito"));
+                return;
+            }
+            // Verificato prima di leggere il corpo: senza token il trasferimento non viene neppure letto
+            if (!autorizza(scambio)) {
+                return;
+            }
+            GestoreSessioni.Voce voce;
+            try {
+                byte[] trasferimento = leggiCorpo(scambio, LUNGHEZZA_MASSIMA_TRASFERIMENTO);
+                if (trasferimento == null) {
+                    rispondi(scambio, 413, errore("Trasferimento troppo grande"));
+                    return;
+                }
+                voce = gestore.importa(parametro(uri, "id"), trasferimento);
+            } catch (IOException | IllegalArgumentException e) {
+                rispondi(scambio, 400, errore(e.getMessage()));
+                return;
+            }
+            if (voce == null) {
+                rispondi(scambio, 409, errore("Sessione già esistente"));
+            } else {
+                rispondi(scambio, 201, "{\"id\":\"" + voce.getId() + "\",\"cursore\":" + voce.getCursore() + "}");
+            }
+            return;
+        }
+
+        if (primo.equals("stato") && parti.length == 2) {
+            if (!metodo.equals("GET")) {
+                rispondi(scambio, 405, errore("Metodo non consentito"));
+                return;
+            }
+            rispondi(scambio, 200, stato());
+            return;
+        }
+
+        // Senza token le azioni di amministrazione non dicono neppure se la sessione esiste
+        if ((azione.equals("esporta") || azione.equals("memoria")) && !autorizza(scambio)) {
+            return;
+        }
+        GestoreSessioni.Voce voce = gestore.get(primo);
+        if (voce == null) {
+            rispondi(scambio, 404, errore("Sessione inesistente"));
+            return;
+        }
+        String richiesta = metodo + " " + azione;
+        switch (richiesta) {
+            case "DELETE ":
+                gestore.chiudi(primo);
+                rispondi(scambio, 200, "{\"chiusa\":true}");
+                break;
+            case "POST comando": {
+                byte[] corpo = leggiCorpo(scambio, LUNGHEZZA_MASSIMA_COMANDO);
+                if (corpo == null) {
+                    // Un comando troncato verrebbe eseguito a metà, magari con un carattere spezzato
+                    rispondi(scambio, 413, errore("Comando troppo lungo: al massimo "
+                            + LUNGHEZZA_MASSIMA_COMANDO + " byte"));
+                    break;
+                }
+                GestoreSessioni.Lettura lettura = voce.eseguiComando(new String(corpo, StandardCharsets.UTF_8).trim());
+                if (lettura == null) {
+                    long secondi = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(
+                            voce.getAttesaComandoNanos() + TimeUnit.SECONDS.toNanos(1) - 1));
+                    scambio.getResponseHeaders().set("Retry-After", Long.toString(secondi));
+                    rispondi(scambio, 429, errore("Troppi comandi in poco tempo: riprova più tardi"));
+                    break;
+                }
+                rispondi(scambio, 200, output(lettura, voce.isConclusa()));
+                break;
+            }
+            case "GET output": {
+                GestoreSessioni.Lettura lettura = voce.leggiDa(parametroLungo(uri, "da", 0));
+                rispondi(scambio, 200, output(lettura, voce.isConclusa()));
+                break;
+            }
+            case "GET spettatore": {
+                StringBuilder json = new StringBuilder("{\"spettatore\":");
+                stringaJson(json, voce.getChiaveSpettatore());
+                rispondi(scambio, 200, json.append('}').toString());
+                break;
+            }
+            case "POST esporta": {
+                byte[] trasferimento = gestore.esporta(primo);
+                if (trasferimento == null) {
+                    rispondi(scambio, 404, errore("Sessione inesistente"));
+                    break;
+                }
+                scambio.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                scambio.sendResponseHeaders(200, trasferimento.length);
+                try (OutputStream out = scambio.getResponseBody()) {
+                    out.write(trasferimento);
+                }
+                break;
+            }
+            case "GET memoria": {
+                rispondi(scambio, 200, memoria(voce.stimaMemoria()));
+                break;
+            }
+            case "POST salva": {
+                int slot = parametroIntero(uri, "slot", voce.getSessione().getGioco().getSlotCorrente());
+                boolean salvata = voce.salva(slot);
+                rispondi(scambio, salvata ? 200 : 400, "{\"salvata\":" + salvata + ",\"slot\":" + slot + "}");
+                break;
+            }
+            default:
+                rispondi(scambio, 404, errore("Richiesta non riconosciuta"));
+        }
+    }
+
+    private void rispondiSessione(HttpExchange scambio, GestoreSessioni.Voce voce) throws IOException {
+        rispondi(scambio, 201, "{\"id\":\"" + voce.getId() + "\"," + campiOutput(voce.leggiDa(0), voce.isConclusa()) + "}");
+    }
+
+    /**
+     * Verifica che la richiesta presenti il token di amministrazione, rispondendo con un errore in caso contrario.
+     * Il confronto richiede lo stesso tempo qualunque sia il primo carattere diverso.
+     *
+     * @param scambio La richiesta
+     * @return true se la richiesta è autorizzata
+     */
+    private boolean autorizza(HttpExchange scambio) throws IOException {
+        if (tokenAmministrazione == null) {
+            rispondi(scambio, 403, errore("Amministrazione disabilitata"));
+            return false;
+        }
+        String presentato = scambio.getRequestHeaders().getFirst(INTESTAZIONE_TOKEN);
+        if (presentato == null
+                || !MessageDigest.isEqual(tokenAmministrazione, presentato.getBytes(StandardCharsets.UTF_8))) {
+            rispondi(scambio, 403, errore("Token di amministrazione non valido"));
+            return false;
+        }
+        return true;
+    }
+
+    private static String memoria(StimaMemoria.Risultato stima) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"totale\":").append(stima.getTotale()).append(",\"categorie\":{");
+        boolean prima = true;
+        for (Map.Entry<StimaMemoria.Categoria, Long> voce : stima.getPerCategoria().entrySet()) {
+            if (!prima) {
+                json.append(',');
+            }
+            stringaJson(json, voce.getKey().name());
+            json.append(':').append(voce.getValue());
+            prima = false;
+        }
+        return json.append("}}").toString();
+    }
+
+    private String stato() {
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"sessioni\":").append(gestore.getNumeroSessioni());
+        json.append(",\"ibernate\":").append(gestore.getNumeroIbernate());
+        json.append(",\"codeShard\":[");
+        int[] profondita = gestore.getSchedulatore().getProfonditaCode();
+        for (int i = 0; i < profondita.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(profondita[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String output(GestoreSessioni.Lettura lettura, boolean conclusa) {
+        return "{" + campiOutput(lettura, conclusa) + "}";
+    }
+
+    private static String campiOutput(GestoreSessioni.Lettura lettura, boolean conclusa) {
+        StringBuilder json = new StringBuilder(lettura.testo().length() + 64);
+        json.append("\"testo\":");
+        stringaJson(json, lettura.testo());
+        json.append(",\"cursore\":").append(lettura.cursore());
+        json.append(",\"conclusa\":").append(conclusa);
+        return json.toString();
+    }
+
+    /**
+     * Risposta per gli spettatori: i segmenti vengono scritti uno dopo l'altro nello stesso valore JSON,
+     * senza unirli prima in un'unica stringa.
+     */
+    private static String output(List<String> segmenti, long cursore, boolean conclusa) {
+        int lunghezza = 0;
+        for (String segmento : segmenti) {
+            lunghezza += segmento.length();
+        }
+        StringBuilder json = new StringBuilder(lunghezza + 64);
+        json.append("{\"testo\":\"");
+        for (String segmento : segmenti) {
+            caratteriJson(json, segmento);
+        }
+        json.append("\",\"cursore\":").append(cursore);
+        json.append(",\"conclusa\":").append(conclusa);
+        return json.append('}').toString();
+    }
+
+    static String errore(String messaggio) {
+        StringBuilder json = new StringBuilder("{\"errore\":");
+        stringaJson(json, messaggio);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Scrive la stringa come valore JSON, con i caratteri di controllo, le virgolette e le barre escapate.
+     */
+    static void stringaJson(StringBuilder json, String testo) {
+        json.append('"');
+        caratteriJson(json, testo);
+        json.append('"');
+    }
+
+    /**
+     * Scrive i caratteri della stringa escapati per JSON, senza virgolette.
+     */
+    private static void caratteriJson(StringBuilder json, String testo) {
+        for (int i = 0; i < testo.length(); i++) {
+            char c = testo.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+    }
+
+    private static int parametroIntero(URI uri, String nome, int predefinito) {
+        return Math.toIntExact(parametroLungo(uri, nome, predefinito));
+    }
+
+    private static long parametroLungo(URI uri, String nome, long predefinito) {
+        String valore = parametro(uri, nome);
+        return valore != null ? Long.parseLong(valore) : predefinito;
+    }
+
+    static String parametro(URI uri, String nome) {
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String coppia : query.split("&")) {
+            int uguale = coppia.indexOf('=');
+            if (uguale > 0 && coppia.substring(0, uguale).equals(nome)) {
+                return coppia.substring(uguale + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Legge il corpo della richiesta, fino alla lunghezza massima indicata.
+     *
+     * @param scambio La richiesta
+     * @param lunghezzaMassima Il numero massimo di byte accettati
+     * @return I byte del corpo, o null se il corpo supera la lunghezza massima
+     */
+    static byte[] leggiCorpo(HttpExchange scambio, int lunghezzaMassima) throws IOException {
+        try (InputStream in = scambio.getRequestBody()) {
+            byte[] corpo = in.readNBytes(lunghezzaMassima + 1);
+            return corpo.length > lunghezzaMassima ? null : corpo;
+        }
+    }
+
+    private static void rispondi(HttpExchange scambio, int stato, String json) throws IOException {
+        byte[] corpo = json.getBytes(StandardCharsets.UTF_8);
+        scambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        scambio.sendResponseHeaders(stato, corpo.length);
+        try (OutputStream out = scambio.getResponseBody()) {
+            out.write(corpo);
+        }
+    }
+}
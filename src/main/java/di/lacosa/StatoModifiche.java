@@ -0,0 +1,334 @@
+package di.lacosa;
+
+import di.lacosa.tipi.FlagDiGioco;
+
+import java.util.BitSet;
+
+/**
+ * Classe che tiene traccia di ciò che è cambiato nello stato della partita.
+ * <p>
+ * Ogni modifica imposta un bit: uno per ciascun {@link FlagDiGioco} e uno per ciascuna
+ * stanza, oggetto, personaggio o opzione di dialogo modificata (indicizzati per ID),
+ * oltre ai bit per lo spostamento del giocatore e per il contenuto dell'inventario.
+ * <p>
+ * Le modifiche vengono raccolte su due livelli:
+ * <ul>
+ *   <li>Le modifiche del comando corrente, azzerate da {@link #confermaComando()} al termine di ogni comando</li>
+ *   <li>Le modifiche non ancora salvate, che accumulano quelle dei comandi confermati
+ *       e passano a un {@link Salvataggio} quando questo viene avviato</li>
+ * </ul>
+ * I bit di modifica sono scritti dal thread della partita; avvio e conclusione dei salvataggi,
+ * che può avvenire sul canale di persistenza, sono sincronizzati con la conferma dei comandi.
+ * In questo modo l'interfaccia, la mappa e i salvataggi possono reagire solo a ciò che è effettivamente cambiato:
+ * {@link GestoreSalvataggi} usa le modifiche non salvate per aggiungere al salvataggio di uno slot
+ * solo le entità cambiate, invece di riscrivere l'intera partita.
+ *
+ * @author fabioMarchitelli
+ */
+public class StatoModifiche {
+
+    private final Modifiche comando = new Modifiche();
+    private final Modifiche nonSalvate = new Modifiche();
+
+    /** Slot il cui salvataggio completo corrisponde allo stato della partita meno le modifiche non salvate, -1 se nessuno */
+    private volatile int slotSalvato = -1;
+    /** Numero di incrementi aggiunti al salvataggio completo dello slot */
+    private volatile int incrementiSalvati;
+    /** Salvataggi avviati e non ancora conclusi */
+    private int salvataggiInCorso;
+    /** Incrementata a ogni scrittura fallita: gli incrementi avviati prima non vanno più scritti */
+    private int generazione;
+
+    public void segnaFlag(FlagDiGioco flag) {
+        comando.flag |= 1L << flag.ordinal();
+    }
+
+    public void segnaStanzaCorrente() {
+        comando.stanzaCorrente = true;
+    }
+
+    public void segnaInventario() {
+        comando.inventario = true;
+    }
+
+    public void segnaStanza(int idStanza) {
+        comando.stanze.set(idStanza);
+    }
+
+    public void segnaOggetto(int idOggetto) {
+        comando.oggetti.set(idOggetto);
+    }
+
+    public void segnaPersonaggio(int idPersonaggio) {
+        comando.personaggi.set(idPersonaggio);
+    }
+
+    public void segnaDialogo(int idDialogo) {
+        comando.dialoghi.set(idDialogo);
+    }
+
+    /**
+     * Verifica se il flag indicato è cambiato durante il comando corrente.
+     *
+     * @param flag Il flag da controllare
+     * @return true se il flag è stato modificato
+     */
+    public boolean isFlagCambiato(FlagDiGioco flag) {
+        return (comando.flag & (1L << flag.ordinal())) != 0;
+    }
+
+    public boolean isStanzaCorrenteCambiata() {
+        return comando.stanzaCorrente;
+    }
+
+    public boolean isInventarioCambiato() {
+        return comando.inventario;
+    }
+
+    public boolean isStanzaCambiata(int idStanza) {
+        return comando.stanze.get(idStanza);
+    }
+
+    public boolean isOggettoCambiato(int idOggetto) {
+        return comando.oggetti.get(idOggetto);
+    }
+
+    public boolean isPersonaggioCambiato(int idPersonaggio) {
+        return comando.personaggi.get(idPersonaggio);
+    }
+
+    public boolean isDialogoCambiato(int idDialogo) {
+        return comando.dialoghi.get(idDialogo);
+    }
+
+    /**
+     * Verifica se il comando corrente ha modificato qualcosa.
+     *
+     * @return true se almeno un bit di modifica è impostato
+     */
+    public boolean isComandoConModifiche() {
+        return !comando.isVuoto();
+    }
+
+    /**
+     * Verifica se ci sono modifiche non ancora salvate, incluse quelle del comando corrente
+     * e quelle di salvataggi avviati ma non ancora scritti.
+     *
+     * @return true se lo stato è cambiato dall'ultimo salvataggio
+     */
+    public synchronized boolean isModificatoDalSalvataggio() {
+        return !nonSalvate.isVuoto() || !comando.isVuoto() || salvataggiInCorso > 0;
+    }
+
+    /**
+     * Conclude il comando corrente: le sue modifiche passano tra quelle non salvate
+     * e i bit del comando vengono azzerati.
+     */
+    public synchronized void confermaComando() {
+        nonSalvate.unisci(comando);
+        comando.azzera();
+    }
+
+    /**
+     * Segnala che lo stato coincide con quello su disco (ad esempio dopo il caricamento),
+     * azzerando tutte le modifiche accumulate.
+     */
+    public synchronized void confermaSalvataggio() {
+        comando.azzera();
+        nonSalvate.azzera();
+    }
+
+    /**
+     * Restituisce una copia delle modifiche non ancora salvate, incluse quelle del comando corrente.
+     *
+     * @return Le modifiche dall'ultimo salvataggio
+     */
+    public synchronized Modifiche getNonSalvate() {
+        Modifiche copia = new Modifiche();
+        copia.unisci(nonSalvate);
+        copia.unisci(comando);
+        return copia;
+    }
+
+    /**
+     * Avvia un salvataggio nello slot: le modifiche non salvate passano al salvataggio e le successive
+     * si riferiscono a esso. Le modifiche vengono scartate solo da {@link #concludiSalvataggio(Salvataggio, boolean)}
+     * dopo la scrittura su disco, e tornano tra quelle non salvate se la scrittura fallisce.
+     *
+     * @param slot Lo slot del salvataggio
+     * @param incrementale true se il salvataggio aggiunge un incremento al salvataggio completo dello slot
+     * @return Il salvataggio avviato, da concludere dopo la scrittura
+     */
+    public synchronized Salvataggio avviaSalvataggio(int slot, boolean incrementale) {
+        Modifiche salvate = new Modifiche();
+        salvate.unisci(nonSalvate);
+        salvate.unisci(comando);
+        nonSalvate.azzera();
+        comando.azzera();
+        if (incrementale) {
+            incrementiSalvati++;
+        } else {
+            slotSalvato = slot;
+            incrementiSalvati = 0;
+        }
+        salvataggiInCorso++;
+        return new Salvataggio(salvate, incrementale, generazione);
+    }
+
+    /**
+     * Verifica se il salvataggio può ancora essere scritto: un incremento non va aggiunto
+     * se una scrittura precedente è fallita, perché la catena di incrementi dello slot è interrotta.
+     *
+     * @param salvataggio Il salvataggio avviato
+     * @return true se il salvataggio va scritto
+     */
+    public synchronized boolean isScrivibile(Salvataggio salvataggio) {
+        return !salvataggio.incrementale || salvataggio.generazione == generazione;
+    }
+
+    /**
+     * Conclude un salvataggio avviato. Se la scrittura è fallita le sue modifiche tornano
+     * tra quelle non salvate e lo slot viene dimenticato, per cui il salvataggio successivo sarà completo.
+     *
+     * @param salvataggio Il salvataggio avviato
+     * @param scritto true se il salvataggio è stato scritto su disco
+     */
+    public synchronized void concludiSalvataggio(Salvataggio salvataggio, boolean scritto) {
+        salvataggiInCorso--;
+        if (!scritto) {
+            nonSalvate.unisci(salvataggio.modifiche);
+            slotSalvato = -1;
+            incrementiSalvati = 0;
+            generazione++;
+        }
+    }
+
+    /**
+     * Restituisce lo slot il cui salvataggio completo è la base delle modifiche non salvate.
+     *
+     * @return Lo slot, o -1 se la partita non corrisponde a nessun salvataggio su disco
+     */
+    public int getSlotSalvato() {
+        return slotSalvato;
+    }
+
+    public int getIncrementiSalvati() {
+        return incrementiSalvati;
+    }
+
+    /**
+     * Registra che la partita è stata letta dallo slot, con il numero di incrementi indicato.
+     *
+     * @param slot Lo slot letto
+     * @param incrementi Il numero di incrementi già presenti nello slot
+     */
+    public synchronized void registraSalvataggio(int slot, int incrementi) {
+        this.slotSalvato = slot;
+        this.incrementiSalvati = incrementi;
+    }
+
+
+    /**
+     * Salvataggio avviato e non ancora concluso, con le modifiche che contiene.
+     */
+    public static final class Salvataggio {
+
+        private final Modifiche modifiche;
+        private final boolean incrementale;
+        private final int generazione;
+
+        private Salvataggio(Modifiche modifiche, boolean incrementale, int generazione) {
+            this.modifiche = modifiche;
+            this.incrementale = incrementale;
+            this.generazione = generazione;
+        }
+
+        public Modifiche getModifiche() {
+            return modifiche;
+        }
+
+        public boolean isIncrementale() {
+            return incrementale;
+        }
+    }
+
+
+    /**
+     * Insieme di bit di modifica.
+     */
+    public static final class Modifiche {
+
+        private long flag;
+        private boolean stanzaCorrente;
+        private boolean inventario;
+        private final BitSet stanze = new BitSet();
+        private final BitSet oggetti = new BitSet();
+        private final BitSet personaggi = new BitSet();
+        private final BitSet dialoghi = new BitSet();
+
+        public boolean isFlagCambiato(FlagDiGioco flag) {
+            return (this.flag & (1L << flag.ordinal())) != 0;
+        }
+
+        public boolean isStanzaCorrenteCambiata() {
+            return stanzaCorrente;
+        }
+
+        public boolean isInventarioCambiato() {
+            return inventario;
+        }
+
+        /**
+         * @return Gli ID delle stanze modificate, in ordine crescente
+         */
+        public int[] getStanze() {
+            return stanze.stream().toArray();
+        }
+
+        /**
+         * @return Gli ID degli oggetti modificati, in ordine crescente
+         */
+        public int[] getOggetti() {
+            return oggetti.stream().toArray();
+        }
+
+        /**
+         * @return Gli ID dei personaggi modificati, in ordine crescente
+         */
+        public int[] getPersonaggi() {
+            return personaggi.stream().toArray();
+        }
+
+        /**
+         * @return Gli ID delle opzioni di dialogo modificate, in ordine crescente
+         */
+        public int[] getDialoghi() {
+            return dialoghi.stream().toArray();
+        }
+
+        public boolean isVuoto() {
+            return flag == 0 && !stanzaCorrente && !inventario
+                    && stanze.isEmpty() && oggetti.isEmpty() && personaggi.isEmpty() && dialoghi.isEmpty();
+        }
+
+        private void unisci(Modifiche altre) {
+            flag |= altre.flag;
+            stanzaCorrente |= altre.stanzaCorrente;
+            inventario |= altre.inventario;
+            stanze.or(altre.stanze);
+            oggetti.or(altre.oggetti);
+            personaggi.or(altre.personaggi);
+            dialoghi.or(altre.dialoghi);
+        }
+
+        private void azzera() {
+            flag = 0;
+            stanzaCorrente = false;
+            inventario = false;
+            stanze.clear();
+            oggetti.clear();
+            personaggi.clear();
+            dialoghi.clear();
+        }
+    }
+}
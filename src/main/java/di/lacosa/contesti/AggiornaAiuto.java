@@ -1,17 +1,21 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.FrontendGioco;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.Observer;
+import di.lacosa.messaggi.Messaggio;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.TipoComando;
-import di.lacosa.ui.FinestraLettura;
-import di.lacosa.ui.InterfacciaGioco;
 
-import javax.swing.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Classe che gestisce l'aggiornamento e la visualizzazione delle istruzioni di aiuto del gioco.
@@ -22,18 +26,28 @@ import java.util.Scanner;
  */
 public class AggiornaAiuto implements Observer {
 
-    private final InterfacciaGioco interfacciaGioco;
+    private final FrontendGioco interfacciaGioco;
 
     /**
      * Costruttore della classe AggiornaAiuto.
      *
      * @param interfacciaGioco L'interfaccia grafica del gioco a cui associare questo gestore
      */
-    public AggiornaAiuto(InterfacciaGioco interfacciaGioco) {
+    public AggiornaAiuto(FrontendGioco interfacciaGioco) {
         this.interfacciaGioco = interfacciaGioco;
     }
 
 
+    /**
+     * Dichiara il comando AIUTO come unico comando gestito.
+     *
+     * @return l'insieme contenente AIUTO
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.AIUTO);
+    }
+
     /**
      * Metodo chiamato quando viene rilevato un comando che potrebbe richiedere l'aggiornamento dell'aiuto.
      * <p>
@@ -51,8 +65,8 @@ public class AggiornaAiuto implements Observer {
         if (controlloAiuto(parserOutput)) {
             try {
                 String istruzioni = caricaRisorsa("istruzioni");
-                mostraFinestraLettura(istruzioni, "Istruzioni");
-                return "Lettura Istruzioni...";
+                mostraFinestraLettura(istruzioni, Messaggio.AIUTO_TITOLO.testo());
+                return Messaggio.AIUTO_IN_CORSO.testo();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -103,15 +117,38 @@ public class AggiornaAiuto implements Observer {
     /**
      * Mostra una finestra di lettura con il testo specificato.
      * <p>
-     * La finestra viene visualizzata in modo asincrono tramite {@link SwingUtilities#invokeLater}.
+     * La finestra viene visualizzata in modo asincrono dal frontend collegato alla partita.
      *
      * @param testo Il testo da visualizzare nella finestra
      * @param titolo Il titolo della finestra
      */
     private void mostraFinestraLettura(String testo, String titolo) {
-        SwingUtilities.invokeLater(() -> {
-            FinestraLettura finestra = new FinestraLettura(interfacciaGioco, testo, titolo);
-            finestra.setVisible(true);
-        });
+        interfacciaGioco.mostraLettura(testo, titolo);
+    }
+
+    /**
+     * Fornitore del comando AIUTO, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.AIUTO;
+        }
+
+        @Override
+        public String getNome() {
+            return "aiuto";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Aiuto", "help", "Istruzioni", "istruzioni", "Help"};
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaAiuto(gioco.getInterfacciaGioco());
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,17 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.Observer;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.messaggi.Messaggio;
 
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce i comandi di attivazione degli oggetti nel gioco, come l'attivazione della torcia.
@@ -15,6 +21,16 @@ import java.util.Set;
  */
 public class AggiornaAttiva implements Observer {
 
+    /**
+     * Dichiara il comando ATTIVA come unico comando gestito.
+     *
+     * @return l'insieme contenente ATTIVA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.ATTIVA);
+    }
+
     /**
      * Metodo chiamato quando viene rilevato un cambiamento nel gioco.
      * Gestisce i comandi di attivazione degli oggetti.
@@ -31,7 +47,7 @@ public class AggiornaAttiva implements Observer {
 
             Stanza stanzaCorrente = description.getStanzaCorrente();
             Set<Oggetto> inventarioPersonaggio = description.getInventario();
-            Set<Oggetto> oggettiInStanza = description.getOggettiPerStanza(stanzaCorrente.getIdStanza());
+            Set<Oggetto> oggettiInStanza = description.getOggettiVisibili();
 
             if (controlloAttivazioneOggetto(parserOutput)) {
 
@@ -41,9 +57,9 @@ public class AggiornaAttiva implements Observer {
                         return gestisciTorcia(parserOutput, stanzaCorrente, description);
                     }
                 }
-                return "Oggetto non 'attivabile'";
+                return Messaggio.ATTIVA_NON_ATTIVABILE.testo();
             }
-            return "Oggetto da attivare non identificato.";
+            return Messaggio.ATTIVA_NON_IDENTIFICATO.testo();
         }
         return "";
     }
@@ -120,14 +136,45 @@ public class AggiornaAttiva implements Observer {
 
          if (!description.isTorciaAccesa()) {
              if (stanzaCorrente.isVisibile()) {
-                 description.setTorciaAccesa(true);
-                 return "Accendi la TORCIA ma tutto è lo stesso. {Accendere la torcia non cambia nulla qui, la stanza è già abbastanza illuminata}";
+                 description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.TORCIA_ACCESA, true));
+                 return Messaggio.ATTIVA_TORCIA_INUTILE.testo();
              }
              if (stanzaCorrente.getTipoOsservazioneAggiornata().equals(MotivazioneAggDescrizione.ACCENSIONE_TORCIA)) {
-                 description.setTorciaAccesa(true);
-                 return "Hai attivato la TORCIA. Adesso puoi osservare chiaramente cosa c'è nella stanza.";
+                 description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.TORCIA_ACCESA, true));
+                 return Messaggio.ATTIVA_TORCIA_ACCESA.testo();
              }
          }
-         return "La torcia è già accesa";
+         return Messaggio.ATTIVA_TORCIA_GIA_ACCESA.testo();
      }
+
+    /**
+     * Fornitore del comando ATTIVA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.ATTIVA;
+        }
+
+        @Override
+        public String getNome() {
+            return "attiva";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Attiva", "aziona", "innesca", "premi", "accendi"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaAttiva();
+        }
+    }
 }
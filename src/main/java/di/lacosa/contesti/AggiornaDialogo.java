@@ -1,14 +1,20 @@
 package di.lacosa.contesti;
 
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.FaseFinaleListener;
 import di.lacosa.Observer;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
-import di.lacosa.ui.InterfacciaGioco;
+import di.lacosa.FrontendGioco;
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.messaggi.Messaggio;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Classe che gestisce il sistema di dialogo del gioco.
@@ -19,7 +25,7 @@ import java.util.Optional;
 public class AggiornaDialogo implements Observer {
 
     private final Runnable allaFineDelDialogo;    // Callback da eseguire al termine del dialogo
-    private final InterfacciaGioco interfacciaGioco;  // Riferimento all'interfaccia grafica
+    private final FrontendGioco interfacciaGioco;  // Riferimento all'interfaccia grafica
     private final FaseFinaleListener finaleListener; // Listener per gestire la fase finale del gioco
     private Personaggio interlocutoreCorrente; // Personaggio con cui si sta dialogando
     private List<DialogoGiocatore> dialoghiCorrenti; // Opzioni di dialogo disponibili
@@ -35,7 +41,7 @@ public class AggiornaDialogo implements Observer {
      * @param listener Listener per la fase finale del gioco
      * @param onFinish Callback da eseguire al termine del dialogo
      */
-    public AggiornaDialogo(InterfacciaGioco interfaccia, FaseFinaleListener listener, Runnable onFinish) {
+    public AggiornaDialogo(FrontendGioco interfaccia, FaseFinaleListener listener, Runnable onFinish) {
         this.interfacciaGioco = interfaccia;
         this.finaleListener = listener;
         this.allaFineDelDialogo = onFinish;
@@ -47,7 +53,7 @@ public class AggiornaDialogo implements Observer {
      * @param interfaccia Riferimento all'interfaccia grafica
      * @param listener Listener per la fase finale del gioco
      */
-    public AggiornaDialogo(InterfacciaGioco interfaccia, FaseFinaleListener listener) {
+    public AggiornaDialogo(FrontendGioco interfaccia, FaseFinaleListener listener) {
         this(interfaccia, listener, null);
     }
 
@@ -57,10 +63,20 @@ public class AggiornaDialogo implements Observer {
      * @param interfaccia Riferimento all'interfaccia grafica
      * @param onFinish Callback da eseguire al termine del dialogo
      */
-    public AggiornaDialogo(InterfacciaGioco interfaccia, Runnable onFinish) {
+    public AggiornaDialogo(FrontendGioco interfaccia, Runnable onFinish) {
         this(interfaccia, null, onFinish);
     }
 
+    /**
+     * Dichiara il comando PARLA come unico comando gestito.
+     *
+     * @return l'insieme contenente PARLA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.PARLA);
+    }
+
     /**
      * Metodo principale per gestire i comandi di dialogo.
      *
@@ -75,13 +91,13 @@ public class AggiornaDialogo implements Observer {
         }
 
         if (isTargetMancante(parserOutput)) {
-            return "Specificare con chi vuoi parlare";
+            return Messaggio.DIALOGO_SENZA_INTERLOCUTORE.testo();
         }
 
         interlocutoreCorrente = parserOutput.getInterlocutore();
 
         if (interlocutoreCorrente == null) {
-            return "Interlocutore inserito non trovato";
+            return Messaggio.DIALOGO_INTERLOCUTORE_NON_TROVATO.testo();
         }
 
         if (isUomoInCorridoio(description, parserOutput)) {
@@ -89,7 +105,7 @@ public class AggiornaDialogo implements Observer {
         }
 
         if (interlocutoreCorrente.isInterazioneAvvenuta()) {
-            return "Questo personaggio non ha più nulla da dirti.";
+            return Messaggio.DIALOGO_NULLA_DA_DIRE.testo();
         }
 
         if (isCaneInCanile(description, parserOutput)) {
@@ -113,7 +129,7 @@ public class AggiornaDialogo implements Observer {
         if (!interlocutoreCorrente.isInterazioneAvvenuta()) {
             iniziaDialogo(description);
         } else {
-            interfacciaGioco.scriviInAreaDiTesto("Questo personaggio non ha più nulla da dirti.");
+            interfacciaGioco.scriviInAreaDiTesto(Messaggio.DIALOGO_NULLA_DA_DIRE.testo());
         }
     }
 
@@ -153,6 +169,42 @@ public class AggiornaDialogo implements Observer {
         nodoCorrente = 1;
         dialogoTerminato = false;
         mostraOpzioniDialogo();
+        attendiScelta();
+    }
+
+    /**
+     * Riprende un dialogo interrotto dal ripristino della partita, dal nodo in cui era rimasto.
+     * Le opzioni non vengono mostrate di nuovo: il giocatore le ha già ricevute.
+     *
+     * @param description Contesto del gioco ripristinato
+     * @param risposta Il dialogo in attesa di una scelta
+     * @return true se il dialogo è stato ripreso
+     */
+    @Override
+    public boolean riprendiRisposta(DescrizioneGioco description, RispostaInAttesa risposta) {
+        if (!(risposta instanceof RispostaInAttesa.Dialogo)) {
+            return false;
+        }
+        RispostaInAttesa.Dialogo dialogo = (RispostaInAttesa.Dialogo) risposta;
+        Personaggio personaggio = description.getPersonaggioPerId(dialogo.idPersonaggio());
+        if (personaggio == null) {
+            return false;
+        }
+        this.interlocutoreCorrente = personaggio;
+        this.descrizioneGioco = description;
+        dialoghiCorrenti = description.getDialoghiPerIdPersonaggio(personaggio.getId());
+        risposteCorrenti = description.getRispostePerIdPersonaggio(personaggio.getId());
+        nodoCorrente = dialogo.nodo();
+        dialogoTerminato = false;
+        attendiScelta();
+        return true;
+    }
+
+    /**
+     * Indirizza l'input del giocatore alla scelta delle opzioni e registra l'attesa nella partita.
+     */
+    private void attendiScelta() {
+        descrizioneGioco.setRispostaInAttesa(new RispostaInAttesa.Dialogo(interlocutoreCorrente.getId(), nodoCorrente));
         interfacciaGioco.attendiRispostaGiocatore(this::processaSceltaGiocatore);
     }
 
@@ -160,7 +212,7 @@ public class AggiornaDialogo implements Observer {
      * Mostra le opzioni di dialogo disponibili al giocatore.
      */
     private void mostraOpzioniDialogo() {
-        interfacciaGioco.scriviInAreaDiTesto("\n\n\n\n\n\n\n\n\n\n Opzioni di Dialogo:");
+        interfacciaGioco.scriviInAreaDiTesto(Messaggio.DIALOGO_OPZIONI.testo());
         interfacciaGioco.scriviInAreaDiTesto("-----------------------------------");
         int numero = 1;
         for (DialogoGiocatore dialogo : dialoghiCorrenti) {
@@ -176,7 +228,7 @@ public class AggiornaDialogo implements Observer {
      * Mostra il prompt per la scelta del giocatore.
      */
     private void promptScelta() {
-        interfacciaGioco.scriviInAreaDiTesto("\n Digita il numero della tua risposta:");
+        interfacciaGioco.scriviInAreaDiTesto(Messaggio.DIALOGO_PROMPT.testo());
     }
 
 
@@ -194,25 +246,25 @@ public class AggiornaDialogo implements Observer {
         try {
             scelta = Integer.parseInt(input.trim());
         } catch (NumberFormatException e) {
-            interfacciaGioco.scriviInAreaDiTesto("\n\n\n\n Input non valido. Inserisci un numero.\n");
+            interfacciaGioco.scriviInAreaDiTesto(Messaggio.DIALOGO_INPUT_NON_VALIDO.testo());
             promptScelta();
             return;
         }
 
         int maxScelte = contaLineeNodoCorrente();
         if (scelta < 1 || scelta > maxScelte) {
-            interfacciaGioco.scriviInAreaDiTesto("\n\n\n\n Scelta non valida (scegli tra 1 e " + maxScelte + ").\n");
+            interfacciaGioco.scriviInAreaDiTesto(Messaggio.DIALOGO_SCELTA_NON_VALIDA.testo(Integer.toString(maxScelte)));
             promptScelta();
             return;
         }
 
         DialogoGiocatore scelto = cercaDialogoScelto(scelta).get();
-        scelto.setUtilizzato(true);
+        descrizioneGioco.applicaEvento(new EventoDiGioco.DialogoUtilizzato(scelto.getId()));
 
         RispostaPersonaggio risposta = descrizioneGioco.getRispostaPerId(scelto.getId_risposta(), risposteCorrenti);
         interfacciaGioco.scriviInAreaDiTesto("\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n" +
                 "\n\n\n\n\n\n\n\n\n\n\n"
-                + interlocutoreCorrente.getNome() +":\n" + risposta.getTesto() + "\n");
+                + Messaggio.DIALOGO_RISPOSTA.testo(interlocutoreCorrente.getNome(), risposta.getTesto()));
 
         Integer prossimoNodo = risposta.getProssimoNodo();
         nodoCorrente = (prossimoNodo != null) ? prossimoNodo : -1;
@@ -228,6 +280,7 @@ public class AggiornaDialogo implements Observer {
             fineDialogo();
             return;
         }
+        descrizioneGioco.setRispostaInAttesa(new RispostaInAttesa.Dialogo(interlocutoreCorrente.getId(), nodoCorrente));
         mostraOpzioniDialogo();
     }
 
@@ -271,8 +324,9 @@ public class AggiornaDialogo implements Observer {
      */
     private void fineDialogo() {
         dialogoTerminato = true;
-        interfacciaGioco.scriviInAreaDiTesto("\nIl dialogo è terminato.\n\n");
-        interlocutoreCorrente.setInterazioneAvvenuta();
+        descrizioneGioco.setRispostaInAttesa(null);
+        interfacciaGioco.scriviInAreaDiTesto(Messaggio.DIALOGO_TERMINATO.testo());
+        descrizioneGioco.applicaEvento(new EventoDiGioco.InterazioneConclusa(interlocutoreCorrente.getId()));
 
         // Se Gasly è nella Sala Comunicazioni, avvia immediatamente la fase finale
         if (interlocutoreCorrente.getNome().equalsIgnoreCase("Gasly") &&
@@ -324,7 +378,7 @@ public class AggiornaDialogo implements Observer {
      * @return Messaggio per il giocatore
      */
     private String gestisciCasiSpeciali(){
-        return "Personaggio inserito non trovato";
+        return Messaggio.DIALOGO_PERSONAGGIO_NON_TROVATO.testo();
     }
 
 
@@ -337,7 +391,7 @@ public class AggiornaDialogo implements Observer {
         Stanza stanzaCorrente = description.getStanzaCorrente();
 
         if (stanzaCorrente.getTipoOsservazioneAggiornata() == MotivazioneAggDescrizione.MODIFICATO_DA_EVENTO) {
-            stanzaCorrente.attivaOsservazioneAggiornata();
+            description.applicaEvento(new EventoDiGioco.OsservazioneAggiornata(stanzaCorrente.getIdStanza()));
         }
     }
 
@@ -362,9 +416,35 @@ public class AggiornaDialogo implements Observer {
         if (description.getStanzaCorrente().getNome().equalsIgnoreCase("Corridoio")) {
             if(description.isPrimaAzioneGaslyAttivata()) {
                 if (!description.isSecondaAzioneGaslyAttivata()) {
-                    description.setSecondaAzioneGaslyAttivata(true);
+                    description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.SECONDA_AZIONE_GASLY, true));
                 }
             }
         }
     }
+
+    /**
+     * Fornitore del comando PARLA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.PARLA;
+        }
+
+        @Override
+        public String getNome() {
+            return "parla";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Parla", "comunica", "dialoga", "discuti"};
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaDialogo(gioco.getInterfacciaGioco(), finaleListener);
+        }
+    }
 }
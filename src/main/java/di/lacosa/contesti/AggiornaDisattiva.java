@@ -1,11 +1,17 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.Observer;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.messaggi.Messaggio;
 
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce i comandi di disattivazione degli oggetti nel gioco.
@@ -14,6 +20,16 @@ import java.util.Set;
  */
 public class AggiornaDisattiva implements Observer {
 
+    /**
+     * Dichiara il comando DISATTIVA come unico comando gestito.
+     *
+     * @return l'insieme contenente DISATTIVA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.DISATTIVA);
+    }
+
     /**
      * Metodo principale che gestisce i comandi di disattivazione.
      *
@@ -27,7 +43,7 @@ public class AggiornaDisattiva implements Observer {
         if (parserOutput.getComando().getTipo().equals(TipoComando.DISATTIVA)) {
             Stanza stanzaCorrente = description.getStanzaCorrente();
             Set<Oggetto> inventarioPersonaggio = description.getInventario();
-            Set<Oggetto> oggettiInStanza = description.getOggettiPerStanza(stanzaCorrente.getIdStanza());
+            Set<Oggetto> oggettiInStanza = description.getOggettiVisibili();
             if (controlloDisattivazioneOggetto(parserOutput)) {
                 int idOggetto = controlloTipoOggetto(parserOutput);
                 if (idOggetto != -1) {
@@ -35,9 +51,9 @@ public class AggiornaDisattiva implements Observer {
                         return gestisciTorcia(parserOutput, stanzaCorrente, description);
                     }
                 }
-                return "Oggetto non disattivabile";
+                return Messaggio.DISATTIVA_NON_DISATTIVABILE.testo();
             }
-            return "Oggetto da disattivare non identificato.";
+            return Messaggio.DISATTIVA_NON_IDENTIFICATO.testo();
         }
         return "";
     }
@@ -109,20 +125,46 @@ public class AggiornaDisattiva implements Observer {
         if (description.isTorciaAccesa()) {
             if (stanzaCorrente.getTipoOsservazioneAggiornata().equals(MotivazioneAggDescrizione.ACCENSIONE_TORCIA)) {
                 if (description.isCreaturaCanideAttivata() && !description.isCreaturaCanideSconfitta()) {
-                    return "{Non posso spegere la torcia adesso! Questa creatura vuole uccidermi!!!}";
+                    return Messaggio.DISATTIVA_TORCIA_CREATURA.testo();
                 } else {
-                    description.setTorciaAccesa(false);
-                    return "Torcia disattivata. {Adesso non vedo più un accidenti}.";
+                    description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.TORCIA_ACCESA, false));
+                    return Messaggio.DISATTIVA_TORCIA_BUIO.testo();
                 }
             }
-            description.setTorciaAccesa(false);
-            return ("Torcia disattivata.");
+            description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.TORCIA_ACCESA, false));
+            return Messaggio.DISATTIVA_TORCIA_SPENTA.testo();
         }
-        return "La torcia non è accesa.";
+        return Messaggio.DISATTIVA_TORCIA_NON_ACCESA.testo();
     }
 
-}
+    /**
+     * Fornitore del comando DISATTIVA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
 
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.DISATTIVA;
+        }
+
+        @Override
+        public String getNome() {
+            return "disattiva";
+        }
 
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Disattiva", "spegni", "Spegni"};
+        }
 
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
 
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaDisattiva();
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.parser.ParserOutput;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
 import di.lacosa.Observer;
 import di.lacosa.tipi.*;
-import di.lacosa.implementazione.CreaturaThread;
-import di.lacosa.ui.InterfacciaGioco;
+import di.lacosa.FrontendGioco;
+import di.lacosa.eventi.EventoDiGioco;
 
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce il comando "ESAMINA" per l'analisi degli oggetti nell'inventario o nella stanza.
@@ -16,17 +22,27 @@ import java.util.Set;
  */
 public class AggiornaEsamina implements Observer {
 
-    private final InterfacciaGioco interfacciaGioco;
+    private final FrontendGioco interfacciaGioco;
 
     /**
      * Costruttore della classe.
      *
      * @param interfacciaGioco riferimento all'interfaccia grafica del gioco
      */
-    public AggiornaEsamina(InterfacciaGioco interfacciaGioco) {
+    public AggiornaEsamina(FrontendGioco interfacciaGioco) {
         this.interfacciaGioco = interfacciaGioco;
     }
 
+    /**
+     * Dichiara il comando ESAMINA come unico comando gestito.
+     *
+     * @return l'insieme contenente ESAMINA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.ESAMINA);
+    }
+
     /**
      * Metodo principale per gestire il comando ESAMINA.
      *
@@ -36,28 +52,43 @@ public class AggiornaEsamina implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
-        StringBuilder msg = new StringBuilder();
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
+
+    /**
+     * Scrive il risultato dell'esaminazione direttamente nel buffer di output.
+     *
+     * @param description il contesto di gioco corrente
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg il buffer in cui scrivere la risposta
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
         Stanza stanzaCorrente = description.getStanzaCorrente();
 
         if (parserOutput.getComando().getTipo().equals(TipoComando.ESAMINA)) {
             if (controlloOggettoEsaminabile(parserOutput)) {
                     Oggetto oggettoEsaminato = getOggettoDaEsaminare(parserOutput);
                     if (oggettoEsaminato == null) {
-                        return "\uD83D\uDD0E: " + "Non c'è nulla da esaminare qui.";
+                        msg.scrivi(Messaggio.ESAMINA_NULLA);
+                        return;
                     }
-                    if (!stanzaCorrente.isVisibile() && !description.isTorciaAccesa()) {
-                        return "Non puoi esaminare oggetti al buio.";
+                    if (!description.isStanzaCorrenteIlluminata()) {
+                        msg.scrivi(Messaggio.ESAMINA_BUIO);
+                        return;
                     } else {
                         if (controlloContestoCreatura(parserOutput, stanzaCorrente)) {
-                            return gestisciInterazioneCreatura(description, stanzaCorrente);
+                            msg.scrivi(gestisciInterazioneCreatura(description, stanzaCorrente));
+                            return;
                         }
-                        return "\uD83D\uDD0E: " + oggettoEsaminato.getDescrizione();
+                        msg.scrivi(Messaggio.ESAMINA_DESCRIZIONE, oggettoEsaminato.getDescrizione());
                     }
                 } else {
-                    return "Oggetto da esaminare non identificato.";
+                    msg.scrivi(Messaggio.ESAMINA_NON_IDENTIFICATO);
                 }
         }
-        return "";
     }
 
     /**
@@ -101,34 +132,21 @@ public class AggiornaEsamina implements Observer {
      * @param stanzaCorrente la stanza corrente
      * @return il messaggio descrittivo dell'interazione con la creatura
      */
-    private String gestisciInterazioneCreatura(DescrizioneGioco description, Stanza stanzaCorrente) {
-        StringBuilder msg = new StringBuilder();
+    private Messaggio gestisciInterazioneCreatura(DescrizioneGioco description, Stanza stanzaCorrente) {
         boolean creaturaSconfitta = description.isCreaturaCanideSconfitta();
         boolean creaturaAttivata = description.isCreaturaCanideAttivata();
 
         if (!creaturaSconfitta && !creaturaAttivata) {
-            description.setCreaturaCanideAttivata(true);
-            CreaturaThread creaturaThread = new CreaturaThread(description, interfacciaGioco);
-            Thread thread = new Thread(creaturaThread);
-            description.setCreaturaThread(creaturaThread, thread);
-            thread.start();
-            msg.append("! ! ! ! ! ! ! ! ! ! ! ! ! !\n\n")
-                    .append("Non appena ti avvicini per esaminare quell'ammasso di peli, un movimento inequivocabile vi si agita dall'interno!\n")
-                    .append("Ti discosti prontamente.\n")
-                    .append("Una creatura canina, deformata e grottesca, fuoriesce dall'ammasso di putridume!\n")
-                    .append("I suoi occhi vitrei non hanno più nulla di naturale. La sua bocca si spalanca completamente in un ringhio innaturale.\n")
-                    .append("È lì a fissarti negli occhi, con acido che gli gronda dalla bocca.\n")
-                    .append("Si è appostato davanti alla porta.\n")
-                    .append("Adesso non hai più via d'uscita...\n\n")
-                    .append("! ! ! ! ! ! ! ! ! ! ! ! ! !\n");
+            description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.CREATURA_CANIDE_ATTIVATA, true));
+            description.avviaCreatura(interfacciaGioco);
+            return Messaggio.ESAMINA_CREATURA_ATTIVATA;
         }
         else if (isPalaPresente(stanzaCorrente, description)) {
-            msg.append("\uD83D\uDD0E: Tra i peli e il fango scorgi quello che sembra essere un manico di legno... che sembra essere... una PALA!!! {Potrebbe tornarmi utile}");
+            return Messaggio.ESAMINA_CREATURA_PALA;
         }
         else {
-            msg.append("\uD83D\uDD0E: Non sembra esserci nient'altro di utile, solo delle ossa umane.");
+            return Messaggio.ESAMINA_CREATURA_OSSA;
         }
-        return msg.toString();
     }
 
     /**
@@ -139,7 +157,33 @@ public class AggiornaEsamina implements Observer {
      * @return true se la pala è presente nella stanza, false altrimenti
      */
     private boolean isPalaPresente(Stanza stanza, DescrizioneGioco description) {
-        Set<Oggetto> oggettiStanza = description.getOggettiPerStanza(stanza.getIdStanza());
+        Set<Oggetto> oggettiStanza = description.getOggettiVisibili();
         return oggettiStanza.stream().anyMatch(oggetto -> oggetto.getNome().equalsIgnoreCase("Pala"));
     }
+
+    /**
+     * Fornitore del comando ESAMINA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.ESAMINA;
+        }
+
+        @Override
+        public String getNome() {
+            return "esamina";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Esamina", "analizza", "Analizza"};
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaEsamina(gioco.getInterfacciaGioco());
+        }
+    }
 }
@@ -1,11 +1,17 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.parser.ParserOutput;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
 import di.lacosa.Observer;
-import di.lacosa.tipi.Arma;
 import di.lacosa.tipi.Oggetto;
 import di.lacosa.tipi.TipoComando;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Classe che gestisce il comando "INVENTARIO" per visualizzare gli oggetti posseduti dal giocatore.
@@ -14,6 +20,16 @@ import di.lacosa.tipi.TipoComando;
  */
 public class AggiornaInventario implements Observer {
 
+    /**
+     * Dichiara il comando INVENTARIO come unico comando gestito.
+     *
+     * @return l'insieme contenente INVENTARIO
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.INVENTARIO);
+    }
+
     /**
      * Metodo principale che gestisce il comando INVENTARIO.
      *
@@ -24,35 +40,39 @@ public class AggiornaInventario implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
-        StringBuilder msg = new StringBuilder();
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
 
+    /**
+     * Scrive la descrizione dell'inventario direttamente nel buffer di output.
+     *
+     * @param description il contesto di gioco corrente con lo stato dell'inventario
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg il buffer in cui scrivere la risposta
+     * @throws IllegalArgumentException se parserOutput è null
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
         if (parserOutput == null) {
             throw new IllegalArgumentException("Il parserOutput non può essere null.");
         }
 
         if (parserOutput.getComando().getTipo() == TipoComando.INVENTARIO) {
             if (!verificaCondizioni(parserOutput)) {
-                return "Comando non valido. 'Inventario' è un comando semplice e non accetta parametri.";
+                msg.scrivi(Messaggio.INVENTARIO_NON_VALIDO);
+                return;
             }
             if (description.getInventario().isEmpty()) {
-                msg.append("Il tuo inventario è vuoto.");
+                msg.scrivi(Messaggio.INVENTARIO_VUOTO);
             } else {
-                msg.append("Nel tuo inventario ci sono:\n\n");
+                msg.scrivi(Messaggio.INVENTARIO_INTESTAZIONE);
                 for (Oggetto o : description.getInventario()) {
-                    if (o instanceof Arma) {
-                        Arma arma = (Arma) o;
-                        msg.append(arma.getNome())
-                                .append("")
-                                .append("\n----------------------------------\n");
-                    } else {
-                        msg.append(o.getNome())
-                                .append("")
-                                .append("\n----------------------------------\n");
-                    }
+                    msg.scrivi(Messaggio.INVENTARIO_VOCE, o.getNome());
                 }
             }
         }
-        return msg.toString();
     }
 
 
@@ -69,4 +89,35 @@ public class AggiornaInventario implements Observer {
                 && parserOutput.getOggettoInv() == null
                 && parserOutput.getInterlocutore() == null;
     }
+
+    /**
+     * Fornitore del comando INVENTARIO, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.INVENTARIO;
+        }
+
+        @Override
+        public String getNome() {
+            return "inventario";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Inventario"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaInventario();
+        }
+    }
 }
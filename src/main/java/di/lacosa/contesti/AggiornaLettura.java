@@ -1,12 +1,19 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
+import di.lacosa.EsecutoreEffetti;
+import di.lacosa.FrontendGioco;
 import di.lacosa.Observer;
-import di.lacosa.ui.*;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
 
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce il comando "LEGGI" per la visualizzazione di oggetti leggibili.
@@ -15,18 +22,28 @@ import java.util.Set;
  */
 public class AggiornaLettura implements Observer {
 
-    private final InterfacciaGioco interfacciaGioco;
+    private final FrontendGioco interfacciaGioco;
 
     /**
      * Costruttore della classe.
      *
      * @param interfacciaGioco riferimento all'interfaccia grafica principale
      */
-    public AggiornaLettura(InterfacciaGioco interfacciaGioco) {
+    public AggiornaLettura(FrontendGioco interfacciaGioco) {
         this.interfacciaGioco = interfacciaGioco;
     }
 
 
+    /**
+     * Dichiara il comando LEGGI come unico comando gestito.
+     *
+     * @return l'insieme contenente LEGGI
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.LEGGI);
+    }
+
     /**
      * Metodo principale che gestisce il comando LEGGI.
      *
@@ -36,47 +53,98 @@ public class AggiornaLettura implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
+
+    /**
+     * Apre la finestra di lettura dell'oggetto indicato e scrive l'esito direttamente nel buffer di output.
+     *
+     * @param description il contesto di gioco corrente
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg il buffer in cui scrivere la risposta
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
         if (parserOutput.getComando().getTipo() == TipoComando.LEGGI) {
             // Verifica se non è stato specificato alcun oggetto da leggere
             if (parserOutput.getOggetto() == null && parserOutput.getOggettoInv() == null) {
-                return "Oggetto da leggere non identificato.";
+                msg.scrivi(Messaggio.LETTURA_NON_IDENTIFICATO);
+                return;
             }
-            int id_stanza_corrente = description.getStanzaCorrente().getIdStanza();
-            Set<Oggetto> oggettiInStanza = description.getOggettiPerStanza(id_stanza_corrente);
-            Set<Oggetto> inventario = description.getInventario();
             Oggetto oggettoParserOutput = parserOutput.getOggetto();
             Oggetto oggettoInvParserOutput = parserOutput.getOggettoInv();
-            if (oggettoParserOutput != null) {
-                if (oggettiInStanza.contains(oggettoParserOutput)) {
-                    if (oggettoParserOutput instanceof OggettoLeggibileNonRaccoglibile) {
-                        OggettoLeggibileNonRaccoglibile oggLeggibile = (OggettoLeggibileNonRaccoglibile) oggettoParserOutput;
-                        FinestraLettura.mostraFinestraLettura(interfacciaGioco,oggLeggibile.getTesto(),oggLeggibile.getNome());
-                        return "Lettura di " + oggLeggibile.getNome() + "...";
-                    }
-                    else if (oggettoParserOutput instanceof OggettoLeggibile) {
-                        OggettoLeggibile oggettoLegg = (OggettoLeggibile) oggettoParserOutput;
-                        FinestraLettura.mostraFinestraLettura(interfacciaGioco, oggettoLegg.getTesto(), oggettoLegg.getNome());
-                        return "Lettura di " + oggettoLegg.getNome()+ "...";
-                    }
-                }
+            if (oggettoParserOutput != null && description.getOggettiVisibili().contains(oggettoParserOutput)
+                    && leggi(description, oggettoParserOutput, msg)) {
+                return;
             }
-            if (oggettoInvParserOutput != null) {
-                if (inventario.contains(oggettoInvParserOutput)) {
-                    if (oggettoInvParserOutput instanceof OggettoLeggibileNonRaccoglibile) {
-                        OggettoLeggibileNonRaccoglibile oggLeggibile = (OggettoLeggibileNonRaccoglibile) oggettoInvParserOutput;
-                        FinestraLettura.mostraFinestraLettura(interfacciaGioco, oggLeggibile.getTesto(), oggLeggibile.getNome());
-                        return "Lettura di " + oggLeggibile.getNome()+ "...";
-                    }
-                    else if (oggettoInvParserOutput instanceof OggettoLeggibile) {
-                        OggettoLeggibile oggettoLegg = (OggettoLeggibile) oggettoInvParserOutput;
-                        FinestraLettura.mostraFinestraLettura(interfacciaGioco, oggettoLegg.getTesto(), oggettoLegg.getNome());
-                        return "Lettura di " + oggettoLegg.getNome()+ "...";
-                    }
-                }
+            if (oggettoInvParserOutput != null && description.getInventario().contains(oggettoInvParserOutput)
+                    && leggi(description, oggettoInvParserOutput, msg)) {
+                return;
             }
-            return "Non c'è nulla da leggere.";
+            msg.scrivi(Messaggio.LETTURA_NULLA);
+        }
+    }
+
+    /**
+     * Mostra il testo dell'oggetto, se è leggibile.
+     *
+     * @param description il contesto di gioco corrente
+     * @param oggetto l'oggetto da leggere
+     * @param msg il buffer in cui scrivere la conferma della lettura
+     * @return true se l'oggetto è leggibile, false altrimenti
+     */
+    private boolean leggi(DescrizioneGioco description, Oggetto oggetto, BufferOutput msg) {
+        if (oggetto instanceof OggettoLeggibileNonRaccoglibile) {
+            OggettoLeggibileNonRaccoglibile oggLeggibile = (OggettoLeggibileNonRaccoglibile) oggetto;
+            mostraFinestraLettura(description, oggLeggibile.getTesto(), oggLeggibile.getNome());
+        } else if (oggetto instanceof OggettoLeggibile) {
+            OggettoLeggibile oggettoLegg = (OggettoLeggibile) oggetto;
+            mostraFinestraLettura(description, oggettoLegg.getTesto(), oggettoLegg.getNome());
+        } else {
+            return false;
         }
-        return "";
+        msg.scrivi(Messaggio.LETTURA_IN_CORSO, oggetto.getNome());
+        return true;
+    }
+
+    /**
+     * Apre la finestra di lettura sul canale dell'interfaccia, dopo la fine del comando:
+     * la finestra è modale e, se aperta durante il comando, ne bloccherebbe il completamento.
+     *
+     * @param description il contesto di gioco corrente
+     * @param testo il testo da mostrare
+     * @param titolo il titolo della finestra
+     */
+    private void mostraFinestraLettura(DescrizioneGioco description, String testo, String titolo) {
+        description.eseguiEffetto(EsecutoreEffetti.Canale.INTERFACCIA,
+                () -> interfacciaGioco.mostraLettura(testo, titolo));
     }
 
-}
\ No newline at end of file
+    /**
+     * Fornitore del comando LEGGI, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.LEGGI;
+        }
+
+        @Override
+        public String getNome() {
+            return "leggi";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Leggi", "consulta", "Consulta"};
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaLettura(gioco.getInterfacciaGioco());
+        }
+    }
+}
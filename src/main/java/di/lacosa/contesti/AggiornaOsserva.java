@@ -1,10 +1,17 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
 import di.lacosa.Observer;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.Stanza;
 import di.lacosa.tipi.TipoComando;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Classe che gestisce il comando "OSSERVA" per l'analisi dell'ambiente di gioco.
@@ -13,6 +20,16 @@ import di.lacosa.tipi.TipoComando;
  */
 public class AggiornaOsserva implements Observer {
 
+    /**
+     * Dichiara il comando OSSERVA come unico comando gestito.
+     *
+     * @return l'insieme contenente OSSERVA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.OSSERVA);
+    }
+
     /**
      * Metodo principale che gestisce il comando OSSERVA.
      *
@@ -22,21 +39,34 @@ public class AggiornaOsserva implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
-        StringBuilder msg = new StringBuilder();
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
+
+    /**
+     * Scrive l'osservazione della stanza corrente direttamente nel buffer di output.
+     *
+     * @param description il contesto di gioco corrente
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg il buffer in cui scrivere la risposta
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
         if (parserOutput.getComando().getTipo() == TipoComando.OSSERVA) {
             if (!verificaCondizioniOsserva(parserOutput)) {
-                return "Comando non valido. 'Osserva' è un comando semplice e non accetta parametri.";
+                msg.scrivi(Messaggio.OSSERVA_NON_VALIDO);
+                return;
             }
             Stanza stanzaCorrente = description.getStanzaCorrente();
-            if (!stanzaCorrente.isVisibile() && !description.isTorciaAccesa()) {
-                msg.append("\uD83D\uDC41\uFE0F: " + "Non si vede niente.");
+            if (!description.isStanzaCorrenteIlluminata()) {
+                msg.scrivi(Messaggio.OSSERVA_BUIO);
             } else if (stanzaCorrente.getTestoOsservazione() != null) {
-                msg.append("\uD83D\uDC41\uFE0F: " + stanzaCorrente.getOsservazioneCorrente());
+                msg.scrivi(Messaggio.OSSERVA_TESTO, stanzaCorrente.getOsservazioneCorrente());
             } else {
-                msg.append("\uD83D\uDC41\uFE0F: " + "Non c'è niente di interessante qui.");
+                msg.scrivi(Messaggio.OSSERVA_NULLA);
             }
         }
-        return msg.toString();
     }
 
     /**
@@ -52,4 +82,34 @@ public class AggiornaOsserva implements Observer {
                 && parserOutput.getInterlocutore() == null;
     }
 
+    /**
+     * Fornitore del comando OSSERVA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.OSSERVA;
+        }
+
+        @Override
+        public String getNome() {
+            return "osserva";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Osserva", "guarda", "Guarda"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaOsserva();
+        }
+    }
 }
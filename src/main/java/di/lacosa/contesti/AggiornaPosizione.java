@@ -1,13 +1,19 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.Observer;
-import di.lacosa.ui.InterfacciaGioco;
+import di.lacosa.FrontendGioco;
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.messaggi.Messaggio;
 
 import java.util.List;
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce il comando "VAI" per il movimento tra stanze.
@@ -15,18 +21,28 @@ import java.util.Set;
  * Gestisce la logica di spostamento, porte bloccate e eventi speciali.
  */
 public class AggiornaPosizione implements Observer {
-    private final InterfacciaGioco interfacciaGioco;
+    private final FrontendGioco interfacciaGioco;
 
     /**
      * Costruttore della classe.
      *
      * @param interfacciaGioco riferimento all'interfaccia grafica del gioco
      */
-    public AggiornaPosizione(InterfacciaGioco interfacciaGioco) {
+    public AggiornaPosizione(FrontendGioco interfacciaGioco) {
         this.interfacciaGioco = interfacciaGioco;
     }
 
 
+    /**
+     * Dichiara il comando VAI come unico comando gestito.
+     *
+     * @return l'insieme contenente VAI
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.VAI);
+    }
+
     /**
      * Metodo principale che gestisce il comando VAI.
      *
@@ -44,24 +60,24 @@ public class AggiornaPosizione implements Observer {
 
             switch (idStanzaDaRaggiungere) {
                 case -10: // "vai" senza direzione
-                    return "Devi specificare una direzione. Esempio: vai nord, vai sud, ecc.";
+                    return Messaggio.POSIZIONE_SENZA_DIREZIONE.testo();
 
                 case -20: // "vai fsdfafsd" (direzione non valida)
-                    return "Direzione non valida. Usa: nord, sud, est o ovest";
+                    return Messaggio.POSIZIONE_DIREZIONE_NON_VALIDA.testo();
 
                 case -30: // "vai est" ma non c'è stanza
-                    return "Non c'è nulla in quella direzione.";
+                    return Messaggio.POSIZIONE_NESSUNA_STANZA.testo();
 
                 case 0: // Uscita speciale
-                    return "Non puoi andartene via. Il dottor Gasly e chiunque sia ancora vivo hanno bisogno di te...";
+                    return Messaggio.POSIZIONE_USCITA_NEGATA.testo();
 
                 default: // ID stanza valido
                     if (isBloccataDalNemico(descrizione)) {
-                        return "LA COSA blocca la porta. Non puoi uscire finché la creatura è ancora viva!";
+                        return Messaggio.POSIZIONE_BLOCCATA_DALLA_CREATURA.testo();
                     }
                     if (descrizione.isTorciaAccesa()) {
-                        descrizione.setTorciaAccesa(false);
-                        interfacciaGioco.scriviInAreaDiTesto("(La torcia è stata disattivata)");
+                        descrizione.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.TORCIA_ACCESA, false));
+                        interfacciaGioco.scriviInAreaDiTesto(Messaggio.POSIZIONE_TORCIA_DISATTIVATA.testo());
                     }
                     if (idStanzaDaRaggiungere == 15) {
                         if (!AccessoConsentitoInSalaCom(descrizione)) {
@@ -149,8 +165,7 @@ public class AggiornaPosizione implements Observer {
         if (stanzaDaRaggiungere.isPortaBloccata()) {
             return tentativoDiSbloccarePorta(stanzaDaRaggiungere, descrizione, idStanzaDaRaggiungere);
         } else {
-            descrizione.setStanzaCorrente(stanzaDaRaggiungere);
-            interfacciaGioco.aggiornaMappa(stanzaDaRaggiungere.getIdStanza());
+            descrizione.applicaEvento(new EventoDiGioco.StanzaCambiata(stanzaDaRaggiungere.getIdStanza()));
             return "";
         }
     }
@@ -164,24 +179,58 @@ public class AggiornaPosizione implements Observer {
      * @return stringa vuota (la logica continua nella callback)
      */
     private String tentativoDiSbloccarePorta(Stanza stanzaDaRaggiungere, DescrizioneGioco descrizione, int idStanza) {
-        interfacciaGioco.scriviInAreaDiTesto("La porta è bloccata. Inserisci il codice di apertura:");
+        interfacciaGioco.scriviInAreaDiTesto(Messaggio.POSIZIONE_PORTA_BLOCCATA.testo());
+        attendiCodicePorta(stanzaDaRaggiungere, descrizione, idStanza);
+        return "";
+    }
+
+    /**
+     * Riprende l'attesa del codice di una porta dopo il ripristino della partita.
+     *
+     * @param descrizione il contesto di gioco ripristinato
+     * @param risposta il codice di porta in attesa
+     * @return true se l'attesa è stata ripresa
+     */
+    @Override
+    public boolean riprendiRisposta(DescrizioneGioco descrizione, RispostaInAttesa risposta) {
+        if (!(risposta instanceof RispostaInAttesa.CodicePorta)) {
+            return false;
+        }
+        int idStanza = ((RispostaInAttesa.CodicePorta) risposta).idStanza();
+        Stanza stanza = descrizione.getStanzaPerId(idStanza);
+        if (stanza == null) {
+            return false;
+        }
+        attendiCodicePorta(stanza, descrizione, idStanza);
+        return true;
+    }
+
+    /**
+     * Indirizza il prossimo input del giocatore al controllo del codice della porta.
+     *
+     * @param stanzaDaRaggiungere la stanza oltre la porta
+     * @param descrizione il contesto di gioco
+     * @param idStanza ID della stanza
+     */
+    private void attendiCodicePorta(Stanza stanzaDaRaggiungere, DescrizioneGioco descrizione, int idStanza) {
+        descrizione.setRispostaInAttesa(new RispostaInAttesa.CodicePorta(idStanza));
         interfacciaGioco.attendiRispostaGiocatore(codice -> {
             if (stanzaDaRaggiungere.checkCodicePorta(codice)) {
-                descrizione.getStanze().get(idStanza - 1).setBloccoPorta(false);
+                descrizione.applicaEvento(new EventoDiGioco.PortaSbloccata(idStanza));
                 interfacciaGioco.svuotaAreaDiTesto();
-                interfacciaGioco.scriviInAreaDiTesto("\nLa porta è stata sbloccata.\n");
-                descrizione.setStanzaCorrente(stanzaDaRaggiungere);
-                interfacciaGioco.scriviInAreaDiTesto("\n Ti trovi in: " + stanzaDaRaggiungere.getNome());
+                interfacciaGioco.scriviInAreaDiTesto(Messaggio.POSIZIONE_PORTA_SBLOCCATA.testo());
+                descrizione.applicaEvento(new EventoDiGioco.StanzaCambiata(stanzaDaRaggiungere.getIdStanza()));
+                interfacciaGioco.scriviInAreaDiTesto(Messaggio.POSIZIONE_STANZA_RAGGIUNTA.testo(stanzaDaRaggiungere.getNome()));
                 interfacciaGioco.scriviInAreaDiTesto("-------------------------------------");
                 interfacciaGioco.scriviInAreaDiTesto(stanzaDaRaggiungere.getDescrizione());
                 interfacciaGioco.scriviInAreaDiTesto("\n\n?> \n");
                 interfacciaGioco.aggiornaMappa(stanzaDaRaggiungere.getIdStanza());
             } else {
-                interfacciaGioco.scriviInAreaDiTesto("Codice errato. La porta rimane chiusa.\n\n?>\n\n");
+                interfacciaGioco.scriviInAreaDiTesto(Messaggio.POSIZIONE_PORTA_CODICE_ERRATO.testo());
             }
+            descrizione.setRispostaInAttesa(null);
             interfacciaGioco.attendiRispostaGiocatore(null);
         });
-        return "";
     }
 
 
@@ -194,26 +243,39 @@ public class AggiornaPosizione implements Observer {
     private String gestisciAzioneGasly(DescrizioneGioco descrizione) {
 
         if (descrizione.isSecondaAzioneGaslyAttivata()) {
-            return "{Entrerò quando avrò trovato sia il lanciafiamme che le medicine. Meglio cercare un'Armeria e l'Infermeria}";
+            return Messaggio.POSIZIONE_GASLY_OGGETTI_MANCANTI.testo();
         }
         if (!descrizione.isPrimaAzioneGaslyAttivata()) {
-            descrizione.setPrimaAzioneGaslyAttivata(true);
-            return """
-                    Mentre giri la maniglia, senti un forte fragore dall'interno:
-                    
-                    BAMM!!!.
-                    Le tue orecchie iniziano a fischiare quando ti accorgi di un foro nella porta.
-                    Ti stanno sparando contro!!
-                    Indietreggi rapidamente, illeso, mentre un altro proiettile colpisce il muro.
-
-                    Dalla stanza proviene una voce maschile che grida: “STAI INDIETRO FIGLIO DI PU***NA!!!“
-
-                    {Un superstite! Quest’UOMO è armato e terrorizzato. Devo farlo ragionare prima di entrare, devo PARLARGLI.}
-                    """;
+            descrizione.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.PRIMA_AZIONE_GASLY, true));
+            return Messaggio.POSIZIONE_GASLY_SPARO.testo();
         } else {
-            return "{L’UOMO è armato, non posso rischiare di farmi uccidere. Devo PARLARGLI prima di entrare.}";
+            return Messaggio.POSIZIONE_GASLY_ARMATO.testo();
         }
     }
 
+    /**
+     * Fornitore del comando VAI, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
 
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.VAI;
+        }
+
+        @Override
+        public String getNome() {
+            return "vai";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Vai", "prosegui", "procedi", "dirigiti", "corri", "cammina", "muoviti"};
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaPosizione(gioco.getInterfacciaGioco());
+        }
+    }
 }
@@ -1,11 +1,18 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
 import di.lacosa.Observer;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
+import di.lacosa.eventi.EventoDiGioco;
 
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce il comando "PRENDI" per la raccolta di oggetti.
@@ -14,6 +21,16 @@ import java.util.Set;
  */
 public class AggiornaRaccogli implements Observer {
 
+    /**
+     * Dichiara il comando PRENDI come unico comando gestito.
+     *
+     * @return l'insieme contenente PRENDI
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.PRENDI);
+    }
+
     /**
      * Metodo principale che gestisce il comando PRENDI.
      *
@@ -23,10 +40,22 @@ public class AggiornaRaccogli implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
-        StringBuilder msg = new StringBuilder();
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
+
+    /**
+     * Scrive l'esito della raccolta direttamente nel buffer di output.
+     *
+     * @param description  il contesto di gioco corrente
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg          il buffer in cui scrivere la risposta
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
         Stanza stanzaCorrente = description.getStanzaCorrente();
-        int id_stanza_corrente = stanzaCorrente.getIdStanza();
-        Set<Oggetto> oggettiInStanza = description.getOggettiPerStanza(id_stanza_corrente);
+        Set<Oggetto> oggettiInStanza = description.getOggettiVisibili();
         if (parserOutput.getComando().getTipo() == TipoComando.PRENDI) {
             if (parserOutput.getOggetto() != null) {
                 Oggetto oggettoParserOutput = parserOutput.getOggetto();
@@ -35,13 +64,15 @@ public class AggiornaRaccogli implements Observer {
                     if (parserOutput.getOggetto() instanceof OggettoRaccoglibile) {
                         if (controlloContestoPala(parserOutput, description)) {
                             if (controlloContestoCane(description)) {
-                                return "Al momento non puoi raccogliere questo oggetto";
+                                msg.scrivi(Messaggio.RACCOGLI_NON_ORA);
+                                return;
                             }
                         }
                         if (stanzaCorrente.getNome().equalsIgnoreCase("Serra")) {
                             if (controlloContestoTerrario(parserOutput, description)) {
                                 if (!description.isTerrenoScavato()) {
-                                    return "Al momento non puoi raccogliere questo oggetto";
+                                    msg.scrivi(Messaggio.RACCOGLI_NON_ORA);
+                                    return;
                                 }
                             }
                         }
@@ -51,21 +82,18 @@ public class AggiornaRaccogli implements Observer {
                         if (controlloContestoAnalgesico(parserOutput, description)) {
                             gestisciOsservazioneInfermeria(description);
                         }
-                        description.getInventario().add(parserOutput.getOggetto());
-                        description.setOggettoInInventario(id_oggettoParserOutput);
-                        msg.append("Hai raccolto: " + parserOutput.getOggetto().getNome());
-                        msg.append("\n");
+                        description.applicaEvento(new EventoDiGioco.OggettoRaccolto(id_oggettoParserOutput));
+                        msg.scrivi(Messaggio.RACCOGLI_RACCOLTO, parserOutput.getOggetto().getNome());
                     } else {
-                        msg.append("Non puoi raccogliere questo oggetto.");
+                        msg.scrivi(Messaggio.RACCOGLI_NON_RACCOGLIBILE);
                     }
                 } else {
-                    msg.append("In questa stanza non c'è questo oggetto.");
+                    msg.scrivi(Messaggio.RACCOGLI_NON_PRESENTE);
                 }
             } else {
-                msg.append("Oggetto da raccogliere non identificato.");
+                msg.scrivi(Messaggio.RACCOGLI_NON_IDENTIFICATO);
             }
         }
-        return msg.toString();
     }
 
     /**
@@ -144,7 +172,7 @@ public class AggiornaRaccogli implements Observer {
      */
     private void gestisciOsservazioneDormitorio(DescrizioneGioco descrizioneGioco) {
         if (descrizioneGioco.getStanzaCorrente().getTipoOsservazioneAggiornata().equals(MotivazioneAggDescrizione.MODIFICATO_DA_EVENTO)) {
-            descrizioneGioco.getStanzaCorrente().attivaOsservazioneAggiornata();
+            descrizioneGioco.applicaEvento(new EventoDiGioco.OsservazioneAggiornata(descrizioneGioco.getStanzaCorrente().getIdStanza()));
         }
     }
 
@@ -155,7 +183,38 @@ public class AggiornaRaccogli implements Observer {
      */
     private void gestisciOsservazioneInfermeria(DescrizioneGioco descrizioneGioco) {
         if (descrizioneGioco.getStanzaCorrente().getTipoOsservazioneAggiornata().equals(MotivazioneAggDescrizione.MODIFICATO_DA_EVENTO)) {
-            descrizioneGioco.getStanzaCorrente().attivaOsservazioneAggiornata();
+            descrizioneGioco.applicaEvento(new EventoDiGioco.OsservazioneAggiornata(descrizioneGioco.getStanzaCorrente().getIdStanza()));
+        }
+    }
+
+    /**
+     * Fornitore del comando PRENDI, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.PRENDI;
+        }
+
+        @Override
+        public String getNome() {
+            return "prendi";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"raccogli", "Prendi"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaRaccogli();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,19 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
 import di.lacosa.Observer;
 import di.lacosa.GestoreSalvataggi;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
+import di.lacosa.EsecutoreEffetti;
 import di.lacosa.implementazione.LaCosa;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.Stanza;
 import di.lacosa.tipi.TipoComando;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Classe che gestisce il comando "SALVA" per il salvataggio dello stato di gioco.
@@ -15,6 +22,26 @@ import di.lacosa.tipi.TipoComando;
  */
 public class AggiornaSalva implements Observer {
 
+    /**
+     * Dichiara il comando SALVA come unico comando gestito.
+     *
+     * @return l'insieme contenente SALVA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.SALVA);
+    }
+
+    /**
+     * Il salvataggio viene eseguito dopo gli altri osservatori, per includere lo stato già aggiornato.
+     *
+     * @return l'ordine successivo agli osservatori di stato
+     */
+    @Override
+    public int getOrdine() {
+        return ORDINE_SUCCESSIVO;
+    }
+
     /**
      * Metodo principale che gestisce il comando SALVA.
      *
@@ -24,29 +51,54 @@ public class AggiornaSalva implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
+
+    /**
+     * Avvia il salvataggio e scrive l'esito direttamente nel buffer di output.
+     *
+     * @param description il contesto di gioco corrente
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg il buffer in cui scrivere la risposta
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
         if (parserOutput.getComando().getTipo() != TipoComando.SALVA) {
-            return "";
+            return;
         }
         if(!verificaCondizioniSalvataggio(parserOutput)){
-            return "Comando non valido. 'salva' è un comando semplice e non accetta parametri aggiuntivi.";
+            msg.scrivi(Messaggio.SALVA_NON_VALIDO);
+            return;
         }
         // Controllo speciale per il Canile
         if (isSalvataggioBloccato(description)) {
-            return "Salvataggio non consentito in questo momento";
+            msg.scrivi(Messaggio.SALVA_BLOCCATO);
+            return;
         }
         if (!(description instanceof LaCosa)) {
-                return "Impossibile salvare: tipo di gioco non compatibile.";
+                msg.scrivi(Messaggio.SALVA_INCOMPATIBILE);
+                return;
             }
             LaCosa gioco = (LaCosa) description;
 
             // Usa lo slot corrente, non uno nuovo ogni volta
             int slot = gioco.getSlotCorrente();
             if (slot == -1) {
-                return "Nessuno slot assegnato a questa partita.";
+                msg.scrivi(Messaggio.SALVA_NESSUNO_SLOT);
+                return;
+            }
+            Stanza stanzaCorrente = gioco.getStanzaCorrente();
+            gioco.eseguiEffetto(EsecutoreEffetti.Canale.REGISTRO,
+                    () -> System.out.println("Stanza corrente prima del salvataggio: " + stanzaCorrente));
+            // Lo stato viene serializzato ora, la scrittura su disco non blocca il comando
+            boolean avviato = GestoreSalvataggi.salvaPartitaInBackground(gioco, slot);
+            if (avviato) {
+                msg.scrivi(Messaggio.SALVA_ESEGUITO, slot);
+            } else {
+                msg.scrivi(Messaggio.SALVA_ERRORE);
             }
-            System.out.println("Stanza corrente prima del salvataggio: " + gioco.getStanzaCorrente());
-            boolean successo = GestoreSalvataggi.salvaPartita(gioco, slot);
-            return successo ? "Partita salvata nello slot " + slot + "." : " Errore durante il salvataggio.";
     }
 
     /**
@@ -75,4 +127,34 @@ public class AggiornaSalva implements Observer {
                 && parserOutput.getInterlocutore() == null;
     }
 
+    /**
+     * Fornitore del comando SALVA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.SALVA;
+        }
+
+        @Override
+        public String getNome() {
+            return "salva";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Salva", "Salvataggio"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaSalva();
+        }
+    }
 }
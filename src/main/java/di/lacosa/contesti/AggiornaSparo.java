@@ -1,12 +1,20 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.messaggi.Messaggio;
 import di.lacosa.Observer;
 import di.lacosa.parser.ParserOutput;
+import di.lacosa.tipi.FlagDiGioco;
 import di.lacosa.tipi.Personaggio;
 import di.lacosa.tipi.Stanza;
 import di.lacosa.tipi.TipoComando;
+import di.lacosa.eventi.EventoDiGioco;
 import java.util.Set;
+import java.util.EnumSet;
 
 /**
  * Classe che gestisce il comando "SPARA" per le azioni di combattimento.
@@ -15,6 +23,16 @@ import java.util.Set;
  */
 public class AggiornaSparo implements Observer {
 
+    /**
+     * Dichiara il comando SPARA come unico comando gestito.
+     *
+     * @return l'insieme contenente SPARA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.SPARA);
+    }
+
     /**
      * Metodo principale che gestisce il comando SPARA.
      *
@@ -24,31 +42,44 @@ public class AggiornaSparo implements Observer {
      */
     @Override
     public String update(DescrizioneGioco description, ParserOutput parserOutput) {
+        BufferOutput msg = new BufferOutput();
+        update(description, parserOutput, msg);
+        return msg.toString();
+    }
+
+    /**
+     * Scrive l'esito dello sparo direttamente nel buffer di output.
+     *
+     * @param description il contesto di gioco corrente
+     * @param parserOutput l'output del parser contenente il comando
+     * @param msg il buffer in cui scrivere la risposta
+     */
+    @Override
+    public void update(DescrizioneGioco description, ParserOutput parserOutput, BufferOutput msg) {
 
         if (parserOutput.getComando() == null ||
                 !parserOutput.getComando().getTipo().equals(TipoComando.SPARA)) {
-            return "";
+            return;
         }
         if (parserOutput.getInterlocutore() == null) {
-            return "Bersaglio non identificato.";
+            msg.scrivi(Messaggio.SPARO_BERSAGLIO_NON_IDENTIFICATO);
+            return;
         }
         Personaggio bersaglio = parserOutput.getInterlocutore();
         Stanza currentRoom = description.getStanzaCorrente();
 
         if (bersaglio.getNome().equalsIgnoreCase("Canide")) {
-            if (!currentRoom.getNome().equalsIgnoreCase("Canile")) {
-                return "Bersaglio non identificato";
-            }
-            if(description.isCreaturaCanideAttivata()){
-            return gestisciSparaAlCanide(description, bersaglio);
+            if (currentRoom.getNome().equalsIgnoreCase("Canile") && description.isCreaturaCanideAttivata()) {
+                msg.scrivi(gestisciSparaAlCanide(description, bersaglio));
             } else {
-                return "Bersaglio non identificato";
+                msg.scrivi(Messaggio.SPARO_BERSAGLIO_NON_IDENTIFICATO);
             }
+            return;
         }
         if (isPersonaggioInStanza(description, currentRoom, bersaglio)) {
-            return "Non puoi sparare a " + bersaglio.getNome() + "!";
+            msg.scrivi(Messaggio.SPARO_NON_PUOI_SPARARE, bersaglio.getNome());
         } else {
-            return "Bersaglio non trovato";
+            msg.scrivi(Messaggio.SPARO_BERSAGLIO_NON_TROVATO);
         }
     }
 
@@ -70,34 +101,58 @@ public class AggiornaSparo implements Observer {
      *
      * @param description il contesto di gioco
      * @param canide la creatura Canide
-     * @return messaggio descrittivo dello stato del combattimento
+     * @return il messaggio descrittivo dello stato del combattimento
      */
-    private String gestisciSparaAlCanide(DescrizioneGioco description, Personaggio canide) {
-        StringBuilder msg = new StringBuilder();
+    private Messaggio gestisciSparaAlCanide(DescrizioneGioco description, Personaggio canide) {
         int vita = canide.getVita();
         switch (vita) {
             case 4:
-                msg.append("Spari! La COSA barcolla ma avanza furiosa.");
-                canide.setVita(3);
-                break;
+                description.applicaEvento(new EventoDiGioco.VitaCambiata(canide.getId(), 3));
+                return Messaggio.SPARO_CANIDE_PRIMO_COLPO;
             case 3:
-                msg.append("Secondo colpo! La creatura zoppica ma resiste.");
-                canide.setVita(2);
-                break;
+                description.applicaEvento(new EventoDiGioco.VitaCambiata(canide.getId(), 2));
+                return Messaggio.SPARO_CANIDE_SECONDO_COLPO;
             case 2:
-                msg.append("Terzo colpo! La COSA sanguina ma non si arrende.");
-                canide.setVita(1);
-                break;
+                description.applicaEvento(new EventoDiGioco.VitaCambiata(canide.getId(), 1));
+                return Messaggio.SPARO_CANIDE_TERZO_COLPO;
             case 1:
-                msg.append("Colpo finale! La creatura crolla al suolo, morta.");
-                canide.setVita(0);
-                description.setCreaturaCanideSconfitta(true);
-                description.stopCreaturaThread();
-                break;
+                description.applicaEvento(new EventoDiGioco.VitaCambiata(canide.getId(), 0));
+                description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.CREATURA_CANIDE_SCONFITTA, true));
+                description.sconfiggiCreatura();
+                return Messaggio.SPARO_CANIDE_COLPO_FINALE;
             default:
-                msg.append("La creatura è già morta.");
-                break;
+                return Messaggio.SPARO_CANIDE_GIA_MORTO;
+        }
+    }
+
+    /**
+     * Fornitore del comando SPARA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.SPARA;
+        }
+
+        @Override
+        public String getNome() {
+            return "spara";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Spara"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaSparo();
         }
-        return msg.toString();
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,19 @@
 package di.lacosa.contesti;
 
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.implementazione.FornitoreComando;
+import di.lacosa.implementazione.LaCosa;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.Observer;
+import di.lacosa.tipi.FlagDiGioco;
 import di.lacosa.tipi.Oggetto;
 import di.lacosa.tipi.TipoComando;
 import di.lacosa.tipi.Stanza;
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.messaggi.Messaggio;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Classe che gestisce il comando "USA" per l'interazione con oggetti nell'inventario.
@@ -14,6 +22,16 @@ import di.lacosa.tipi.Stanza;
  */
 public class AggiornaUsa implements Observer {
 
+    /**
+     * Dichiara il comando USA come unico comando gestito.
+     *
+     * @return l'insieme contenente USA
+     */
+    @Override
+    public Set<TipoComando> getComandiGestiti() {
+        return EnumSet.of(TipoComando.USA);
+    }
+
     /**
      * Metodo principale che gestisce il comando USA.
      *
@@ -30,7 +48,7 @@ public class AggiornaUsa implements Observer {
             if (oggettoUsato != null) {
                 return gestisciComandoUsa(description, oggettoUsato, stanzaCorrente);
             } else {
-                return "Oggetto da usare non identificato.";
+                return Messaggio.USA_NON_IDENTIFICATO.testo();
             }
         }
         return "";
@@ -49,21 +67,50 @@ public class AggiornaUsa implements Observer {
         boolean oggettoDaUsare = false;
         if (oggettoUsato.getNome().equalsIgnoreCase("Pala") && stanzaCorrente.getNome().equalsIgnoreCase("Serra")) {
             if(!description.isTerrenoScavato()) {
-                msg.append("Il terreno si smuove facilmente sotto la tua forza, ma dosi con attenzione ogni movimento.\n\n{Se davvero sotto la terra si nasconde ciò che penso, colpirlo con troppa forza potrebbe essere rischioso.}\n\nCon ogni colpo ponderato della pala, la terra si allenta sempre di più, finché non senti un suono inconfondibile: TONG!\n" +
-                        "Ti abbassi e inizi a spostare la terra con le mani, rivelando lentamente la forma di un oggetto.\nÈ robusto, con una struttura massiccia e una canna che non lascia spazio a dubbi.\n\n" +
-                        "Hai dissotterrato un LANCIAFIAMME!\n");
-                description.getStanzaCorrente().attivaOsservazioneAggiornata();
-                description.setTerrenoScavato(true);
+                msg.append(Messaggio.USA_PALA_SERRA.testo());
+                description.applicaEvento(new EventoDiGioco.OsservazioneAggiornata(stanzaCorrente.getIdStanza()));
+                description.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.TERRENO_SCAVATO, true));
                 oggettoDaUsare = true;
             }
         }
         if(oggettoUsato.getNome().equalsIgnoreCase("Ricetrasmettitore")){
-            msg.append("Afferri il ricetrasmettitore e premi il pulsante di trasmissione.\n\"Mugs? Mugs, riesci a sentirmi? Passo-\" lo ripeti più volte ma nessuno risponde.\nOsservi il display: la frequenza è corretta e attiva, ma dall'altra parte nessuno risponde.\n\"Mugs!\" insisti, con un leggero nervosismo ma il silenzio persiste.\n{Perchè mai non risponde?}");
+            msg.append(Messaggio.USA_RICETRASMETTITORE.testo());
             oggettoDaUsare = true;
         }
         if(!oggettoDaUsare){
-            msg.append("L'oggetto specificato non può essere \"usato\". Ma forse è possibile interagirci in un altro modo.");
+            msg.append(Messaggio.USA_NON_UTILIZZABILE.testo());
         }
         return msg.toString();
     }
+
+    /**
+     * Fornitore del comando USA, registrato come servizio {@link FornitoreComando}.
+     */
+    public static class Fornitore implements FornitoreComando {
+
+        @Override
+        public TipoComando getTipo() {
+            return TipoComando.USA;
+        }
+
+        @Override
+        public String getNome() {
+            return "usa";
+        }
+
+        @Override
+        public String[] getAlias() {
+            return new String[]{"Usa", "utilizza"};
+        }
+
+        @Override
+        public boolean isCondivisibile() {
+            return true;
+        }
+
+        @Override
+        public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+            return new AggiornaUsa();
+        }
+    }
 }
@@ -11,6 +11,7 @@ import java.sql.Statement;
  * <ul>
  *   <li>Creare tutte le tabelle necessarie</li>
  *   <li>Aggiungere vincoli di chiave esterna complessi</li>
+ *   <li>Aggiornare lo schema dei database creati da versioni precedenti</li>
  * </ul>
  * La classe gestisce lo schema completo del database utilizzato dal gioco.
  *
@@ -58,6 +59,8 @@ public class CreazioneDatabase {
                             "    testo TEXT, " +
                             "    id_stanza INT, " +
                             "    munizioni INT, " +
+                            "    regola_visibilita VARCHAR(20) DEFAULT 'SEMPRE_VISIBILE' NOT NULL, " +
+                            "    intensita_luce INT DEFAULT 0 NOT NULL, " +
                             "    FOREIGN KEY (id_stanza) REFERENCES Stanze(id)" +
                             ");",
 
@@ -145,4 +148,29 @@ public class CreazioneDatabase {
                     e.printStackTrace();
                 }
             }
+        
+    /**
+     * Aggiunge a un database creato da una versione precedente le colonne introdotte in seguito.
+     * <p>
+     * Le nuove colonne degli oggetti (regola di visibilità e intensità di luce) vengono
+     * create con i valori predefiniti, che andranno poi assegnati dal contenuto del gioco.
+     */
+    public static void aggiornaTabelle() {
+        String[] aggiornamenti = {
+                "ALTER TABLE Oggetti ADD COLUMN IF NOT EXISTS regola_visibilita VARCHAR(20) DEFAULT 'SEMPRE_VISIBILE' NOT NULL;",
+                "ALTER TABLE Oggetti ADD COLUMN IF NOT EXISTS intensita_luce INT DEFAULT 0 NOT NULL;"
+        };
+
+        try (Connection conn = DatabaseManager.getConnessione();
+             Statement stmt = conn.createStatement()) {
+
+            for (String sql : aggiornamenti) {
+                stmt.execute(sql);
+            }
+            System.out.println("Tabelle aggiornate con successo.");
+
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
+    }
+}
@@ -47,6 +47,8 @@ public class DatabaseManager {
      *   <li>Aggiunta dei vincoli di chiave esterna</li>
      *   <li>Inizializzazione dei dati</li>
      * </ol>
+     * Se il database esiste ma è stato creato da una versione precedente, ne aggiorna lo schema
+     * e assegna agli oggetti le proprietà di luce e visibilità.
      *
      * @param args argomenti da riga di comando (non utilizzati)
      */
@@ -58,6 +60,10 @@ public class DatabaseManager {
                     InizializzaTabelle.inizializzaTutto();
                 } else {
                     System.out.println("Il database esiste già.");
+                    if (!verificaColonna(conn, "OGGETTI", "INTENSITA_LUCE")) {
+                        CreazioneDatabase.aggiornaTabelle();
+                        InizializzaTabelle.aggiornaProprietaLuce();
+                    }
                 }
             } catch (SQLException e) {
                 e.printStackTrace();
@@ -81,4 +87,20 @@ public class DatabaseManager {
             return rs.next();
         }
     }
+
+    /**
+     * Verifica la presenza di una colonna in una tabella del database.
+     *
+     * @param conn la connessione al database da verificare
+     * @param tabella il nome della tabella, in maiuscolo
+     * @param colonna il nome della colonna, in maiuscolo
+     * @return true se la colonna esiste, false altrimenti
+     * @throws SQLException in caso di errori durante l'accesso ai metadati
+     */
+    private static boolean verificaColonna(Connection conn, String tabella, String colonna) throws SQLException {
+        DatabaseMetaData dbMetaData = conn.getMetaData();
+        try (ResultSet rs = dbMetaData.getColumns(null, null, tabella, colonna)) {
+            return rs.next();
+        }
+    }
 }
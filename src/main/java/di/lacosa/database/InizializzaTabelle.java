@@ -1,5 +1,6 @@
 package di.lacosa.database;
 
+import di.lacosa.tipi.RegolaVisibilita;
 import di.lacosa.tipi.Utils;
 
 import java.io.IOException;
@@ -20,6 +21,9 @@ import java.io.IOException;
  */
 public class InizializzaTabelle {
 
+    //Intensità della luce emessa dalla torcia accesa
+    private static final int INTENSITA_TORCIA = 1;
+
     /**
      * Inizializza tutte le tabelle del database in un'unica operazione.
      * <p>
@@ -256,12 +260,12 @@ public class InizializzaTabelle {
      TabellaOggetti.inserisciOggetto("Fotografia", "La foto ritrae due uomini che ridono, abbracciati. Leggi i nomi cuciti sulle divise: Gasly e Sips. {Il dottor Gasly... e Sips. Sarà lui l’uomo di cui parlava la guardia?}\n" +
              "Gasly ha capelli corti, biondi, un’espressione seria ma gentile. Sips, con barba folta e capelli mossi, sorride calorosamente. Sembrano amici stretti.\n" +
              "Sul retro della foto, un numero scritto a penna: 47187546. {Un codice? Meglio ricordarlo...}", "OggettoRaccoglibile", null, 5, null);
-     TabellaOggetti.inserisciOggetto("Torcia", "Una torcia resistente, con corpo in metallo e impugnatura antiscivolo. La sua luce è potente e regolabile, perfetta per illuminare anche le aree più buie.", "OggettoAttivabile", null, null, null);
+     TabellaOggetti.inserisciOggetto("Torcia", "Una torcia resistente, con corpo in metallo e impugnatura antiscivolo. La sua luce è potente e regolabile, perfetta per illuminare anche le aree più buie.", "OggettoAttivabile", null, null, null, RegolaVisibilita.SEMPRE_VISIBILE, INTENSITA_TORCIA);
      TabellaOggetti.inserisciOggetto("Lista Dipendenti", "Una lista dei dipendenti fissata al muro con puntine, con nomi e ruoli elencati ordinatamente al computer. La carta è ingiallita dal tempo e presenta qualche macchia d'umidità.\nAccanto a diversi nomi ci sono annotazioni che fanno riferimento a tutte le loro informazioni base. {Sarà meglio darci un occhiata}", "OggettoLeggibileNonRaccoglibile", listaDipendenti, 2, null);
-     TabellaOggetti.inserisciOggetto("Pala", "Questa pala sembra essere uno strumento robusto, con una lama in metallo resistente e un manico lungo in legno. Adatta a scavare, sollevare e spostare materiali come terra, sabbia o neve.", "OggettoRaccoglibile", null, 6, null);
+     TabellaOggetti.inserisciOggetto("Pala", "Questa pala sembra essere uno strumento robusto, con una lama in metallo resistente e un manico lungo in legno. Adatta a scavare, sollevare e spostare materiali come terra, sabbia o neve.", "OggettoRaccoglibile", null, 6, null, RegolaVisibilita.RICHIEDE_LUCE, 0);
      TabellaOggetti.inserisciOggetto("Lanciafiamme", "Questo lanciafiamme è un'arma massiccia e rudimentale, con una canna lunga e nera.\nIl serbatoio sul retro è coperto di ghiaccio, ma dalla sua estremità spunta una fiamma vivida e minacciosa che emette un forte odore di benzina.", "Arma", null, 10, 10);
      TabellaOggetti.inserisciOggetto("Analgesico", " Questo analgesico ipodermico è un farmaco contenuto in un piccolo flacone di vetro trasparente, con un'etichetta che riporta il nome del farmaco e le istruzioni per l'uso.\nIl liquido all'interno è limpido e leggermente viscoso. Il tappo è sigillato con cura per mantenere l'integrità del farmaco, essenziale per alleviare il dolore di chiunque.", "OggettoRaccoglibile", null, 8, null);
-     TabellaOggetti.inserisciOggetto("Poltiglia", "", "OggettoNonRaccoglibile", null, 6, null);
+     TabellaOggetti.inserisciOggetto("Poltiglia", "", "OggettoNonRaccoglibile", null, 6, null, RegolaVisibilita.RICHIEDE_LUCE, 0);
      TabellaOggetti.inserisciOggetto("Terrario", "Dei tre terrari nella stanza, quello al centro attira subito la tua attenzione. Mentre i terrari ai lati conservano ancora qualche traccia di vegetazione, il terrario centrale è completamente spoglio. Non vi cresce nulla all'interno, e il terreno sembra strano, smosso.\n" +
              "Ti avvicini per osservare meglio: la terra appare inconsistente, come se fosse stata dissodata di recente. {Mi chiedo perché qualcuno abbia dissodato il terreno senza poi aver piantato nulla. Magari dal diario del botanico potrò trovare le mie risposte}\n", "OggettoNonRaccoglibile", null, 10, null);
      TabellaOggetti.inserisciOggetto("Ricetrasmettitore", "Un dispositivo portatile con pochi pulsanti ed un'antenna. Mostra le frequenze su un piccolo schermo ed emette un debole ronzio quando acceso. Tra le frequenze attive, solo una è operativa: quella collegata alla radiotrasmittente dell’elicottero. {Posso usarla solo per comunicare con Mugs (Il pilota)}", "OggettoAttivabile", null, null, null);
@@ -581,4 +585,15 @@ public class InizializzaTabelle {
     }
 
 
+
+    /**
+     * Assegna le proprietà di luce e visibilità agli oggetti di un database creato
+     * da una versione precedente, in cui le colonne corrispondenti non esistevano.
+     * I valori coincidono con quelli usati da {@link #inizializzaOggetti()}.
+     */
+    public static void aggiornaProprietaLuce() {
+        TabellaOggetti.aggiornaProprietaLuce("Torcia", RegolaVisibilita.SEMPRE_VISIBILE, INTENSITA_TORCIA);
+        TabellaOggetti.aggiornaProprietaLuce("Pala", RegolaVisibilita.RICHIEDE_LUCE, 0);
+        TabellaOggetti.aggiornaProprietaLuce("Poltiglia", RegolaVisibilita.RICHIEDE_LUCE, 0);
+    }
 }
@@ -74,6 +74,7 @@ public class TabellaOggetti {
                         oggetto = new Arma(oggettoId, nome, descr, munizioni, alias, id_stanza);
                         break;
                 }
+                assegnaProprietaLuce(oggetto, rs);
             }
 
         } catch (SQLException e) {
@@ -84,7 +85,7 @@ public class TabellaOggetti {
     }
 
     /**
-     * Inserisce un nuovo oggetto nel database.
+     * Inserisce un nuovo oggetto nel database, sempre visibile e che non emette luce.
      * <p>
      * I campi opzionali possono essere null e verranno gestiti appropriatamente.
      *
@@ -97,7 +98,27 @@ public class TabellaOggetti {
      * @throws SQLException Se si verifica un errore durante l'accesso al database
      */
     public static void inserisciOggetto( String nome, String descrizione, String tipo, String testo, Integer id_stanza, Integer munizioni) {
-        String comando_sql = "INSERT INTO Oggetti (nome, descrizione, tipo, testo, id_stanza, munizioni) VALUES (?, ?, ?, ?, ?, ?)";
+        inserisciOggetto(nome, descrizione, tipo, testo, id_stanza, munizioni, RegolaVisibilita.SEMPRE_VISIBILE, 0);
+    }
+
+    /**
+     * Inserisce un nuovo oggetto nel database.
+     * <p>
+     * I campi opzionali possono essere null e verranno gestiti appropriatamente.
+     *
+     * @param nome Il nome dell'oggetto
+     * @param descrizione La descrizione dell'oggetto
+     * @param tipo Il tipo di oggetto (determina la classe concreta)
+     * @param testo Il testo per oggetti leggibili (può essere null)
+     * @param id_stanza L'ID della stanza in cui si trova (può essere null)
+     * @param munizioni Il numero di munizioni per le armi (può essere null)
+     * @param regolaVisibilita La regola con cui l'oggetto può essere percepito
+     * @param intensitaLuce L'intensità della luce emessa dall'oggetto (0 se non è una sorgente di luce)
+     * @throws SQLException Se si verifica un errore durante l'accesso al database
+     */
+    public static void inserisciOggetto( String nome, String descrizione, String tipo, String testo, Integer id_stanza, Integer munizioni,
+                                         RegolaVisibilita regolaVisibilita, int intensitaLuce) {
+        String comando_sql = "INSERT INTO Oggetti (nome, descrizione, tipo, testo, id_stanza, munizioni, regola_visibilita, intensita_luce) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = DatabaseManager.getConnessione();
              PreparedStatement pstmt = conn.prepareStatement(comando_sql)) {
@@ -119,12 +140,51 @@ public class TabellaOggetti {
                 pstmt.setNull(6, Types.INTEGER);
             }
 
+            pstmt.setString(7, regolaVisibilita.name());
+            pstmt.setInt(8, intensitaLuce);
+
             pstmt.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Aggiorna la regola di visibilità e l'intensità di luce di un oggetto già presente nel database.
+     *
+     * @param nome Il nome dell'oggetto
+     * @param regolaVisibilita La regola con cui l'oggetto può essere percepito
+     * @param intensitaLuce L'intensità della luce emessa dall'oggetto (0 se non è una sorgente di luce)
+     */
+    public static void aggiornaProprietaLuce(String nome, RegolaVisibilita regolaVisibilita, int intensitaLuce) {
+        String comando_sql = "UPDATE Oggetti SET regola_visibilita = ?, intensita_luce = ? WHERE nome = ?";
+
+        try (Connection conn = DatabaseManager.getConnessione();
+             PreparedStatement pstmt = conn.prepareStatement(comando_sql)) {
+
+            pstmt.setString(1, regolaVisibilita.name());
+            pstmt.setInt(2, intensitaLuce);
+            pstmt.setString(3, nome);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Assegna all'oggetto la regola di visibilità e l'intensità di luce lette dal database.
+     *
+     * @param oggetto L'oggetto appena creato (può essere null se il tipo non è riconosciuto)
+     * @param rs La riga corrente del risultato della query
+     * @throws SQLException Se si verifica un errore durante la lettura delle colonne
+     */
+    private static void assegnaProprietaLuce(Oggetto oggetto, ResultSet rs) throws SQLException {
+        if (oggetto != null) {
+            oggetto.setRegolaVisibilita(RegolaVisibilita.valueOf(rs.getString("regola_visibilita")));
+            oggetto.setIntensitaLuce(rs.getInt("intensita_luce"));
+        }
+    }
+
 
     /**
      * Recupera tutti gli oggetti presenti nel database.
@@ -178,6 +238,7 @@ public class TabellaOggetti {
                         oggetto = new Arma(oggettoId, nome, descr, munizioni, alias, id_stanza);
                         break;
                 }
+                assegnaProprietaLuce(oggetto, rs);
                 oggetti.add(oggetto);
             }
 
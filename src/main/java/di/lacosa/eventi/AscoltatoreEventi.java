@@ -0,0 +1,19 @@
+package di.lacosa.eventi;
+
+/**
+ * Interfaccia per chi vuole essere informato degli eventi di gioco appena applicati
+ * (ad esempio spettatori, repliche o sistemi di salvataggio incrementale).
+ *
+ * @author fabioMarchitelli
+ * @see RegistroEventi
+ */
+public interface AscoltatoreEventi {
+
+    /**
+     * Metodo chiamato dopo che un evento è stato aggiunto al registro e applicato allo stato.
+     *
+     * @param posizione La posizione dell'evento nel registro
+     * @param evento L'evento applicato
+     */
+    void eventoApplicato(int posizione, EventoDiGioco evento);
+}
@@ -0,0 +1,76 @@
+package di.lacosa.eventi;
+
+import di.lacosa.tipi.FlagDiGioco;
+
+import java.io.Serializable;
+
+/**
+ * Interfaccia che rappresenta una modifica allo stato della partita.
+ * <p>
+ * Ogni cambiamento del mondo di gioco viene descritto da uno degli eventi tipizzati
+ * definiti qui sotto, aggiunto al {@link RegistroEventi} e applicato dal {@link RiduttoreEventi}.
+ * Gli eventi contengono solo identificativi e valori primitivi, così da poter essere
+ * salvati, riprodotti o inviati ad altri osservatori senza trasferire l'intero stato.
+ *
+ * @author fabioMarchitelli
+ */
+public sealed interface EventoDiGioco extends Serializable {
+
+    /**
+     * Il giocatore si è spostato in un'altra stanza.
+     *
+     * @param idStanza ID della nuova stanza corrente
+     */
+    record StanzaCambiata(int idStanza) implements EventoDiGioco {}
+
+    /**
+     * Un oggetto presente in una stanza è stato raccolto e messo nell'inventario.
+     *
+     * @param idOggetto ID dell'oggetto raccolto
+     */
+    record OggettoRaccolto(int idOggetto) implements EventoDiGioco {}
+
+    /**
+     * Un flag di avanzamento della partita ha cambiato valore.
+     *
+     * @param flag Il flag modificato
+     * @param valore Il nuovo valore del flag
+     */
+    record FlagCambiato(FlagDiGioco flag, boolean valore) implements EventoDiGioco {}
+
+    /**
+     * La vita di un personaggio è cambiata.
+     *
+     * @param idPersonaggio ID del personaggio
+     * @param vita Nuovo valore dei punti vita
+     */
+    record VitaCambiata(int idPersonaggio, int vita) implements EventoDiGioco {}
+
+    /**
+     * Il giocatore ha concluso l'interazione con un personaggio.
+     *
+     * @param idPersonaggio ID del personaggio
+     */
+    record InterazioneConclusa(int idPersonaggio) implements EventoDiGioco {}
+
+    /**
+     * Un'opzione di dialogo è stata scelta dal giocatore.
+     *
+     * @param idDialogo ID dell'opzione di dialogo utilizzata
+     */
+    record DialogoUtilizzato(int idDialogo) implements EventoDiGioco {}
+
+    /**
+     * L'osservazione di una stanza è passata alla versione aggiornata.
+     *
+     * @param idStanza ID della stanza
+     */
+    record OsservazioneAggiornata(int idStanza) implements EventoDiGioco {}
+
+    /**
+     * La porta di accesso a una stanza è stata sbloccata.
+     *
+     * @param idStanza ID della stanza sbloccata
+     */
+    record PortaSbloccata(int idStanza) implements EventoDiGioco {}
+}
@@ -0,0 +1,194 @@
+package di.lacosa.eventi;
+
+import di.lacosa.DescrizioneGioco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registro in sola aggiunta degli eventi di gioco di una partita, con un numero limitato di eventi in memoria.
+ * <p>
+ * Ogni evento viene aggiunto in coda e non viene mai modificato, per cui la posizione di un evento
+ * funge da cursore: chi vuole ricevere solo le modifiche successive a un certo punto può chiedere
+ * gli eventi a partire da quella posizione.
+ * <p>
+ * Quando gli eventi in memoria raggiungono la capacità del registro può essere fissato un punto di istantanea:
+ * lo stato della partita dopo l'ultimo evento prende il posto di tutti gli eventi precedenti,
+ * che vengono scartati. La partita può quindi sempre essere ricostruita dall'ultima istantanea
+ * più gli eventi successivi, senza che il registro cresca con la durata della sessione.
+ * L'istantanea non viene fissata mentre un evento viene applicato, ma da chi ha eseguito il comando
+ * al suo termine, con {@link #fissaIstantaneaSeNecessaria()}: il formato dell'istantanea è scelto
+ * dalla partita che possiede il registro.
+ *
+ * @author fabioMarchitelli
+ * @see RiduttoreEventi
+ */
+public class RegistroEventi {
+
+    /**
+     * Numero predefinito di eventi conservati in memoria prima di fissare un'istantanea
+     */
+    public static final int CAPACITA_PREDEFINITA = 1024;
+
+    private final List<EventoDiGioco> eventi = new ArrayList<>();
+    private final List<AscoltatoreEventi> ascoltatori = new ArrayList<>();
+    private final int capacita;
+    private final Supplier<byte[]> fornitoreIstantanea;
+    private final Function<byte[], ? extends DescrizioneGioco> lettoreIstantanea;
+
+    /** Posizione assoluta del primo evento in memoria, ovvero il punto dell'ultima istantanea */
+    private int puntoIstantanea;
+    /** Stato della partita al punto di istantanea, null se non ne è ancora stata fissata una */
+    private byte[] istantanea;
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param capacita Il numero massimo di eventi conservati in memoria
+     * @param fornitoreIstantanea Fornisce lo stato della partita dopo l'ultimo evento registrato
+     * @param lettoreIstantanea Ricostruisce una partita dai byte prodotti da {@code fornitoreIstantanea}
+     * @throws IllegalArgumentException Se la capacità non è positiva
+     */
+    public RegistroEventi(int capacita, Supplier<byte[]> fornitoreIstantanea,
+                          Function<byte[], ? extends DescrizioneGioco> lettoreIstantanea) {
+        if (capacita <= 0) {
+            throw new IllegalArgumentException("La capacità del registro deve essere positiva: " + capacita);
+        }
+        this.capacita = capacita;
+        this.fornitoreIstantanea = fornitoreIstantanea;
+        this.lettoreIstantanea = lettoreIstantanea;
+    }
+
+    /**
+     * Aggiunge un evento in coda al registro e avvisa gli ascoltatori.
+     *
+     * @param evento L'evento da aggiungere (non null)
+     * @throws IllegalArgumentException Se l'evento è null
+     */
+    public void aggiungi(EventoDiGioco evento) {
+        if (evento == null) {
+            throw new IllegalArgumentException("L'evento da registrare non può essere null.");
+        }
+        eventi.add(evento);
+        int posizione = puntoIstantanea + eventi.size() - 1;
+        for (AscoltatoreEventi ascoltatore : ascoltatori) {
+            ascoltatore.eventoApplicato(posizione, evento);
+        }
+    }
+
+    /**
+     * Se gli eventi in memoria hanno raggiunto la capacità del registro, li sostituisce
+     * con lo stato corrente della partita. Va chiamato al termine di un comando, quando lo stato è coerente.
+     * Se lo stato non può essere prodotto gli eventi vengono conservati e l'errore viene propagato.
+     *
+     * @return true se è stata fissata una nuova istantanea
+     */
+    public boolean fissaIstantaneaSeNecessaria() {
+        if (eventi.size() < capacita) {
+            return false;
+        }
+        istantanea = fornitoreIstantanea.get();
+        puntoIstantanea += eventi.size();
+        eventi.clear();
+        return true;
+    }
+
+    /**
+     * Restituisce gli eventi registrati a partire dalla posizione indicata.
+     *
+     * @param cursore La posizione del primo evento da restituire
+     * @return Vista immutabile degli eventi dalla posizione indicata fino all'ultimo
+     * @throws IllegalStateException Se gli eventi richiesti sono stati sostituiti da un'istantanea
+     */
+    public List<EventoDiGioco> getEventiDa(int cursore) {
+        if (cursore < puntoIstantanea) {
+            throw new IllegalStateException("Gli eventi precedenti alla posizione " + puntoIstantanea
+                    + " sono stati sostituiti da un'istantanea.");
+        }
+        int inizio = Math.min(cursore - puntoIstantanea, eventi.size());
+        return Collections.unmodifiableList(eventi.subList(inizio, eventi.size()));
+    }
+
+    /**
+     * Restituisce il numero di eventi registrati dall'inizio della partita, ovvero il cursore del prossimo evento.
+     *
+     * @return Numero di eventi registrati
+     */
+    public int getNumeroEventi() {
+        return puntoIstantanea + eventi.size();
+    }
+
+    /**
+     * Restituisce il numero di eventi conservati in memoria dopo l'ultima istantanea.
+     *
+     * @return Numero di eventi in memoria
+     */
+    public int getNumeroEventiInMemoria() {
+        return eventi.size();
+    }
+
+    /**
+     * Restituisce la posizione dell'ultima istantanea, 0 se non ne è ancora stata fissata una.
+     *
+     * @return La posizione del primo evento conservato in memoria
+     */
+    public int getPuntoIstantanea() {
+        return puntoIstantanea;
+    }
+
+    /**
+     * Restituisce la dimensione in byte dell'ultima istantanea.
+     *
+     * @return La dimensione dell'istantanea, 0 se non ne è ancora stata fissata una
+     */
+    public int getDimensioneIstantanea() {
+        return istantanea != null ? istantanea.length : 0;
+    }
+
+    /**
+     * Riproduce tutti gli eventi del registro sulla partita indicata, nell'ordine in cui sono stati registrati.
+     * Gli eventi vengono applicati direttamente, senza essere aggiunti al registro della partita di destinazione.
+     *
+     * @param descrizione La partita su cui riprodurre gli eventi (tipicamente appena inizializzata)
+     * @throws IllegalStateException Se parte degli eventi è stata sostituita da un'istantanea:
+     *         in quel caso la partita va ricostruita con {@link #ricostruisci()}
+     */
+    public void riproduci(DescrizioneGioco descrizione) {
+        if (puntoIstantanea > 0) {
+            throw new IllegalStateException("Il registro parte da un'istantanea alla posizione " + puntoIstantanea + ".");
+        }
+        for (EventoDiGioco evento : eventi) {
+            RiduttoreEventi.applica(descrizione, evento);
+        }
+    }
+
+    /**
+     * Ricostruisce la partita dall'ultima istantanea, riapplicando gli eventi registrati dopo di essa.
+     *
+     * @return La partita ricostruita, i cui campi transienti vanno ripristinati dal chiamante
+     * @throws IllegalStateException Se non è ancora stata fissata un'istantanea
+     */
+    public DescrizioneGioco ricostruisci() {
+        if (istantanea == null) {
+            throw new IllegalStateException("Nessuna istantanea fissata nel registro.");
+        }
+        DescrizioneGioco descrizione = lettoreIstantanea.apply(istantanea);
+        for (EventoDiGioco evento : eventi) {
+            RiduttoreEventi.applica(descrizione, evento);
+        }
+        return descrizione;
+    }
+
+    public void aggiungiAscoltatore(AscoltatoreEventi ascoltatore) {
+        if (!ascoltatori.contains(ascoltatore)) {
+            ascoltatori.add(ascoltatore);
+        }
+    }
+
+    public void rimuoviAscoltatore(AscoltatoreEventi ascoltatore) {
+        ascoltatori.remove(ascoltatore);
+    }
+}
@@ -0,0 +1,84 @@
+package di.lacosa.eventi;
+
+import di.lacosa.DescrizioneGioco;
+import di.lacosa.eventi.EventoDiGioco.*;
+import di.lacosa.tipi.*;
+
+/**
+ * Unico punto in cui gli eventi di gioco vengono tradotti in modifiche dello stato della partita.
+ * <p>
+ * Applicando la stessa sequenza di eventi a una partita appena inizializzata si ottiene
+ * sempre lo stesso stato finale, il che rende possibile la riproduzione deterministica delle partite.
+ * Le modifiche alle singole entità vengono inoltre segnate nello {@link di.lacosa.StatoModifiche} della partita.
+ *
+ * @author fabioMarchitelli
+ * @see EventoDiGioco
+ */
+public class RiduttoreEventi {
+
+    private RiduttoreEventi() {
+    }
+
+    /**
+     * Applica un evento allo stato della partita.
+     *
+     * @param descrizione La partita da modificare
+     * @param evento L'evento da applicare; lo switch copre tutti i tipi dell'interfaccia sigillata,
+     *               per cui un nuovo evento non gestito non compila
+     * @throws IllegalStateException Se l'evento si riferisce a un elemento inesistente nella partita
+     */
+    public static void applica(DescrizioneGioco descrizione, EventoDiGioco evento) {
+        switch (evento) {
+            case StanzaCambiata e -> descrizione.setStanzaCorrente(richiediStanza(descrizione, e.idStanza()));
+            case OggettoRaccolto e -> {
+                Oggetto oggetto = descrizione.getOggettoPerId(e.idOggetto());
+                if (oggetto == null) {
+                    throw new IllegalStateException("Oggetto con id " + e.idOggetto() + " non trovato.");
+                }
+                descrizione.getInventario().add(oggetto);
+                descrizione.setOggettoInInventario(e.idOggetto());
+            }
+            case FlagCambiato e -> descrizione.setFlag(e.flag(), e.valore());
+            case VitaCambiata e -> {
+                richiediPersonaggio(descrizione, e.idPersonaggio()).setVita(e.vita());
+                descrizione.getModifiche().segnaPersonaggio(e.idPersonaggio());
+            }
+            case InterazioneConclusa e -> {
+                richiediPersonaggio(descrizione, e.idPersonaggio()).setInterazioneAvvenuta();
+                descrizione.getModifiche().segnaPersonaggio(e.idPersonaggio());
+            }
+            case DialogoUtilizzato e -> {
+                DialogoGiocatore dialogo = descrizione.getDialogoPerId(e.idDialogo());
+                if (dialogo == null) {
+                    throw new IllegalStateException("Dialogo con id " + e.idDialogo() + " non trovato.");
+                }
+                dialogo.setUtilizzato(true);
+                descrizione.getModifiche().segnaDialogo(e.idDialogo());
+            }
+            case OsservazioneAggiornata e -> {
+                richiediStanza(descrizione, e.idStanza()).attivaOsservazioneAggiornata();
+                descrizione.getModifiche().segnaStanza(e.idStanza());
+            }
+            case PortaSbloccata e -> {
+                richiediStanza(descrizione, e.idStanza()).setBloccoPorta(false);
+                descrizione.getModifiche().segnaStanza(e.idStanza());
+            }
+        }
+    }
+
+    private static Stanza richiediStanza(DescrizioneGioco descrizione, int idStanza) {
+        Stanza stanza = descrizione.getStanzaPerId(idStanza);
+        if (stanza == null) {
+            throw new IllegalStateException("Stanza con id " + idStanza + " non trovata.");
+        }
+        return stanza;
+    }
+
+    private static Personaggio richiediPersonaggio(DescrizioneGioco descrizione, int idPersonaggio) {
+        Personaggio personaggio = descrizione.getPersonaggioPerId(idPersonaggio);
+        if (personaggio == null) {
+            throw new IllegalStateException("Personaggio con id " + idPersonaggio + " non trovato.");
+        }
+        return personaggio;
+    }
+}
@@ -0,0 +1,107 @@
+package di.lacosa.implementazione;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Anello di hash consistente immutabile, che assegna le chiavi a un insieme di nodi.
+ * <p>
+ * Ogni nodo occupa un numero fisso di punti dell'anello, ricavati dal suo nome; una chiave appartiene
+ * al nodo del primo punto che segue il suo hash. Aggiungere un nodo sposta quindi solo le chiavi
+ * che cadono nei suoi punti, circa una su (nodi + 1), e lo stesso insieme di nomi produce
+ * lo stesso anello in qualunque processo.
+ *
+ * @param <T> Il tipo dei nodi
+ * @author fabioMarchitelli
+ */
+public final class AnelloConsistente<T> {
+
+    private final List<T> nodi;
+    /** Posizioni dei punti dell'anello, in ordine crescente */
+    private final int[] anello;
+    /** Indice del nodo proprietario di ogni punto dell'anello */
+    private final int[] proprietari;
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param nodi I nodi dell'anello, almeno uno
+     * @param nome La funzione che dà il nome di un nodo, da cui vengono ricavati i suoi punti
+     * @param puntiPerNodo I punti dell'anello assegnati a ogni nodo
+     */
+    public AnelloConsistente(List<T> nodi, Function<T, String> nome, int puntiPerNodo) {
+        if (nodi.isEmpty() || puntiPerNodo <= 0) {
+            throw new IllegalArgumentException("L'anello richiede almeno un nodo e un punto per nodo");
+        }
+        this.nodi = Collections.unmodifiableList(new ArrayList<>(nodi));
+        long[] punti = new long[nodi.size() * puntiPerNodo];
+        for (int i = 0; i < nodi.size(); i++) {
+            String prefisso = nome.apply(nodi.get(i)) + "#";
+            for (int v = 0; v < puntiPerNodo; v++) {
+                // Posizione nei 32 bit alti e nodo nei bassi: l'ordinamento dei long ordina l'anello
+                long posizione = hash(prefisso + v);
+                punti[i * puntiPerNodo + v] = (posizione << 32) | i;
+            }
+        }
+        Arrays.sort(punti);
+        anello = new int[punti.length];
+        proprietari = new int[punti.length];
+        for (int p = 0; p < punti.length; p++) {
+            anello[p] = (int) (punti[p] >> 32);
+            proprietari[p] = (int) punti[p];
+        }
+    }
+
+    /**
+     * Restituisce il nodo a cui è assegnata la chiave.
+     *
+     * @param chiave La chiave
+     * @return Il nodo proprietario
+     */
+    public T get(String chiave) {
+        return nodi.get(getIndice(chiave));
+    }
+
+    /**
+     * Restituisce l'indice, nella lista dei nodi, del nodo a cui è assegnata la chiave:
+     * il primo punto dell'anello che segue l'hash della chiave.
+     *
+     * @param chiave La chiave
+     * @return L'indice del nodo proprietario
+     */
+    public int getIndice(String chiave) {
+        int posizione = Arrays.binarySearch(anello, hash(chiave));
+        if (posizione < 0) {
+            posizione = -posizione - 1;
+        }
+        return proprietari[posizione == anello.length ? 0 : posizione];
+    }
+
+    public List<T> getNodi() {
+        return nodi;
+    }
+
+    /**
+     * Hash a 32 bit della chiave: FNV-1a sui byte UTF-8 seguito dal mescolamento finale di MurmurHash3,
+     * per distribuire in modo uniforme anche chiavi molto simili.
+     *
+     * @param chiave La chiave
+     * @return L'hash della chiave
+     */
+    public static int hash(String chiave) {
+        int h = 0x811c9dc5;
+        for (byte b : chiave.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
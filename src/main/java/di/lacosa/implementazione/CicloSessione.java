@@ -0,0 +1,217 @@
+package di.lacosa.implementazione;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ciclo degli eventi di una sessione: l'unico punto da cui viene modificato lo stato della partita.
+ * <p>
+ * Comandi del giocatore, eventi a tempo e callback del frontend vengono accodati nella casella
+ * della sessione, una coda senza lock con più produttori e un solo consumatore: ogni produttore
+ * aggiunge il proprio nodo con un solo scambio atomico. I compiti vengono eseguiti uno alla volta,
+ * nell'ordine di arrivo, da un thread dell'esecutore sottostante; due compiti della stessa sessione
+ * non sono mai in esecuzione insieme, per cui la partita non ha bisogno di lock.
+ * <p>
+ * Il ciclo occupa un thread solo quando ha compiti da eseguire, e dopo {@link #COMPITI_PER_TURNO}
+ * compiti lo cede alle altre sessioni.
+ *
+ * @author fabioMarchitelli
+ */
+public class CicloSessione implements Executor {
+
+    /**
+     * Numero massimo di compiti eseguiti prima di cedere il thread alle altre sessioni
+     */
+    public static final int COMPITI_PER_TURNO = 64;
+
+    private static volatile ExecutorService esecutoreCondiviso;
+
+    private final Executor esecutore;
+    /** Ultimo nodo della coda, aggiornato dai produttori */
+    private final AtomicReference<Nodo> coda;
+    /** Nodo già consumato che precede il primo compito in attesa; usato solo dal consumatore */
+    private Nodo testa;
+    private final AtomicBoolean programmato = new AtomicBoolean();
+    private final AtomicInteger inCoda = new AtomicInteger();
+    private volatile Thread proprietario;
+
+    /**
+     * Crea un ciclo eseguito dai thread dell'esecutore condiviso dalle sessioni.
+     */
+    public CicloSessione() {
+        this(getEsecutoreCondiviso());
+    }
+
+    /**
+     * Crea un ciclo eseguito dai thread dell'esecutore indicato.
+     *
+     * @param esecutore L'esecutore che fornisce i thread al ciclo
+     */
+    public CicloSessione(Executor esecutore) {
+        this.esecutore = esecutore;
+        Nodo sentinella = new Nodo(null);
+        this.testa = sentinella;
+        this.coda = new AtomicReference<>(sentinella);
+    }
+
+    /**
+     * Accoda un compito, che verrà eseguito dopo quelli già in coda.
+     *
+     * @param compito Il compito da eseguire nel ciclo
+     */
+    @Override
+    public void execute(Runnable compito) {
+        Nodo nodo = new Nodo(compito);
+        inCoda.incrementAndGet();
+        Nodo precedente = coda.getAndSet(nodo);
+        precedente.successivo = nodo;
+        programma();
+    }
+
+    /**
+     * Esegue un compito nel ciclo e ne attende il termine. Se chiamato dal ciclo stesso,
+     * il compito viene eseguito subito.
+     *
+     * @param compito Il compito da eseguire
+     */
+    public void eseguiEAttendi(Runnable compito) {
+        if (isNelCiclo()) {
+            compito.run();
+            return;
+        }
+        FutureTask<Void> attesa = new FutureTask<>(compito, null);
+        execute(attesa);
+        try {
+            attesa.get();
+        } catch (InterruptedException e) {
+            // Il compito resta in coda e verrà comunque eseguito
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw new IllegalStateException(causa);
+        }
+    }
+
+    /**
+     * Indica se il thread corrente sta eseguendo un compito di questo ciclo.
+     *
+     * @return true se la chiamata proviene dal ciclo
+     */
+    public boolean isNelCiclo() {
+        return proprietario == Thread.currentThread();
+    }
+
+    /**
+     * Restituisce il numero di compiti accodati e non ancora eseguiti.
+     *
+     * @return I compiti in coda
+     */
+    public int getNumeroInCoda() {
+        return inCoda.get();
+    }
+
+    private void programma() {
+        if (programmato.compareAndSet(false, true)) {
+            esecutore.execute(this::svuota);
+        }
+    }
+
+    /**
+     * Esegue i compiti in coda, fino a {@link #COMPITI_PER_TURNO}. Un errore in un compito
+     * viene stampato e non interrompe i successivi.
+     */
+    private void svuota() {
+        proprietario = Thread.currentThread();
+        try {
+            for (int i = 0; i < COMPITI_PER_TURNO; i++) {
+                Runnable compito = preleva();
+                if (compito == null) {
+                    break;
+                }
+                try {
+                    compito.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            proprietario = null;
+            Nodo ultimoConsumato = testa;
+            programmato.set(false);
+            // Un compito arrivato dopo l'ultimo prelievo ha trovato il ciclo ancora programmato
+            if (coda.get() != ultimoConsumato) {
+                programma();
+            }
+        }
+    }
+
+    /**
+     * Preleva il primo compito in coda. Un produttore che ha già scambiato la coda ma non ancora
+     * collegato il proprio nodo viene atteso: il collegamento segue lo scambio di poche istruzioni.
+     */
+    private Runnable preleva() {
+        Nodo successivo = testa.successivo;
+        if (successivo == null) {
+            if (coda.get() == testa) {
+                return null;
+            }
+            while ((successivo = testa.successivo) == null) {
+                Thread.onSpinWait();
+            }
+        }
+        Runnable compito = successivo.compito;
+        successivo.compito = null;
+        testa = successivo;
+        inCoda.decrementAndGet();
+        return compito;
+    }
+
+    /**
+     * Restituisce l'esecutore condiviso dalle sessioni che non ne indicano uno proprio,
+     * con thread daemon creati su richiesta.
+     */
+    private static ExecutorService getEsecutoreCondiviso() {
+        ExecutorService condiviso = esecutoreCondiviso;
+        if (condiviso == null) {
+            synchronized (CicloSessione.class) {
+                condiviso = esecutoreCondiviso;
+                if (condiviso == null) {
+                    AtomicInteger contatore = new AtomicInteger();
+                    condiviso = Executors.newCachedThreadPool(r -> {
+                        Thread thread = new Thread(r, "Sessione-" + contatore.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    esecutoreCondiviso = condiviso;
+                }
+            }
+        }
+        return condiviso;
+    }
+
+
+    /**
+     * Nodo della coda dei compiti.
+     */
+    private static final class Nodo {
+
+        private Runnable compito;
+        private volatile Nodo successivo;
+
+        private Nodo(Runnable compito) {
+            this.compito = compito;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.Orologio;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Diario di una sessione: registra, nell'ordine in cui vengono eseguiti nel {@link CicloSessione},
+ * i comandi del giocatore, gli eventi a tempo e la presentazione della stanza, ognuno con l'istante
+ * trascorso dall'inizio della registrazione.
+ * <p>
+ * Gli eventi a tempo sono registrati come semplici segnaposto: in riproduzione vengono ricreati
+ * dalla partita stessa e il diario indica solo in quale punto della sequenza sono stati eseguiti,
+ * per cui l'ordine tra comandi e avvertimenti della creatura viene riprodotto esattamente
+ * anche quando la ruota dei temporizzatori ha consegnato un evento con un tick di ritardo.
+ * <p>
+ * Su file il diario è testuale, una voce per riga: {@code istante<TAB>tipo[<TAB>comando]},
+ * con l'istante in nanosecondi e a capo e barre rovesciate dei comandi protetti da {@code \}.
+ *
+ * @author fabioMarchitelli
+ */
+public class DiarioComandi {
+
+    /**
+     * Tipo di una voce del diario.
+     */
+    public enum TipoVoce {
+        /** Comando del giocatore */
+        COMANDO('C'),
+        /** Evento a tempo della partita */
+        EVENTO('E'),
+        /** Presentazione della stanza corrente */
+        AMBIENTE('A');
+
+        private final char codice;
+
+        TipoVoce(char codice) {
+            this.codice = codice;
+        }
+
+        private static TipoVoce daCodice(char codice) {
+            for (TipoVoce tipo : values()) {
+                if (tipo.codice == codice) {
+                    return tipo;
+                }
+            }
+            throw new IllegalArgumentException("Tipo di voce sconosciuto: " + codice);
+        }
+    }
+
+    /**
+     * Voce del diario.
+     *
+     * @param istanteNanos I nanosecondi trascorsi dall'inizio della registrazione
+     * @param tipo Il tipo di voce
+     * @param comando Il comando, o null per le voci che non sono comandi
+     */
+    public record Voce(long istanteNanos, TipoVoce tipo, String comando) {
+    }
+
+    private final Orologio orologio;
+    private final long inizio;
+    private final List<Voce> voci = new ArrayList<>();
+
+    /**
+     * Crea un diario vuoto, che misura gli istanti con l'orologio indicato a partire da adesso.
+     *
+     * @param orologio L'orologio della partita registrata
+     */
+    public DiarioComandi(Orologio orologio) {
+        this.orologio = orologio;
+        this.inizio = orologio.nanoTime();
+    }
+
+    private DiarioComandi(List<Voce> voci) {
+        this.orologio = null;
+        this.inizio = 0;
+        this.voci.addAll(voci);
+    }
+
+    /**
+     * Registra una voce all'istante corrente.
+     *
+     * @param tipo Il tipo di voce
+     * @param comando Il comando, o null per le voci che non sono comandi
+     */
+    public synchronized void registra(TipoVoce tipo, String comando) {
+        if (orologio == null) {
+            throw new IllegalStateException("Il diario letto da file non può essere esteso");
+        }
+        voci.add(new Voce(orologio.nanoTime() - inizio, tipo, comando));
+    }
+
+    /**
+     * Restituisce una copia delle voci registrate.
+     *
+     * @return Le voci, in ordine di esecuzione
+     */
+    public synchronized List<Voce> getVoci() {
+        return Collections.unmodifiableList(new ArrayList<>(voci));
+    }
+
+    /**
+     * Scrive il diario su file.
+     *
+     * @param file Il file da scrivere
+     * @throws IOException Se il file non può essere scritto
+     */
+    public void scrivi(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Voce voce : getVoci()) {
+                out.write(Long.toString(voce.istanteNanos()));
+                out.write('\t');
+                out.write(voce.tipo().codice);
+                if (voce.comando() != null) {
+                    out.write('\t');
+                    out.write(proteggi(voce.comando()));
+                }
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Legge un diario scritto con {@link #scrivi(Path)}.
+     *
+     * @param file Il file da leggere
+     * @return Il diario letto, che non può essere esteso
+     * @throws IOException Se il file non può essere letto o non è un diario
+     */
+    public static DiarioComandi leggi(Path file) throws IOException {
+        List<Voce> voci = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String riga;
+            int numero = 0;
+            while ((riga = in.readLine()) != null) {
+                numero++;
+                if (riga.isEmpty()) {
+                    continue;
+                }
+                String[] campi = riga.split("\t", 3);
+                try {
+                    TipoVoce tipo = TipoVoce.daCodice(campi[1].charAt(0));
+                    voci.add(new Voce(Long.parseLong(campi[0]), tipo, campi.length > 2 ? ripristina(campi[2]) : null));
+                } catch (RuntimeException e) {
+                    throw new IOException("Riga " + numero + " del diario non valida: " + riga, e);
+                }
+            }
+        }
+        return new DiarioComandi(voci);
+    }
+
+    private static String proteggi(String comando) {
+        return comando.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+
+    private static String ripristina(String protetto) {
+        StringBuilder comando = new StringBuilder(protetto.length());
+        for (int i = 0; i < protetto.length(); i++) {
+            char c = protetto.charAt(i);
+            if (c == '\\' && i + 1 < protetto.length()) {
+                char successivo = protetto.charAt(++i);
+                switch (successivo) {
+                    case 'n':
+                        comando.append('\n');
+                        break;
+                    case 'r':
+                        comando.append('\r');
+                        break;
+                    case 't':
+                        comando.append('\t');
+                        break;
+                    default:
+                        comando.append(successivo);
+                }
+            } else {
+                comando.append(c);
+            }
+        }
+        return comando.toString();
+    }
+}
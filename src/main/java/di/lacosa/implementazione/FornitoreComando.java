@@ -0,0 +1,54 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.Observer;
+import di.lacosa.tipi.TipoComando;
+
+/**
+ * Interfaccia di servizio che descrive un comando del gioco e l'osservatore che lo gestisce.
+ * <p>
+ * Le implementazioni vengono scoperte tramite {@link java.util.ServiceLoader}, elencandole nel file
+ * {@code META-INF/services/di.lacosa.implementazione.FornitoreComando}: per aggiungere un nuovo verbo
+ * basta registrare un nuovo fornitore, senza modificare {@link LaCosa}.
+ * L'ordine del file determina l'ordine dei comandi nel vocabolario del parser.
+ *
+ * @author fabioMarchitelli
+ * @see RegistroComandi
+ */
+public interface FornitoreComando {
+
+    /**
+     * @return Il tipo del comando fornito
+     */
+    TipoComando getTipo();
+
+    /**
+     * @return Il nome principale del comando
+     */
+    String getNome();
+
+    /**
+     * @return Gli alias riconosciuti dal parser per il comando
+     */
+    String[] getAlias();
+
+    /**
+     * Indica se l'osservatore non ha stato proprio e può quindi essere condiviso da tutte le partite.
+     * Gli osservatori che conservano riferimenti all'interfaccia o lo stato di un dialogo non sono condivisibili.
+     *
+     * @return true se un'unica istanza può servire tutte le partite
+     */
+    default boolean isCondivisibile() {
+        return false;
+    }
+
+    /**
+     * Crea l'osservatore che gestisce il comando. Viene chiamato solo al primo utilizzo del comando:
+     * una volta per partita, oppure una sola volta in assoluto se l'osservatore è condivisibile.
+     *
+     * @param gioco La partita per cui viene creato l'osservatore
+     * @param finaleListener Listener per gestire la fase finale del gioco
+     * @return L'osservatore del comando, o null se il comando è gestito direttamente dal motore di gioco
+     */
+    Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener);
+}
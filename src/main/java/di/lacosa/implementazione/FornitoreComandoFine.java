@@ -0,0 +1,34 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.Observer;
+import di.lacosa.tipi.TipoComando;
+
+/**
+ * Fornitore del comando FINE. Il comando non ha un osservatore:
+ * l'uscita dal gioco viene gestita direttamente dal motore di gioco.
+ *
+ * @author fabioMarchitelli
+ */
+public class FornitoreComandoFine implements FornitoreComando {
+
+    @Override
+    public TipoComando getTipo() {
+        return TipoComando.FINE;
+    }
+
+    @Override
+    public String getNome() {
+        return "fine";
+    }
+
+    @Override
+    public String[] getAlias() {
+        return new String[]{"Fine", "termina", "exit", "Exit", "esci", "Esci"};
+    }
+
+    @Override
+    public Observer creaOsservatore(LaCosa gioco, FaseFinaleListener finaleListener) {
+        return null;
+    }
+}
@@ -0,0 +1,200 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.FrontendGioco;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Frontend senza display: raccoglie il testo prodotto dalla partita in memoria,
+ * in modo che possa essere prelevato da un server, da uno script o da un benchmark.
+ * <p>
+ * Le finestre di lettura vengono scritte nel testo, le operazioni sull'interfaccia
+ * vengono eseguite subito e le scelte modali ricevono le risposte accodate con
+ * {@link #accodaScelta(int)}, oppure la risposta predefinita indicata nel costruttore.
+ * Tutti i metodi sono thread-safe, dato che la creatura e gli effetti scrivono da altri thread.
+ *
+ * @author fabioMarchitelli
+ */
+public class FrontendTestuale implements FrontendGioco {
+
+    /**
+     * Numero massimo di caratteri in attesa di essere prelevati: oltre questo limite
+     * il testo più vecchio viene scartato, per cui un client che non legge non fa crescere la memoria
+     */
+    public static final int CAPACITA_IN_ATTESA = 64 * 1024;
+
+    private static final String SEGNO_TESTO_SCARTATO = "\n[...]\n";
+
+    private final StringBuilder testo = new StringBuilder();
+    private final Deque<Integer> scelte = new ArrayDeque<>();
+    private final int sceltaPredefinita;
+
+    private Consumer<String> callbackRisposta;
+    private boolean inputAbilitato = true;
+    private int stanzaMappa = -1;
+    private int lunghezzaTotale;
+    private volatile Runnable ascoltatoreTesto;
+
+    /**
+     * Costruttore con la scelta predefinita "annulla" (-1).
+     */
+    public FrontendTestuale() {
+        this(-1);
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param sceltaPredefinita L'indice restituito da {@link #chiediScelta} quando non ci sono risposte accodate
+     */
+    public FrontendTestuale(int sceltaPredefinita) {
+        this.sceltaPredefinita = sceltaPredefinita;
+    }
+
+    @Override
+    public void scriviInAreaDiTesto(String testo) {
+        aggiungiInAreaDiTesto(testo + "\n");
+    }
+
+    @Override
+    public void aggiungiInAreaDiTesto(String testo) {
+        synchronized (this) {
+            this.testo.append(testo);
+            lunghezzaTotale += testo.length();
+            int eccedenza = this.testo.length() - CAPACITA_IN_ATTESA;
+            if (eccedenza > 0) {
+                this.testo.replace(0, Math.min(this.testo.length(), eccedenza + SEGNO_TESTO_SCARTATO.length()), SEGNO_TESTO_SCARTATO);
+            }
+        }
+        // Fuori dal lock: l'ascoltatore può prelevare il testo da un altro thread
+        Runnable ascoltatore = ascoltatoreTesto;
+        if (ascoltatore != null) {
+            ascoltatore.run();
+        }
+    }
+
+    /**
+     * Restituisce il numero di caratteri prodotti e non ancora prelevati.
+     *
+     * @return I caratteri in attesa
+     */
+    public synchronized int getLunghezzaInAttesa() {
+        return testo.length();
+    }
+
+    @Override
+    public synchronized void svuotaAreaDiTesto() {
+        // Il testo non ancora prelevato resta disponibile: si azzera solo l'area "visibile"
+        lunghezzaTotale = 0;
+    }
+
+    @Override
+    public void mostraStanzaPulita(String nomeStanza, String descrizione) {
+        svuotaAreaDiTesto();
+        scriviInAreaDiTesto("\n" + nomeStanza + "\n\n" + descrizione);
+    }
+
+    @Override
+    public synchronized void aggiornaMappa(int idStanza) {
+        stanzaMappa = idStanza;
+    }
+
+    @Override
+    public synchronized void attendiRispostaGiocatore(Consumer<String> callback) {
+        callbackRisposta = callback;
+    }
+
+    @Override
+    public synchronized void abilitaInput() {
+        inputAbilitato = true;
+    }
+
+    @Override
+    public synchronized void disabilitaInput() {
+        inputAbilitato = false;
+    }
+
+    @Override
+    public void mostraLettura(String testo, String titolo) {
+        scriviInAreaDiTesto("\n[" + titolo + "]\n" + testo + "\n");
+    }
+
+    @Override
+    public synchronized int chiediScelta(String messaggio, String titolo, String[] opzioni) {
+        Integer scelta = scelte.poll();
+        return scelta != null ? scelta : sceltaPredefinita;
+    }
+
+    @Override
+    public void eseguiInInterfaccia(Runnable operazione) {
+        operazione.run();
+    }
+
+    @Override
+    public synchronized int getLunghezzaAreaDiTesto() {
+        return lunghezzaTotale;
+    }
+
+    /**
+     * Imposta l'operazione da eseguire ogni volta che viene prodotto nuovo testo,
+     * anche fuori dai comandi (es. gli avvertimenti della creatura).
+     * Viene eseguita nel thread che ha prodotto il testo e non deve bloccarsi.
+     *
+     * @param ascoltatore L'operazione da eseguire, o null per nessuna notifica
+     */
+    public void setAscoltatoreTesto(Runnable ascoltatore) {
+        this.ascoltatoreTesto = ascoltatore;
+    }
+
+    /**
+     * Accoda la risposta alla prossima scelta richiesta dalla partita.
+     *
+     * @param scelta L'indice dell'opzione da scegliere
+     */
+    public synchronized void accodaScelta(int scelta) {
+        scelte.add(scelta);
+    }
+
+    /**
+     * Restituisce il testo prodotto dall'ultimo prelievo e lo rimuove dal frontend.
+     *
+     * @return Il testo non ancora prelevato
+     */
+    public synchronized String prelevaTesto() {
+        String prelevato = testo.toString();
+        testo.setLength(0);
+        return prelevato;
+    }
+
+    /**
+     * Consegna l'input al callback in attesa, se presente.
+     *
+     * @param input L'input del giocatore
+     * @return true se l'input è stato consegnato a un callback, false se va interpretato come comando
+     */
+    public boolean inviaInput(String input) {
+        Consumer<String> callback;
+        synchronized (this) {
+            callback = callbackRisposta;
+        }
+        if (callback == null) {
+            return false;
+        }
+        callback.accept(input);
+        return true;
+    }
+
+    public synchronized boolean isInAttesaDiRisposta() {
+        return callbackRisposta != null;
+    }
+
+    public synchronized boolean isInputAbilitato() {
+        return inputAbilitato;
+    }
+
+    public synchronized int getStanzaMappa() {
+        return stanzaMappa;
+    }
+}
@@ -0,0 +1,756 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.GestoreSalvataggi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Classe che conserva in memoria le sessioni di gioco dei client remoti tra una richiesta e l'altra.
+ * <p>
+ * Ogni sessione è identificata da una chiave casuale e accumula il testo prodotto dalla partita
+ * in un {@link RegistroSegmenti} con posizioni assolute: il client chiede l'output "a partire da" un cursore
+ * e riceve il nuovo cursore, per cui non perde il testo prodotto tra due richieste
+ * (es. gli avvertimenti della creatura) e può ripetere una richiesta senza duplicarlo.
+ * Il registro conserva al più {@link #CAPACITA_REGISTRO} caratteri: il testo più vecchio viene scartato.
+ * <p>
+ * Ogni sessione ha anche una chiave da spettatore, diversa dalla sua: chi la conosce legge lo stesso registro
+ * con il proprio cursore ma non può inviare comandi. Gli spettatori leggono i segmenti già pubblicati
+ * e non aggiungono lavoro ai comandi del giocatore; le loro letture non contano come attività della sessione.
+ * <p>
+ * Le sessioni inattive possono essere ibernate: la partita viene ridotta a un'{@link IstantaneaPartita}
+ * (in memoria o in un file) e liberata, mentre la voce, la chiave e il registro restano al loro posto.
+ * La prima richiesta successiva la ripristina in modo trasparente per il client.
+ * <p>
+ * Ogni sessione viene eseguita dallo shard del {@link SchedulatoreShard} a cui è assegnata la sua chiave,
+ * anche dopo un ripristino.
+ * <p>
+ * Quando le sessioni sono distribuite su più processi, chi le distribuisce sceglie la chiave ({@link #crea(String)})
+ * e può spostare una sessione da un processo all'altro con {@link #esporta(String)} e {@link #importa(String, byte[])}.
+ *
+ * @author fabioMarchitelli
+ */
+public class GestoreSessioni {
+
+    /**
+     * Numero massimo di caratteri conservati nel registro di output di ogni sessione
+     */
+    public static final int CAPACITA_REGISTRO = 64 * 1024;
+
+    private static final char[] ALFABETO = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final int LUNGHEZZA_CHIAVE = 16;
+    private static final int LUNGHEZZA_MASSIMA_CHIAVE = 64;
+    private static final String ESTENSIONE_ISTANTANEA = ".istantanea";
+    /** Intestazione dei trasferimenti di sessione tra processi */
+    private static final int FORMATO_TRASFERIMENTO = 0x4c435431;
+
+    private final ModelloPartita modello;
+    private final SchedulatoreShard schedulatore;
+    private final ConcurrentHashMap<String, Voce> sessioni = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Voce> spettatori = new ConcurrentHashMap<>();
+    private final SecureRandom casuale = new SecureRandom();
+    private volatile File cartellaIbernazione;
+    private ScheduledExecutorService pianificatore;
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare le nuove partite
+     */
+    public GestoreSessioni(ModelloPartita modello) {
+        this(modello, SchedulatoreShard.perProcessori());
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param modello Il modello da cui creare le nuove partite
+     * @param schedulatore Lo schedulatore che assegna le sessioni agli shard
+     * @throws IllegalStateException Se le partite del modello non sopravvivono a un'istantanea o a un salvataggio
+     */
+    public GestoreSessioni(ModelloPartita modello, SchedulatoreShard schedulatore) {
+        IstantaneaPartita.verifica(modello);
+        GestoreSalvataggi.verificaIncrementi(modello.creaPartita());
+        this.modello = modello;
+        this.schedulatore = schedulatore;
+    }
+
+    /**
+     * Crea una sessione con una nuova partita.
+     *
+     * @return La sessione creata
+     */
+    public Voce crea() {
+        return registra(modello.creaPartita());
+    }
+
+    /**
+     * Crea una sessione con una nuova partita e la chiave indicata, scelta da chi distribuisce
+     * le sessioni su più processi.
+     *
+     * @param id La chiave della sessione
+     * @return La sessione creata, o null se la chiave è già in uso
+     * @throws IllegalArgumentException Se la chiave non è valida
+     */
+    public Voce crea(String id) {
+        Voce voce = riserva(id, 0);
+        if (voce == null) {
+            return null;
+        }
+        voce.collega(modello.creaPartita()).presentaAmbiente();
+        return voce;
+    }
+
+    /**
+     * Crea una sessione con la chiave indicata e la partita salvata nello slot indicato del suo spazio dei salvataggi.
+     * Ogni sessione salva nello spazio della propria chiave, per cui una partita salvata può essere ripresa
+     * solo con la chiave della sessione che l'ha salvata.
+     *
+     * @param slot Lo slot da caricare (1-3)
+     * @param id La chiave della sessione
+     * @return La sessione creata, o null se lo slot è vuoto o non leggibile o la chiave è già in uso
+     * @throws IllegalArgumentException Se la chiave non è valida
+     */
+    public Voce carica(int slot, String id) {
+        LaCosa partita = leggiSlot(id, slot);
+        if (partita == null) {
+            return null;
+        }
+        Voce voce = riserva(id, 0);
+        if (voce == null) {
+            return null;
+        }
+        voce.collega(partita).presentaAmbiente();
+        return voce;
+    }
+
+    /**
+     * Restituisce la sessione con la chiave indicata.
+     *
+     * @param id La chiave della sessione
+     * @return La sessione, o null se non esiste
+     */
+    public Voce get(String id) {
+        return id != null ? sessioni.get(id) : null;
+    }
+
+    /**
+     * Restituisce la sessione a cui appartiene la chiave da spettatore indicata.
+     *
+     * @param chiaveSpettatore La chiave da spettatore
+     * @return La sessione, o null se non esiste
+     */
+    public Voce getPerSpettatore(String chiaveSpettatore) {
+        return chiaveSpettatore != null ? spettatori.get(chiaveSpettatore) : null;
+    }
+
+    /**
+     * Chiude e rimuove la sessione con la chiave indicata.
+     *
+     * @param id La chiave della sessione
+     * @return true se la sessione esisteva
+     */
+    public boolean chiudi(String id) {
+        Voce voce = sessioni.remove(id);
+        if (voce == null) {
+            return false;
+        }
+        spettatori.remove(voce.chiaveSpettatore);
+        voce.chiudi();
+        return true;
+    }
+
+    /**
+     * Esporta la sessione indicata per trasferirla a un altro processo e la rimuove da questo.
+     * <p>
+     * Il trasferimento contiene l'{@link IstantaneaPartita} della partita (la stessa usata dall'ibernazione,
+     * con i soli campi mutabili della partita), la chiave da spettatore e il testo ancora conservato
+     * nel registro con la sua posizione, per cui il client e gli spettatori proseguono con i loro cursori.
+     * Il processo che lo importa deve avere un modello con la stessa {@link ModelloPartita#getImpronta() impronta}.
+     *
+     * @param id La chiave della sessione
+     * @return Il trasferimento, o null se la sessione non esiste
+     */
+    public byte[] esporta(String id) {
+        Voce voce = get(id);
+        if (voce == null) {
+            return null;
+        }
+        byte[] trasferimento = voce.esporta();
+        sessioni.remove(id, voce);
+        spettatori.remove(voce.chiaveSpettatore, voce);
+        return trasferimento;
+    }
+
+    /**
+     * Importa una sessione esportata da un altro processo con {@link #esporta(String)}, con la stessa chiave.
+     * La partita riprende da dove era stata interrotta, con la creatura riavviata se l'incontro era in corso.
+     *
+     * @param id La chiave della sessione
+     * @param trasferimento Il trasferimento prodotto dall'esportazione
+     * @return La sessione importata, o null se la chiave è già in uso
+     * @throws IOException Se il trasferimento non è valido o proviene da un modello diverso
+     */
+    public Voce importa(String id, byte[] trasferimento) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(trasferimento));
+        if (in.readInt() != FORMATO_TRASFERIMENTO) {
+            throw new IOException("Il trasferimento non è una sessione esportata");
+        }
+        if (in.readLong() != modello.getImpronta()) {
+            throw new IOException("Il trasferimento proviene da un modello diverso");
+        }
+        String chiaveSpettatore = in.readUTF();
+        boolean conclusa = in.readBoolean();
+        long inizioTesto = in.readLong();
+        String testo = new String(leggiBlocco(in), StandardCharsets.UTF_8);
+        LaCosa partita = IstantaneaPartita.ripristina(leggiBlocco(in), modello);
+
+        Voce voce = riserva(id, inizioTesto);
+        if (voce == null) {
+            return null;
+        }
+        // Se la chiave da spettatore è già in uso in questo processo gli spettatori ne ricevono una nuova
+        if (spettatori.putIfAbsent(chiaveSpettatore, voce) == null) {
+            spettatori.remove(voce.chiaveSpettatore, voce);
+            voce.chiaveSpettatore = chiaveSpettatore;
+        }
+        voce.registro.pubblica(testo);
+        SessioneGioco sessione = voce.collega(partita);
+        if (conclusa) {
+            sessione.termina();
+        } else {
+            sessione.riprendi();
+        }
+        return voce;
+    }
+
+    /**
+     * Avvia il controllo periodico che iberna le sessioni inattive da più della soglia indicata.
+     * Le istantanee vengono scritte nella cartella indicata, dalla quale vengono prima eliminate
+     * quelle rimaste da un'esecuzione precedente; senza cartella restano in memoria.
+     *
+     * @param sogliaMs I millisecondi di inattività dopo i quali una sessione viene ibernata
+     * @param cartella La cartella delle istantanee, o null per conservarle in memoria
+     */
+    public synchronized void avviaIbernazione(long sogliaMs, File cartella) {
+        if (sogliaMs <= 0) {
+            throw new IllegalArgumentException("La soglia di inattività deve essere positiva");
+        }
+        if (cartella != null) {
+            if (!cartella.isDirectory() && !cartella.mkdirs()) {
+                throw new UncheckedIOException(new IOException("Impossibile creare la cartella " + cartella));
+            }
+            File[] residui = cartella.listFiles((dir, nome) -> nome.endsWith(ESTENSIONE_ISTANTANEA));
+            if (residui != null) {
+                for (File residuo : residui) {
+                    residuo.delete();
+                }
+            }
+        }
+        cartellaIbernazione = cartella;
+        if (pianificatore != null) {
+            pianificatore.shutdownNow();
+        }
+        pianificatore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Ibernazione");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Controllando quattro volte per soglia una sessione viene ibernata al più un quarto di soglia in ritardo
+        long periodo = Math.max(1000, sogliaMs / 4);
+        pianificatore.scheduleWithFixedDelay(() -> {
+            try {
+                ibernaInattive(sogliaMs);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ferma il controllo periodico delle sessioni inattive. Le sessioni già ibernate restano tali.
+     */
+    public synchronized void fermaIbernazione() {
+        if (pianificatore != null) {
+            pianificatore.shutdownNow();
+            pianificatore = null;
+        }
+    }
+
+    /**
+     * Iberna le sessioni non concluse a cui non si accede da più della soglia indicata.
+     *
+     * @param sogliaMs I millisecondi di inattività
+     * @return Il numero di sessioni ibernate
+     */
+    public int ibernaInattive(long sogliaMs) {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(sogliaMs);
+        int ibernate = 0;
+        for (Voce voce : sessioni.values()) {
+            if (voce.getUltimoAccesso() - limite < 0 && voce.iberna(limite)) {
+                ibernate++;
+            }
+        }
+        return ibernate;
+    }
+
+    /**
+     * Restituisce il numero di sessioni attualmente ibernate.
+     *
+     * @return Le sessioni ibernate
+     */
+    public int getNumeroIbernate() {
+        int ibernate = 0;
+        for (Voce voce : sessioni.values()) {
+            if (voce.isIbernata()) {
+                ibernate++;
+            }
+        }
+        return ibernate;
+    }
+
+    public Collection<Voce> getSessioni() {
+        return Collections.unmodifiableCollection(sessioni.values());
+    }
+
+    public int getNumeroSessioni() {
+        return sessioni.size();
+    }
+
+    public SchedulatoreShard getSchedulatore() {
+        return schedulatore;
+    }
+
+    /**
+     * Registra una voce senza partita con la chiave indicata e una nuova chiave da spettatore.
+     *
+     * @return La voce, o null se la chiave è già in uso
+     */
+    private Voce riserva(String id, long inizioRegistro) {
+        verificaChiave(id);
+        Voce voce = new Voce(this, inizioRegistro);
+        voce.id = id;
+        if (sessioni.putIfAbsent(id, voce) != null) {
+            return null;
+        }
+        do {
+            voce.chiaveSpettatore = nuovaChiave();
+        } while (spettatori.putIfAbsent(voce.chiaveSpettatore, voce) != null);
+        return voce;
+    }
+
+    private static LaCosa leggiSlot(String id, int slot) {
+        verificaChiave(id);
+        LaCosa partita = GestoreSalvataggi.caricaPartita(id, slot);
+        if (partita != null) {
+            partita.setSlotCorrente(slot);
+            partita.ripristinaTransient();
+        }
+        return partita;
+    }
+
+    private static void verificaChiave(String id) {
+        if (id == null || id.isEmpty() || id.length() > LUNGHEZZA_MASSIMA_CHIAVE || !id.chars().allMatch(GestoreSessioni::inAlfabeto)) {
+            throw new IllegalArgumentException("Chiave di sessione non valida");
+        }
+    }
+
+    private static boolean inAlfabeto(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    private static byte[] leggiBlocco(DataInputStream in) throws IOException {
+        int lunghezza = in.readInt();
+        if (lunghezza < 0 || lunghezza > in.available()) {
+            throw new IOException("Trasferimento troncato");
+        }
+        return in.readNBytes(lunghezza);
+    }
+
+    private Voce registra(LaCosa partita) {
+        Voce voce = new Voce(this, 0);
+        // La chiave serve prima della sessione: decide lo shard che la eseguirà
+        do {
+            voce.id = nuovaChiave();
+        } while (sessioni.putIfAbsent(voce.id, voce) != null);
+        do {
+            voce.chiaveSpettatore = nuovaChiave();
+        } while (spettatori.putIfAbsent(voce.chiaveSpettatore, voce) != null);
+        voce.collega(partita).presentaAmbiente();
+        return voce;
+    }
+
+    private String nuovaChiave() {
+        char[] chiave = new char[LUNGHEZZA_CHIAVE];
+        for (int i = 0; i < chiave.length; i++) {
+            chiave[i] = ALFABETO[casuale.nextInt(ALFABETO.length)];
+        }
+        return new String(chiave);
+    }
+
+
+    /**
+     * Sessione registrata: la partita e il registro del suo output, condiviso con gli spettatori.
+     * I comandi di una sessione vengono eseguiti uno alla volta; una sessione ibernata
+     * viene ripristinata dal primo comando o accesso alla partita.
+     */
+    public static final class Voce {
+
+        private final GestoreSessioni gestore;
+        /**
+         * Lock dei comandi: serializza comandi, salvataggi, ibernazione e ripristino.
+         * È un {@link ReentrantLock} e non un blocco synchronized perché viene tenuto mentre il thread
+         * attende il ciclo della sessione: un thread virtuale in attesa dentro un blocco synchronized
+         * bloccherebbe il suo thread portatore.
+         */
+        private final ReentrantLock comandi = new ReentrantLock();
+        /** La sessione attiva, o null se la voce è ibernata */
+        private volatile SessioneGioco sessione;
+        private byte[] istantanea;
+        private File fileIstantanea;
+        private final RegistroSegmenti registro;
+        private volatile long ultimoAccesso = System.nanoTime();
+        private String id;
+        private String chiaveSpettatore;
+
+        private Voce(GestoreSessioni gestore, long inizioRegistro) {
+            this.gestore = gestore;
+            this.registro = new RegistroSegmenti(CAPACITA_REGISTRO, inizioRegistro);
+        }
+
+        /**
+         * Esegue un comando della sessione, ripristinandola se è ibernata.
+         * Un comando inviato oltre il ritmo consentito non viene eseguito né atteso: va ritentato
+         * dopo {@link #getAttesaComandoNanos()}.
+         *
+         * @param comando La riga inserita dal giocatore
+         * @return Il testo prodotto dal comando e il cursore al suo termine,
+         *         o null se il comando è arrivato oltre il ritmo consentito
+         */
+        public Lettura eseguiComando(String comando) {
+            ultimoAccesso = System.nanoTime();
+            comandi.lock();
+            try {
+                SessioneGioco sessione = attiva();
+                if (sessione.getAttesaComandoNanos() > 0) {
+                    return null;
+                }
+                // Cursore e testo letti con il lock, perché il testo restituito sia solo quello di questo comando
+                long cursore = getCursore();
+                sessione.eseguiComando(comando);
+                return leggiDa(cursore);
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        /**
+         * Restituisce quanto deve attendere il prossimo comando della sessione.
+         *
+         * @return L'attesa in nanosecondi, 0 se il comando può essere eseguito subito o la sessione è ibernata
+         */
+        public long getAttesaComandoNanos() {
+            SessioneGioco corrente = sessione;
+            return corrente != null ? corrente.getAttesaComandoNanos() : 0;
+        }
+
+        /**
+         * Salva la partita nello slot indicato, attendendo la scrittura su disco.
+         *
+         * @param slot Lo slot in cui salvare (1-3)
+         * @return true se il salvataggio è riuscito
+         */
+        public boolean salva(int slot) {
+            ultimoAccesso = System.nanoTime();
+            comandi.lock();
+            try {
+                return attiva().salva(slot);
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        /**
+         * Stima la memoria trattenuta dalla partita, ripristinandola se è ibernata.
+         * L'operazione non conta come attività della sessione.
+         *
+         * @return Il risultato della stima
+         */
+        public StimaMemoria.Risultato stimaMemoria() {
+            comandi.lock();
+            try {
+                return attiva().stimaMemoria();
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        /**
+         * Restituisce il testo prodotto dalla posizione indicata in poi. Se la posizione
+         * è già stata scartata dal registro, il testo parte dal più vecchio ancora conservato.
+         * La lettura non ripristina una sessione ibernata.
+         *
+         * @param cursore La posizione assoluta da cui leggere
+         * @return Il testo disponibile da quella posizione e il cursore da usare per la lettura successiva
+         */
+        public Lettura leggiDa(long cursore) {
+            ultimoAccesso = System.nanoTime();
+            RegistroSegmenti.Lettura lettura = registro.leggi(cursore);
+            return new Lettura(lettura.testo(), lettura.cursore());
+        }
+
+        /**
+         * Restituisce la posizione assoluta dopo l'ultimo carattere prodotto.
+         *
+         * @return Il cursore corrente del registro
+         */
+        public long getCursore() {
+            return registro.getCursore();
+        }
+
+        /**
+         * Restituisce il registro dell'output, da cui gli spettatori leggono i segmenti
+         * senza ripristinare la sessione né contare come attività.
+         *
+         * @return Il registro della sessione
+         */
+        public RegistroSegmenti getRegistro() {
+            return registro;
+        }
+
+        /**
+         * Pubblica nel registro il testo prodotto dalla partita. Prelievo e pubblicazione avvengono
+         * sotto lo stesso lock, per cui il registro mantiene l'ordine di produzione anche se il testo
+         * arriva da più thread (comando, creatura, effetti).
+         */
+        private synchronized void raccogliTesto(FrontendTestuale frontend) {
+            registro.pubblica(frontend.prelevaTesto());
+        }
+
+        /**
+         * Crea la sessione per la partita indicata, con un frontend il cui testo finisce nel registro.
+         */
+        private SessioneGioco collega(LaCosa partita) {
+            FrontendTestuale frontend = new FrontendTestuale();
+            frontend.setAscoltatoreTesto(() -> raccogliTesto(frontend));
+            // La partita salva nello spazio della sessione, anche dopo un ripristino o un trasferimento
+            partita.setSpazioSalvataggi(id);
+            sessione = new SessioneGioco(partita, frontend, gestore.schedulatore.creaCiclo(id));
+            return sessione;
+        }
+
+        /**
+         * Restituisce la sessione attiva, ripristinandola dall'istantanea se la voce è ibernata.
+         * Va chiamato con il lock dei comandi.
+         */
+        private SessioneGioco attiva() {
+            SessioneGioco attuale = sessione;
+            if (attuale != null) {
+                return attuale;
+            }
+            if (istantanea == null && fileIstantanea == null) {
+                throw new IllegalStateException("La sessione " + id + " è stata trasferita o chiusa");
+            }
+            byte[] bytes = istantanea;
+            if (bytes == null) {
+                try {
+                    bytes = Files.readAllBytes(fileIstantanea.toPath());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Impossibile leggere l'istantanea della sessione " + id, e);
+                }
+            }
+            attuale = collega(IstantaneaPartita.ripristina(bytes, gestore.modello));
+            attuale.riprendi();
+            if (fileIstantanea != null) {
+                fileIstantanea.delete();
+                fileIstantanea = null;
+            }
+            istantanea = null;
+            return attuale;
+        }
+
+        /**
+         * Iberna la sessione se non è conclusa e nessuno vi ha acceduto dopo il limite indicato.
+         *
+         * @param limite Il valore di {@link System#nanoTime()} prima del quale l'accesso è considerato vecchio
+         * @return true se la sessione è stata ibernata
+         */
+        private boolean iberna(long limite) {
+            comandi.lock();
+            try {
+                SessioneGioco attuale = sessione;
+                // Ricontrollato sotto lock: un comando può essere arrivato nel frattempo
+                if (attuale == null || attuale.isConclusa() || ultimoAccesso - limite >= 0) {
+                    return false;
+                }
+                attuale.sospendi();
+                byte[] bytes = IstantaneaPartita.crea(attuale.getGioco());
+                File cartella = gestore.cartellaIbernazione;
+                if (cartella != null) {
+                    File file = new File(cartella, id + ESTENSIONE_ISTANTANEA);
+                    try {
+                        Files.write(file.toPath(), bytes);
+                        fileIstantanea = file;
+                    } catch (IOException e) {
+                        // Senza file la sessione resta attiva: la creatura riparte come dopo un ripristino
+                        attuale.riprendi();
+                        return false;
+                    }
+                } else {
+                    istantanea = bytes;
+                }
+                attuale.getFrontend().setAscoltatoreTesto(null);
+                raccogliTesto(attuale.getFrontend());
+                sessione = null;
+                return true;
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        /**
+         * Ferma la partita e ne produce il trasferimento: istantanea, chiave da spettatore
+         * e testo conservato nel registro. Dopo l'esportazione la voce non ha più una partita.
+         */
+        private byte[] esporta() {
+            comandi.lock();
+            try {
+                SessioneGioco attuale = sessione;
+                byte[] stato;
+                boolean conclusa = false;
+                if (attuale != null) {
+                    conclusa = attuale.isConclusa();
+                    attuale.sospendi();
+                    stato = IstantaneaPartita.crea(attuale.getGioco());
+                    attuale.getFrontend().setAscoltatoreTesto(null);
+                    raccogliTesto(attuale.getFrontend());
+                    attuale.termina();
+                    sessione = null;
+                } else if (istantanea != null || fileIstantanea != null) {
+                    stato = istantanea;
+                    if (stato == null) {
+                        try {
+                            stato = Files.readAllBytes(fileIstantanea.toPath());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Impossibile leggere l'istantanea della sessione " + id, e);
+                        }
+                    }
+                } else {
+                    throw new IllegalStateException("La sessione " + id + " è già stata trasferita o chiusa");
+                }
+                if (fileIstantanea != null) {
+                    fileIstantanea.delete();
+                    fileIstantanea = null;
+                }
+                istantanea = null;
+
+                RegistroSegmenti.Lettura conservato = registro.leggi(0);
+                byte[] testo = conservato.testo().getBytes(StandardCharsets.UTF_8);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(stato.length + testo.length + 64);
+                try (DataOutputStream out = new DataOutputStream(bytes)) {
+                    out.writeInt(FORMATO_TRASFERIMENTO);
+                    out.writeLong(gestore.modello.getImpronta());
+                    out.writeUTF(chiaveSpettatore);
+                    out.writeBoolean(conclusa);
+                    out.writeLong(conservato.cursore() - conservato.testo().length());
+                    out.writeInt(testo.length);
+                    out.write(testo);
+                    out.writeInt(stato.length);
+                    out.write(stato);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return bytes.toByteArray();
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        private void chiudi() {
+            comandi.lock();
+            try {
+                SessioneGioco attuale = sessione;
+                if (attuale != null) {
+                    attuale.termina();
+                }
+                if (fileIstantanea != null) {
+                    fileIstantanea.delete();
+                    fileIstantanea = null;
+                }
+                istantanea = null;
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getChiaveSpettatore() {
+            return chiaveSpettatore;
+        }
+
+        /**
+         * Restituisce la sessione, ripristinandola se è ibernata.
+         *
+         * @return La sessione attiva
+         */
+        public SessioneGioco getSessione() {
+            comandi.lock();
+            try {
+                return attiva();
+            } finally {
+                comandi.unlock();
+            }
+        }
+
+        public boolean isIbernata() {
+            return sessione == null;
+        }
+
+        /**
+         * Indica se la partita è conclusa. Le sessioni concluse non vengono mai ibernate,
+         * per cui una sessione ibernata non è conclusa.
+         *
+         * @return true se la partita è conclusa
+         */
+        public boolean isConclusa() {
+            SessioneGioco attuale = sessione;
+            return attuale != null && attuale.isConclusa();
+        }
+
+        /**
+         * Restituisce il valore di {@link System#nanoTime()} all'ultima richiesta ricevuta.
+         *
+         * @return L'istante dell'ultimo accesso
+         */
+        public long getUltimoAccesso() {
+            return ultimoAccesso;
+        }
+    }
+
+    /**
+     * Testo letto dal registro di una sessione.
+     *
+     * @param testo Il testo letto
+     * @param cursore La posizione da cui riprendere la lettura
+     */
+    public record Lettura(String testo, long cursore) {
+    }
+}
@@ -0,0 +1,282 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.tipi.DialogoGiocatore;
+import di.lacosa.tipi.FlagDiGioco;
+import di.lacosa.tipi.Oggetto;
+import di.lacosa.tipi.OggettoAttivabile;
+import di.lacosa.tipi.Personaggio;
+import di.lacosa.tipi.RegolaVisibilita;
+import di.lacosa.tipi.RispostaInAttesa;
+import di.lacosa.tipi.Stanza;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Classe che converte una partita in un'istantanea compatta e viceversa, per ibernare le sessioni inattive
+ * e trasferirle ad altri processi.
+ * <p>
+ * L'istantanea contiene solo ciò che distingue la partita dal {@link ModelloPartita} da cui è stata creata,
+ * scritto campo per campo con un {@link DataOutputStream} e compresso:
+ * <ul>
+ *   <li>La {@link RispostaInAttesa} della partita, in modo che un dialogo o un codice di porta in corso
+ *       possano essere ripresi</li>
+ *   <li>Lo slot corrente, la stanza corrente e l'inventario, come identificativi</li>
+ *   <li>I campi mutabili di ogni stanza, oggetto, personaggio e dialogo, preceduti dal suo identificativo;
+ *       gli oggetti comprendono quelli che la partita possiede fin dall'inizio, presenti solo nell'inventario</li>
+ *   <li>I flag di gioco</li>
+ * </ul>
+ * Il contenuto statico (nomi, descrizioni, testi, collegamenti tra le stanze) non viene scritto:
+ * il ripristino crea una nuova partita dal modello e vi applica i campi letti. Non viene usata
+ * la serializzazione Java, per cui leggere un'istantanea non istanzia classi scelte da chi l'ha prodotta.
+ * Un'istantanea è valida solo con un modello dallo stesso contenuto e non sostituisce i salvataggi negli slot.
+ *
+ * @author fabioMarchitelli
+ */
+public class IstantaneaPartita {
+
+    private static final int VERSIONE = 2;
+
+    private static final byte NESSUNA_RISPOSTA = 0;
+    private static final byte RISPOSTA_DIALOGO = 1;
+    private static final byte RISPOSTA_CODICE_PORTA = 2;
+
+    private static final FlagDiGioco[] FLAG = FlagDiGioco.values();
+    private static final RegolaVisibilita[] REGOLE = RegolaVisibilita.values();
+
+    private IstantaneaPartita() {
+    }
+
+    /**
+     * Crea l'istantanea della partita.
+     *
+     * @param gioco La partita da ibernare, creata da un {@link ModelloPartita}
+     * @return I byte dell'istantanea
+     */
+    public static byte[] crea(LaCosa gioco) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Deflater compressore = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, compressore))) {
+            out.writeInt(VERSIONE);
+            scriviRispostaInAttesa(out, gioco.getRispostaInAttesa());
+            out.writeInt(gioco.getSlotCorrente());
+            out.writeInt(gioco.getStanzaCorrente() != null ? gioco.getStanzaCorrente().getIdStanza() : -1);
+
+            out.writeInt(gioco.getInventario().size());
+            for (Oggetto oggetto : gioco.getInventario()) {
+                out.writeInt(oggetto.getId());
+            }
+
+            out.writeInt(gioco.getStanze().size());
+            for (Stanza stanza : gioco.getStanze()) {
+                out.writeInt(stanza.getIdStanza());
+                out.writeBoolean(stanza.isPortaBloccata());
+                out.writeBoolean(stanza.isOsservazioneAggiornataAttiva());
+            }
+
+            List<Oggetto> oggetti = oggettiDellaPartita(gioco);
+            out.writeInt(oggetti.size());
+            for (Oggetto oggetto : oggetti) {
+                out.writeInt(oggetto.getId());
+                out.writeInt(oggetto.getId_stanza());
+                out.writeBoolean(oggetto instanceof OggettoAttivabile && ((OggettoAttivabile) oggetto).isAttivo());
+                out.writeByte(oggetto.getRegolaVisibilita().ordinal());
+                // Intensità effettiva: per gli oggetti letti da salvataggi precedenti è quella predefinita,
+                // e al ripristino viene registrata esplicitamente
+                out.writeInt(oggetto.getIntensitaLuce());
+            }
+
+            // I personaggi sono in un insieme senza ordine proprio: in ordine di id l'istantanea non dipende dall'istanza
+            List<Personaggio> personaggi = new ArrayList<>(gioco.getPersonaggi());
+            personaggi.sort(Comparator.comparingInt(Personaggio::getId));
+            out.writeInt(personaggi.size());
+            for (Personaggio personaggio : personaggi) {
+                out.writeInt(personaggio.getId());
+                out.writeInt(personaggio.getId_stanza());
+                out.writeInt(personaggio.getVita());
+                out.writeBoolean(personaggio.isInterazioneAvvenuta());
+            }
+
+            out.writeInt(gioco.getDialoghi().size());
+            for (DialogoGiocatore dialogo : gioco.getDialoghi()) {
+                out.writeInt(dialogo.getId());
+                out.writeBoolean(dialogo.isUtilizzato());
+            }
+
+            for (FlagDiGioco flag : FLAG) {
+                out.writeBoolean(gioco.getFlag(flag));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile creare l'istantanea della partita", e);
+        } finally {
+            compressore.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Ricrea la partita da un'istantanea, partendo da una nuova partita del modello.
+     * La risposta in attesa viene reimpostata, ma il relativo callback va ricreato
+     * con {@link LaCosa#riprendiRispostaInAttesa} dopo aver collegato il frontend e gli osservatori.
+     *
+     * @param istantanea I byte dell'istantanea
+     * @param modello Il modello con cui è stata creata la partita dell'istantanea
+     * @return La partita ripristinata
+     * @throws UncheckedIOException Se l'istantanea non è leggibile o si riferisce a entità assenti dal modello
+     */
+    public static LaCosa ripristina(byte[] istantanea, ModelloPartita modello) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(istantanea)))) {
+            int versione = in.readInt();
+            if (versione != VERSIONE) {
+                throw new IOException("Versione dell'istantanea non supportata: " + versione);
+            }
+            RispostaInAttesa risposta = leggiRispostaInAttesa(in);
+            LaCosa gioco = modello.creaPartita();
+            gioco.setSlotCorrente(in.readInt());
+            int idStanzaCorrente = in.readInt();
+            if (idStanzaCorrente != -1) {
+                gioco.setStanzaCorrente(leggi(gioco.getStanzaPerId(idStanzaCorrente), "Stanza", idStanzaCorrente));
+            }
+
+            // Gli identificativi vanno risolti prima di svuotare l'inventario, che contiene gli oggetti iniziali
+            List<Oggetto> inventario = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                inventario.add(leggi(gioco.getOggettoPerId(id), "Oggetto", id));
+            }
+            gioco.getInventario().clear();
+            gioco.getInventario().addAll(inventario);
+
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                Stanza stanza = leggi(gioco.getStanzaPerId(id), "Stanza", id);
+                stanza.setBloccoPorta(in.readBoolean());
+                stanza.setOsservazioneAggiornataAttiva(in.readBoolean());
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                Oggetto oggetto = leggi(gioco.getOggettoPerId(id), "Oggetto", id);
+                oggetto.setId_stanza(in.readInt());
+                boolean attivo = in.readBoolean();
+                if (oggetto instanceof OggettoAttivabile) {
+                    ((OggettoAttivabile) oggetto).setAttivo(attivo);
+                }
+                int regola = in.readUnsignedByte();
+                if (regola >= REGOLE.length) {
+                    throw new IOException("Regola di visibilità sconosciuta: " + regola);
+                }
+                oggetto.setRegolaVisibilita(REGOLE[regola]);
+                oggetto.setIntensitaLuce(in.readInt());
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                Personaggio personaggio = leggi(gioco.getPersonaggioPerId(id), "Personaggio", id);
+                personaggio.setId_stanza(in.readInt());
+                personaggio.setVita(in.readInt());
+                if (in.readBoolean()) {
+                    personaggio.setInterazioneAvvenuta();
+                }
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                leggi(gioco.getDialogoPerId(id), "Dialogo", id).setUtilizzato(in.readBoolean());
+            }
+
+            for (FlagDiGioco flag : FLAG) {
+                gioco.setFlag(flag, in.readBoolean());
+            }
+
+            // I setter segnano le modifiche e aggiornano la visibilità un campo alla volta:
+            // la partita ripristinata riparte pulita, come dopo un caricamento
+            gioco.getModifiche().confermaSalvataggio();
+            gioco.getGestoreVisibilita().invalida();
+            gioco.setRispostaInAttesa(risposta);
+            return gioco;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile ripristinare la partita dall'istantanea", e);
+        }
+    }
+
+    /**
+     * Verifica che una nuova partita del modello sopravviva a un'istantanea: la partita ripristinata
+     * deve produrre la stessa istantanea di quella originale. Un modello che non la supera renderebbe
+     * irrecuperabile ogni sessione ibernata o trasferita, per cui va verificato prima di creare sessioni.
+     *
+     * @param modello Il modello da verificare
+     * @throws IllegalStateException Se l'istantanea della nuova partita non può essere ripristinata fedelmente
+     */
+    public static void verifica(ModelloPartita modello) {
+        byte[] istantanea = crea(modello.creaPartita());
+        byte[] ripristinata;
+        try {
+            ripristinata = crea(ripristina(istantanea, modello));
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Le istantanee non possono ripristinare le partite del modello", e);
+        }
+        if (!Arrays.equals(istantanea, ripristinata)) {
+            throw new IllegalStateException("Le istantanee non ripristinano fedelmente le partite del modello");
+        }
+    }
+
+    /**
+     * Restituisce gli oggetti delle stanze seguiti da quelli presenti solo nell'inventario.
+     */
+    private static List<Oggetto> oggettiDellaPartita(LaCosa gioco) {
+        List<Oggetto> oggetti = new ArrayList<>(gioco.getOggetti());
+        for (Oggetto oggetto : gioco.getInventario()) {
+            if (!gioco.getOggetti().contains(oggetto)) {
+                oggetti.add(oggetto);
+            }
+        }
+        return oggetti;
+    }
+
+    private static void scriviRispostaInAttesa(DataOutputStream out, RispostaInAttesa risposta) throws IOException {
+        if (risposta instanceof RispostaInAttesa.Dialogo) {
+            RispostaInAttesa.Dialogo dialogo = (RispostaInAttesa.Dialogo) risposta;
+            out.writeByte(RISPOSTA_DIALOGO);
+            out.writeInt(dialogo.idPersonaggio());
+            out.writeInt(dialogo.nodo());
+        } else if (risposta instanceof RispostaInAttesa.CodicePorta) {
+            out.writeByte(RISPOSTA_CODICE_PORTA);
+            out.writeInt(((RispostaInAttesa.CodicePorta) risposta).idStanza());
+        } else {
+            out.writeByte(NESSUNA_RISPOSTA);
+        }
+    }
+
+    private static RispostaInAttesa leggiRispostaInAttesa(DataInputStream in) throws IOException {
+        byte tipo = in.readByte();
+        switch (tipo) {
+            case RISPOSTA_DIALOGO:
+                return new RispostaInAttesa.Dialogo(in.readInt(), in.readInt());
+            case RISPOSTA_CODICE_PORTA:
+                return new RispostaInAttesa.CodicePorta(in.readInt());
+            case NESSUNA_RISPOSTA:
+                return null;
+            default:
+                throw new IOException("Tipo di risposta in attesa sconosciuto: " + tipo);
+        }
+    }
+
+    private static <T> T leggi(T entita, String tipo, int id) throws IOException {
+        if (entita == null) {
+            throw new IOException(tipo + " con id " + id + " non presente nel modello della partita.");
+        }
+        return entita;
+    }
+}
@@ -2,18 +2,20 @@ package di.lacosa.implementazione;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.io.PrintStream;
 
+import di.lacosa.BufferOutput;
 import di.lacosa.DescrizioneGioco;
 import di.lacosa.FaseFinaleListener;
+import di.lacosa.FrontendGioco;
 import di.lacosa.Observer;
-import di.lacosa.contesti.*;
 import di.lacosa.database.*;
 import di.lacosa.parser.ParserOutput;
 import di.lacosa.tipi.*;
 import di.lacosa.Observable;
-import di.lacosa.ui.InterfacciaGioco;
 
 
 /**
@@ -33,19 +35,40 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
     private static final long serialVersionUID = 1L;
 
     /** Interfaccia grafica del gioco (transiente per la serializzazione) */
-    private transient InterfacciaGioco interfacciaGioco;
+    private transient FrontendGioco interfacciaGioco;
 
     /** Lista degli osservatori per i vari contesti di gioco */
     private transient List<Observer> contestiGioco = new ArrayList<>();
 
+    /** Tabella che associa a ogni tipo di comando gli osservatori che lo gestiscono (ricostruita quando cambiano gli osservatori) */
+    private transient EnumMap<TipoComando, Observer[]> tabellaOsservatori;
+
+    /** Indici degli osservatori della tabella nelle metriche, nello stesso ordine */
+    private transient EnumMap<TipoComando, int[]> indiciMetriche;
+
+    /** Tempi di esecuzione degli osservatori */
+    private transient MetricheOsservatori metriche;
+
+    /** Osservatori forniti dai {@link FornitoreComando}, creati al primo utilizzo di ciascun comando */
+    private transient EnumMap<TipoComando, List<Observer>> osservatoriFornitori;
+
+    /** Listener della fase finale, passato agli osservatori creati dai fornitori */
+    private transient FaseFinaleListener finaleListener;
+
+    /** Tabella vuota condivisa per i tipi di comando senza osservatori */
+    private static final Observer[] NESSUN_OSSERVATORE = new Observer[0];
+
     /** Flag per evitare doppia registrazione degli osservatori */
     private transient boolean observersImpostati = false;
 
     /** Slot di salvataggio corrente (1-3) */
     private int slotCorrente = -1;
 
-    /** Buffer per l'output dei comandi */
-    private final List<String> outputComando = new ArrayList<>();
+    /** Spazio dei salvataggi della partita, null per quelli della partita locale (transiente per la serializzazione) */
+    private transient String spazioSalvataggi;
+
+    /** Buffer per l'output dei comandi (riutilizzato a ogni comando) */
+    private transient BufferOutput uscita;
 
     /** Risultato dell'ultimo parsing di comando */
     private transient ParserOutput parserOutput;
@@ -65,51 +88,14 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
      */
     @Override
     public void inizializza (){
-        outputComando.clear();
-
-        // Inizializzazione comandi
-        Comando inventario = new Comando(TipoComando.INVENTARIO, "inventario");
-        inventario.setAlias(new String[]{"Inventario"});
-        getComandi().add(inventario);
-        Comando parla = new Comando(TipoComando.PARLA, "parla");
-        parla.setAlias(new String[]{"Parla", "comunica", "dialoga", "discuti"});
-        getComandi().add(parla);
-        Comando prendi = new Comando(TipoComando.PRENDI, "prendi");
-        prendi.setAlias(new String[]{"raccogli", "Prendi"});
-        getComandi().add(prendi);
-        Comando vai = new Comando(TipoComando.VAI, "vai");
-        vai.setAlias(new String[]{"Vai", "prosegui", "procedi", "dirigiti", "corri", "cammina", "muoviti"});
-        getComandi().add(vai);
-        Comando fine = new Comando(TipoComando.FINE, "fine");
-        fine.setAlias(new String[]{"Fine", "termina", "exit", "Exit", "esci", "Esci"});
-        getComandi().add(fine);
-        Comando osserva = new Comando(TipoComando.OSSERVA, "osserva");
-        osserva.setAlias(new String[]{"Osserva", "guarda", "Guarda"});
-        getComandi().add(osserva);
-        Comando usa = new Comando(TipoComando.USA, "usa");
-        usa.setAlias(new String[]{"Usa", "utilizza"});
-        getComandi().add(usa);
-        Comando attiva = new Comando(TipoComando.ATTIVA, "attiva");
-        attiva.setAlias(new String[]{"Attiva", "aziona", "innesca", "premi", "accendi"});
-        getComandi().add(attiva);
-        Comando disattiva = new Comando(TipoComando.DISATTIVA, "disattiva");
-        disattiva.setAlias(new String[]{"Disattiva", "spegni", "Spegni"});
-        getComandi().add(disattiva);
-        Comando aiuto = new Comando(TipoComando.AIUTO, "aiuto");
-        aiuto.setAlias(new String[]{"Aiuto", "help", "Istruzioni", "istruzioni", "Help"});
-        getComandi().add(aiuto);
-        Comando leggi = new Comando(TipoComando.LEGGI, "leggi");
-        leggi.setAlias(new String[]{"Leggi", "consulta", "Consulta"});
-        getComandi().add(leggi);
-        Comando esamina = new Comando(TipoComando.ESAMINA, "esamina");
-        esamina.setAlias(new String[]{"Esamina", "analizza", "Analizza"});
-        getComandi().add(esamina);
-        Comando spara = new Comando(TipoComando.SPARA, "spara");
-        spara.setAlias(new String[]{"Spara"});
-        getComandi().add(spara);
-        Comando salva = new Comando(TipoComando.SALVA, "salva");
-        salva.setAlias(new String[]{"Salva", "Salvataggio"});
-        getComandi().add(salva);
+        getBufferOutput().svuota();
+
+        // Inizializzazione comandi, dai fornitori registrati come servizio
+        for (FornitoreComando fornitore : RegistroComandi.getFornitori()) {
+            Comando comando = new Comando(fornitore.getTipo(), fornitore.getNome());
+            comando.setAlias(fornitore.getAlias());
+            getComandi().add(comando);
+        }
 
 
         // Caricamento stanze
@@ -155,43 +141,161 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
      @Override
      public void prossimaMossa(ParserOutput p, PrintStream ps) {
          parserOutput = p;
-         outputComando.clear();
+         getBufferOutput().svuota();
 
          if (p.getComando() == null) {
              interfacciaGioco.scriviInAreaDiTesto("Non ho capito cosa intendi fare. Riprova inserendo un altro comando.");
              return;
          }
-         Stanza stanzaCorr = getStanzaCorrente();
+         // Le modifiche avvenute fuori dai comandi (es. dialoghi, codici delle porte) non appartengono a questo comando
+         getModifiche().confermaComando();
          notificaOsservatori();
-         boolean mossa = !stanzaCorr.equals(getStanzaCorrente()) && getStanzaCorrente() != null;
-
-         if (!outputComando.isEmpty()) {
-             for (String m : outputComando) {
-                 if (m.length() > 0) {
-                     interfacciaGioco.scriviInAreaDiTesto("\n" + m + "\n");
-                 }
-             }
+         boolean mossa = getModifiche().isStanzaCorrenteCambiata();
+
+         if (!uscita.isVuoto()) {
+             // Ogni risposta è racchiusa tra una riga vuota prima e una dopo
+             interfacciaGioco.aggiungiInAreaDiTesto(uscita.componi("\n", "\n\n"));
          }
          if (mossa) {
              interfacciaGioco.mostraStanzaPulita(getStanzaCorrente().getNome(), getStanzaCorrente().getDescrizione());
+             interfacciaGioco.aggiornaMappa(getStanzaCorrente().getIdStanza());
          }
          interfacciaGioco.scriviInAreaDiTesto("\n?> \n");
+         getModifiche().confermaComando();
      }
 
     /**
-     * Notifica tutti gli osservatori registrati.
+     * Notifica gli osservatori che gestiscono il tipo del comando corrente.
      * <p>
-     * Ogni osservatore processa il comando e può aggiungere messaggi all'output.
+     * Ogni osservatore scrive la propria risposta in un segmento del buffer di output;
+     * le risposte vuote vengono scartate.
      */
     @Override
     public void notificaOsservatori() {
+        BufferOutput buffer = getBufferOutput();
+        TipoComando tipo = parserOutput.getComando().getTipo();
+        Observer[] osservatori = getOsservatoriPerComando(tipo);
+        int[] indici = indiciMetriche.get(tipo);
+        MetricheOsservatori tempi = getMetricheOsservatori();
+        for (int i = 0; i < osservatori.length; i++) {
+            buffer.apriSegmento();
+            long inizio = System.nanoTime();
+            osservatori[i].update(this, parserOutput, buffer);
+            tempi.registra(indici[i], tipo, System.nanoTime() - inizio);
+            buffer.chiudiSegmento();
+        }
+    }
+
+    /**
+     * Ricrea l'attesa di una risposta del giocatore dopo il ripristino della partita,
+     * affidandola agli osservatori del comando che l'aveva originata.
+     * Gli osservatori devono essere già stati impostati con {@link #setObservers}.
+     *
+     * @param risposta La risposta che la partita stava aspettando
+     * @return true se un osservatore ha ripreso l'attesa
+     */
+    public boolean riprendiRispostaInAttesa(RispostaInAttesa risposta) {
+        for (Observer osservatore : getOsservatoriPerComando(risposta.getTipoComando())) {
+            if (osservatore.riprendiRisposta(this, risposta)) {
+                return true;
+            }
+        }
+        setRispostaInAttesa(null);
+        return false;
+    }
+
+    /**
+     * Restituisce gli osservatori che gestiscono il tipo di comando indicato,
+     * costruendo la voce della tabella al primo utilizzo del comando.
+     *
+     * @param tipo Il tipo di comando
+     * @return Gli osservatori da notificare
+     */
+    private Observer[] getOsservatoriPerComando(TipoComando tipo) {
+        if (tabellaOsservatori == null) {
+            tabellaOsservatori = new EnumMap<>(TipoComando.class);
+            indiciMetriche = new EnumMap<>(TipoComando.class);
+        }
+        Observer[] osservatori = tabellaOsservatori.get(tipo);
+        if (osservatori == null) {
+            osservatori = costruisciVoceTabella(tipo);
+        }
+        return osservatori;
+    }
+
+    /**
+     * Costruisce la voce della tabella di smistamento per un tipo di comando, a partire dai comandi
+     * e dall'ordine dichiarati dagli osservatori registrati e da quelli dei fornitori del comando,
+     * insieme agli indici degli osservatori nelle metriche.
+     *
+     * @param tipo Il tipo di comando
+     * @return Gli osservatori del tipo, eventualmente nessuno
+     */
+    private Observer[] costruisciVoceTabella(TipoComando tipo) {
+        List<Observer> gestori = new ArrayList<>();
         for (Observer a : contestiGioco) {
-            outputComando.add(a.update(this, parserOutput));
+            if (a.getComandiGestiti().contains(tipo)) {
+                gestori.add(a);
+            }
+        }
+        for (Observer a : getOsservatoriFornitori(tipo)) {
+            if (!gestori.contains(a)) {
+                gestori.add(a);
+            }
+        }
+        // Ordinamento stabile: a parità di ordine resta quello di registrazione
+        gestori.sort(Comparator.comparingInt(Observer::getOrdine));
+        Observer[] osservatori = gestori.isEmpty() ? NESSUN_OSSERVATORE : gestori.toArray(new Observer[0]);
+        int[] indici = new int[osservatori.length];
+        for (int i = 0; i < osservatori.length; i++) {
+            indici[i] = getMetricheOsservatori().getIndice(osservatori[i]);
+        }
+        tabellaOsservatori.put(tipo, osservatori);
+        indiciMetriche.put(tipo, indici);
+        return osservatori;
+    }
+
+    /**
+     * Restituisce gli osservatori forniti per il tipo di comando, creandoli (o recuperando
+     * le istanze condivise) solo al primo utilizzo del comando in questa partita.
+     * Finché gli osservatori non sono stati impostati con {@link #setObservers} non viene fornito nulla.
+     *
+     * @param tipo Il tipo di comando
+     * @return Gli osservatori forniti per il tipo
+     */
+    private List<Observer> getOsservatoriFornitori(TipoComando tipo) {
+        if (!observersImpostati) {
+            return List.of();
+        }
+        List<Observer> forniti = osservatoriFornitori.get(tipo);
+        if (forniti == null) {
+            forniti = new ArrayList<>();
+            for (FornitoreComando fornitore : RegistroComandi.getFornitori(tipo)) {
+                Observer osservatore = RegistroComandi.getOsservatore(fornitore, this, finaleListener);
+                if (osservatore != null) {
+                    forniti.add(osservatore);
+                }
+            }
+            osservatoriFornitori.put(tipo, forniti);
         }
+        return forniti;
     }
 
     /**
-     * Registra tutti gli osservatori necessari per il gioco.
+     * Restituisce le metriche sui tempi di esecuzione degli osservatori, creandole se necessario.
+     *
+     * @return Le metriche della partita
+     */
+    public MetricheOsservatori getMetricheOsservatori() {
+        if (metriche == null) {
+            metriche = new MetricheOsservatori();
+        }
+        return metriche;
+    }
+
+    /**
+     * Abilita gli osservatori necessari per il gioco. Gli osservatori dei comandi registrati
+     * come {@link FornitoreComando} vengono creati solo al primo utilizzo del rispettivo comando.
      *
      * @param finaleListener Listener per gestire la fase finale del gioco
      */
@@ -200,19 +304,9 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
         if (observersImpostati){
             return;
         }
-        this.attach(new AggiornaDialogo(interfacciaGioco, finaleListener));
-        this.attach(new AggiornaInventario());
-        this.attach(new AggiornaEsamina(interfacciaGioco));
-        this.attach(new AggiornaPosizione(interfacciaGioco));
-        this.attach(new AggiornaOsserva());
-        this.attach(new AggiornaRaccogli());
-        this.attach(new AggiornaLettura(interfacciaGioco));
-        this.attach(new AggiornaSparo());
-        this.attach(new AggiornaAttiva());
-        this.attach(new AggiornaAiuto(interfacciaGioco));
-        this.attach(new AggiornaDisattiva());
-        this.attach(new AggiornaUsa());
-        this.attach(new AggiornaSalva());
+        this.finaleListener = finaleListener;
+        this.osservatoriFornitori = new EnumMap<>(TipoComando.class);
+        this.tabellaOsservatori = null;
         observersImpostati = true;
     }
 
@@ -226,6 +320,7 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
 
         if(!contestiGioco.contains(a)){
             contestiGioco.add(a);
+            tabellaOsservatori = null;
         }
     }
 
@@ -236,7 +331,9 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
      */
     @Override
     public void detach(Observer a){
-        contestiGioco.remove(a);
+        if (contestiGioco.remove(a)) {
+            tabellaOsservatori = null;
+        }
     }
 
 
@@ -246,16 +343,73 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
      */
     public void ripristinaTransient() {
         this.contestiGioco = new ArrayList<>();
+        this.tabellaOsservatori = null;
+        this.osservatoriFornitori = null;
+        this.finaleListener = null;
         this.observersImpostati = false;
+
+        // Riallinea la sorgente di luce della torcia, non presente nei salvataggi meno recenti
+        setTorciaAccesa(isTorciaAccesa());
     }
 
     /**
-     * Imposta l'interfaccia grafica del gioco.
+     * Imposta il frontend del gioco (l'interfaccia grafica o un frontend senza display)
+     * e vi collega il canale degli effetti sull'interfaccia.
      *
-     * @param interfaccia L'interfaccia grafica
+     * @param interfaccia Il frontend della partita
      */
-    public void setInterfacciaGioco(InterfacciaGioco interfaccia) {
+    public void setInterfacciaGioco(FrontendGioco interfaccia) {
         this.interfacciaGioco = interfaccia;
+        if (interfaccia != null) {
+            getEsecutoreEffetti().setEsecutoreInterfaccia(interfaccia::eseguiInInterfaccia);
+            setEsecutoreEventi(interfaccia::eseguiInInterfaccia);
+        }
+    }
+
+    /**
+     * Restituisce il frontend del gioco.
+     *
+     * @return Il frontend, o null se la partita non è collegata a un frontend
+     */
+    public FrontendGioco getInterfacciaGioco() {
+        return interfacciaGioco;
+    }
+
+    /**
+     * Restituisce il buffer con l'output dell'ultimo comando, creandolo se necessario.
+     *
+     * @return Il buffer in cui scrivono gli osservatori
+     */
+    BufferOutput getBufferOutput() {
+        if (uscita == null) {
+            uscita = new BufferOutput();
+        }
+        return uscita;
+    }
+
+    /**
+     * Restituisce gli osservatori registrati o già creati dai fornitori.
+     *
+     * @return Gli osservatori della partita
+     */
+    List<Observer> getOsservatori() {
+        List<Observer> osservatori = new ArrayList<>(contestiGioco);
+        if (osservatoriFornitori != null) {
+            for (List<Observer> forniti : osservatoriFornitori.values()) {
+                osservatori.addAll(forniti);
+            }
+        }
+        return osservatori;
+    }
+
+    /**
+     * Stima la memoria trattenuta da questa partita, suddivisa per categoria.
+     *
+     * @return Il risultato della stima
+     * @see StimaMemoria
+     */
+    public StimaMemoria.Risultato stimaMemoria() {
+        return StimaMemoria.stima(this);
     }
 
     /**
@@ -276,5 +430,25 @@ public class LaCosa extends DescrizioneGioco implements Observable, Serializable
         return slotCorrente;
     }
 
+    /**
+     * Imposta lo spazio dei salvataggi della partita: le partite ospitate da un server
+     * salvano nello spazio della propria sessione, per cui i loro slot non si sovrappongono.
+     *
+     * @param spazio La chiave della sessione, o null per gli slot della partita locale
+     * @see di.lacosa.GestoreSalvataggi
+     */
+    public void setSpazioSalvataggi(String spazio) {
+        this.spazioSalvataggi = spazio;
+    }
+
+    /**
+     * Restituisce lo spazio dei salvataggi della partita.
+     *
+     * @return La chiave della sessione, o null per gli slot della partita locale
+     */
+    public String getSpazioSalvataggi() {
+        return spazioSalvataggi;
+    }
+
 
 }
@@ -0,0 +1,83 @@
+package di.lacosa.implementazione;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limitatore a secchiello di gettoni (token bucket) per i comandi di una sessione.
+ * <p>
+ * Il secchiello contiene al più {@code raffica} gettoni e se ne riempie uno ogni {@code 1/comandiAlSecondo}
+ * secondi; ogni comando consuma un gettone e, se il secchiello è vuoto, attende il prossimo
+ * ({@link #getAttesaNanos()}). Un giocatore può quindi inviare qualche comando di fila, ma non sostenere
+ * un ritmo superiore a quello previsto e occupare lo shard a scapito delle altre sessioni.
+ *
+ * @author fabioMarchitelli
+ */
+public class LimitatoreComandi {
+
+    /**
+     * Comandi al secondo concessi in modo continuativo
+     */
+    public static final double COMANDI_AL_SECONDO = 5;
+
+    /**
+     * Comandi che possono essere inviati di fila dopo una pausa
+     */
+    public static final int RAFFICA = 10;
+
+    private final double nanosPerGettone;
+    private final double capacita;
+    private double gettoni;
+    private long ultimoRiempimento = System.nanoTime();
+
+    /**
+     * Costruttore con i limiti predefiniti.
+     */
+    public LimitatoreComandi() {
+        this(COMANDI_AL_SECONDO, RAFFICA);
+    }
+
+    /**
+     * Costruttore della classe. Il secchiello parte pieno.
+     *
+     * @param comandiAlSecondo I comandi al secondo concessi in modo continuativo
+     * @param raffica Il numero massimo di comandi consecutivi
+     */
+    public LimitatoreComandi(double comandiAlSecondo, int raffica) {
+        if (comandiAlSecondo <= 0 || raffica <= 0) {
+            throw new IllegalArgumentException("Ritmo e raffica devono essere positivi");
+        }
+        this.nanosPerGettone = TimeUnit.SECONDS.toNanos(1) / comandiAlSecondo;
+        this.capacita = raffica;
+        this.gettoni = raffica;
+    }
+
+    /**
+     * Consuma un gettone, se disponibile.
+     *
+     * @return true se il comando può essere eseguito
+     */
+    public synchronized boolean consenti() {
+        riempi();
+        if (gettoni < 1) {
+            return false;
+        }
+        gettoni--;
+        return true;
+    }
+
+    /**
+     * Restituisce il tempo che manca al prossimo gettone disponibile.
+     *
+     * @return L'attesa in nanosecondi, 0 se un gettone è già disponibile
+     */
+    public synchronized long getAttesaNanos() {
+        riempi();
+        return gettoni >= 1 ? 0 : (long) Math.ceil((1 - gettoni) * nanosPerGettone);
+    }
+
+    private void riempi() {
+        long adesso = System.nanoTime();
+        gettoni = Math.min(capacita, gettoni + (adesso - ultimoRiempimento) / nanosPerGettone);
+        ultimoRiempimento = adesso;
+    }
+}
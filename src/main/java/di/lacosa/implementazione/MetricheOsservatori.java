@@ -0,0 +1,182 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.Observer;
+import di.lacosa.tipi.TipoComando;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classe che raccoglie i tempi di esecuzione degli osservatori di una partita.
+ * <p>
+ * Ogni invocazione di un osservatore viene registrata due volte: nell'istogramma dell'osservatore
+ * e in quello del tipo di comando eseguito. Gli istogrammi hanno un intervallo per ogni potenza di due
+ * di nanosecondi e sono allocati in anticipo, per cui la registrazione non crea alcun oggetto.
+ * Le statistiche (invocazioni, tempo medio e massimo, percentili) vengono calcolate solo su richiesta.
+ * <p>
+ * Gli osservatori sono identificati dal nome della classe, in modo che i dati raccolti
+ * sopravvivano alla nuova registrazione degli osservatori (es. dopo un caricamento).
+ * Un'istanza appartiene a una sola partita e non è thread-safe.
+ *
+ * @author fabioMarchitelli
+ */
+public class MetricheOsservatori {
+
+    private final List<String> nomiOsservatori = new ArrayList<>();
+    private Istogramma[] perOsservatore = new Istogramma[0];
+    private final Istogramma[] perComando = new Istogramma[TipoComando.values().length];
+
+    /**
+     * Costruttore della classe.
+     */
+    public MetricheOsservatori() {
+        for (int i = 0; i < perComando.length; i++) {
+            perComando[i] = new Istogramma();
+        }
+    }
+
+    /**
+     * Restituisce l'indice con cui registrare i tempi dell'osservatore, preparandone l'istogramma
+     * se l'osservatore non è ancora noto. Da chiamare quando si costruisce la tabella degli osservatori,
+     * non a ogni comando.
+     *
+     * @param osservatore L'osservatore da misurare
+     * @return L'indice da passare a {@link #registra(int, TipoComando, long)}
+     */
+    public int getIndice(Observer osservatore) {
+        String nome = osservatore.getClass().getSimpleName();
+        int indice = nomiOsservatori.indexOf(nome);
+        if (indice == -1) {
+            indice = nomiOsservatori.size();
+            nomiOsservatori.add(nome);
+            perOsservatore = Arrays.copyOf(perOsservatore, indice + 1);
+            perOsservatore[indice] = new Istogramma();
+        }
+        return indice;
+    }
+
+    /**
+     * Registra la durata di un'invocazione.
+     *
+     * @param indiceOsservatore L'indice dell'osservatore, ottenuto da {@link #getIndice(Observer)}
+     * @param tipo Il tipo di comando eseguito
+     * @param nanosecondi La durata dell'invocazione in nanosecondi
+     */
+    public void registra(int indiceOsservatore, TipoComando tipo, long nanosecondi) {
+        perOsservatore[indiceOsservatore].registra(nanosecondi);
+        perComando[tipo.ordinal()].registra(nanosecondi);
+    }
+
+    /**
+     * Restituisce le statistiche di ciascun osservatore che è stato invocato almeno una volta.
+     *
+     * @return Le statistiche, indicizzate per nome della classe dell'osservatore
+     */
+    public Map<String, Statistiche> getStatistichePerOsservatore() {
+        Map<String, Statistiche> statistiche = new LinkedHashMap<>();
+        for (int i = 0; i < nomiOsservatori.size(); i++) {
+            if (perOsservatore[i].invocazioni > 0) {
+                statistiche.put(nomiOsservatori.get(i), perOsservatore[i].getStatistiche());
+            }
+        }
+        return Collections.unmodifiableMap(statistiche);
+    }
+
+    /**
+     * Restituisce le statistiche di ciascun tipo di comando eseguito almeno una volta.
+     *
+     * @return Le statistiche, indicizzate per tipo di comando
+     */
+    public Map<TipoComando, Statistiche> getStatistichePerComando() {
+        EnumMap<TipoComando, Statistiche> statistiche = new EnumMap<>(TipoComando.class);
+        for (TipoComando tipo : TipoComando.values()) {
+            if (perComando[tipo.ordinal()].invocazioni > 0) {
+                statistiche.put(tipo, perComando[tipo.ordinal()].getStatistiche());
+            }
+        }
+        return Collections.unmodifiableMap(statistiche);
+    }
+
+    /**
+     * Azzera tutti i dati raccolti, mantenendo gli osservatori noti.
+     */
+    public void azzera() {
+        for (Istogramma istogramma : perOsservatore) {
+            istogramma.azzera();
+        }
+        for (Istogramma istogramma : perComando) {
+            istogramma.azzera();
+        }
+    }
+
+
+    /**
+     * Istogramma con un intervallo per ogni potenza di due: l'intervallo i contiene
+     * le durate comprese tra 2^(i-1) e 2^i - 1 nanosecondi.
+     */
+    private static final class Istogramma {
+
+        private static final int INTERVALLI = 64;
+
+        private final long[] conteggi = new long[INTERVALLI];
+        private long invocazioni;
+        private long totale;
+        private long massimo;
+
+        private void registra(long nanosecondi) {
+            if (nanosecondi < 0) {
+                nanosecondi = 0;
+            }
+            conteggi[Math.min(INTERVALLI - 1, 64 - Long.numberOfLeadingZeros(nanosecondi))]++;
+            invocazioni++;
+            totale += nanosecondi;
+            if (nanosecondi > massimo) {
+                massimo = nanosecondi;
+            }
+        }
+
+        /**
+         * Restituisce il limite superiore dell'intervallo che contiene il percentile indicato.
+         */
+        private long percentile(double frazione) {
+            long soglia = (long) Math.ceil(invocazioni * frazione);
+            long cumulato = 0;
+            for (int i = 0; i < INTERVALLI; i++) {
+                cumulato += conteggi[i];
+                if (cumulato >= soglia) {
+                    return Math.min(massimo, i == 0 ? 0 : (1L << i) - 1);
+                }
+            }
+            return massimo;
+        }
+
+        private Statistiche getStatistiche() {
+            return new Statistiche(invocazioni, totale / invocazioni, percentile(0.50), percentile(0.99), massimo);
+        }
+
+        private void azzera() {
+            Arrays.fill(conteggi, 0);
+            invocazioni = 0;
+            totale = 0;
+            massimo = 0;
+        }
+    }
+
+    /**
+     * Statistiche calcolate da un istogramma. I percentili sono approssimati per eccesso
+     * al limite superiore dell'intervallo che li contiene. Tutti i tempi sono in nanosecondi.
+     *
+     * @param invocazioni Il numero di invocazioni registrate
+     * @param medio Il tempo medio
+     * @param p50 La mediana
+     * @param p99 Il 99° percentile
+     * @param massimo Il tempo massimo registrato
+     */
+    public record Statistiche(long invocazioni, long medio, long p50, long p99, long massimo) {
+    }
+}
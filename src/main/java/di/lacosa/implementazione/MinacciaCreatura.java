@@ -0,0 +1,114 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.DescrizioneGioco;
+import di.lacosa.FrontendGioco;
+import di.lacosa.Orologio;
+import di.lacosa.RuotaTemporizzatori;
+import di.lacosa.eventi.EventoDiGioco;
+
+/**
+ * Classe che gestisce il comportamento di una creatura antagonista nel gioco.
+ * <p>
+ * Si occupa di:
+ * <ul>
+ *   <li>Simulare l'avvicinamento progressivo della creatura al giocatore</li>
+ *   <li>Mostrare messaggi di avvertimento all'utente a intervalli regolari</li>
+ *   <li>Gestire la sconfitta della creatura</li>
+ * </ul>
+ * Ogni avvertimento è un evento dell'orologio della partita (la {@link RuotaTemporizzatori} condivisa,
+ * salvo in riproduzione), pianificato con {@link DescrizioneGioco#pianificaEvento}: l'incontro non occupa un thread e gli avvertimenti
+ * vengono eseguiti nel ciclo dei comandi della partita, mai in concorrenza con un comando.
+ *
+ * @author fabioMarchitelli
+ */
+public class MinacciaCreatura {
+
+    /**
+     * Intervallo tra due avvertimenti, in millisecondi
+     */
+    public static final long INTERVALLO_AVVERTIMENTI_MS = 10000;
+
+    private static final String[] AVVERTIMENTI = {
+            "\n\n!!QUELLA COSA si sta avvicinando a te… {Se non agisco adesso, sarà la mia fine…}!!\n\n?>\n\n",
+            "\n\n!!Man mano che si avvicina, il ringhio della COSA si fa sempre più intenso e crudele…{Devo fare qualcosa!!!}!!\n\n?>\n\n",
+            "\n\n!!Vedi la bava gocciolare dalle sue fauci aperte. {Devo usare la pistola!!!}!!\n\n?>\n\n"
+    };
+
+    private final DescrizioneGioco descrizioneGioco;   //Riferimento alla descrizione del gioco
+    private final FrontendGioco interfacciaGioco;   //Riferimento all'interfaccia del gioco
+    private volatile boolean attiva = true;     //Flag che indica se la creatura sta ancora avanzando
+    private volatile Orologio.EventoPianificato prossimoAvvertimento;
+    private int indiceAvvertimento;
+
+    /**
+     * Costruttore della classe MinacciaCreatura.
+     *
+     * @param description La descrizione del gioco corrente
+     * @param interfacciaGioco L'interfaccia per mostrare i messaggi
+     */
+    public MinacciaCreatura(DescrizioneGioco description, FrontendGioco interfacciaGioco) {
+        this.descrizioneGioco = description;
+        this.interfacciaGioco = interfacciaGioco;
+    }
+
+    /**
+     * Avvia l'avvicinamento della creatura: il primo avvertimento arriva dopo
+     * {@link #INTERVALLO_AVVERTIMENTI_MS} millisecondi e i successivi si ripetono ciclicamente.
+     */
+    public void avvia() {
+        pianificaAvvertimento();
+    }
+
+    /**
+     * Segnala la sconfitta della creatura: annulla l'avvertimento in attesa, mostra il messaggio
+     * di sconfitta e aggiorna l'osservazione della stanza.
+     */
+    public void sconfiggiCreatura() {
+        if (!ferma()) {
+            return;
+        }
+        interfacciaGioco.scriviInAreaDiTesto("\nLa creatura giace a terra, il pericolo è passato.\n");
+
+        // Quando la creatura viene sconfitta, aggiorna l'osservazione della stanza
+        descrizioneGioco.applicaEvento(new EventoDiGioco.OsservazioneAggiornata(descrizioneGioco.getStanzaCorrente().getIdStanza()));
+    }
+
+    /**
+     * Ferma l'avvicinamento senza sconfiggere la creatura.
+     * <p>
+     * Nessun messaggio viene mostrato e la partita non viene modificata.
+     */
+    public void sospendi() {
+        ferma();
+    }
+
+    public boolean isAttiva() {
+        return attiva;
+    }
+
+    private boolean ferma() {
+        if (!attiva) {
+            return false;
+        }
+        attiva = false;
+        Orologio.EventoPianificato avvertimento = prossimoAvvertimento;
+        if (avvertimento != null) {
+            avvertimento.annulla();
+        }
+        return true;
+    }
+
+    private void pianificaAvvertimento() {
+        prossimoAvvertimento = descrizioneGioco.pianificaEvento(this::avverti, INTERVALLO_AVVERTIMENTI_MS);
+    }
+
+    private void avverti() {
+        // L'evento può essere già stato consegnato quando la creatura viene fermata
+        if (!attiva) {
+            return;
+        }
+        interfacciaGioco.scriviInAreaDiTesto(AVVERTIMENTI[indiceAvvertimento]);
+        indiceAvvertimento = (indiceAvvertimento + 1) % AVVERTIMENTI.length;
+        pianificaAvvertimento();
+    }
+}
@@ -0,0 +1,162 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.GestoreSalvataggi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Modello da cui vengono create le nuove partite di un server con molte sessioni.
+ * <p>
+ * La partita viene inizializzata dal database una sola volta e serializzata in memoria;
+ * ogni nuova sessione ne riceve una copia indipendente leggendo quei byte, senza interrogare
+ * di nuovo il database. Durante la lettura le stringhe (nomi, descrizioni, testi dei documenti
+ * e dei dialoghi) vengono sostituite con un'unica istanza condivisa tra tutte le copie,
+ * per cui il contenuto statico del gioco occupa memoria una sola volta:
+ * ogni sessione trattiene soltanto il proprio stato.
+ * <p>
+ * Le stringhe non vengono mai modificate dal gioco, quindi la condivisione è sicura;
+ * lo stato mutabile (stanze, oggetti, flag) resta invece separato per ogni copia.
+ * <p>
+ * Le stringhe del modello, in ordine naturale, ne determinano l'{@link #getImpronta() impronta}: le istantanee
+ * delle sessioni ibernate o trasferite ad altri processi ({@link IstantaneaPartita}) si riferiscono
+ * alle entità del modello e valgono solo tra modelli con la stessa impronta.
+ *
+ * @author fabioMarchitelli
+ */
+public class ModelloPartita {
+
+    private final byte[] partitaSerializzata;
+    private final ConcurrentHashMap<String, String> stringheCondivise = new ConcurrentHashMap<>();
+    private final long impronta;
+
+    private ModelloPartita(byte[] partitaSerializzata) {
+        this.partitaSerializzata = partitaSerializzata;
+        // Una prima lettura raccoglie le stringhe del modello, da cui viene calcolata l'impronta
+        creaPartita();
+        // In ordine naturale, non in quello della mappa: l'impronta dipende solo dal contenuto,
+        // per cui due processi con lo stesso database leggono l'uno le istantanee dell'altro
+        List<String> testi = new ArrayList<>(stringheCondivise.keySet());
+        Collections.sort(testi);
+        long h = 0xcbf29ce484222325L;
+        for (String testo : testi) {
+            for (int c = 0; c < testo.length(); c++) {
+                h = (h ^ testo.charAt(c)) * 0x100000001b3L;
+            }
+            h = (h ^ 0xffff) * 0x100000001b3L;
+        }
+        impronta = h;
+    }
+
+    /**
+     * Crea il modello inizializzando una nuova partita dal database.
+     *
+     * @return Il modello pronto per creare le partite
+     * @throws Exception Se l'inizializzazione della partita fallisce
+     */
+    public static ModelloPartita daDatabase() throws Exception {
+        LaCosa partita = new LaCosa();
+        partita.inizializza();
+        return daPartita(partita);
+    }
+
+    /**
+     * Crea il modello a partire da una partita già inizializzata, che non deve essere ancora iniziata.
+     *
+     * @param partita La partita da usare come modello
+     * @return Il modello pronto per creare le partite
+     */
+    public static ModelloPartita daPartita(LaCosa partita) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(partita);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile serializzare la partita modello", e);
+        }
+        return new ModelloPartita(bytes.toByteArray());
+    }
+
+    /**
+     * Crea una nuova partita, indipendente da tutte le altre, con le variabili transient già ripristinate.
+     *
+     * @return La nuova partita
+     */
+    public LaCosa creaPartita() {
+        try (LetturaCondivisa lettura = new LetturaCondivisa(new ByteArrayInputStream(partitaSerializzata), this)) {
+            LaCosa partita = (LaCosa) lettura.readObject();
+            partita.ripristinaTransient();
+            // Le istantanee del registro degli eventi contengono solo ciò che distingue la partita dal modello
+            partita.setFormatoIstantanea(() -> IstantaneaPartita.crea(partita),
+                    istantanea -> IstantaneaPartita.ripristina(istantanea, this));
+            return partita;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile creare la partita dal modello", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Restituisce la dimensione in byte della partita serializzata.
+     *
+     * @return La dimensione del modello
+     */
+    public int getDimensione() {
+        return partitaSerializzata.length;
+    }
+
+    /**
+     * Restituisce l'impronta delle stringhe del modello: due modelli con la stessa impronta
+     * hanno lo stesso contenuto e possono scambiarsi le istantanee.
+     *
+     * @return L'impronta del modello
+     */
+    public long getImpronta() {
+        return impronta;
+    }
+
+    public int getNumeroStringheCondivise() {
+        return stringheCondivise.size();
+    }
+
+    /**
+     * Restituisce l'istanza condivisa equivalente alla stringa, registrandola se è nuova.
+     *
+     * @param testo La stringa letta
+     * @return L'istanza condivisa
+     */
+    String condividi(String testo) {
+        String esistente = stringheCondivise.putIfAbsent(testo, testo);
+        return esistente != null ? esistente : testo;
+    }
+
+
+    /**
+     * Flusso di lettura che sostituisce ogni stringa letta con l'istanza condivisa equivalente.
+     */
+    private static final class LetturaCondivisa extends ObjectInputStream {
+
+        private final ModelloPartita modello;
+
+        private LetturaCondivisa(InputStream in, ModelloPartita modello) throws IOException {
+            super(in);
+            this.modello = modello;
+            setObjectInputFilter(GestoreSalvataggi.FILTRO_PARTITA);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            return obj instanceof String ? modello.condividi((String) obj) : obj;
+        }
+    }
+}
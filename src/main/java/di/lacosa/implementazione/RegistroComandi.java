@@ -0,0 +1,84 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.Observer;
+import di.lacosa.tipi.TipoComando;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classe che raccoglie i comandi del gioco registrati come {@link FornitoreComando}.
+ * <p>
+ * I fornitori vengono caricati una sola volta, al primo accesso, tramite {@link ServiceLoader}.
+ * Gli osservatori condivisibili vengono creati al primo utilizzo del comando in una qualsiasi partita
+ * e poi riutilizzati da tutte le altre; la creazione è sicura anche con più partite in parallelo.
+ *
+ * @author fabioMarchitelli
+ */
+public final class RegistroComandi {
+
+    /** Osservatori condivisi tra tutte le partite, creati al primo utilizzo */
+    private static final Map<Class<?>, Observer> OSSERVATORI_CONDIVISI = new ConcurrentHashMap<>();
+
+    private RegistroComandi() {
+    }
+
+    /**
+     * Caricamento pigro e thread-safe dei fornitori, garantito dall'inizializzazione della classe interna.
+     */
+    private static final class Fornitori {
+
+        private static final List<FornitoreComando> ELENCO;
+        private static final EnumMap<TipoComando, List<FornitoreComando>> PER_TIPO = new EnumMap<>(TipoComando.class);
+
+        static {
+            List<FornitoreComando> elenco = new ArrayList<>();
+            for (FornitoreComando fornitore : ServiceLoader.load(FornitoreComando.class, RegistroComandi.class.getClassLoader())) {
+                elenco.add(fornitore);
+                PER_TIPO.computeIfAbsent(fornitore.getTipo(), t -> new ArrayList<>()).add(fornitore);
+            }
+            ELENCO = Collections.unmodifiableList(elenco);
+        }
+    }
+
+    /**
+     * Restituisce tutti i fornitori registrati, nell'ordine del file di servizio.
+     *
+     * @return L'elenco dei fornitori
+     */
+    public static List<FornitoreComando> getFornitori() {
+        return Fornitori.ELENCO;
+    }
+
+    /**
+     * Restituisce i fornitori registrati per il tipo di comando indicato.
+     *
+     * @param tipo Il tipo di comando
+     * @return I fornitori del tipo, eventualmente nessuno
+     */
+    public static List<FornitoreComando> getFornitori(TipoComando tipo) {
+        return Fornitori.PER_TIPO.getOrDefault(tipo, Collections.emptyList());
+    }
+
+    /**
+     * Restituisce l'osservatore del fornitore per la partita indicata: l'istanza condivisa
+     * se il fornitore lo consente, altrimenti una nuova istanza.
+     *
+     * @param fornitore Il fornitore del comando
+     * @param gioco La partita che utilizza il comando
+     * @param finaleListener Listener per gestire la fase finale del gioco
+     * @return L'osservatore del comando, o null se il comando non ha un osservatore
+     */
+    public static Observer getOsservatore(FornitoreComando fornitore, LaCosa gioco, FaseFinaleListener finaleListener) {
+        if (!fornitore.isCondivisibile()) {
+            return fornitore.creaOsservatore(gioco, finaleListener);
+        }
+        return OSSERVATORI_CONDIVISI.computeIfAbsent(fornitore.getClass(), c -> fornitore.creaOsservatore(gioco, finaleListener));
+    }
+}
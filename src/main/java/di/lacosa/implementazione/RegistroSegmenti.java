@@ -0,0 +1,216 @@
+package di.lacosa.implementazione;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registro dell'output di una sessione, condiviso tra il giocatore e gli spettatori.
+ * <p>
+ * Il testo prodotto dalla partita viene pubblicato una sola volta come segmento immutabile
+ * in un anello di {@link #SEGMENTI_MASSIMI} posizioni; ogni segmento conosce la propria posizione
+ * assoluta nel testo, per cui chiunque legga tiene solo un cursore (la posizione del prossimo carattere)
+ * e riceve i segmenti successivi così come sono, senza copie. La pubblicazione costa la creazione
+ * di un segmento e la scrittura del suo riferimento, qualunque sia il numero di lettori;
+ * la lettura non prende lock e non rallenta chi pubblica.
+ * <p>
+ * Vengono conservati i segmenti più recenti entro la capacità in caratteri indicata: un lettore
+ * rimasto indietro riprende dal segmento più vecchio ancora conservato.
+ *
+ * @author fabioMarchitelli
+ */
+public class RegistroSegmenti {
+
+    /**
+     * Numero massimo di segmenti conservati
+     */
+    public static final int SEGMENTI_MASSIMI = 1024;
+
+    private static final int MASCHERA = SEGMENTI_MASSIMI - 1;
+
+    private final int capacitaCaratteri;
+    /** Posizione assoluta del primo carattere pubblicato */
+    private final long inizio;
+    private final AtomicReferenceArray<Segmento> anello = new AtomicReferenceArray<>(SEGMENTI_MASSIMI);
+    /** Sequenza del prossimo segmento: quelli pubblicati e conservati vanno da primo a prossimo - 1 */
+    private volatile long prossimo;
+    private volatile long primo;
+    /** Posizione assoluta dopo l'ultimo carattere pubblicato */
+    private volatile long fine;
+    /** Caratteri dei segmenti conservati; usato solo da chi pubblica */
+    private long caratteriConservati;
+
+    /**
+     * Segmento di testo pubblicato.
+     *
+     * @param sequenza Il numero progressivo del segmento
+     * @param inizio La posizione assoluta del primo carattere
+     * @param testo Il testo
+     */
+    private record Segmento(long sequenza, long inizio, String testo) {
+
+        private long fine() {
+            return inizio + testo.length();
+        }
+    }
+
+    /**
+     * Segmenti letti dal registro.
+     *
+     * @param segmenti I segmenti, nell'ordine di pubblicazione; sono le stringhe pubblicate, non copie
+     * @param cursore La posizione da cui riprendere la lettura
+     */
+    public record Lettura(List<String> segmenti, long cursore) {
+
+        /**
+         * Unisce i segmenti in un unico testo.
+         *
+         * @return Il testo letto
+         */
+        public String testo() {
+            return segmenti.size() == 1 ? segmenti.get(0) : String.join("", segmenti);
+        }
+    }
+
+    /**
+     * Costruttore della classe.
+     *
+     * @param capacitaCaratteri Il numero di caratteri conservati, oltre il quale i segmenti più vecchi vengono scartati
+     */
+    public RegistroSegmenti(int capacitaCaratteri) {
+        this(capacitaCaratteri, 0);
+    }
+
+    /**
+     * Crea un registro il cui primo carattere ha la posizione assoluta indicata, per proseguire
+     * il registro di una sessione trasferita da un altro processo senza invalidare i cursori dei lettori.
+     *
+     * @param capacitaCaratteri Il numero di caratteri conservati, oltre il quale i segmenti più vecchi vengono scartati
+     * @param inizio La posizione assoluta del primo carattere pubblicato
+     */
+    public RegistroSegmenti(int capacitaCaratteri, long inizio) {
+        if (capacitaCaratteri <= 0) {
+            throw new IllegalArgumentException("La capacità deve essere positiva");
+        }
+        if (inizio < 0) {
+            throw new IllegalArgumentException("La posizione iniziale non può essere negativa");
+        }
+        this.capacitaCaratteri = capacitaCaratteri;
+        this.inizio = inizio;
+        this.fine = inizio;
+    }
+
+    /**
+     * Pubblica un segmento di testo. Il testo vuoto viene ignorato.
+     *
+     * @param testo Il testo da pubblicare
+     */
+    public synchronized void pubblica(String testo) {
+        if (testo.isEmpty()) {
+            return;
+        }
+        long sequenza = prossimo;
+        caratteriConservati += testo.length();
+        long vecchio = primo;
+        // Scarta i segmenti più vecchi oltre la capacità; il nuovo segmento resta anche se da solo la supera
+        while (vecchio < sequenza && (caratteriConservati > capacitaCaratteri || sequenza - vecchio >= SEGMENTI_MASSIMI)) {
+            caratteriConservati -= anello.get(posizione(vecchio)).testo().length();
+            anello.set(posizione(vecchio), null);
+            vecchio++;
+        }
+        primo = vecchio;
+        Segmento segmento = new Segmento(sequenza, fine, testo);
+        anello.set(posizione(sequenza), segmento);
+        fine = segmento.fine();
+        prossimo = sequenza + 1;
+    }
+
+    /**
+     * Restituisce i segmenti pubblicati dalla posizione indicata in poi. Se la posizione è già stata
+     * scartata, la lettura parte dal segmento più vecchio conservato; se cade a metà di un segmento,
+     * solo di quel segmento viene restituita la parte finale.
+     *
+     * @param cursore La posizione assoluta da cui leggere
+     * @return I segmenti letti e il cursore per la lettura successiva
+     */
+    public Lettura leggi(long cursore) {
+        while (true) {
+            long ultimo = prossimo;
+            if (ultimo == 0) {
+                return new Lettura(Collections.emptyList(), inizio);
+            }
+            Segmento piuRecente = anello.get(posizione(ultimo - 1));
+            if (piuRecente == null || piuRecente.sequenza() != ultimo - 1) {
+                // L'anello ha fatto un giro completo durante la lettura: si riparte
+                continue;
+            }
+            // I lettori sono di norma vicini alla fine: si risale dai segmenti più recenti
+            List<String> segmenti = new ArrayList<>();
+            for (long sequenza = ultimo - 1; sequenza >= primo; sequenza--) {
+                Segmento segmento = anello.get(posizione(sequenza));
+                if (segmento == null || segmento.sequenza() != sequenza || segmento.fine() <= cursore) {
+                    break;
+                }
+                if (segmento.inizio() >= cursore) {
+                    segmenti.add(segmento.testo());
+                } else {
+                    segmenti.add(segmento.testo().substring((int) (cursore - segmento.inizio())));
+                    break;
+                }
+            }
+            Collections.reverse(segmenti);
+            return new Lettura(segmenti, piuRecente.fine());
+        }
+    }
+
+    /**
+     * Restituisce la posizione assoluta dopo l'ultimo carattere pubblicato.
+     *
+     * @return Il cursore corrente del registro
+     */
+    public long getCursore() {
+        return fine;
+    }
+
+    /**
+     * Crea uno spettatore che legge il registro dal segmento più vecchio conservato.
+     *
+     * @return Lo spettatore
+     */
+    public Spettatore nuovoSpettatore() {
+        return new Spettatore(0);
+    }
+
+    private static int posizione(long sequenza) {
+        return (int) (sequenza & MASCHERA);
+    }
+
+
+    /**
+     * Lettore in sola lettura del registro, con il proprio cursore.
+     */
+    public final class Spettatore {
+
+        private long cursore;
+
+        private Spettatore(long cursore) {
+            this.cursore = cursore;
+        }
+
+        /**
+         * Restituisce i segmenti pubblicati dall'ultima lettura e sposta il cursore dopo di essi.
+         *
+         * @return I segmenti nuovi, eventualmente vuoti
+         */
+        public synchronized List<String> leggi() {
+            Lettura lettura = RegistroSegmenti.this.leggi(cursore);
+            cursore = lettura.cursore();
+            return lettura.segmenti();
+        }
+
+        public synchronized long getCursore() {
+            return cursore;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package di.lacosa.implementazione;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe che distribuisce le sessioni su un insieme fisso di lavoratori (shard), uno per core.
+ * <p>
+ * Ogni sessione viene assegnata a uno shard in base alla sua chiave, tramite un {@link AnelloConsistente}
+ * con {@link #NODI_VIRTUALI} punti per shard: il {@link CicloSessione} creato per la sessione
+ * usa sempre il thread di quello shard, per cui comandi ed eventi a tempo della stessa sessione
+ * vengono eseguiti sempre dallo stesso thread e il suo stato resta nella cache di un solo core.
+ * Con l'anello, cambiare il numero di shard sposta solo una piccola parte delle sessioni.
+ * <p>
+ * La profondità della coda di ogni shard (le sessioni in attesa del suo thread) è disponibile
+ * con {@link #getProfonditaCode()}, per individuare gli shard sovraccarichi.
+ *
+ * @author fabioMarchitelli
+ */
+public class SchedulatoreShard {
+
+    /**
+     * Punti dell'anello assegnati a ogni shard
+     */
+    public static final int NODI_VIRTUALI = 160;
+
+    private final Shard[] shard;
+    /** Anello che assegna le chiavi agli indici degli shard */
+    private final AnelloConsistente<Integer> anello;
+
+    /**
+     * Costruttore della classe. I thread degli shard vengono creati al primo compito.
+     *
+     * @param numeroShard Il numero di shard
+     */
+    public SchedulatoreShard(int numeroShard) {
+        if (numeroShard <= 0) {
+            throw new IllegalArgumentException("Il numero di shard deve essere positivo");
+        }
+        shard = new Shard[numeroShard];
+        for (int i = 0; i < numeroShard; i++) {
+            shard[i] = new Shard(i);
+        }
+
+        List<Integer> indici = new ArrayList<>(numeroShard);
+        for (int i = 0; i < numeroShard; i++) {
+            indici.add(i);
+        }
+        anello = new AnelloConsistente<>(indici, i -> "shard-" + i, NODI_VIRTUALI);
+    }
+
+    /**
+     * Crea lo schedulatore con uno shard per ogni processore disponibile.
+     *
+     * @return Lo schedulatore
+     */
+    public static SchedulatoreShard perProcessori() {
+        return new SchedulatoreShard(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Restituisce lo shard a cui è assegnata la chiave: il primo punto dell'anello
+     * che segue l'hash della chiave.
+     *
+     * @param chiave La chiave della sessione
+     * @return L'indice dello shard
+     */
+    public int getShard(String chiave) {
+        return anello.getIndice(chiave);
+    }
+
+    /**
+     * Crea il ciclo di una sessione, eseguito dal thread dello shard a cui è assegnata la chiave.
+     *
+     * @param chiave La chiave della sessione
+     * @return Il ciclo della sessione
+     */
+    public CicloSessione creaCiclo(String chiave) {
+        return new CicloSessione(getEsecutore(chiave));
+    }
+
+    /**
+     * Restituisce l'esecutore dello shard a cui è assegnata la chiave.
+     *
+     * @param chiave La chiave della sessione
+     * @return L'esecutore dello shard
+     */
+    public Executor getEsecutore(String chiave) {
+        return shard[getShard(chiave)];
+    }
+
+    public int getNumeroShard() {
+        return shard.length;
+    }
+
+    /**
+     * Restituisce il numero di compiti in attesa del thread dello shard indicato.
+     *
+     * @param indice L'indice dello shard
+     * @return La profondità della coda
+     */
+    public int getProfonditaCoda(int indice) {
+        return shard[indice].esecutore.getQueue().size();
+    }
+
+    /**
+     * Restituisce la profondità della coda di ogni shard.
+     *
+     * @return Le profondità, nell'ordine degli shard
+     */
+    public int[] getProfonditaCode() {
+        int[] profondita = new int[shard.length];
+        for (int i = 0; i < shard.length; i++) {
+            profondita[i] = getProfonditaCoda(i);
+        }
+        return profondita;
+    }
+
+    /**
+     * Restituisce il numero di compiti eseguiti dallo shard indicato dalla sua creazione.
+     *
+     * @param indice L'indice dello shard
+     * @return I compiti eseguiti
+     */
+    public long getCompitiEseguiti(int indice) {
+        return shard[indice].eseguiti.get();
+    }
+
+    /**
+     * Ferma i thread degli shard dopo i compiti già accodati.
+     */
+    public void ferma() {
+        for (Shard s : shard) {
+            s.esecutore.shutdown();
+        }
+    }
+
+
+    /**
+     * Uno shard: un thread con la propria coda di compiti.
+     */
+    private static final class Shard implements Executor {
+
+        private final ThreadPoolExecutor esecutore;
+        private final AtomicLong eseguiti = new AtomicLong();
+
+        private Shard(int indice) {
+            esecutore = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "Shard-" + indice);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public void execute(Runnable compito) {
+            esecutore.execute(() -> {
+                eseguiti.incrementAndGet();
+                compito.run();
+            });
+        }
+    }
+}
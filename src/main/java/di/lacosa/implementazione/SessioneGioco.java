@@ -0,0 +1,338 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.FaseFinaleListener;
+import di.lacosa.GestoreSalvataggi;
+import di.lacosa.parser.Parser;
+import di.lacosa.parser.ParserOutput;
+import di.lacosa.tipi.RispostaInAttesa;
+import di.lacosa.tipi.TipoComando;
+import di.lacosa.tipi.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sessione di gioco senza interfaccia grafica.
+ * <p>
+ * Collega una partita {@link LaCosa} a un {@link FrontendTestuale} e interpreta i comandi
+ * come farebbe {@link di.lacosa.Main}, senza finestre né timer Swing: l'input viene prima
+ * consegnato al callback in attesa (dialoghi, codici delle porte) e solo in sua assenza al parser.
+ * Il comando FINE salva la partita se la sessione ha uno slot e la segna come conclusa.
+ * <p>
+ * Comandi, eventi a tempo (es. gli avvertimenti della creatura) e operazioni sulla partita
+ * vengono eseguiti nel {@link CicloSessione} della sessione: lo stato della partita viene modificato
+ * da un solo compito alla volta, senza lock, qualunque sia il thread che invia il comando.
+ * <p>
+ * I comandi passano per un {@link LimitatoreComandi}: quelli inviati oltre il ritmo consentito
+ * attendono il proprio turno prima di entrare nel ciclo, senza essere scartati. Chi esegue i comandi
+ * da un thread condiviso con altre sessioni consulta prima {@link #getAttesaComandoNanos()}
+ * e rimanda il comando invece di attendere.
+ * <p>
+ * Con un {@link DiarioComandi} la sessione registra, nell'ordine di esecuzione, i comandi accettati,
+ * gli eventi a tempo e le presentazioni della stanza, in modo che la partita possa essere riprodotta.
+ *
+ * @author fabioMarchitelli
+ */
+public final class SessioneGioco implements FaseFinaleListener {
+
+    private static volatile Parser parserCondiviso;
+
+    private final LaCosa gioco;
+    private final FrontendTestuale frontend;
+    private final Parser parser;
+    private final CicloSessione ciclo;
+    private volatile LimitatoreComandi limitatore = new LimitatoreComandi();
+    private volatile DiarioComandi diario;
+    private volatile boolean conclusa;
+    private boolean faseFinale;
+
+    /**
+     * Crea una sessione per la partita indicata, già inizializzata o caricata.
+     *
+     * @param gioco La partita da giocare
+     * @param frontend Il frontend che riceverà l'output della partita
+     */
+    public SessioneGioco(LaCosa gioco, FrontendTestuale frontend) {
+        this(gioco, frontend, new CicloSessione());
+    }
+
+    /**
+     * Crea una sessione per la partita indicata, eseguita dal ciclo indicato.
+     *
+     * @param gioco La partita da giocare
+     * @param frontend Il frontend che riceverà l'output della partita
+     * @param ciclo Il ciclo in cui eseguire comandi ed eventi della partita
+     */
+    public SessioneGioco(LaCosa gioco, FrontendTestuale frontend, CicloSessione ciclo) {
+        this.gioco = gioco;
+        this.frontend = frontend;
+        this.parser = getParserCondiviso();
+        this.ciclo = ciclo;
+        gioco.setInterfacciaGioco(frontend);
+        gioco.setEsecutoreEventi(evento -> ciclo.execute(() -> eseguiEvento(evento)));
+        gioco.setObservers(this);
+    }
+
+    /**
+     * Crea una sessione con una nuova partita.
+     *
+     * @return La sessione creata
+     * @throws Exception Se l'inizializzazione della partita fallisce
+     */
+    public static SessioneGioco nuovaPartita() throws Exception {
+        LaCosa gioco = new LaCosa();
+        gioco.inizializza();
+        return new SessioneGioco(gioco, new FrontendTestuale());
+    }
+
+    /**
+     * Mostra la stanza corrente, come all'inizio di una partita.
+     */
+    public void presentaAmbiente() {
+        ciclo.eseguiEAttendi(() -> {
+            annota(DiarioComandi.TipoVoce.AMBIENTE, null);
+            mostraStanzaCorrente();
+        });
+    }
+
+    private void mostraStanzaCorrente() {
+        frontend.scriviInAreaDiTesto("\n Ti trovi in: " + gioco.getStanzaCorrente().getNome());
+        frontend.scriviInAreaDiTesto("\n" + gioco.getStanzaCorrente().getDescrizione());
+        frontend.scriviInAreaDiTesto("\n?> \n");
+        frontend.aggiornaMappa(gioco.getStanzaCorrente().getIdStanza());
+    }
+
+    /**
+     * Interpreta una riga di input del giocatore.
+     *
+     * @param input La riga inserita
+     * @return Il testo prodotto dalla partita in risposta all'input
+     */
+    public String processaComando(String input) {
+        eseguiComando(input);
+        return frontend.prelevaTesto();
+    }
+
+    /**
+     * Interpreta una riga di input del giocatore senza prelevare il testo prodotto,
+     * che resta nel frontend a disposizione di chi lo consegna al giocatore.
+     * Il comando viene eseguito nel ciclo della sessione e il metodo ne attende il termine.
+     * Oltre il ritmo consentito il thread chiamante attende il proprio turno: chi legge i comandi
+     * da una connessione smette così di leggerla finché il comando non è stato eseguito.
+     *
+     * @param input La riga inserita
+     */
+    public void eseguiComando(String input) {
+        if (conclusa || input == null || input.trim().isEmpty()) {
+            return;
+        }
+        LimitatoreComandi limite = limitatore;
+        if (limite != null) {
+            while (!limite.consenti()) {
+                LockSupport.parkNanos(limite.getAttesaNanos());
+            }
+        }
+        ciclo.eseguiEAttendi(() -> interpreta(input));
+    }
+
+    /**
+     * Restituisce quanto deve attendere il prossimo comando per rispettare il ritmo consentito.
+     *
+     * @return L'attesa in nanosecondi, 0 se il comando può essere eseguito subito
+     */
+    public long getAttesaComandoNanos() {
+        LimitatoreComandi limite = limitatore;
+        return limite != null ? limite.getAttesaNanos() : 0;
+    }
+
+    private void interpreta(String input) {
+        if (conclusa) {
+            return;
+        }
+        annota(DiarioComandi.TipoVoce.COMANDO, input);
+        if (frontend.inviaInput(input)) {
+            gioco.getRegistroEventi().fissaIstantaneaSeNecessaria();
+            return;
+        }
+
+        ParserOutput p = parser.parse(input, gioco.getComandi(), gioco.getOggettiVisibili(),
+                gioco.getInventario(), gioco.getPersonaggiVisibili());
+        if (p == null || p.getComando() == null) {
+            frontend.scriviInAreaDiTesto("Non capisco quello che mi vuoi dire.");
+            frontend.scriviInAreaDiTesto("\n?> \n");
+        } else if (p.getComando().getTipo() == TipoComando.FINE) {
+            gestisciUscita();
+        } else {
+            gioco.prossimaMossa(p, System.out);
+        }
+        gioco.getRegistroEventi().fissaIstantaneaSeNecessaria();
+    }
+
+    /**
+     * Esegue un evento a tempo della partita; gli eventi che scadono dopo la conclusione
+     * della sessione vengono scartati.
+     *
+     * @param evento L'evento da eseguire
+     */
+    private void eseguiEvento(Runnable evento) {
+        if (!conclusa) {
+            annota(DiarioComandi.TipoVoce.EVENTO, null);
+            evento.run();
+            gioco.getRegistroEventi().fissaIstantaneaSeNecessaria();
+        }
+    }
+
+    private void annota(DiarioComandi.TipoVoce tipo, String comando) {
+        DiarioComandi corrente = diario;
+        if (corrente != null) {
+            corrente.registra(tipo, comando);
+        }
+    }
+
+    private void gestisciUscita() {
+        if (gioco.isCreaturaCanideAttivata() && !gioco.isCreaturaCanideSconfitta()) {
+            frontend.scriviInAreaDiTesto("\n\nNon puoi uscire in questo momento!\n\n\n?>");
+            return;
+        }
+        int slot = gioco.getSlotCorrente();
+        if (slot > 0 && GestoreSalvataggi.salvaPartita(gioco, slot)) {
+            frontend.scriviInAreaDiTesto("\n\n Partita salvata nello slot " + slot + ".\n\n");
+        } else {
+            frontend.scriviInAreaDiTesto("\n\nGrazie per aver giocato.\n\n");
+        }
+        conclusa = true;
+    }
+
+    /**
+     * Segna l'inizio della fase finale: le sequenze animate non vengono riprodotte
+     * e la sessione si conclude.
+     */
+    @Override
+    public void avviaFaseFinale() {
+        faseFinale = true;
+        conclusa = true;
+        frontend.scriviInAreaDiTesto("\n\n[Fase finale]\n\nGrazie per aver giocato.\n\n");
+    }
+
+    /**
+     * Chiude la sessione quando il giocatore si disconnette, annullando gli avvertimenti
+     * della creatura se era stata attivata, in modo che non sopravvivano alla partita.
+     */
+    public void termina() {
+        conclusa = true;
+        ciclo.execute(gioco::sospendiCreatura);
+    }
+
+    /**
+     * Salva la partita nello slot indicato, attendendo la scrittura su disco.
+     *
+     * @param slot Lo slot in cui salvare (1-3)
+     * @return true se il salvataggio è riuscito
+     */
+    public boolean salva(int slot) {
+        boolean[] salvata = new boolean[1];
+        ciclo.eseguiEAttendi(() -> {
+            gioco.setSlotCorrente(slot);
+            salvata[0] = GestoreSalvataggi.salvaPartita(gioco, slot);
+        });
+        return salvata[0];
+    }
+
+    /**
+     * Stima la memoria trattenuta dalla partita, nel ciclo della sessione per non leggerne lo stato
+     * mentre un comando lo modifica. È un'operazione di amministrazione, non un comando del giocatore.
+     *
+     * @return Il risultato della stima
+     * @see StimaMemoria
+     */
+    public StimaMemoria.Risultato stimaMemoria() {
+        StimaMemoria.Risultato[] risultato = new StimaMemoria.Risultato[1];
+        ciclo.eseguiEAttendi(() -> risultato[0] = gioco.stimaMemoria());
+        return risultato[0];
+    }
+
+    /**
+     * Prepara la sessione all'ibernazione: ferma gli avvertimenti della creatura senza sconfiggerla,
+     * in modo che l'incontro possa riprendere dopo il ripristino.
+     */
+    public void sospendi() {
+        ciclo.eseguiEAttendi(gioco::sospendiCreatura);
+    }
+
+    /**
+     * Riprende una partita ripristinata da un'istantanea: ricrea l'attesa della risposta
+     * del giocatore (dialogo o codice di porta) e riavvia la creatura se l'incontro era in corso.
+     */
+    public void riprendi() {
+        ciclo.eseguiEAttendi(() -> {
+            RispostaInAttesa risposta = gioco.getRispostaInAttesa();
+            if (risposta != null) {
+                gioco.riprendiRispostaInAttesa(risposta);
+            }
+            if (gioco.isCreaturaCanideAttivata() && !gioco.isCreaturaCanideSconfitta()) {
+                gioco.avviaCreatura(frontend);
+            }
+        });
+    }
+
+    public LaCosa getGioco() {
+        return gioco;
+    }
+
+    /**
+     * Imposta il limitatore dei comandi della sessione.
+     *
+     * @param limitatore Il limitatore, o null per non limitare i comandi
+     */
+    public void setLimitatore(LimitatoreComandi limitatore) {
+        this.limitatore = limitatore;
+    }
+
+    public DiarioComandi getDiario() {
+        return diario;
+    }
+
+    /**
+     * Imposta il diario in cui registrare la sessione; gli istanti vanno misurati
+     * con l'{@link LaCosa#getOrologio() orologio} della partita.
+     *
+     * @param diario Il diario, o null per non registrare la sessione
+     */
+    public void setDiario(DiarioComandi diario) {
+        this.diario = diario;
+    }
+
+    public CicloSessione getCiclo() {
+        return ciclo;
+    }
+
+    public FrontendTestuale getFrontend() {
+        return frontend;
+    }
+
+    public boolean isConclusa() {
+        return conclusa;
+    }
+
+    public boolean isFaseFinale() {
+        return faseFinale;
+    }
+
+    /**
+     * Restituisce il parser condiviso da tutte le sessioni, creato alla prima richiesta.
+     * Il parser non ha stato proprio oltre alle stopwords, per cui può essere usato da più thread.
+     */
+    private static Parser getParserCondiviso() {
+        Parser parser = parserCondiviso;
+        if (parser == null) {
+            try {
+                parser = new Parser(Utils.caricaFileInSet(Utils.class.getResourceAsStream("/stopwords")));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossibile leggere le stopwords", e);
+            }
+            parserCondiviso = parser;
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,330 @@
+package di.lacosa.implementazione;
+
+import di.lacosa.Observer;
+import di.lacosa.eventi.EventoDiGioco;
+import di.lacosa.tipi.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classe che stima la memoria occupata da una sessione di gioco {@link LaCosa}.
+ * <p>
+ * La stima percorre lo stato della sessione (stanze, oggetti, personaggi, dialoghi,
+ * comandi, buffer di output e riferimenti all'interfaccia) e somma la dimensione
+ * approssimata di ogni oggetto raggiunto, suddividendola per {@link Categoria}.
+ * Ogni oggetto viene contato una sola volta, anche se raggiungibile da più punti.
+ * <p>
+ * Il modello di calcolo segue il layout tipico di una JVM a 64 bit con riferimenti compressi:
+ * intestazione di 12 byte, riferimenti di 4 byte e allineamento a 8 byte.
+ * La dimensione propria di ogni oggetto è ricavata per riflessione dai campi di istanza
+ * dichiarati dalla sua classe e dalle superclassi, per cui resta corretta quando le classi cambiano.
+ * Le stringhe condivise con altre sessioni vengono comunque contate, per cui il risultato
+ * è un limite superiore della memoria trattenuta dalla singola sessione.
+ * I componenti Swing non vengono percorsi: dell'interfaccia si contano solo i riferimenti
+ * e il testo accumulato nell'area di output.
+ *
+ * @author fabioMarchitelli
+ */
+public class StimaMemoria {
+
+    private static final int INTESTAZIONE = 12;
+    private static final int RIFERIMENTO = 4;
+    private static final int INTESTAZIONE_ARRAY = 16;
+    private static final int ALLINEAMENTO = 8;
+
+    /** Dimensione propria delle istanze di ogni classe, calcolata alla prima richiesta */
+    private static final ClassValue<Long> DIMENSIONI = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> classe) {
+            long campi = 0;
+            for (Class<?> c = classe; c != null; c = c.getSuperclass()) {
+                for (Field campo : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(campo.getModifiers())) {
+                        campi += dimensioneCampo(campo.getType());
+                    }
+                }
+            }
+            return allinea(INTESTAZIONE + campi);
+        }
+    };
+
+    /** Classe dei nodi di HashMap, non pubblica */
+    private static final Class<?> NODO_HASH_MAP = classeInterna("java.util.HashMap$Node");
+
+    /**
+     * Categorie in cui viene suddivisa la memoria stimata.
+     */
+    public enum Categoria {
+        STANZE,
+        OGGETTI,
+        PERSONAGGI,
+        DIALOGHI,
+        COMANDI,
+        BUFFER_OUTPUT,
+        RIFERIMENTI_UI,
+        STATO_SESSIONE
+    }
+
+    private final Map<Object, Boolean> giaContati = new IdentityHashMap<>();
+    private final EnumMap<Categoria, Long> stimati = new EnumMap<>(Categoria.class);
+
+    private StimaMemoria() {
+        for (Categoria categoria : Categoria.values()) {
+            stimati.put(categoria, 0L);
+        }
+    }
+
+    /**
+     * Stima la memoria trattenuta dalla sessione indicata.
+     *
+     * @param gioco La sessione da misurare
+     * @return Il risultato della stima, suddiviso per categoria
+     */
+    public static Risultato stima(LaCosa gioco) {
+        StimaMemoria stima = new StimaMemoria();
+        stima.percorri(gioco);
+        return new Risultato(stima.stimati);
+    }
+
+    private void percorri(LaCosa gioco) {
+        aggiungi(Categoria.STATO_SESSIONE, superficiale(gioco));
+
+        aggiungi(Categoria.STANZE, collezione(gioco.getStanze()));
+        for (Stanza stanza : gioco.getStanze()) {
+            if (nuovo(stanza)) {
+                aggiungi(Categoria.STANZE, superficiale(stanza)
+                        + stringa(stanza.getNome()) + stringa(stanza.getDescrizione())
+                        + stringa(stanza.getTestoOsservazione()) + stringa(stanza.getTestoOsservazioneAgg())
+                        + stringa(stanza.getCodicePorta()));
+            }
+        }
+
+        aggiungi(Categoria.OGGETTI, collezione(gioco.getOggetti()) + collezione(gioco.getInventario()));
+        for (Oggetto oggetto : gioco.getOggetti()) {
+            aggiungi(Categoria.OGGETTI, stimaOggetto(oggetto));
+        }
+        for (Oggetto oggetto : gioco.getInventario()) {
+            aggiungi(Categoria.OGGETTI, stimaOggetto(oggetto));
+        }
+
+        aggiungi(Categoria.PERSONAGGI, collezione(gioco.getPersonaggi()));
+        for (Personaggio personaggio : gioco.getPersonaggi()) {
+            if (nuovo(personaggio)) {
+                aggiungi(Categoria.PERSONAGGI, superficiale(personaggio)
+                        + stringa(personaggio.getNome()) + insiemeDiStringhe(personaggio.getAliases()));
+            }
+        }
+
+        aggiungi(Categoria.DIALOGHI, collezione(gioco.getDialoghi()) + collezione(gioco.getRisposte()));
+        for (DialogoGiocatore dialogo : gioco.getDialoghi()) {
+            if (nuovo(dialogo)) {
+                aggiungi(Categoria.DIALOGHI, superficiale(dialogo) + stringa(dialogo.getTesto()));
+            }
+        }
+        for (RispostaPersonaggio risposta : gioco.getRisposte()) {
+            if (nuovo(risposta)) {
+                aggiungi(Categoria.DIALOGHI, superficiale(risposta) + stringa(risposta.getTesto()));
+            }
+        }
+
+        aggiungi(Categoria.COMANDI, collezione(gioco.getComandi()));
+        for (Comando comando : gioco.getComandi()) {
+            if (nuovo(comando)) {
+                aggiungi(Categoria.COMANDI, superficiale(comando)
+                        + stringa(comando.getNome()) + insiemeDiStringhe(comando.getAlias()));
+            }
+        }
+
+        aggiungi(Categoria.BUFFER_OUTPUT, superficiale(gioco.getBufferOutput())
+                + array(2L * gioco.getBufferOutput().getCapacita())
+                + array(2L * 4 * Math.max(8, gioco.getBufferOutput().getNumeroSegmenti())));
+        if (gioco.getInterfacciaGioco() != null) {
+            // Il documento Swing conserva il testo come array di caratteri UTF-16
+            aggiungi(Categoria.BUFFER_OUTPUT, array(2L * gioco.getInterfacciaGioco().getLunghezzaAreaDiTesto()));
+        }
+
+        List<Observer> elenco = gioco.getOsservatori();
+        int osservatori = elenco.size();
+        aggiungi(Categoria.STATO_SESSIONE, array((long) RIFERIMENTO * osservatori));
+        for (Observer osservatore : elenco) {
+            if (nuovo(osservatore)) {
+                aggiungi(Categoria.STATO_SESSIONE, superficiale(osservatore));
+            }
+        }
+        aggiungi(Categoria.STATO_SESSIONE, superficiale(gioco.getRegistroEventi())
+                + collezione(Collections.nCopies(gioco.getRegistroEventi().getNumeroEventiInMemoria(), 0))
+                + (gioco.getRegistroEventi().getPuntoIstantanea() > 0 ? array(gioco.getRegistroEventi().getDimensioneIstantanea()) : 0));
+        for (EventoDiGioco evento : gioco.getRegistroEventi().getEventiDa(gioco.getRegistroEventi().getPuntoIstantanea())) {
+            aggiungi(Categoria.STATO_SESSIONE, superficiale(evento));
+        }
+
+        // Ogni osservatore con interfaccia e la sessione stessa trattengono un riferimento all'interfaccia grafica
+        aggiungi(Categoria.RIFERIMENTI_UI, (long) RIFERIMENTO * (gioco.getInterfacciaGioco() != null ? osservatori + 1 : 0));
+    }
+
+    private long stimaOggetto(Oggetto oggetto) {
+        if (!nuovo(oggetto)) {
+            return 0;
+        }
+        long dimensione = superficiale(oggetto)
+                + stringa(oggetto.getNome()) + stringa(oggetto.getDescrizione()) + insiemeDiStringhe(oggetto.getAlias());
+        if (oggetto instanceof OggettoLeggibile) {
+            dimensione += stringa(((OggettoLeggibile) oggetto).getTesto());
+        } else if (oggetto instanceof OggettoLeggibileNonRaccoglibile) {
+            dimensione += stringa(((OggettoLeggibileNonRaccoglibile) oggetto).getTesto());
+        }
+        return dimensione;
+    }
+
+    private boolean nuovo(Object o) {
+        return o != null && giaContati.put(o, Boolean.TRUE) == null;
+    }
+
+    private void aggiungi(Categoria categoria, long dimensione) {
+        stimati.merge(categoria, dimensione, Long::sum);
+    }
+
+    private static long allinea(long dimensione) {
+        return (dimensione + ALLINEAMENTO - 1) / ALLINEAMENTO * ALLINEAMENTO;
+    }
+
+    /**
+     * Restituisce la dimensione propria dell'oggetto, senza gli oggetti che referenzia.
+     */
+    private static long superficiale(Object o) {
+        return DIMENSIONI.get(o.getClass());
+    }
+
+    private static long superficiale(Class<?> classe) {
+        return DIMENSIONI.get(classe);
+    }
+
+    private static int dimensioneCampo(Class<?> tipo) {
+        if (!tipo.isPrimitive()) {
+            return RIFERIMENTO;
+        }
+        if (tipo == long.class || tipo == double.class) {
+            return 8;
+        }
+        if (tipo == int.class || tipo == float.class) {
+            return 4;
+        }
+        if (tipo == short.class || tipo == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static Class<?> classeInterna(String nome) {
+        try {
+            return Class.forName(nome);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static long array(long contenuto) {
+        return allinea(INTESTAZIONE_ARRAY + contenuto);
+    }
+
+    /**
+     * Stima una stringa con le stringhe compatte: un byte per carattere se tutti i caratteri
+     * rientrano in Latin-1, due byte per carattere altrimenti.
+     */
+    private long stringa(String s) {
+        if (!nuovo(s)) {
+            return 0;
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) {
+            latin1 = s.charAt(i) <= 0xFF;
+        }
+        return superficiale(String.class) + array(latin1 ? s.length() : 2L * s.length());
+    }
+
+    private long insiemeDiStringhe(Set<String> insieme) {
+        if (insieme == null) {
+            return 0;
+        }
+        long dimensione = collezione(insieme);
+        for (String s : insieme) {
+            dimensione += stringa(s);
+        }
+        return dimensione;
+    }
+
+    /**
+     * Stima la struttura di una collezione, senza gli elementi: per gli insiemi (basati su HashMap)
+     * include tabella e nodi, per le liste l'array di supporto.
+     */
+    private long collezione(Collection<?> collezione) {
+        if (!nuovo(collezione)) {
+            return 0;
+        }
+        int elementi = collezione.size();
+        if (collezione instanceof Set) {
+            int capacita = Integer.highestOneBit(Math.max(1, (int) (elementi / 0.75f)) * 2 - 1);
+            return superficiale(HashSet.class) + superficiale(HashMap.class) + array((long) RIFERIMENTO * Math.max(16, capacita))
+                    + (long) elementi * superficiale(NODO_HASH_MAP);
+        }
+        return superficiale(ArrayList.class) + array((long) RIFERIMENTO * elementi);
+    }
+
+
+    /**
+     * Risultato di una stima: byte stimati per categoria e totale.
+     */
+    public static final class Risultato {
+
+        private final Map<Categoria, Long> perCategoria;
+        private final long totale;
+
+        private Risultato(EnumMap<Categoria, Long> perCategoria) {
+            this.perCategoria = Collections.unmodifiableMap(new EnumMap<>(perCategoria));
+            long somma = 0;
+            for (long valore : perCategoria.values()) {
+                somma += valore;
+            }
+            this.totale = somma;
+        }
+
+        public Map<Categoria, Long> getPerCategoria() {
+            return perCategoria;
+        }
+
+        public long getByte(Categoria categoria) {
+            return perCategoria.get(categoria);
+        }
+
+        public long getTotale() {
+            return totale;
+        }
+
+        /**
+         * Restituisce il resoconto testuale della stima, una riga per categoria.
+         *
+         * @return Il resoconto della memoria stimata
+         */
+        @Override
+        public String toString() {
+            StringBuilder msg = new StringBuilder("Memoria stimata della sessione:\n\n");
+            for (Map.Entry<Categoria, Long> voce : perCategoria.entrySet()) {
+                msg.append(String.format("%-16s %10d byte%n", voce.getKey(), voce.getValue()));
+            }
+            msg.append("----------------------------------\n");
+            msg.append(String.format("%-16s %10d byte", "TOTALE", totale));
+            return msg.toString();
+        }
+    }
+}
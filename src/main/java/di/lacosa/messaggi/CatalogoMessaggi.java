@@ -0,0 +1,75 @@
+package di.lacosa.messaggi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Classe che carica il pacchetto di lingua dei messaggi.
+ * <p>
+ * Il pacchetto viene letto una sola volta, al primo messaggio richiesto, dalla risorsa
+ * {@code messaggi/messaggi_<lingua>.properties} (codifica UTF-8). La lingua è indicata dalla
+ * proprietà di sistema {@value #PROPRIETA_LINGUA} e, se assente, è l'italiano.
+ * Tutti i testi vengono subito scomposti in {@link ModelloMessaggio}; un messaggio mancante
+ * nel pacchetto viene segnalato al caricamento, non al primo utilizzo.
+ *
+ * @author fabioMarchitelli
+ */
+public final class CatalogoMessaggi {
+
+    /** Proprietà di sistema con il codice della lingua dei messaggi */
+    public static final String PROPRIETA_LINGUA = "lacosa.lingua";
+
+    private static final String LINGUA_PREDEFINITA = "it";
+
+    private CatalogoMessaggi() {
+    }
+
+    /**
+     * Caricamento pigro e thread-safe, garantito dall'inizializzazione della classe interna.
+     */
+    private static final class Modelli {
+
+        private static final ModelloMessaggio[] PER_MESSAGGIO = carica(System.getProperty(PROPRIETA_LINGUA, LINGUA_PREDEFINITA));
+    }
+
+    static ModelloMessaggio getModello(Messaggio messaggio) {
+        return Modelli.PER_MESSAGGIO[messaggio.ordinal()];
+    }
+
+    /**
+     * Legge il pacchetto della lingua indicata e ne scompone tutti i messaggi.
+     *
+     * @param lingua Il codice della lingua
+     * @return I modelli, indicizzati per ordinale del messaggio
+     * @throws IllegalStateException Se il pacchetto non esiste, non è leggibile o è incompleto
+     */
+    private static ModelloMessaggio[] carica(String lingua) {
+        String risorsa = "/messaggi/messaggi_" + lingua + ".properties";
+        Properties testi = new Properties();
+        try (InputStream inputStream = CatalogoMessaggi.class.getResourceAsStream(risorsa)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Pacchetto di lingua non trovato: " + risorsa);
+            }
+            try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+                testi.load(reader);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossibile leggere il pacchetto di lingua: " + risorsa, e);
+        }
+
+        Messaggio[] messaggi = Messaggio.values();
+        ModelloMessaggio[] modelli = new ModelloMessaggio[messaggi.length];
+        for (Messaggio messaggio : messaggi) {
+            String testo = testi.getProperty(messaggio.getChiave());
+            if (testo == null) {
+                throw new IllegalStateException("Messaggio " + messaggio.getChiave() + " mancante in " + risorsa);
+            }
+            modelli[messaggio.ordinal()] = new ModelloMessaggio(testo);
+        }
+        return modelli;
+    }
+}
@@ -0,0 +1,157 @@
+package di.lacosa.messaggi;
+
+/**
+ * Enum che elenca i messaggi del catalogo usati nelle risposte degli osservatori.
+ * <p>
+ * Ogni messaggio è associato a una chiave del pacchetto di lingua caricato da {@link CatalogoMessaggi};
+ * il testo non compare nel codice, per cui è possibile cambiare lingua senza modificare gli osservatori.
+ * Gli argomenti indicati tra parentesi corrispondono ai segnaposto del testo.
+ *
+ * @author fabioMarchitelli
+ */
+public enum Messaggio {
+
+    INVENTARIO_NON_VALIDO("inventario.non_valido"),
+    INVENTARIO_VUOTO("inventario.vuoto"),
+    INVENTARIO_INTESTAZIONE("inventario.intestazione"),
+    /** (nome dell'oggetto) */
+    INVENTARIO_VOCE("inventario.voce"),
+
+    OSSERVA_NON_VALIDO("osserva.non_valido"),
+    OSSERVA_BUIO("osserva.buio"),
+    /** (testo dell'osservazione) */
+    OSSERVA_TESTO("osserva.testo"),
+    OSSERVA_NULLA("osserva.nulla"),
+
+    ESAMINA_NON_IDENTIFICATO("esamina.non_identificato"),
+    ESAMINA_NULLA("esamina.nulla"),
+    ESAMINA_BUIO("esamina.buio"),
+    /** (descrizione dell'oggetto) */
+    ESAMINA_DESCRIZIONE("esamina.descrizione"),
+    ESAMINA_CREATURA_ATTIVATA("esamina.creatura.attivata"),
+    ESAMINA_CREATURA_PALA("esamina.creatura.pala"),
+    ESAMINA_CREATURA_OSSA("esamina.creatura.ossa"),
+
+    RACCOGLI_NON_IDENTIFICATO("raccogli.non_identificato"),
+    RACCOGLI_NON_PRESENTE("raccogli.non_presente"),
+    RACCOGLI_NON_RACCOGLIBILE("raccogli.non_raccoglibile"),
+    RACCOGLI_NON_ORA("raccogli.non_ora"),
+    /** (nome dell'oggetto) */
+    RACCOGLI_RACCOLTO("raccogli.raccolto"),
+
+    LETTURA_NON_IDENTIFICATO("lettura.non_identificato"),
+    LETTURA_NULLA("lettura.nulla"),
+    /** (nome dell'oggetto) */
+    LETTURA_IN_CORSO("lettura.in_corso"),
+
+    SPARO_BERSAGLIO_NON_IDENTIFICATO("sparo.bersaglio_non_identificato"),
+    SPARO_BERSAGLIO_NON_TROVATO("sparo.bersaglio_non_trovato"),
+    /** (nome del bersaglio) */
+    SPARO_NON_PUOI_SPARARE("sparo.non_puoi_sparare"),
+    SPARO_CANIDE_PRIMO_COLPO("sparo.canide.primo_colpo"),
+    SPARO_CANIDE_SECONDO_COLPO("sparo.canide.secondo_colpo"),
+    SPARO_CANIDE_TERZO_COLPO("sparo.canide.terzo_colpo"),
+    SPARO_CANIDE_COLPO_FINALE("sparo.canide.colpo_finale"),
+    SPARO_CANIDE_GIA_MORTO("sparo.canide.gia_morto"),
+
+    SALVA_NON_VALIDO("salva.non_valido"),
+    SALVA_BLOCCATO("salva.bloccato"),
+    SALVA_INCOMPATIBILE("salva.incompatibile"),
+    SALVA_NESSUNO_SLOT("salva.nessuno_slot"),
+    /** (numero dello slot) */
+    SALVA_ESEGUITO("salva.eseguito"),
+    SALVA_ERRORE("salva.errore"),
+
+    POSIZIONE_SENZA_DIREZIONE("posizione.senza_direzione"),
+    POSIZIONE_DIREZIONE_NON_VALIDA("posizione.direzione_non_valida"),
+    POSIZIONE_NESSUNA_STANZA("posizione.nessuna_stanza"),
+    POSIZIONE_USCITA_NEGATA("posizione.uscita_negata"),
+    POSIZIONE_BLOCCATA_DALLA_CREATURA("posizione.bloccata_dalla_creatura"),
+    POSIZIONE_TORCIA_DISATTIVATA("posizione.torcia_disattivata"),
+    POSIZIONE_PORTA_BLOCCATA("posizione.porta.bloccata"),
+    POSIZIONE_PORTA_SBLOCCATA("posizione.porta.sbloccata"),
+    POSIZIONE_PORTA_CODICE_ERRATO("posizione.porta.codice_errato"),
+    /** (nome della stanza) */
+    POSIZIONE_STANZA_RAGGIUNTA("posizione.stanza_raggiunta"),
+    POSIZIONE_GASLY_OGGETTI_MANCANTI("posizione.gasly.oggetti_mancanti"),
+    POSIZIONE_GASLY_SPARO("posizione.gasly.sparo"),
+    POSIZIONE_GASLY_ARMATO("posizione.gasly.armato"),
+
+    DIALOGO_SENZA_INTERLOCUTORE("dialogo.senza_interlocutore"),
+    DIALOGO_INTERLOCUTORE_NON_TROVATO("dialogo.interlocutore_non_trovato"),
+    DIALOGO_PERSONAGGIO_NON_TROVATO("dialogo.personaggio_non_trovato"),
+    DIALOGO_NULLA_DA_DIRE("dialogo.nulla_da_dire"),
+    DIALOGO_OPZIONI("dialogo.opzioni"),
+    DIALOGO_PROMPT("dialogo.prompt"),
+    DIALOGO_INPUT_NON_VALIDO("dialogo.input_non_valido"),
+    /** (numero di opzioni disponibili) */
+    DIALOGO_SCELTA_NON_VALIDA("dialogo.scelta_non_valida"),
+    /** (nome del personaggio, testo della risposta) */
+    DIALOGO_RISPOSTA("dialogo.risposta"),
+    DIALOGO_TERMINATO("dialogo.terminato"),
+
+    ATTIVA_NON_IDENTIFICATO("attiva.non_identificato"),
+    ATTIVA_NON_ATTIVABILE("attiva.non_attivabile"),
+    ATTIVA_TORCIA_INUTILE("attiva.torcia.inutile"),
+    ATTIVA_TORCIA_ACCESA("attiva.torcia.accesa"),
+    ATTIVA_TORCIA_GIA_ACCESA("attiva.torcia.gia_accesa"),
+
+    DISATTIVA_NON_IDENTIFICATO("disattiva.non_identificato"),
+    DISATTIVA_NON_DISATTIVABILE("disattiva.non_disattivabile"),
+    DISATTIVA_TORCIA_CREATURA("disattiva.torcia.creatura"),
+    DISATTIVA_TORCIA_BUIO("disattiva.torcia.buio"),
+    DISATTIVA_TORCIA_SPENTA("disattiva.torcia.spenta"),
+    DISATTIVA_TORCIA_NON_ACCESA("disattiva.torcia.non_accesa"),
+
+    USA_NON_IDENTIFICATO("usa.non_identificato"),
+    USA_NON_UTILIZZABILE("usa.non_utilizzabile"),
+    USA_PALA_SERRA("usa.pala.serra"),
+    USA_RICETRASMETTITORE("usa.ricetrasmettitore"),
+
+    AIUTO_TITOLO("aiuto.titolo"),
+    AIUTO_IN_CORSO("aiuto.in_corso");
+
+    private final String chiave;
+
+    Messaggio(String chiave) {
+        this.chiave = chiave;
+    }
+
+    /**
+     * @return La chiave del messaggio nel pacchetto di lingua
+     */
+    public String getChiave() {
+        return chiave;
+    }
+
+    /**
+     * @return Il modello del messaggio nella lingua corrente
+     */
+    public ModelloMessaggio getModello() {
+        return CatalogoMessaggi.getModello(this);
+    }
+
+    /**
+     * @return Il testo del messaggio nella lingua corrente, per chi scrive direttamente nell'interfaccia
+     */
+    public String testo() {
+        return getModello().componi(null, null);
+    }
+
+    /**
+     * @param primo Il valore del segnaposto {0}
+     * @return Il testo del messaggio nella lingua corrente
+     */
+    public String testo(CharSequence primo) {
+        return getModello().componi(primo, null);
+    }
+
+    /**
+     * @param primo Il valore del segnaposto {0}
+     * @param secondo Il valore del segnaposto {1}
+     * @return Il testo del messaggio nella lingua corrente
+     */
+    public String testo(CharSequence primo, CharSequence secondo) {
+        return getModello().componi(primo, secondo);
+    }
+}
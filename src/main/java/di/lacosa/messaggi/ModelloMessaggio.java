@@ -0,0 +1,111 @@
+package di.lacosa.messaggi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classe che rappresenta un messaggio del catalogo già scomposto in parti.
+ * <p>
+ * Il testo del messaggio può contenere segnaposto nella forma {@code {0}}, {@code {1}}, ...
+ * Alla creazione il testo viene diviso in parti letterali e indici dei segnaposto, in modo che
+ * la composizione del messaggio si limiti a copiare le parti e gli argomenti, senza analizzare
+ * di nuovo il testo e senza creare stringhe intermedie.
+ *
+ * @author fabioMarchitelli
+ */
+public final class ModelloMessaggio {
+
+    /** Parti letterali: una in più rispetto ai segnaposto (eventualmente vuote) */
+    private final String[] parti;
+
+    /** Indice dell'argomento da inserire dopo ciascuna parte letterale */
+    private final int[] segnaposto;
+
+    /**
+     * Crea il modello scomponendo il testo indicato.
+     *
+     * @param testo Il testo del messaggio
+     * @throws IllegalArgumentException Se un segnaposto non è chiuso o non contiene un indice valido
+     */
+    public ModelloMessaggio(String testo) {
+        List<String> parti = new ArrayList<>();
+        List<Integer> segnaposto = new ArrayList<>();
+        int inizio = 0;
+        int apertura = testo.indexOf('{');
+        while (apertura != -1) {
+            int chiusura = testo.indexOf('}', apertura);
+            if (chiusura == -1) {
+                throw new IllegalArgumentException("Segnaposto non chiuso nel messaggio: " + testo);
+            }
+            String indice = testo.substring(apertura + 1, chiusura);
+            if (!indice.matches("\\d")) {
+                // Le parentesi graffe senza indice fanno parte del testo (es. i pensieri del protagonista)
+                apertura = testo.indexOf('{', apertura + 1);
+                continue;
+            }
+            parti.add(testo.substring(inizio, apertura));
+            segnaposto.add(Integer.parseInt(indice));
+            inizio = chiusura + 1;
+            apertura = testo.indexOf('{', inizio);
+        }
+        parti.add(testo.substring(inizio));
+
+        this.parti = parti.toArray(new String[0]);
+        this.segnaposto = new int[segnaposto.size()];
+        for (int i = 0; i < this.segnaposto.length; i++) {
+            this.segnaposto[i] = segnaposto.get(i);
+        }
+    }
+
+    /**
+     * @return Il numero di argomenti richiesti dal messaggio
+     */
+    public int getNumeroArgomenti() {
+        int numero = 0;
+        for (int indice : segnaposto) {
+            numero = Math.max(numero, indice + 1);
+        }
+        return numero;
+    }
+
+    /**
+     * @return Il numero di segnaposto nel testo
+     */
+    public int getNumeroSegnaposto() {
+        return segnaposto.length;
+    }
+
+    /**
+     * @param i L'indice della parte, da 0 al numero di segnaposto compreso
+     * @return La parte letterale che precede il segnaposto i (l'ultima chiude il messaggio)
+     */
+    public String getParte(int i) {
+        return parti[i];
+    }
+
+    /**
+     * @param i L'indice del segnaposto nel testo
+     * @return L'indice dell'argomento da inserire
+     */
+    public int getSegnaposto(int i) {
+        return segnaposto[i];
+    }
+
+    /**
+     * Compone il messaggio in una nuova stringa, per chi non scrive in un buffer di output.
+     *
+     * @param primo Il valore del segnaposto {0}, o null se il messaggio non ha argomenti
+     * @param secondo Il valore del segnaposto {1}, o null se il messaggio ne ha al più uno
+     * @return Il testo del messaggio con gli argomenti inseriti
+     */
+    public String componi(CharSequence primo, CharSequence secondo) {
+        if (segnaposto.length == 0) {
+            return parti[0];
+        }
+        StringBuilder testo = new StringBuilder();
+        for (int i = 0; i < segnaposto.length; i++) {
+            testo.append(parti[i]).append(segnaposto[i] == 0 ? primo : secondo);
+        }
+        return testo.append(parti[segnaposto.length]).toString();
+    }
+}
@@ -0,0 +1,46 @@
+package di.lacosa.tipi;
+
+/**
+ * Enum che rappresenta i flag booleani che descrivono l'avanzamento della partita.
+ * Permette di riferirsi in modo uniforme agli stati di gioco, ad esempio negli
+ * eventi di gioco e nel tracciamento delle modifiche.
+ *
+ * @author fabioMarchitelli
+ */
+public enum FlagDiGioco {
+
+    /**
+     * La torcia del giocatore è accesa
+     */
+    TORCIA_ACCESA,
+
+    /**
+     * La creatura del canile si è risvegliata
+     */
+    CREATURA_CANIDE_ATTIVATA,
+
+    /**
+     * La creatura del canile è stata uccisa
+     */
+    CREATURA_CANIDE_SCONFITTA,
+
+    /**
+     * Il dottor Gasly ha sparato al giocatore dalla Sala Comunicazioni
+     */
+    PRIMA_AZIONE_GASLY,
+
+    /**
+     * Il giocatore ha convinto il dottor Gasly a farlo entrare
+     */
+    SECONDA_AZIONE_GASLY,
+
+    /**
+     * Terza fase dell'interazione con il dottor Gasly
+     */
+    TERZA_AZIONE_GASLY,
+
+    /**
+     * Il terreno della serra è stato scavato
+     */
+    TERRENO_SCAVATO
+}
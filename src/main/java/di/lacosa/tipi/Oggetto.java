@@ -19,6 +19,11 @@ public abstract class Oggetto implements Serializable {
     private String descrizione;
     private Set<String> alias;
     private int id_stanza;
+    private RegolaVisibilita regolaVisibilita = RegolaVisibilita.SEMPRE_VISIBILE;
+    private int intensitaLuce;
+    // Gli inizializzatori non vengono eseguiti in deserializzazione: vale false solo
+    // negli oggetti letti da salvataggi precedenti all'introduzione dell'intensità di luce
+    private boolean luceRegistrata = true;
 
     public Oggetto(int id, String nome) {
         this.id = id;
@@ -75,6 +80,65 @@ public abstract class Oggetto implements Serializable {
         this.id_stanza = id_stanza;
     }
 
+    /**
+     * Restituisce la regola di visibilità dell'oggetto.
+     * I salvataggi precedenti all'introduzione della regola non la contengono,
+     * per cui in sua assenza l'oggetto viene considerato sempre visibile.
+     *
+     * @return La regola di visibilità dell'oggetto
+     */
+    public RegolaVisibilita getRegolaVisibilita() {
+        return regolaVisibilita != null ? regolaVisibilita : RegolaVisibilita.SEMPRE_VISIBILE;
+    }
+
+    public void setRegolaVisibilita(RegolaVisibilita regolaVisibilita) {
+        this.regolaVisibilita = regolaVisibilita;
+    }
+
+    /**
+     * Restituisce l'intensità della luce che l'oggetto è in grado di emettere,
+     * assegnata dal contenuto del gioco.
+     *
+     * @return L'intensità di luce dell'oggetto (0 se non è una sorgente di luce)
+     */
+    public int getIntensitaLuce() {
+        return intensitaLuce;
+    }
+
+    public void setIntensitaLuce(int intensitaLuce) {
+        this.intensitaLuce = intensitaLuce;
+        this.luceRegistrata = true;
+    }
+
+    /**
+     * Indica se l'intensità di luce è stata registrata nell'oggetto, ovvero se l'oggetto
+     * non proviene da un salvataggio precedente all'introduzione della proprietà.
+     *
+     * @return true se l'intensità di luce è registrata, false altrimenti
+     */
+    protected boolean isLuceRegistrata() {
+        return luceRegistrata;
+    }
+
+    /**
+     * Indica se l'oggetto è una sorgente di luce.
+     *
+     * @return true se l'oggetto può emettere luce, false altrimenti
+     */
+    public boolean isSorgenteLuce() {
+        return getIntensitaLuce() > 0;
+    }
+
+    /**
+     * Restituisce la quantità di luce emessa in questo momento dall'oggetto.
+     * Un oggetto generico emette sempre tutta la propria intensità di luce.
+     *
+     * @return La luce emessa (0 se l'oggetto non illumina)
+     */
+    public int getLuceEmessa() {
+        return getIntensitaLuce();
+    }
+
     @Override
     public int hashCode() {
         int hash = 5;
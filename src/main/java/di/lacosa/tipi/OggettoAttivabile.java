@@ -15,6 +15,9 @@ public class OggettoAttivabile extends OggettoRaccoglibile {
 
     private static final long serialVersionUID = 6L;
 
+    /** Intensità di luce degli oggetti attivabili letti da salvataggi che non la registrano */
+    public static final int INTENSITA_LUCE = 1;
+
     boolean attivo = false;
 
     public OggettoAttivabile(int id, String nome, String descrizione, Set <String> alias, int id_stanza) {
@@ -29,4 +32,25 @@ public class OggettoAttivabile extends OggettoRaccoglibile {
     public void setAttivo(boolean attivo) {
         this.attivo = attivo;
     }
+
+    /**
+     * Nei salvataggi che non registrano l'intensità di luce ogni oggetto attivabile
+     * era considerato una sorgente di luce: il comportamento viene mantenuto.
+     *
+     * @return L'intensità di luce dell'oggetto
+     */
+    @Override
+    public int getIntensitaLuce() {
+        return isLuceRegistrata() ? super.getIntensitaLuce() : INTENSITA_LUCE;
+    }
+
+    /**
+     * Un oggetto attivabile illumina l'ambiente solo quando è attivo.
+     *
+     * @return L'intensità di luce se l'oggetto è attivo, 0 altrimenti
+     */
+    @Override
+    public int getLuceEmessa() {
+        return attivo ? getIntensitaLuce() : 0;
+    }
 }
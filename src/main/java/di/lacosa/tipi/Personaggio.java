@@ -1,6 +1,7 @@
 package di.lacosa.tipi;
 
 import di.lacosa.DescrizioneGioco;
+import di.lacosa.eventi.EventoDiGioco;
 
 import java.io.Serializable;
 import java.util.Set;
@@ -102,7 +103,7 @@ public class Personaggio implements Serializable {
 
         if (interazioneAvvenuta) {
             if (this.nome.equalsIgnoreCase("Gasly")) {
-                descrizione.setSecondaAzioneGaslyAttivata(true);
+                descrizione.applicaEvento(new EventoDiGioco.FlagCambiato(FlagDiGioco.SECONDA_AZIONE_GASLY, true));
             }
         }
     }
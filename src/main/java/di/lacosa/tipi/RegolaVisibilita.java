@@ -0,0 +1,20 @@
+package di.lacosa.tipi;
+
+/**
+ * Enum che rappresenta le regole con cui un oggetto può essere percepito dal giocatore
+ * all'interno di una stanza, in funzione del livello di luce presente.
+ *
+ * @author fabioMarchitelli
+ */
+public enum RegolaVisibilita {
+
+    /**
+     * L'oggetto è sempre percepibile, indipendentemente dalla luce presente nella stanza
+     */
+    SEMPRE_VISIBILE,
+
+    /**
+     * L'oggetto è percepibile solo se la stanza è illuminata (dalla stanza stessa o da una sorgente di luce)
+     */
+    RICHIEDE_LUCE
+}
@@ -0,0 +1,51 @@
+package di.lacosa.tipi;
+
+import java.io.Serializable;
+
+/**
+ * Interfaccia che descrive la risposta che la partita sta aspettando dal giocatore,
+ * quando l'input non va interpretato come comando (dialoghi, codici delle porte).
+ * <p>
+ * Il callback registrato nell'interfaccia non è serializzabile; questa descrizione contiene
+ * solo identificativi, per cui può essere salvata insieme alla partita e usata per ricreare
+ * il callback dopo il ripristino, tramite l'osservatore che gestisce il {@link #getTipoComando() comando}
+ * che l'ha originato.
+ *
+ * @author fabioMarchitelli
+ */
+public sealed interface RispostaInAttesa extends Serializable {
+
+    /**
+     * Restituisce il tipo del comando il cui osservatore sa riprendere l'attesa.
+     *
+     * @return Il tipo di comando
+     */
+    TipoComando getTipoComando();
+
+    /**
+     * Il giocatore deve scegliere un'opzione di dialogo.
+     *
+     * @param idPersonaggio ID dell'interlocutore
+     * @param nodo Il nodo corrente del dialogo
+     */
+    record Dialogo(int idPersonaggio, int nodo) implements RispostaInAttesa {
+
+        @Override
+        public TipoComando getTipoComando() {
+            return TipoComando.PARLA;
+        }
+    }
+
+    /**
+     * Il giocatore deve inserire il codice di una porta bloccata.
+     *
+     * @param idStanza ID della stanza oltre la porta
+     */
+    record CodicePorta(int idStanza) implements RispostaInAttesa {
+
+        @Override
+        public TipoComando getTipoComando() {
+            return TipoComando.VAI;
+        }
+    }
+}
@@ -18,6 +18,13 @@ import java.io.Serializable;
 public class Stanza implements Serializable {
 
     private static final long serialVersionUID = 13L;
+
+    /** Livello di luce di una stanza completamente buia */
+    public static final int BUIO = 0;
+
+    /** Livello di luce di una stanza illuminata di per sé */
+    public static final int LUCE_AMBIENTALE = 1;
+
     private final int id;   //Identificatore univoco della stanza
     private String nome;   //Nome della stanza
     private String descrizione;  //Descrizione della stanza
@@ -189,6 +196,16 @@ public class Stanza implements Serializable {
         this.visibile = visibile;
     }
 
+    /**
+     * Restituisce il livello di luce proprio della stanza, senza considerare
+     * eventuali sorgenti di luce portate dal giocatore o presenti al suo interno.
+     *
+     * @return {@link #LUCE_AMBIENTALE} se la stanza è visibile, {@link #BUIO} altrimenti
+     */
+    public int getLivelloLuce() {
+        return visibile ? LUCE_AMBIENTALE : BUIO;
+    }
+
     public void attivaOsservazioneAggiornata() {
         this.osservazioneAggiornataAttiva = true;
     }
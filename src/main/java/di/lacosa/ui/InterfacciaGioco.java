@@ -1,8 +1,10 @@
 package di.lacosa.ui;
 
+import di.lacosa.FrontendGioco;
 import di.lacosa.Main;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.*;
 import java.net.URL;
@@ -21,14 +23,20 @@ import java.util.function.Consumer;
  * @see JFrame
  * @see MapPanel
  */
-public class InterfacciaGioco extends JFrame {
+public class InterfacciaGioco extends JFrame implements FrontendGioco {
+
+    /**
+     * Numero massimo di caratteri conservati nell'area di testo: oltre questo limite
+     * le righe più vecchie vengono rimosse, fino a tornare a tre quarti del limite
+     */
+    public static final int CARATTERI_MASSIMI_AREA = 200_000;
 
     // Componenti UI
     private JTextArea areaDiTesto;
     private JTextField campoDiInput;
     private JButton bottoneContinua;
     private JButton bottoneSalta;
-    private Thread threadBattitura;
+    private Timer timerBattitura;
     private Main engine;
     private MapPanel pannelloMappa;
     private String correnteTestoDiBattitura = "";
@@ -41,8 +49,9 @@ public class InterfacciaGioco extends JFrame {
     private JPanel contenitoreSud; // pannello che contiene entrambi
 
 
-    // Variabile per effetto battitura
+    // Variabili per effetto battitura, usate solo dall'Event Dispatch Thread
     private int indiceDiTesto = 0;
+    private Runnable alTermineBattitura;
 
 
     /**
@@ -214,11 +223,10 @@ public class InterfacciaGioco extends JFrame {
     private void saltaEffettoBattitura() {
         if (!inBattitura) return;
 
-        if (threadBattitura != null && threadBattitura.isAlive()) {
-            threadBattitura.interrupt();
-        }
+        timerBattitura.stop();
         // Mostra il testo completo
         areaDiTesto.append(correnteTestoDiBattitura.substring(indiceDiTesto));
+        limitaAreaDiTesto();
         areaDiTesto.setCaretPosition(areaDiTesto.getDocument().getLength());
         inBattitura = false;
         indiceDiTesto = 0;
@@ -228,6 +236,9 @@ public class InterfacciaGioco extends JFrame {
 
         // E mostra il pulsante "Continua"
         mostraContinua();
+
+        // L'azione finale viene eseguita come al termine naturale della battitura
+        concludiBattitura();
     }
 
     /**
@@ -240,46 +251,49 @@ public class InterfacciaGioco extends JFrame {
      *
      */
     public void scriviConEffettoBattitura(String testo, Runnable alTermine, boolean mostraSalta) {
+        if (timerBattitura != null) {
+            timerBattitura.stop();
+        }
         correnteTestoDiBattitura = testo;
         indiceDiTesto = 0;
         inBattitura = true;
-
-        if (threadBattitura != null && threadBattitura.isAlive()) {
-            threadBattitura.interrupt();
-        }
-
-        threadBattitura = new Thread(() -> {
-            try {
-                while (indiceDiTesto < testo.length()) {
-                    final char lettera = testo.charAt(indiceDiTesto);
-
-                    SwingUtilities.invokeLater(() -> {
-                        areaDiTesto.append(String.valueOf(lettera));
-                        areaDiTesto.setCaretPosition(areaDiTesto.getDocument().getLength());
-                    });
-                    indiceDiTesto++;
-                    Thread.sleep(30);
-                }
-            } catch (InterruptedException ignored) {
-            } finally {
+        alTermineBattitura = alTermine;
+
+        // Il timer scrive una lettera per tick sull'Event Dispatch Thread, senza thread dedicati
+        timerBattitura = new Timer(30, e -> {
+            if (indiceDiTesto < testo.length()) {
+                areaDiTesto.append(String.valueOf(testo.charAt(indiceDiTesto)));
+                areaDiTesto.setCaretPosition(areaDiTesto.getDocument().getLength());
+                indiceDiTesto++;
+            } else {
+                timerBattitura.stop();
                 inBattitura = false;
-                SwingUtilities.invokeLater(() -> {
-                    nascondiSalta();
-                    if (alTermine != null) {
-                        alTermine.run();
-                    } else {
-                        mostraContinua();
-                    }
-                });
+                limitaAreaDiTesto();
+                concludiBattitura();
             }
         });
-        threadBattitura.start();
+        timerBattitura.start();
 
         if(mostraSalta){
             mostraSalta();
         }
     }
 
+    /**
+     * Conclude l'effetto battitura: nasconde il pulsante "Salta" ed esegue l'azione finale,
+     * o in sua assenza mostra il pulsante "Continua".
+     */
+    private void concludiBattitura() {
+        Runnable alTermine = alTermineBattitura;
+        alTermineBattitura = null;
+        nascondiSalta();
+        if (alTermine != null) {
+            alTermine.run();
+        } else {
+            mostraContinua();
+        }
+    }
+
 
     /**
      * Versione semplificata di {@link #scriviConEffettoBattitura(String, Runnable, boolean)}
@@ -297,7 +311,8 @@ public class InterfacciaGioco extends JFrame {
      *
      * @param callback la funzione che riceverà l'input
      */
-    public void attendiRispostaGiocatore(java.util.function.Consumer<String> callback) {
+    @Override
+    public void attendiRispostaGiocatore(Consumer<String> callback) {
         this.callbackRisposta = callback;
     }
 
@@ -329,11 +344,88 @@ public class InterfacciaGioco extends JFrame {
      *
      * @param testo il testo da visualizzare
      */
+    @Override
     public void scriviInAreaDiTesto(String testo) {
         areaDiTesto.append(testo + "\n");
+        limitaAreaDiTesto();
+        areaDiTesto.setCaretPosition(areaDiTesto.getDocument().getLength());
+    }
+
+
+    /**
+     * Aggiunge il testo all'area di output così com'è, senza andare a capo.
+     *
+     * @param testo il testo da aggiungere
+     */
+    @Override
+    public void aggiungiInAreaDiTesto(String testo) {
+        areaDiTesto.append(testo);
+        limitaAreaDiTesto();
         areaDiTesto.setCaretPosition(areaDiTesto.getDocument().getLength());
     }
 
+    /**
+     * Rimuove le righe più vecchie se l'area di testo supera {@link #CARATTERI_MASSIMI_AREA} caratteri.
+     * Il taglio avviene a fine riga, per non lasciare una riga spezzata in cima.
+     */
+    private void limitaAreaDiTesto() {
+        int eccedenza = areaDiTesto.getDocument().getLength() - CARATTERI_MASSIMI_AREA;
+        if (eccedenza <= 0) {
+            return;
+        }
+        int daRimuovere = eccedenza + CARATTERI_MASSIMI_AREA / 4;
+        try {
+            daRimuovere = areaDiTesto.getLineEndOffset(areaDiTesto.getLineOfOffset(daRimuovere));
+        } catch (BadLocationException e) {
+            // Si rimuove esattamente l'eccedenza calcolata
+        }
+        areaDiTesto.replaceRange("", 0, Math.min(daRimuovere, areaDiTesto.getDocument().getLength()));
+    }
+
+    /**
+     * Restituisce il numero di caratteri accumulati nell'area di output.
+     *
+     * @return la lunghezza del testo mostrato
+     */
+    @Override
+    public int getLunghezzaAreaDiTesto() {
+        return areaDiTesto.getDocument().getLength();
+    }
+
+    /**
+     * Mostra il testo in una {@link FinestraLettura} modale, aperta sull'Event Dispatch Thread.
+     *
+     * @param testo il testo da mostrare
+     * @param titolo il titolo della finestra
+     */
+    @Override
+    public void mostraLettura(String testo, String titolo) {
+        FinestraLettura.mostraFinestraLettura(this, testo, titolo);
+    }
+
+    /**
+     * Chiede una scelta al giocatore con una finestra di dialogo modale.
+     *
+     * @param messaggio la domanda da porre
+     * @param titolo il titolo della finestra
+     * @param opzioni le opzioni disponibili, la prima è quella predefinita
+     * @return l'indice dell'opzione scelta, o -1 se la finestra è stata chiusa
+     */
+    @Override
+    public int chiediScelta(String messaggio, String titolo, String[] opzioni) {
+        return JOptionPane.showOptionDialog(this, messaggio, titolo, JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE, null, opzioni, opzioni[0]);
+    }
+
+    /**
+     * Esegue l'operazione sull'Event Dispatch Thread, dopo gli eventi già in coda.
+     *
+     * @param operazione l'operazione da eseguire
+     */
+    @Override
+    public void eseguiInInterfaccia(Runnable operazione) {
+        SwingUtilities.invokeLater(operazione);
+    }
 
     public void setEngine(Main engine) {
         this.engine = engine;
@@ -349,6 +441,7 @@ public class InterfacciaGioco extends JFrame {
      *
      * @param idStanza l'ID della stanza corrente
      */
+    @Override
     public void aggiornaMappa(int idStanza) {
 
         if (pannelloMappa != null) {
@@ -445,6 +538,7 @@ public class InterfacciaGioco extends JFrame {
     /**
      * Svuota completamente il contenuto dell'area di testo.
      */
+    @Override
     public void svuotaAreaDiTesto() {
         areaDiTesto.setText("");
     }
@@ -537,6 +631,7 @@ public class InterfacciaGioco extends JFrame {
     }
 
 
+    @Override
     public void mostraStanzaPulita(String nomeStanza, String descrizione) {
         svuotaAreaDiTesto();
         scriviInAreaDiTesto("");
@@ -588,6 +683,7 @@ public class InterfacciaGioco extends JFrame {
     /**
      * Disabilita il campo di input dei comandi.
      */
+    @Override
     public void disabilitaInput() {
         campoDiInput.setEnabled(false);
         campoDiInput.setBackground(Color.DARK_GRAY);
@@ -596,6 +692,7 @@ public class InterfacciaGioco extends JFrame {
     /**
      * Abilita il campo di input dei comandi e gli dà focus.
      */
+    @Override
     public void abilitaInput() {
         campoDiInput.setEnabled(true);
         campoDiInput.setBackground(Color.DARK_GRAY);